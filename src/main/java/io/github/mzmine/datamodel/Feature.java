@@ -65,6 +65,14 @@ public interface Feature {
     @Nonnull
     int[] getScanNumbers();
 
+    /**
+     * This method returns the retention times of the scans that contain this
+     * peak, in the same order as getScanNumbers()
+     */
+    default @Nonnull double[] getRetentionTimes() {
+        return getDataFile().getRetentionTimes(getScanNumbers());
+    }
+
     /**
      * This method returns the number of most representative scan of this peak
      */
@@ -196,4 +204,39 @@ public interface Feature {
     default Integer getParentChromatogramRowID() {
         return null;
     }
+
+    /**
+     * Returns the similarity (Pearson correlation) of the peak shape to a
+     * Gaussian peak with the same apex and FWHM, or null if not calculated
+     */
+    @Nullable
+    default Double getGaussianSimilarity() {
+        return null;
+    }
+
+    /**
+     * Returns the jaggedness of the peak shape (fraction of unexpected changes
+     * of direction), or null if not calculated
+     */
+    @Nullable
+    default Double getJaggedness() {
+        return null;
+    }
+
+    /**
+     * Returns the sharpness of the peak shape (sum of the relative intensity
+     * changes towards the apex), or null if not calculated
+     */
+    @Nullable
+    default Double getSharpness() {
+        return null;
+    }
+
+    /**
+     * Sets the peak shape metrics. Features that do not store them ignore
+     * this call.
+     */
+    default void setPeakShapeMetrics(@Nullable Double gaussianSimilarity,
+            @Nullable Double jaggedness, @Nullable Double sharpness) {
+    }
 }
@@ -249,4 +249,12 @@ public interface PeakList {
      */
     public PeakListRow findRowByID(int id);
 
+    /**
+     * Returns a counter that is increased whenever a row is added or removed.
+     * Together with {@link PeakListRow#getModificationCount()} it is used to
+     * validate data cached for this feature list, see
+     * {@link io.github.mzmine.util.FeatureMatrix}.
+     */
+    public long getModificationCount();
+
 }
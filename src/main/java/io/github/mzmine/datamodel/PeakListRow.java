@@ -209,4 +209,10 @@ public interface PeakListRow {
     public void setID(int id);
 
     // End DorresteinLab edit
+
+    /**
+     * Returns a counter that is increased whenever the features of this row
+     * change
+     */
+    public long getModificationCount();
 }
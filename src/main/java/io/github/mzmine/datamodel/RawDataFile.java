@@ -81,6 +81,22 @@ public interface RawDataFile {
     @Nonnull
     public int[] getScanNumbers(int msLevel, @Nonnull Range<Double> rtRange);
 
+    /**
+     * Returns sorted array of the scan numbers that match all given
+     * conditions, without loading the scans. Null conditions match all scans.
+     * 
+     * @param msLevel
+     *            MS level
+     * @param rtRange
+     *            Retention time range
+     * @param polarity
+     *            Polarity
+     * @return Sorted array of scan numbers, never returns null
+     */
+    @Nonnull
+    public int[] getScanNumbers(@Nullable Integer msLevel,
+            @Nullable Range<Double> rtRange, @Nullable PolarityType polarity);
+
     /**
      * Scan could be null if scanID is not contained in the raw data file
      *
@@ -90,6 +106,109 @@ public interface RawDataFile {
      */
     public @Nullable Scan getScan(int scan);
 
+    /**
+     * Returns the retention time of a scan without loading the scan
+     *
+     * @param scan
+     *            Desired scan number
+     * @return Retention time, or NaN if scanID is not contained in the raw data
+     *         file
+     */
+    public double getRetentionTime(int scan);
+
+    /**
+     * Returns the retention times of the given scans without loading the scans
+     *
+     * @param scanNumbers
+     *            Desired scan numbers
+     * @return Retention times in the same order as scanNumbers, NaN for scans
+     *         that are not contained in the raw data file
+     */
+    @Nonnull
+    public double[] getRetentionTimes(@Nonnull int scanNumbers[]);
+
+    /**
+     * Returns the scan definition of a scan without loading the scan
+     *
+     * @param scan
+     *            Desired scan number
+     * @return Scan definition, or null if the scan has none or scanID is not
+     *         contained in the raw data file
+     */
+    public @Nullable String getScanDefinition(int scan);
+
+    /**
+     * Returns the total ion count of a scan without loading the scan
+     *
+     * @param scan
+     *            Desired scan number
+     * @return Total ion count, or NaN if scanID is not contained in the raw
+     *         data file
+     */
+    public double getTIC(int scan);
+
+    /**
+     * Returns the most intense data point of a scan without loading the scan
+     *
+     * @param scan
+     *            Desired scan number
+     * @return Base peak, or null if the scan has no data points or scanID is
+     *         not contained in the raw data file
+     */
+    public @Nullable DataPoint getBasePeak(int scan);
+
+    /**
+     * Returns the m/z range of the data points of a scan without loading the
+     * scan
+     *
+     * @param scan
+     *            Desired scan number
+     * @return m/z range, or null if scanID is not contained in the raw data
+     *         file
+     */
+    public @Nullable Range<Double> getDataPointMZRange(int scan);
+
+    /**
+     * Finds the highest data point within the m/z range in each of the scans,
+     * using the XIC index of the file if there is one (see
+     * {@link #isXICIndexed(int[])})
+     *
+     * @param scanNumbers
+     *            Sorted scan numbers
+     * @param mzRange
+     *            m/z range
+     * @return Highest data point of each scan in the same order as
+     *         scanNumbers, null for scans without data points in the m/z range
+     */
+    @Nonnull
+    public DataPoint[] findBasePeaks(@Nonnull int scanNumbers[],
+            @Nonnull Range<Double> mzRange);
+
+    /**
+     * Calculates the total ion count within the m/z range of each of the
+     * scans, using the XIC index of the file if there is one (see
+     * {@link #isXICIndexed(int[])})
+     *
+     * @param scanNumbers
+     *            Sorted scan numbers
+     * @param mzRange
+     *            m/z range
+     * @return Total ion count of each scan in the same order as scanNumbers
+     */
+    @Nonnull
+    public double[] calculateTICs(@Nonnull int scanNumbers[],
+            @Nonnull Range<Double> mzRange);
+
+    /**
+     * Returns true if {@link #findBasePeaks(int[], Range)} and
+     * {@link #calculateTICs(int[], Range)} can take the values of the given
+     * scans from an index of the data points instead of reading the scans
+     *
+     * @param scanNumbers
+     *            Sorted scan numbers
+     */
+    public boolean isXICIndexed(@Nonnull int scanNumbers[]);
+
     @Nonnull
     public Range<Double> getDataMZRange();
 
@@ -106,6 +225,29 @@ public interface RawDataFile {
 
     public double getDataMaxTotalIonCurrent(int msLevel);
 
+    /**
+     * Announces that the data points of the given scans will be read in the
+     * given order, so that they can be loaded in the background. Use it as
+     * 
+     * <pre>
+     * try (ScanAccessPlan plan = dataFile.planScanAccess(scanNumbers, null)) {
+     *     for (int scanNumber : scanNumbers) {
+     *         ... dataFile.getScan(scanNumber).getDataPoints() ...
+     *     }
+     * }
+     * </pre>
+     * 
+     * @param scanNumbers
+     *            scans in the order they will be read
+     * @param massListName
+     *            if not null, the data points of the mass lists with this name
+     *            will be read instead of the data points of the scans
+     * @return plan, which must be closed when the scans are read
+     */
+    @Nonnull
+    public ScanAccessPlan planScanAccess(@Nonnull int scanNumbers[],
+            @Nullable String massListName);
+
     /**
      * Close the file in case it is removed from the project
      */
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.datamodel;
+
+/**
+ * Announcement of the scans (or mass lists) whose data points a task is about
+ * to read, in the order they will be read, see
+ * {@link RawDataFile#planScanAccess(int[], String)}. The data file may load
+ * the data points in the background, while the task processes the previous
+ * scans. The plan is only a hint: scans may be read in any order, or not at
+ * all. It must be closed when the scans are read, to release its buffers.
+ */
+@FunctionalInterface
+public interface ScanAccessPlan extends AutoCloseable {
+
+    /**
+     * Plan that does nothing
+     */
+    public static final ScanAccessPlan NONE = () -> {
+    };
+
+    /**
+     * Stops loading the data points and releases the buffers of the plan
+     */
+    @Override
+    public void close();
+
+}
@@ -51,6 +51,9 @@ public class SimpleFeature implements Feature {
     private double mz, rt, height, area;
     private Double fwhm, tf, af;
 
+    // Peak shape metrics, see QualityParameters
+    private Double gaussianSimilarity, jaggedness, sharpness;
+
     // Boundaries of the peak raw data points
     private Range<Double> rtRange, mzRange, intensityRange;
 
@@ -124,6 +127,9 @@ public class SimpleFeature implements Feature {
         this.fwhm = p.getFWHM();
         this.tf = p.getTailingFactor();
         this.af = p.getAsymmetryFactor();
+        this.gaussianSimilarity = p.getGaussianSimilarity();
+        this.jaggedness = p.getJaggedness();
+        this.sharpness = p.getSharpness();
 
         this.rtRange = p.getRawDataPointsRTRange();
         this.mzRange = p.getRawDataPointsMZRange();
@@ -424,6 +430,29 @@ public class SimpleFeature implements Feature {
         this.af = af;
     }
 
+    @Override
+    public Double getGaussianSimilarity() {
+        return gaussianSimilarity;
+    }
+
+    @Override
+    public Double getJaggedness() {
+        return jaggedness;
+    }
+
+    @Override
+    public Double getSharpness() {
+        return sharpness;
+    }
+
+    @Override
+    public void setPeakShapeMetrics(Double gaussianSimilarity,
+            Double jaggedness, Double sharpness) {
+        this.gaussianSimilarity = gaussianSimilarity;
+        this.jaggedness = jaggedness;
+        this.sharpness = sharpness;
+    }
+
     // dulab Edit
     @Override
     public void outputChromToFile() {
@@ -25,6 +25,7 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 import com.google.common.collect.Range;
 
@@ -48,6 +49,8 @@ public class SimplePeakList implements PeakList {
     private Vector<PeakListAppliedMethod> descriptionOfAppliedTasks;
     private String dateCreated;
     private Range<Double> mzRange, rtRange;
+    // Rows may be added or removed by several threads
+    private final AtomicLong modificationCount = new AtomicLong();
 
     public static DateFormat dateFormat = new SimpleDateFormat(
             "yyyy/MM/dd HH:mm:ss");
@@ -192,6 +195,7 @@ public class SimplePeakList implements PeakList {
         }
 
         peakListRows.add(row);
+        modificationCount.incrementAndGet();
         if (row.getDataPointMaxIntensity() > maxDataPointIntensity) {
             maxDataPointIntensity = row.getDataPointMaxIntensity();
         }
@@ -256,6 +260,7 @@ public class SimplePeakList implements PeakList {
     @Override
     public void removeRow(PeakListRow row) {
         peakListRows.remove(row);
+        modificationCount.incrementAndGet();
 
         // We have to update the project tree model
         MZmineProjectImpl project = (MZmineProjectImpl) MZmineCore
@@ -294,6 +299,11 @@ public class SimplePeakList implements PeakList {
         }
     }
 
+    @Override
+    public long getModificationCount() {
+        return modificationCount.get();
+    }
+
     @Override
     public Stream<PeakListRow> stream() {
         return peakListRows.stream();
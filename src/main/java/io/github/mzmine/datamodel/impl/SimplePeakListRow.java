@@ -54,6 +54,7 @@ public class SimplePeakListRow implements PeakListRow {
     private PeakInformation information;
     private int myID;
     private double maxDataPointIntensity = 0;
+    private volatile long modificationCount = 0;
 
     /**
      * These variables are used for caching the average values, so we don't need
@@ -150,6 +151,8 @@ public class SimplePeakListRow implements PeakListRow {
     }
 
     private synchronized void calculateAverageValues() {
+        // Called whenever the features change
+        modificationCount++;
         double rtSum = 0, mzSum = 0, heightSum = 0, areaSum = 0;
         int charge = 0;
         HashSet<Integer> chargeArr = new HashSet<Integer>();
@@ -413,6 +416,11 @@ public class SimplePeakListRow implements PeakListRow {
     }
     // End DorresteinLab edit
 
+    @Override
+    public long getModificationCount() {
+        return modificationCount;
+    }
+
     // Gauthier edit
     /**
      * Update average values
@@ -71,12 +71,17 @@ public class MZminePreferences extends SimpleParameterSet {
             "Send error e-Mail notifications",
             "Send error e-Mail notifications", new ErrorMailSettings());
 
+    public static final BooleanParameter xicIndex = new BooleanParameter(
+            "Index raw data for ion chromatograms",
+            "Build an m/z index of the MS1 data points of each raw data file, which makes the extraction of ion chromatograms faster. The index uses additional temporary disk space.",
+            false);
+
     public static final WindowSettingsParameter windowSetttings = new WindowSettingsParameter();
 
     public MZminePreferences() {
         super(new Parameter[] { colorPalettes, mzFormat, rtFormat,
                 intensityFormat, numOfThreads, proxySettings, rExecPath,
-                sendStatistics, windowSetttings, sendErrorEMail });
+                sendStatistics, xicIndex, windowSetttings, sendErrorEMail });
     }
 
     @Override
@@ -43,6 +43,7 @@ import io.github.mzmine.main.impl.MZmineConfigurationImpl;
 import io.github.mzmine.modules.MZmineModule;
 import io.github.mzmine.modules.MZmineRunnableModule;
 import io.github.mzmine.modules.batchmode.BatchModeModule;
+import io.github.mzmine.modules.batchmode.BatchService;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.WindowSettingsParameter;
 import io.github.mzmine.project.ProjectManager;
@@ -250,6 +251,15 @@ public final class MZmineCore {
             gatThread.setPriority(Thread.MIN_PRIORITY);
             gatThread.start();
 
+            // Run the batch service which processes many batch files
+            if (args[0].equals(BatchService.SERVICE_ARGUMENT)) {
+                ExitCode exitCode = BatchService.runService(args);
+                if (exitCode == ExitCode.OK)
+                    System.exit(0);
+                else
+                    System.exit(1);
+            }
+
             File batchFile = new File(args[0]);
             if ((!batchFile.exists()) || (!batchFile.canRead())) {
                 logger.severe("Cannot read batch file " + batchFile);
@@ -19,13 +19,16 @@
 package io.github.mzmine.modules.batchmode;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nonnull;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
 
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.modules.MZmineModuleCategory;
@@ -86,14 +89,7 @@ public class BatchModeModule implements MZmineProcessingModule {
         logger.info("Running batch from file " + batchFile);
 
         try {
-            DocumentBuilder docBuilder = DocumentBuilderFactory.newInstance()
-                    .newDocumentBuilder();
-            Document parsedBatchXML = docBuilder.parse(batchFile);
-            BatchQueue newQueue = BatchQueue
-                    .loadFromXml(parsedBatchXML.getDocumentElement());
-            ParameterSet parameters = new BatchModeParameters();
-            parameters.getParameter(BatchModeParameters.batchQueue)
-                    .setValue(newQueue);
+            ParameterSet parameters = loadBatchParameters(batchFile);
             Task batchTask = new BatchTask(project, parameters);
             batchTask.run();
             if (batchTask.getStatus() == TaskStatus.FINISHED)
@@ -108,6 +104,23 @@ public class BatchModeModule implements MZmineProcessingModule {
 
     }
 
+    /**
+     * Loads the batch queue from the given XML file into a new instance of the
+     * batch mode parameters
+     */
+    static ParameterSet loadBatchParameters(File batchFile)
+            throws ParserConfigurationException, SAXException, IOException {
+        DocumentBuilder docBuilder = DocumentBuilderFactory.newInstance()
+                .newDocumentBuilder();
+        Document parsedBatchXML = docBuilder.parse(batchFile);
+        BatchQueue newQueue = BatchQueue
+                .loadFromXml(parsedBatchXML.getDocumentElement());
+        ParameterSet parameters = new BatchModeParameters();
+        parameters.getParameter(BatchModeParameters.batchQueue)
+                .setValue(newQueue);
+        return parameters;
+    }
+
     @Override
     public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
         return BatchModeParameters.class;
@@ -24,7 +24,9 @@ import java.util.logging.Logger;
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.dialogs.ParameterSetupDialog;
 import io.github.mzmine.parameters.impl.SimpleParameterSet;
+import io.github.mzmine.parameters.parametertypes.OptionalParameter;
 import io.github.mzmine.parameters.parametertypes.filenames.FileNameListSilentParameter;
+import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
 import io.github.mzmine.util.ExitCode;
 
 public class BatchModeParameters extends SimpleParameterSet {
@@ -36,8 +38,13 @@ public class BatchModeParameters extends SimpleParameterSet {
             "Last used files");
     public static final BatchQueueParameter batchQueue = new BatchQueueParameter();
 
+    public static final OptionalParameter<FileNameParameter> performanceReport = new OptionalParameter<>(
+            new FileNameParameter("Performance report",
+                    "Write the time, CPU time, memory allocations and temporary file I/O of the tasks, "
+                            + "summarized per batch step, to <name>.csv and <name>.json"));
+
     public BatchModeParameters() {
-        super(new Parameter[] { batchQueue, lastFiles });
+        super(new Parameter[] { batchQueue, performanceReport, lastFiles });
     }
 
     @Override
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.batchmode;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.Task;
+import io.github.mzmine.taskcontrol.TaskMetrics;
+import io.github.mzmine.taskcontrol.TaskStatus;
+
+/**
+ * Collects the task measurements (see {@link TaskMetrics}) of a batch run,
+ * aggregated per batch step, and writes them as CSV and JSON files.
+ */
+class BatchPerformanceReport {
+
+    private static final String CSV_HEADER = "step,module,status,tasks,"
+            + "step_wall_ms,task_wall_ms,max_task_wall_ms,cpu_ms,"
+            + "allocated_bytes,processed_items,temp_file_bytes_read,"
+            + "temp_file_bytes_written";
+
+    private final List<StepRecord> steps = new ArrayList<>();
+
+    /**
+     * Results of one batch step
+     */
+    static class StepRecord {
+
+        final int stepNumber;
+        final String moduleName;
+        final TaskStatus status;
+        final long stepWallTime;
+        final List<TaskRecord> tasks = new ArrayList<>();
+
+        long taskWallTime, maxTaskWallTime, cpuTime, allocatedBytes,
+                processedItems, tempFileBytesRead, tempFileBytesWritten;
+
+        StepRecord(int stepNumber, String moduleName, TaskStatus status,
+                long stepWallTime) {
+            this.stepNumber = stepNumber;
+            this.moduleName = moduleName;
+            this.status = status;
+            this.stepWallTime = stepWallTime;
+        }
+
+        void addTask(TaskRecord task) {
+            tasks.add(task);
+            taskWallTime += task.wallTime;
+            maxTaskWallTime = Math.max(maxTaskWallTime, task.wallTime);
+            cpuTime += task.cpuTime;
+            allocatedBytes += task.allocatedBytes;
+            processedItems += task.processedItems;
+            tempFileBytesRead += task.tempFileBytesRead;
+            tempFileBytesWritten += task.tempFileBytesWritten;
+        }
+
+    }
+
+    /**
+     * Measurements of one task. The values are copied, so that the report does
+     * not keep the tasks (and their data) in memory.
+     */
+    static class TaskRecord {
+
+        final String description;
+        final TaskStatus status;
+        final long wallTime, cpuTime, allocatedBytes, processedItems,
+                tempFileBytesRead, tempFileBytesWritten;
+
+        TaskRecord(Task task, TaskMetrics metrics) {
+            this.description = task.getTaskDescription();
+            this.status = task.getStatus();
+            this.wallTime = metrics.getWallTime();
+            this.cpuTime = metrics.getCpuTime();
+            this.allocatedBytes = metrics.getAllocatedBytes();
+            this.processedItems = metrics.getProcessedItems();
+            this.tempFileBytesRead = metrics.getTempFileBytesRead();
+            this.tempFileBytesWritten = metrics.getTempFileBytesWritten();
+        }
+
+    }
+
+    /**
+     * Adds the measurements of the tasks of a finished batch step
+     *
+     * @param stepWallTime
+     *            wall time of the whole step, in nanoseconds
+     */
+    synchronized StepRecord addStep(int stepNumber, String moduleName,
+            TaskStatus status, long stepWallTime, List<Task> stepTasks) {
+        StepRecord step = new StepRecord(stepNumber, moduleName, status,
+                stepWallTime);
+        for (Task task : stepTasks) {
+            if (task instanceof AbstractTask)
+                step.addTask(new TaskRecord(task,
+                        ((AbstractTask) task).getMetrics()));
+        }
+        steps.add(step);
+        return step;
+    }
+
+    /**
+     * Writes the per-step summary as CSV
+     */
+    synchronized void writeCSV(File file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(),
+                StandardCharsets.UTF_8)) {
+            writer.write(CSV_HEADER);
+            writer.newLine();
+            for (StepRecord step : steps) {
+                writer.write((step.stepNumber + 1) + ","
+                        + escapeCSV(step.moduleName) + "," + step.status + ","
+                        + step.tasks.size() + "," + toMs(step.stepWallTime)
+                        + "," + toMs(step.taskWallTime) + ","
+                        + toMs(step.maxTaskWallTime) + ","
+                        + toMs(step.cpuTime) + "," + step.allocatedBytes + ","
+                        + step.processedItems + "," + step.tempFileBytesRead
+                        + "," + step.tempFileBytesWritten);
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Writes the per-step summary including the individual tasks as JSON
+     */
+    synchronized void writeJSON(File file) throws IOException {
+        JSONArray stepsJSON = new JSONArray();
+        for (StepRecord step : steps)
+            stepsJSON.put(toJSON(step));
+        JSONObject report = new JSONObject().put("steps", stepsJSON);
+        Files.write(file.toPath(),
+                report.toString(2).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return summary of the step, including its tasks
+     */
+    static JSONObject toJSON(StepRecord step) {
+        JSONArray tasks = new JSONArray();
+        for (TaskRecord task : step.tasks) {
+            tasks.put(new JSONObject().put("task", task.description)
+                    .put("status", String.valueOf(task.status))
+                    .put("wallMs", toMs(task.wallTime))
+                    .put("cpuMs", toMs(task.cpuTime))
+                    .put("allocatedBytes", task.allocatedBytes)
+                    .put("processedItems", task.processedItems)
+                    .put("tempFileBytesRead", task.tempFileBytesRead)
+                    .put("tempFileBytesWritten", task.tempFileBytesWritten));
+        }
+        return new JSONObject().put("step", step.stepNumber + 1)
+                .put("module", step.moduleName)
+                .put("status", String.valueOf(step.status))
+                .put("stepWallMs", toMs(step.stepWallTime))
+                .put("taskWallMs", toMs(step.taskWallTime))
+                .put("maxTaskWallMs", toMs(step.maxTaskWallTime))
+                .put("cpuMs", toMs(step.cpuTime))
+                .put("allocatedBytes", step.allocatedBytes)
+                .put("processedItems", step.processedItems)
+                .put("tempFileBytesRead", step.tempFileBytesRead)
+                .put("tempFileBytesWritten", step.tempFileBytesWritten)
+                .put("tasks", tasks);
+    }
+
+    private static long toMs(long nanos) {
+        return nanos / 1000000L;
+    }
+
+    private static String escapeCSV(String value) {
+        if (value.contains(",") || value.contains("\""))
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        return value;
+    }
+
+}
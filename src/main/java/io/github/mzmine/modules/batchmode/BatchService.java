@@ -0,0 +1,546 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.batchmode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.OptionalParameter;
+import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
+import io.github.mzmine.project.impl.MZmineProjectImpl;
+import io.github.mzmine.project.impl.ProjectManagerImpl;
+import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.Task;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.taskcontrol.TaskStatusListener;
+import io.github.mzmine.util.ExceptionUtils;
+import io.github.mzmine.util.ExitCode;
+
+/**
+ * Headless batch service. Runs many batch files in one JVM, each batch on its
+ * own MZmineProject, with a limited number of batches running in parallel. The
+ * batch files are taken either from a jobs file (one batch file per line) or
+ * from a spool directory that is watched for new batch files. Progress and
+ * timing of the batches, their steps and tasks are written to the standard
+ * output as JSON lines.
+ *
+ * Usage: MZmine -service &lt;spool directory | jobs file&gt; [max. parallel
+ * batches]
+ *
+ * In the spool directory mode, batch files (*.xml) are moved to the "running"
+ * subdirectory when they are started, and to the "done" or "failed"
+ * subdirectory when they finish. The performance report of each batch (see
+ * {@link BatchPerformanceReport}) is written to the "reports" subdirectory, or
+ * next to the batch file when a jobs file is used. Batch files should be
+ * moved into the spool directory in one step (e.g. written under a different
+ * name and renamed), so that incomplete files are not picked up. The service
+ * runs until the process is terminated.
+ *
+ * Note that batch steps which select files or feature lists by name (rather
+ * than using the results of the previous step) are resolved against the
+ * project of the batch that is being set up.
+ */
+public class BatchService {
+
+    private static final Logger logger = Logger
+            .getLogger(BatchService.class.getName());
+
+    public static final String SERVICE_ARGUMENT = "-service";
+
+    private static final String RUNNING_DIR = "running";
+    private static final String DONE_DIR = "done";
+    private static final String FAILED_DIR = "failed";
+    private static final String REPORTS_DIR = "reports";
+
+    // Interval of the progress reports, in seconds
+    private static final long PROGRESS_INTERVAL = 10;
+
+    // Interval of spool directory rescans in case file system events are
+    // missed, in seconds
+    private static final long SPOOL_POLL_INTERVAL = 5;
+
+    private final File source;
+    private final int maxParallelBatches;
+    private final PrintStream out;
+
+    private final ExecutorService jobExecutor;
+    private final AtomicInteger jobCounter = new AtomicInteger();
+    private final List<BatchJob> runningJobs = new CopyOnWriteArrayList<>();
+
+    public BatchService(File source, int maxParallelBatches, PrintStream out) {
+        this.source = source;
+        this.maxParallelBatches = maxParallelBatches;
+        this.out = out;
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        jobExecutor = Executors.newFixedThreadPool(maxParallelBatches,
+                r -> new Thread(r,
+                        "Batch service job thread #"
+                                + threadCounter.incrementAndGet()));
+    }
+
+    /**
+     * Parses the command line arguments and runs the service
+     *
+     * @param args
+     *            arguments starting with {@link #SERVICE_ARGUMENT}
+     */
+    public static ExitCode runService(String args[]) {
+
+        if (args.length < 2) {
+            logger.severe("Usage: " + SERVICE_ARGUMENT
+                    + " <spool directory | jobs file> [max. parallel batches]");
+            return ExitCode.ERROR;
+        }
+
+        File source = new File(args[1]);
+        if (!source.exists() || !source.canRead()) {
+            logger.severe("Cannot read " + source);
+            return ExitCode.ERROR;
+        }
+
+        int maxParallelBatches = 1;
+        if (args.length > 2) {
+            try {
+                maxParallelBatches = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                maxParallelBatches = 0;
+            }
+            if (maxParallelBatches < 1) {
+                logger.severe("Invalid number of parallel batches: " + args[2]);
+                return ExitCode.ERROR;
+            }
+        }
+
+        BatchService service = new BatchService(source, maxParallelBatches,
+                System.out);
+        return service.run();
+    }
+
+    /**
+     * Runs the service
+     *
+     * @return ExitCode.OK if all batches finished successfully
+     */
+    public ExitCode run() {
+
+        emit(event("service_started").put("source", source.getAbsolutePath())
+                .put("mode", source.isDirectory() ? "spool" : "jobs")
+                .put("maxParallelBatches", maxParallelBatches));
+
+        ScheduledExecutorService progressReporter = Executors
+                .newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "Batch service progress reporter");
+                    t.setDaemon(true);
+                    return t;
+                });
+        progressReporter.scheduleAtFixedRate(this::reportProgress,
+                PROGRESS_INTERVAL, PROGRESS_INTERVAL, TimeUnit.SECONDS);
+
+        ExitCode exitCode;
+        try {
+            if (source.isDirectory())
+                exitCode = watchSpoolDirectory();
+            else
+                exitCode = runJobsFile();
+        } catch (Throwable e) {
+            logger.log(Level.SEVERE, "Error in batch service", e);
+            exitCode = ExitCode.ERROR;
+        } finally {
+            progressReporter.shutdownNow();
+            jobExecutor.shutdownNow();
+        }
+
+        emit(event("service_finished").put("exitCode", exitCode.toString()));
+        return exitCode;
+    }
+
+    /**
+     * Runs all batch files listed in the jobs file and waits for them to
+     * finish. Empty lines and lines starting with # are ignored, relative paths
+     * are resolved against the directory of the jobs file.
+     */
+    private ExitCode runJobsFile() throws IOException, InterruptedException {
+
+        List<Future<TaskStatus>> results = new ArrayList<>();
+
+        for (String line : Files.readAllLines(source.toPath())) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            File batchFile = new File(line);
+            if (!batchFile.isAbsolute())
+                batchFile = new File(source.getAbsoluteFile().getParentFile(),
+                        line);
+            final BatchJob job = queueJob(batchFile,
+                    reportFile(batchFile.getAbsoluteFile().getParentFile(),
+                            batchFile));
+            results.add(jobExecutor.submit(() -> runJob(job)));
+        }
+
+        boolean allFinished = true;
+        for (Future<TaskStatus> result : results) {
+            try {
+                if (result.get() != TaskStatus.FINISHED)
+                    allFinished = false;
+            } catch (ExecutionException e) {
+                allFinished = false;
+            }
+        }
+
+        return allFinished ? ExitCode.OK : ExitCode.ERROR;
+    }
+
+    /**
+     * Watches the spool directory for new batch files and runs them, with at
+     * most maxParallelBatches batches running at the same time
+     */
+    private ExitCode watchSpoolDirectory()
+            throws IOException, InterruptedException {
+
+        final File runningDir = new File(source, RUNNING_DIR);
+        final File doneDir = new File(source, DONE_DIR);
+        final File failedDir = new File(source, FAILED_DIR);
+        final File reportsDir = new File(source, REPORTS_DIR);
+        runningDir.mkdirs();
+        doneDir.mkdirs();
+        failedDir.mkdirs();
+        reportsDir.mkdirs();
+
+        // A batch file is only claimed when a slot is free, so that queued
+        // files stay in the spool directory
+        final Semaphore freeSlots = new Semaphore(maxParallelBatches);
+
+        try (WatchService watcher = FileSystems.getDefault()
+                .newWatchService()) {
+
+            source.toPath().register(watcher,
+                    StandardWatchEventKinds.ENTRY_CREATE);
+
+            while (!Thread.currentThread().isInterrupted()) {
+
+                for (File spooledFile : listSpooledFiles()) {
+
+                    freeSlots.acquire();
+
+                    File runningFile = new File(runningDir,
+                            spooledFile.getName());
+                    try {
+                        Files.move(spooledFile.toPath(), runningFile.toPath(),
+                                StandardCopyOption.REPLACE_EXISTING);
+                    } catch (IOException e) {
+                        // The file was removed in the meantime
+                        logger.log(Level.WARNING,
+                                "Could not claim batch file " + spooledFile,
+                                e);
+                        freeSlots.release();
+                        continue;
+                    }
+
+                    final BatchJob job = queueJob(runningFile,
+                            reportFile(reportsDir, runningFile));
+                    jobExecutor.submit(() -> {
+                        try {
+                            TaskStatus status = runJob(job);
+                            File targetDir = status == TaskStatus.FINISHED
+                                    ? doneDir
+                                    : failedDir;
+                            Files.move(runningFile.toPath(),
+                                    new File(targetDir, runningFile.getName())
+                                            .toPath(),
+                                    StandardCopyOption.REPLACE_EXISTING);
+                        } catch (IOException e) {
+                            logger.log(Level.WARNING,
+                                    "Could not move batch file " + runningFile,
+                                    e);
+                        } finally {
+                            freeSlots.release();
+                        }
+                    });
+
+                }
+
+                WatchKey key = watcher.poll(SPOOL_POLL_INTERVAL,
+                        TimeUnit.SECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+
+            }
+        }
+
+        return ExitCode.OK;
+    }
+
+    /**
+     * @return batch files waiting in the spool directory, oldest first
+     */
+    private List<File> listSpooledFiles() {
+        File files[] = source.listFiles(
+                f -> f.isFile() && f.getName().toLowerCase().endsWith(".xml"));
+        if (files == null)
+            return new ArrayList<>();
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        return Arrays.asList(files);
+    }
+
+    private BatchJob queueJob(File batchFile, File reportFile) {
+        BatchJob job = new BatchJob(jobCounter.incrementAndGet(), batchFile,
+                reportFile);
+        emit(job.event("job_queued"));
+        return job;
+    }
+
+    /**
+     * @return base name of the performance report files of the batch file
+     */
+    private static File reportFile(File directory, File batchFile) {
+        String name = batchFile.getName().replaceFirst("(?i)\\.xml$", "");
+        return new File(directory, name + "_performance");
+    }
+
+    /**
+     * Runs the batch on a new project. The project is bound to the job thread,
+     * and to the threads of the tasks queued by the job, so that the modules
+     * see it as the current project.
+     */
+    private TaskStatus runJob(BatchJob job) {
+
+        final ProjectManagerImpl projectManager = ProjectManagerImpl
+                .getInstance();
+        final MZmineProjectImpl project = new MZmineProjectImpl();
+        projectManager.setThreadProject(project);
+
+        job.startTime = System.nanoTime();
+        emit(job.event("job_started"));
+
+        TaskStatus status;
+        String errorMessage = null;
+        try {
+            ParameterSet parameters;
+            // The batch mode parameter instances are shared by all jobs, so
+            // each job takes its own copy of the queue and the report file
+            synchronized (BatchService.class) {
+                parameters = BatchModeModule
+                        .loadBatchParameters(job.batchFile);
+                OptionalParameter<FileNameParameter> reportParameter = parameters
+                        .getParameter(BatchModeParameters.performanceReport);
+                reportParameter.setValue(true);
+                reportParameter.getEmbeddedParameter()
+                        .setValue(job.reportFile);
+                parameters = parameters.cloneParameterSet();
+            }
+
+            BatchTask batchTask = new BatchTask(project, parameters);
+            batchTask.setStepListener(job);
+            job.batchTask = batchTask;
+            runningJobs.add(job);
+
+            batchTask.run();
+
+            status = batchTask.getStatus();
+            errorMessage = batchTask.getErrorMessage();
+        } catch (Throwable e) {
+            logger.log(Level.SEVERE, "Error while running batch "
+                    + job.batchFile, e);
+            status = TaskStatus.ERROR;
+            errorMessage = ExceptionUtils.exceptionToString(e);
+        } finally {
+            runningJobs.remove(job);
+            projectManager.setThreadProject(null);
+
+            // Remove the temporary files of the project
+            for (RawDataFile dataFile : project.getDataFiles())
+                dataFile.close();
+        }
+
+        JSONObject finished = job.event("job_finished")
+                .put("status", status.toString())
+                .put("elapsedMs", elapsedMs(job.startTime))
+                .put("performanceReport", job.reportFile.getAbsolutePath());
+        if (errorMessage != null)
+            finished.put("error", errorMessage);
+        emit(finished);
+
+        return status;
+    }
+
+    private void reportProgress() {
+        for (BatchJob job : runningJobs) {
+            List<Task> stepTasks = job.stepTasks;
+            JSONArray tasks = new JSONArray();
+            for (Task task : stepTasks) {
+                tasks.put(new JSONObject()
+                        .put("task", task.getTaskDescription())
+                        .put("status", task.getStatus().toString())
+                        .put("progress", task.getFinishedPercentage()));
+            }
+            BatchTask batchTask = job.batchTask;
+            emit(job.event("progress").put("step", job.stepNumber + 1)
+                    .put("module", job.stepName)
+                    .put("batchProgress",
+                            batchTask == null ? 0
+                                    : batchTask.getFinishedPercentage())
+                    .put("elapsedMs", elapsedMs(job.startTime))
+                    .put("tasks", tasks));
+        }
+    }
+
+    private static JSONObject event(String name) {
+        return new JSONObject().put("event", name).put("time",
+                System.currentTimeMillis());
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Writes one event as a single line of JSON
+     */
+    private void emit(JSONObject event) {
+        synchronized (out) {
+            out.println(event.toString());
+            out.flush();
+        }
+    }
+
+    /**
+     * One batch file processed by the service
+     */
+    private class BatchJob implements BatchStepListener {
+
+        private final int id;
+        private final File batchFile, reportFile;
+
+        private volatile BatchTask batchTask;
+        private volatile long startTime, stepStartTime;
+        private volatile int stepNumber;
+        private volatile String stepName;
+        private volatile List<Task> stepTasks = new ArrayList<>();
+
+        BatchJob(int id, File batchFile, File reportFile) {
+            this.id = id;
+            this.batchFile = batchFile;
+            this.reportFile = reportFile;
+        }
+
+        JSONObject event(String name) {
+            return BatchService.event(name).put("job", id).put("batchFile",
+                    batchFile.getAbsolutePath());
+        }
+
+        @Override
+        public void stepStarted(BatchTask batchTask, int stepNumber,
+                String stepName, List<Task> tasks) {
+            this.stepNumber = stepNumber;
+            this.stepName = stepName;
+            this.stepTasks = new ArrayList<>(tasks);
+            this.stepStartTime = System.nanoTime();
+
+            emit(event("step_started").put("step", stepNumber + 1)
+                    .put("module", stepName).put("tasks", tasks.size()));
+
+            // Report the timing of the individual tasks
+            for (Task task : tasks) {
+                if (task instanceof AbstractTask)
+                    ((AbstractTask) task).addTaskStatusListener(
+                            new TaskTimingListener(stepNumber));
+            }
+        }
+
+        @Override
+        public void stepFinished(BatchTask batchTask, int stepNumber,
+                String stepName, TaskStatus status) {
+            emit(event("step_finished").put("step", stepNumber + 1)
+                    .put("module", stepName).put("status", status.toString())
+                    .put("elapsedMs", elapsedMs(stepStartTime)));
+            this.stepTasks = new ArrayList<>();
+        }
+
+        /**
+         * Emits an event when a task starts processing and when it stops
+         */
+        private class TaskTimingListener implements TaskStatusListener {
+
+            private final int taskStepNumber;
+            private long taskStartTime;
+
+            TaskTimingListener(int taskStepNumber) {
+                this.taskStepNumber = taskStepNumber;
+            }
+
+            @Override
+            public void taskStatusChanged(Task task, TaskStatus newStatus,
+                    TaskStatus oldStatus) {
+                switch (newStatus) {
+                case PROCESSING:
+                    taskStartTime = System.nanoTime();
+                    emit(event("task_started").put("step", taskStepNumber + 1)
+                            .put("task", task.getTaskDescription()));
+                    break;
+                case FINISHED:
+                case CANCELED:
+                case ERROR:
+                    JSONObject finished = event("task_finished")
+                            .put("step", taskStepNumber + 1)
+                            .put("task", task.getTaskDescription())
+                            .put("status", newStatus.toString());
+                    if (taskStartTime != 0)
+                        finished.put("elapsedMs", elapsedMs(taskStartTime));
+                    if (newStatus == TaskStatus.ERROR)
+                        finished.put("error", task.getErrorMessage());
+                    emit(finished);
+                    break;
+                default:
+                    break;
+                }
+            }
+        }
+    }
+
+}
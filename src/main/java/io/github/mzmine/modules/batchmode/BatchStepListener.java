@@ -0,0 +1,44 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ * 
+ * This file is part of MZmine 2.
+ * 
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.batchmode;
+
+import java.util.List;
+
+import io.github.mzmine.taskcontrol.Task;
+import io.github.mzmine.taskcontrol.TaskStatus;
+
+/**
+ * Listener notified about the progress of the individual steps of a BatchTask
+ */
+public interface BatchStepListener {
+
+    /**
+     * Called when the tasks of a batch step were created, before they are
+     * submitted to the task controller. The list may be empty.
+     */
+    public void stepStarted(BatchTask batchTask, int stepNumber,
+            String stepName, List<Task> stepTasks);
+
+    /**
+     * Called when all tasks of a batch step have finished, or the step failed
+     */
+    public void stepFinished(BatchTask batchTask, int stepNumber,
+            String stepName, TaskStatus status);
+
+}
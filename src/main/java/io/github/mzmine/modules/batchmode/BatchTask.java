@@ -18,9 +18,12 @@
 
 package io.github.mzmine.modules.batchmode;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import io.github.mzmine.datamodel.MZmineProject;
@@ -57,10 +60,24 @@ public class BatchTask extends AbstractTask {
     private final List<RawDataFile> createdDataFiles, previousCreatedDataFiles;
     private final List<PeakList> createdPeakLists, previousCreatedPeakLists;
 
+    private BatchStepListener stepListener;
+
+    // Tasks of the current step and the measurements of the finished steps
+    private List<Task> stepTasks = new ArrayList<>();
+    private final BatchPerformanceReport performanceReport = new BatchPerformanceReport();
+    private final File performanceReportFile;
+
     BatchTask(MZmineProject project, ParameterSet parameters) {
         this.project = project;
         this.queue = parameters.getParameter(BatchModeParameters.batchQueue)
                 .getValue();
+        if (parameters.getParameter(BatchModeParameters.performanceReport)
+                .getValue())
+            performanceReportFile = parameters
+                    .getParameter(BatchModeParameters.performanceReport)
+                    .getEmbeddedParameter().getValue();
+        else
+            performanceReportFile = null;
         totalSteps = queue.size();
         createdDataFiles = new ArrayList<>();
         createdPeakLists = new ArrayList<>();
@@ -91,9 +108,19 @@ public class BatchTask extends AbstractTask {
         // Process individual batch steps
         for (int i = 0; i < totalSteps; i++) {
 
+            final String moduleName = queue.get(i).getModule().getName();
+            final long stepStartTime = System.nanoTime();
+
             processQueueStep(i);
             processedSteps++;
 
+            performanceReport.addStep(i, moduleName, getStatus(),
+                    System.nanoTime() - stepStartTime, stepTasks);
+            stepTasks = new ArrayList<>();
+
+            if (stepListener != null)
+                stepListener.stepFinished(this, i, moduleName, getStatus());
+
             // Update the project reference in case new project was loaded
             if (project != MZmineCore.getProjectManager().getCurrentProject()) {
                 project.removeProjectListener(listener);
@@ -103,12 +130,14 @@ public class BatchTask extends AbstractTask {
 
             // If we are canceled or ran into error, stop here
             if (isCanceled() || (getStatus() == TaskStatus.ERROR)) {
+                writePerformanceReport();
                 return;
             }
 
         }
 
         project.removeProjectListener(listener);
+        writePerformanceReport();
 
         logger.info("Finished a batch of " + totalSteps + " steps");
         setStatus(TaskStatus.FINISHED);
@@ -191,6 +220,7 @@ public class BatchTask extends AbstractTask {
         }
 
         ArrayList<Task> currentStepTasks = new ArrayList<Task>();
+        stepTasks = currentStepTasks;
         ExitCode exitCode = method.runModule(project, batchStepParameters,
                 currentStepTasks);
 
@@ -200,6 +230,10 @@ public class BatchTask extends AbstractTask {
             return;
         }
 
+        if (stepListener != null)
+            stepListener.stepStarted(this, stepNumber, method.getName(),
+                    currentStepTasks);
+
         // If current step didn't produce any tasks, continue with next step
         if (currentStepTasks.isEmpty())
             return;
@@ -264,6 +298,40 @@ public class BatchTask extends AbstractTask {
 
     }
 
+    /**
+     * Writes the task measurements of the batch steps to the CSV and JSON
+     * performance report files, if requested in the batch parameters
+     */
+    private void writePerformanceReport() {
+        if (performanceReportFile == null)
+            return;
+
+        String baseName = performanceReportFile.getPath()
+                .replaceFirst("\\.(csv|json)$", "");
+        File csvFile = new File(baseName + ".csv");
+        File jsonFile = new File(baseName + ".json");
+        try {
+            performanceReport.writeCSV(csvFile);
+            performanceReport.writeJSON(jsonFile);
+            logger.info("Wrote batch performance report to " + csvFile
+                    + " and " + jsonFile);
+        } catch (IOException e) {
+            // The report must not fail the batch
+            logger.log(Level.WARNING,
+                    "Could not write batch performance report to "
+                            + baseName,
+                    e);
+        }
+    }
+
+    /**
+     * Sets a listener that is notified when the individual batch steps start
+     * and finish
+     */
+    public void setStepListener(BatchStepListener stepListener) {
+        this.stepListener = stepListener;
+    }
+
     @Override
     public TaskPriority getTaskPriority() {
         // to not block mzmine when run with single thread
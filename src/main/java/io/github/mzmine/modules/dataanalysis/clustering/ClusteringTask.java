@@ -26,7 +26,6 @@ import javax.swing.JFrame;
 import javax.swing.JTextField;
 import org.jfree.data.xy.AbstractXYDataset;
 
-import io.github.mzmine.datamodel.Feature;
 import io.github.mzmine.datamodel.PeakList;
 import io.github.mzmine.datamodel.PeakListRow;
 import io.github.mzmine.datamodel.RawDataFile;
@@ -39,6 +38,7 @@ import io.github.mzmine.modules.dataanalysis.projectionplots.ProjectionPlotWindo
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.TaskPriority;
 import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.FeatureMatrix;
 import io.github.mzmine.util.PeakMeasurementType;
 import jmprojection.PCA;
 import jmprojection.Preprocess;
@@ -373,52 +373,20 @@ public class ClusteringTask extends AbstractXYDataset
      * @return
      */
     private double[][] createMatrix(boolean isForSamples) {
-        // Generate matrix of raw data (input to CDA)
-        boolean useArea = true;
-        if (parameters.getParameter(ClusteringParameters.peakMeasurementType)
-                .getValue() == PeakMeasurementType.AREA) {
-            useArea = true;
-        }
-        if (parameters.getParameter(ClusteringParameters.peakMeasurementType)
-                .getValue() == PeakMeasurementType.HEIGHT) {
-            useArea = false;
-        }
-        double[][] rawData;
-        if (isForSamples) {
-            rawData = new double[selectedRawDataFiles.length][selectedRows.length];
-            for (int rowIndex = 0; rowIndex < selectedRows.length; rowIndex++) {
-                PeakListRow peakListRow = selectedRows[rowIndex];
-                for (int fileIndex = 0; fileIndex < selectedRawDataFiles.length; fileIndex++) {
-                    RawDataFile rawDataFile = selectedRawDataFiles[fileIndex];
-                    Feature p = peakListRow.getPeak(rawDataFile);
-                    if (p != null) {
-                        if (useArea) {
-                            rawData[fileIndex][rowIndex] = p.getArea();
-                        } else {
-                            rawData[fileIndex][rowIndex] = p.getHeight();
-                        }
-                    }
-                }
-            }
-        } else {
-            rawData = new double[selectedRows.length][selectedRawDataFiles.length];
-            for (int rowIndex = 0; rowIndex < selectedRows.length; rowIndex++) {
-                PeakListRow peakListRow = selectedRows[rowIndex];
-                for (int fileIndex = 0; fileIndex < selectedRawDataFiles.length; fileIndex++) {
-                    RawDataFile rawDataFile = selectedRawDataFiles[fileIndex];
-                    Feature p = peakListRow.getPeak(rawDataFile);
-                    if (p != null) {
-                        if (useArea) {
-                            rawData[rowIndex][fileIndex] = p.getArea();
-                        } else {
-                            rawData[rowIndex][fileIndex] = p.getHeight();
-                        }
-                    }
-                }
-            }
-        }
-
-        return rawData;
+        // Generate matrix of raw data, areas unless heights were selected
+        PeakMeasurementType measurementType = parameters
+                .getParameter(ClusteringParameters.peakMeasurementType)
+                .getValue();
+        if (measurementType != PeakMeasurementType.HEIGHT)
+            measurementType = PeakMeasurementType.AREA;
+
+        FeatureMatrix matrix = FeatureMatrix.getMatrix(peakList);
+        if (isForSamples)
+            return matrix.getFileByRowMatrix(measurementType, selectedRows,
+                    selectedRawDataFiles, 0.0);
+        else
+            return matrix.getRowByFileMatrix(measurementType, selectedRows,
+                    selectedRawDataFiles, 0.0);
     }
 
     /**
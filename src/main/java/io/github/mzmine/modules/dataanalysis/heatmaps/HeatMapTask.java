@@ -29,7 +29,6 @@ import org.apache.commons.math.MathException;
 import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
 import org.apache.commons.math.stat.inference.TTestImpl;
 
-import io.github.mzmine.datamodel.Feature;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.PeakList;
 import io.github.mzmine.datamodel.PeakListRow;
@@ -38,7 +37,10 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.UserParameter;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.FeatureMatrix;
+import io.github.mzmine.util.PeakMeasurementType;
 import io.github.mzmine.util.R.REngineType;
+import io.github.mzmine.util.R.RSessionPool;
 import io.github.mzmine.util.R.RSessionWrapper;
 import io.github.mzmine.util.R.RSessionWrapperException;
 import io.github.mzmine.util.R.Rsession.Rsession;
@@ -115,10 +117,9 @@ public class HeatMapTask extends AbstractTask {
 
         super.cancel();
 
-        // Turn off R instance, if already existing.
+        // Turn off R instance, if it is still leased.
         try {
-            if (rSession != null)
-                rSession.close(true);
+            RSessionPool.getInstance().closeLeased(rSession);
         } catch (RSessionWrapperException e) {
             // Silent, always...
         }
@@ -149,9 +150,8 @@ public class HeatMapTask extends AbstractTask {
 
             // Load gplots library
             String[] reqPackages = { "gplots" };
-            rSession = new RSessionWrapper(this.rEngineType,
+            rSession = RSessionPool.getInstance().lease(this.rEngineType,
                     "HeatMap analysis module", reqPackages, null);
-            rSession.open();
 
             finishedPercentage = 0.3f;
 
@@ -165,52 +165,27 @@ public class HeatMapTask extends AbstractTask {
                 }
             }
 
-            rSession.eval("dataset<- matrix(\"\",nrow =" + newPeakList[0].length
-                    + ",ncol=" + newPeakList.length + ")");
-
-            if (plegend) {
-                rSession.eval(
-                        "stars<- matrix(\"\",nrow =" + newPeakList[0].length
-                                + ",ncol=" + newPeakList.length + ")");
-            }
-
-            // assing the values to the matrix
-            for (int row = 0; row < newPeakList[0].length; row++) {
-
-                for (int column = 0; column < newPeakList.length; column++) {
-
-                    int r = row + 1;
-                    int c = column + 1;
-
-                    double value = newPeakList[column][row];
-
-                    if (plegend) {
-                        String pValue = pValueMatrix[column][row];
-                        rSession.eval("stars[" + r + "," + c + "] = \"" + pValue
-                                + "\"");
-                    }
-
-                    if (!Double.isInfinite(value) && !Double.isNaN(value)) {
-
-                        rSession.eval(
-                                "dataset[" + r + "," + c + "] = " + value);
-                    } else {
-
-                        rSession.eval("dataset[" + r + "," + c + "] = NA");
-                    }
+            // Transfer the values and p-value stars as whole matrices (rows
+            // are features, columns are samples). Infinite and NaN values
+            // become NA.
+            final int numRows = newPeakList[0].length;
+            final int numColumns = newPeakList.length;
+            final double[][] dataset = new double[numRows][numColumns];
+            final String[][] stars = plegend
+                    ? new String[numRows][numColumns]
+                    : null;
+            for (int row = 0; row < numRows; row++) {
+                for (int column = 0; column < numColumns; column++) {
+                    dataset[row][column] = newPeakList[column][row];
+                    if (plegend)
+                        stars[row][column] = pValueMatrix[column][row];
                 }
             }
             finishedPercentage = 0.4f;
 
-            rSession.eval("dataset <- apply(dataset, 2, as.numeric)");
-
-            // Assign row names to the data set
-            rSession.assign("rowNames", rowNames);
-            rSession.eval("rownames(dataset)<-rowNames");
-
-            // Assign column names to the data set
-            rSession.assign("colNames", colNames);
-            rSession.eval("colnames(dataset)<-colNames");
+            rSession.assignMatrix("dataset", dataset, rowNames, colNames);
+            if (plegend)
+                rSession.assignMatrix("stars", stars, null, null);
 
             finishedPercentage = 0.5f;
 
@@ -281,9 +256,6 @@ public class HeatMapTask extends AbstractTask {
 
             finishedPercentage = 1.0;
 
-            // Turn off R instance, once task ended gracefully.
-            if (!isCanceled())
-                rSession.close(false);
 
         } catch (RSessionWrapperException e) {
             if (!isCanceled()) {
@@ -295,21 +267,20 @@ public class HeatMapTask extends AbstractTask {
                 errorMsg = "'Unknown error' during heatmap generation. \n"
                         + e.getMessage();
             }
-        }
-
-        // Turn off R instance, once task ended UNgracefully.
-        try {
-            if (!isCanceled())
-                if (rSession != null)
-                    rSession.close(isCanceled());
-        } catch (RSessionWrapperException e) {
-            if (!isCanceled()) {
-                // Do not override potential previous error message.
-                if (errorMsg == null) {
-                    errorMsg = e.getMessage();
+        } finally {
+            // Hand the R instance back to the pool, also when the task
+            // was canceled (the pool discards the closed session).
+            try {
+                RSessionPool.getInstance().release(rSession);
+            } catch (RSessionWrapperException e) {
+                if (!isCanceled()) {
+                    // Do not override potential previous error message.
+                    if (errorMsg == null) {
+                        errorMsg = e.getMessage();
+                    }
+                } else {
+                    // User canceled: Silent.
                 }
-            } else {
-                // User canceled: Silent.
             }
         }
 
@@ -376,32 +347,30 @@ public class HeatMapTask extends AbstractTask {
             shownDataFiles = nonReferenceDataFiles;
         }
 
+        final FeatureMatrix matrix = FeatureMatrix.getMatrix(peakList);
+        final PeakMeasurementType measurementType = area
+                ? PeakMeasurementType.AREA
+                : PeakMeasurementType.HEIGHT;
+        final int referenceColumns[] = getColumnIndexes(matrix,
+                referenceDataFiles);
+        final int shownColumns[] = getColumnIndexes(matrix, shownDataFiles);
+
         for (int row = 0, rowIndex = 0; row < peakList
                 .getNumberOfRows(); row++) {
             PeakListRow rowPeak = peakList.getRow(row);
             if (!onlyIdentified || (onlyIdentified
                     && rowPeak.getPeakIdentities().length > 0)) {
 
+                final int matrixRow = matrix.getRowIndex(rowPeak);
+
                 // Average area or height of the reference group
                 double referenceAverage = 0;
                 int referencePeakCount = 0;
-                for (int column = 0; column < referenceDataFiles
-                        .size(); column++) {
-
-                    if (rowPeak
-                            .getPeak(referenceDataFiles.get(column)) != null) {
-
-                        if (area) {
-
-                            referenceAverage += rowPeak
-                                    .getPeak(referenceDataFiles.get(column))
-                                    .getArea();
-                        } else {
-
-                            referenceAverage += rowPeak
-                                    .getPeak(referenceDataFiles.get(column))
-                                    .getHeight();
-                        }
+                for (int column : referenceColumns) {
+                    double referenceValue = matrix.getValue(measurementType,
+                            matrixRow, column);
+                    if (!Double.isNaN(referenceValue)) {
+                        referenceAverage += referenceValue;
                         referencePeakCount++;
                     }
                 }
@@ -412,19 +381,12 @@ public class HeatMapTask extends AbstractTask {
 
                 // Divide the area or height of each peak by the average of the
                 // area or height of the reference peaks in each row
-                for (int column = 0; column < shownDataFiles.size(); column++) {
-                    double value = Double.NaN;
-                    if (rowPeak.getPeak(shownDataFiles.get(column)) != null) {
-
-                        Feature peak = rowPeak
-                                .getPeak(shownDataFiles.get(column));
-                        if (area) {
-
-                            value = peak.getArea() / referenceAverage;
-                        } else {
+                for (int column = 0; column < shownColumns.length; column++) {
+                    double value = matrix.getValue(measurementType,
+                            matrixRow, shownColumns[column]);
+                    if (!Double.isNaN(value)) {
 
-                            value = peak.getHeight() / referenceAverage;
-                        }
+                        value /= referenceAverage;
                         if (log) {
 
                             value = Math.log(value);
@@ -470,6 +432,17 @@ public class HeatMapTask extends AbstractTask {
         return dataMatrix;
     }
 
+    /**
+     * @return matrix columns of the data files
+     */
+    private static int[] getColumnIndexes(FeatureMatrix matrix,
+            List<RawDataFile> dataFiles) {
+        int columns[] = new int[dataFiles.size()];
+        for (int i = 0; i < columns.length; i++)
+            columns[i] = matrix.getColumnIndex(dataFiles.get(i));
+        return columns;
+    }
+
     private void scale(double[][] peakList) {
         DescriptiveStatistics stdDevStats = new DescriptiveStatistics();
 
@@ -542,32 +515,35 @@ public class HeatMapTask extends AbstractTask {
         // data files that should be in the heat map
         List<RawDataFile> shownDataFiles = nonReferenceDataFiles;
 
+        final FeatureMatrix matrix = FeatureMatrix.getMatrix(peakList);
+        final PeakMeasurementType measurementType = area
+                ? PeakMeasurementType.AREA
+                : PeakMeasurementType.HEIGHT;
+        final int referenceColumns[] = getColumnIndexes(matrix,
+                referenceDataFiles);
+        final int shownColumns[] = getColumnIndexes(matrix, shownDataFiles);
+
+        // Group of each shown data file
+        final String shownGroups[] = new String[shownDataFiles.size()];
+        for (int dataColumn = 0; dataColumn < shownGroups.length; dataColumn++)
+            shownGroups[dataColumn] = String.valueOf(project.getParameterValue(
+                    selectedParameter, shownDataFiles.get(dataColumn)));
+
         for (int row = 0, rowIndex = 0; row < peakList
                 .getNumberOfRows(); row++) {
             PeakListRow rowPeak = peakList.getRow(row);
             if (!onlyIdentified || (onlyIdentified
                     && rowPeak.getPeakIdentities().length > 0)) {
-                // Average area or height of the reference group
-                meanControlStats.clear();
-                for (int column = 0; column < referenceDataFiles
-                        .size(); column++) {
-
-                    if (rowPeak
-                            .getPeak(referenceDataFiles.get(column)) != null) {
 
-                        if (area) {
-
-                            meanControlStats.addValue(rowPeak
-                                    .getPeak(referenceDataFiles.get(column))
-                                    .getArea());
-                        } else {
+                final int matrixRow = matrix.getRowIndex(rowPeak);
 
-                            meanControlStats.addValue(rowPeak
-                                    .getPeak(referenceDataFiles.get(column))
-                                    .getHeight());
-                        }
-
-                    }
+                // Average area or height of the reference group
+                meanControlStats.clear();
+                for (int column : referenceColumns) {
+                    double referenceValue = matrix.getValue(measurementType,
+                            matrixRow, column);
+                    if (!Double.isNaN(referenceValue))
+                        meanControlStats.addValue(referenceValue);
                 }
 
                 // Divide the area or height of each peak by the average of the
@@ -578,33 +554,21 @@ public class HeatMapTask extends AbstractTask {
                     meanGroupStats.clear();
                     if (!group.equals(referenceGroup)) {
 
-                        for (int dataColumn = 0; dataColumn < shownDataFiles
-                                .size(); dataColumn++) {
-
-                            Object paramValue = project.getParameterValue(
-                                    selectedParameter,
-                                    shownDataFiles.get(dataColumn));
-                            if (rowPeak.getPeak(
-                                    shownDataFiles.get(dataColumn)) != null
-                                    && String.valueOf(paramValue)
-                                            .equals(group)) {
-
-                                Feature peak = rowPeak.getPeak(
-                                        shownDataFiles.get(dataColumn));
-
-                                if (!Double.isInfinite(peak.getArea())
-                                        && !Double.isNaN(peak.getArea())) {
-
-                                    if (area) {
+                        for (int dataColumn = 0; dataColumn < shownColumns.length; dataColumn++) {
 
-                                        meanGroupStats.addValue(peak.getArea());
-                                    } else {
+                            if (!shownGroups[dataColumn].equals(group))
+                                continue;
 
-                                        meanGroupStats
-                                                .addValue(peak.getHeight());
-                                    }
-                                }
+                            // Missing features are NaN
+                            double peakArea = matrix.getValue(
+                                    PeakMeasurementType.AREA, matrixRow,
+                                    shownColumns[dataColumn]);
+                            if (!Double.isInfinite(peakArea)
+                                    && !Double.isNaN(peakArea)) {
 
+                                meanGroupStats.addValue(matrix.getValue(
+                                        measurementType, matrixRow,
+                                        shownColumns[dataColumn]));
                             }
                         }
 
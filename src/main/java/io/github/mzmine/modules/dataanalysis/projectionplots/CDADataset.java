@@ -22,7 +22,6 @@ import java.util.Vector;
 import java.util.logging.Logger;
 import org.jfree.data.xy.AbstractXYDataset;
 
-import io.github.mzmine.datamodel.Feature;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.PeakList;
 import io.github.mzmine.datamodel.PeakListRow;
@@ -31,6 +30,7 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.UserParameter;
 import io.github.mzmine.taskcontrol.TaskPriority;
 import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.FeatureMatrix;
 import io.github.mzmine.util.PeakMeasurementType;
 import jmprojection.CDA;
 import jmprojection.Preprocess;
@@ -233,26 +233,13 @@ public class CDADataset extends AbstractXYDataset
         logger.info("Computing projection plot");
 
         // Generate matrix of raw data (input to CDA)
-        boolean useArea = false;
-        if (parameters
+        final PeakMeasurementType measurementType = parameters
                 .getParameter(ProjectionPlotParameters.peakMeasurementType)
-                .getValue() == PeakMeasurementType.AREA)
-            useArea = true;
-
-        double[][] rawData = new double[selectedRawDataFiles.length][selectedRows.length];
-        for (int rowIndex = 0; rowIndex < selectedRows.length; rowIndex++) {
-            PeakListRow peakListRow = selectedRows[rowIndex];
-            for (int fileIndex = 0; fileIndex < selectedRawDataFiles.length; fileIndex++) {
-                RawDataFile rawDataFile = selectedRawDataFiles[fileIndex];
-                Feature p = peakListRow.getPeak(rawDataFile);
-                if (p != null) {
-                    if (useArea)
-                        rawData[fileIndex][rowIndex] = p.getArea();
-                    else
-                        rawData[fileIndex][rowIndex] = p.getHeight();
-                }
-            }
-        }
+                .getValue();
+
+        double[][] rawData = FeatureMatrix.getMatrix(peakList)
+                .getFileByRowMatrix(measurementType, selectedRows,
+                        selectedRawDataFiles, 0.0);
 
         int numComponents = xAxisDimension;
         if (yAxisDimension > numComponents)
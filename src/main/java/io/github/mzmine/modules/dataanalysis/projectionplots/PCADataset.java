@@ -18,11 +18,11 @@
 
 package io.github.mzmine.modules.dataanalysis.projectionplots;
 
+import java.util.Arrays;
 import java.util.Vector;
 import java.util.logging.Logger;
 import org.jfree.data.xy.AbstractXYDataset;
 
-import io.github.mzmine.datamodel.Feature;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.PeakList;
 import io.github.mzmine.datamodel.PeakListRow;
@@ -31,6 +31,7 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.UserParameter;
 import io.github.mzmine.taskcontrol.TaskPriority;
 import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.FeatureMatrix;
 import io.github.mzmine.util.PeakMeasurementType;
 import jmprojection.PCA;
 import jmprojection.Preprocess;
@@ -66,6 +67,11 @@ public class PCADataset extends AbstractXYDataset
     private String errorMessage;
 
     private ProjectionStatus projectionStatus;
+    private RandomizedPCA randomizedPCA;
+
+    // Above this number of values (samples x rows), the automatic algorithm
+    // selection uses the randomized PCA
+    private static final long RANDOMIZED_PCA_THRESHOLD = 1000000;
 
     public PCADataset(MZmineProject project, ParameterSet parameters) {
 
@@ -223,9 +229,9 @@ public class PCADataset extends AbstractXYDataset
         logger.info("Computing PCA projection plot");
 
         // Generate matrix of raw data (input to PCA)
-        final boolean useArea = (parameters
+        final PeakMeasurementType measurementType = parameters
                 .getParameter(ProjectionPlotParameters.peakMeasurementType)
-                .getValue() == PeakMeasurementType.AREA);
+                .getValue();
 
         if (selectedRows.length == 0) {
             this.status = TaskStatus.ERROR;
@@ -238,41 +244,62 @@ public class PCADataset extends AbstractXYDataset
             return;
         }
 
-        double[][] rawData = new double[selectedRawDataFiles.length][selectedRows.length];
-        for (int rowIndex = 0; rowIndex < selectedRows.length; rowIndex++) {
-            PeakListRow peakListRow = selectedRows[rowIndex];
-            for (int fileIndex = 0; fileIndex < selectedRawDataFiles.length; fileIndex++) {
-                RawDataFile rawDataFile = selectedRawDataFiles[fileIndex];
-                Feature p = peakListRow.getPeak(rawDataFile);
-                if (p != null) {
-                    if (useArea)
-                        rawData[fileIndex][rowIndex] = p.getArea();
-                    else
-                        rawData[fileIndex][rowIndex] = p.getHeight();
-                }
-            }
-        }
-
         int numComponents = xAxisPC;
         if (yAxisPC > numComponents)
             numComponents = yAxisPC;
 
-        // Scale data and do PCA
-        Preprocess.scaleToUnityVariance(rawData);
+        PCAAlgorithm algorithm = parameters
+                .getParameter(ProjectionPlotParameters.pcaAlgorithm)
+                .getValue();
+        if ((algorithm == null) || (algorithm == PCAAlgorithm.AUTOMATIC)) {
+            long numValues = (long) selectedRows.length
+                    * selectedRawDataFiles.length;
+            algorithm = numValues > RANDOMIZED_PCA_THRESHOLD
+                    ? PCAAlgorithm.RANDOMIZED
+                    : PCAAlgorithm.FULL;
+        }
+
+        double[][] result;
 
-        // Replace NaN values with 0.0
-        for (int i = 0; i < rawData.length; i++) {
-            for (int j = 0; j < rawData[i].length; j++) {
-                if (Double.isNaN(rawData[i][j]))
-                    rawData[i][j] = 0.0;
+        // Both algorithms read missing values as 0.0, scale the data and then
+        // replace the NaN values of constant rows with 0.0
+        final FeatureMatrix matrix = FeatureMatrix.getMatrix(peakList);
+
+        if (algorithm == PCAAlgorithm.RANDOMIZED) {
+
+            // Read the blocks of rows from the shared matrix, without copying
+            // the whole matrix
+            logger.info("Using randomized PCA");
+            randomizedPCA = new RandomizedPCA(
+                    (start, end) -> matrix.getFileByRowMatrix(measurementType,
+                            Arrays.copyOfRange(selectedRows, start, end),
+                            selectedRawDataFiles, 0.0),
+                    selectedRawDataFiles.length, selectedRows.length,
+                    numComponents);
+            result = randomizedPCA.computeScores();
+
+        } else {
+
+            double[][] rawData = matrix.getFileByRowMatrix(measurementType,
+                    selectedRows, selectedRawDataFiles, 0.0);
+
+            // Scale data and do PCA
+            Preprocess.scaleToUnityVariance(rawData);
+
+            // Replace NaN values with 0.0
+            for (int i = 0; i < rawData.length; i++) {
+                for (int j = 0; j < rawData[i].length; j++) {
+                    if (Double.isNaN(rawData[i][j]))
+                        rawData[i][j] = 0.0;
+                }
             }
-        }
 
-        PCA pcaProj = new PCA(rawData, numComponents);
+            PCA pcaProj = new PCA(rawData, numComponents);
 
-        projectionStatus = pcaProj.getProjectionStatus();
+            projectionStatus = pcaProj.getProjectionStatus();
 
-        double[][] result = pcaProj.getState();
+            result = pcaProj.getState();
+        }
 
         if (status == TaskStatus.CANCELED)
             return;
@@ -293,6 +320,8 @@ public class PCADataset extends AbstractXYDataset
     public void cancel() {
         if (projectionStatus != null)
             projectionStatus.cancel();
+        if (randomizedPCA != null)
+            randomizedPCA.cancel();
         status = TaskStatus.CANCELED;
     }
 
@@ -313,6 +342,8 @@ public class PCADataset extends AbstractXYDataset
 
     @Override
     public double getFinishedPercentage() {
+        if (randomizedPCA != null)
+            return randomizedPCA.getFinishedPercentage();
         if (projectionStatus == null)
             return 0;
         return projectionStatus.getFinishedPercentage();
@@ -50,9 +50,15 @@ public class ProjectionPlotParameters extends SimpleParameterSet {
             "Y-axis component", "Component on the Y-axis",
             componentPossibleValues, componentPossibleValues[1]);
 
+    public static final ComboParameter<PCAAlgorithm> pcaAlgorithm = new ComboParameter<PCAAlgorithm>(
+            "PCA algorithm",
+            "Full decomposition, or randomized computation of the top components only (for large feature lists)",
+            PCAAlgorithm.values(), PCAAlgorithm.AUTOMATIC);
+
     public ProjectionPlotParameters() {
         super(new Parameter[] { peakLists, dataFiles, coloringType,
-                peakMeasurementType, xAxisComponent, yAxisComponent });
+                peakMeasurementType, xAxisComponent, yAxisComponent,
+                pcaAlgorithm });
     }
 
 }
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.dataanalysis.projectionplots;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.EigenDecomposition;
+
+/**
+ * PCA computing only the top components, using a randomized truncated SVD
+ * (Halko, Martinsson and Tropp, 2011). The samples x variables data matrix is
+ * never held in memory: the variables are read in blocks, scaled to unity
+ * variance like {@link jmprojection.Preprocess#scaleToUnityVariance}, and the
+ * blocks are processed in parallel. The matrix is read 2 + POWER_ITERATIONS
+ * times.
+ *
+ * The scores have the same layout as {@link jmprojection.PCA#getState()}: one
+ * array per component, with one value per sample.
+ */
+class RandomizedPCA {
+
+    /**
+     * Reads the values of the given variables (feature list rows) for all
+     * samples
+     */
+    interface BlockReader {
+        /**
+         * @return matrix indexed [sample][variable - start]
+         */
+        double[][] readBlock(int start, int end);
+    }
+
+    // Number of variables read at once
+    private static final int BLOCK_SIZE = 1024;
+
+    // Extra random vectors, improving the accuracy of the top components
+    private static final int OVERSAMPLING = 10;
+
+    private static final int POWER_ITERATIONS = 2;
+
+    // Fixed, so that repeated plots of the same data look the same
+    private static final long SEED = 0x5ca1ab1eL;
+
+    private final BlockReader reader;
+    private final int numSamples, numVariables, numComponents;
+    private final int sketchSize, numBlocks;
+
+    private final AtomicInteger processedBlocks = new AtomicInteger();
+    private volatile boolean canceled = false;
+
+    RandomizedPCA(BlockReader reader, int numSamples, int numVariables,
+            int numComponents) {
+        this.reader = reader;
+        this.numSamples = numSamples;
+        this.numVariables = numVariables;
+        this.numComponents = numComponents;
+        this.sketchSize = Math.max(1, Math.min(numComponents + OVERSAMPLING,
+                Math.min(numSamples, numVariables)));
+        this.numBlocks = (numVariables + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    /**
+     * @return scores indexed [component][sample], or null if canceled
+     */
+    double[][] computeScores() {
+
+        // Range of the data matrix X, Y = X * Omega with random Omega
+        double[][] y = sumOverBlocks(numSamples, sketchSize,
+                (block, x, partial) -> {
+                    double[][] omega = gaussianBlock(block, x[0].length);
+                    multiplyAdd(x, omega, partial);
+                });
+
+        // Power iterations Y = X * X^T * Q sharpen the spectrum
+        for (int i = 0; i < POWER_ITERATIONS; i++) {
+            final double[][] q = orthonormalize(y);
+            y = sumOverBlocks(numSamples, sketchSize, (block, x, partial) -> {
+                multiplyAdd(x, transposeMultiply(x, q), partial);
+            });
+        }
+        final double[][] q = orthonormalize(y);
+
+        // C = Q^T * X * X^T * Q = B * B^T, the eigenvectors of C are the left
+        // singular vectors of B = Q^T * X
+        final double[][] c = sumOverBlocks(sketchSize, sketchSize,
+                (block, x, partial) -> {
+                    double[][] bt = transposeMultiply(x, q);
+                    for (int j = 0; j < sketchSize; j++)
+                        for (int k = 0; k < sketchSize; k++) {
+                            double sum = 0;
+                            for (int t = 0; t < bt.length; t++)
+                                sum += bt[t][j] * bt[t][k];
+                            partial[j][k] += sum;
+                        }
+                });
+
+        if (canceled)
+            return null;
+
+        EigenDecomposition eigen = new EigenDecomposition(
+                new Array2DRowRealMatrix(c, false));
+        final double[] eigenvalues = eigen.getRealEigenvalues();
+        Integer[] order = new Integer[sketchSize];
+        for (int j = 0; j < sketchSize; j++)
+            order[j] = j;
+        Arrays.sort(order, (a, b) -> Double.compare(eigenvalues[b],
+                eigenvalues[a]));
+
+        // Scores U * S of X = U * S * V^T, with U = Q * W and S = sqrt(Lambda)
+        double[][] scores = new double[numComponents][numSamples];
+        for (int comp = 0; comp < Math.min(numComponents, sketchSize); comp++) {
+            double[] w = eigen.getEigenvector(order[comp]).toArray();
+            double s = Math.sqrt(Math.max(0, eigenvalues[order[comp]]));
+            for (int i = 0; i < numSamples; i++) {
+                double sum = 0;
+                for (int j = 0; j < sketchSize; j++)
+                    sum += q[i][j] * w[j];
+                scores[comp][i] = sum * s;
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Percentage of the blocks read so far
+     */
+    double getFinishedPercentage() {
+        int totalBlocks = numBlocks * (2 + POWER_ITERATIONS);
+        if (totalBlocks == 0)
+            return 0;
+        return (double) processedBlocks.get() / totalBlocks;
+    }
+
+    void cancel() {
+        canceled = true;
+    }
+
+    private interface BlockOperation {
+        void apply(int block, double[][] x, double[][] partial);
+    }
+
+    /**
+     * Runs the operation on all blocks in parallel, summing up the partial
+     * results
+     */
+    private double[][] sumOverBlocks(int resultRows, int resultColumns,
+            BlockOperation operation) {
+        return IntStream.range(0, numBlocks).parallel().mapToObj(block -> {
+            double[][] partial = new double[resultRows][resultColumns];
+            if (canceled)
+                return partial;
+            int start = block * BLOCK_SIZE;
+            int end = Math.min(numVariables, start + BLOCK_SIZE);
+            double[][] x = reader.readBlock(start, end);
+            scaleToUnityVariance(x);
+            operation.apply(block, x, partial);
+            processedBlocks.incrementAndGet();
+            return partial;
+        }).reduce((a, b) -> {
+            for (int i = 0; i < a.length; i++)
+                for (int j = 0; j < a[i].length; j++)
+                    a[i][j] += b[i][j];
+            return a;
+        }).orElseGet(() -> new double[resultRows][resultColumns]);
+    }
+
+    /**
+     * Centers each variable (column) and divides it by its standard
+     * deviation. Constant variables and NaN values become 0.
+     */
+    static void scaleToUnityVariance(double[][] x) {
+        final int n = x.length;
+        if (n == 0)
+            return;
+        for (int v = 0; v < x[0].length; v++) {
+            double sum = 0;
+            for (int i = 0; i < n; i++)
+                sum += x[i][v];
+            double mean = sum / n;
+            double sumSq = 0;
+            for (int i = 0; i < n; i++) {
+                double d = x[i][v] - mean;
+                sumSq += d * d;
+            }
+            double std = n > 1 ? Math.sqrt(sumSq / (n - 1)) : 0;
+            for (int i = 0; i < n; i++) {
+                double value = (x[i][v] - mean) / std;
+                x[i][v] = Double.isNaN(value) || Double.isInfinite(value) ? 0
+                        : value;
+            }
+        }
+    }
+
+    /**
+     * Random Gaussian matrix of the block, generated from the block number so
+     * that every pass and every thread sees the same matrix
+     */
+    private double[][] gaussianBlock(int block, int numRows) {
+        Random random = new Random(SEED + block);
+        double[][] omega = new double[numRows][sketchSize];
+        for (int t = 0; t < numRows; t++)
+            for (int j = 0; j < sketchSize; j++)
+                omega[t][j] = random.nextGaussian();
+        return omega;
+    }
+
+    /**
+     * result += a * b
+     */
+    private static void multiplyAdd(double[][] a, double[][] b,
+            double[][] result) {
+        for (int i = 0; i < a.length; i++) {
+            double[] resultRow = result[i];
+            for (int t = 0; t < b.length; t++) {
+                double value = a[i][t];
+                if (value == 0)
+                    continue;
+                double[] bRow = b[t];
+                for (int j = 0; j < bRow.length; j++)
+                    resultRow[j] += value * bRow[j];
+            }
+        }
+    }
+
+    /**
+     * @return a^T * b
+     */
+    private static double[][] transposeMultiply(double[][] a, double[][] b) {
+        int columns = b[0].length;
+        double[][] result = new double[a[0].length][columns];
+        for (int i = 0; i < a.length; i++) {
+            double[] bRow = b[i];
+            for (int t = 0; t < a[i].length; t++) {
+                double value = a[i][t];
+                if (value == 0)
+                    continue;
+                double[] resultRow = result[t];
+                for (int j = 0; j < columns; j++)
+                    resultRow[j] += value * bRow[j];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Orthonormal basis of the columns of y (modified Gram-Schmidt, applied
+     * twice for numerical stability). Linearly dependent columns become 0.
+     */
+    private static double[][] orthonormalize(double[][] y) {
+        final int n = y.length, l = y[0].length;
+        double[][] q = new double[n][l];
+        for (int i = 0; i < n; i++)
+            q[i] = y[i].clone();
+
+        for (int j = 0; j < l; j++) {
+            double initialNorm = columnNorm(q, j);
+            for (int pass = 0; pass < 2; pass++) {
+                for (int k = 0; k < j; k++) {
+                    double dot = 0;
+                    for (int i = 0; i < n; i++)
+                        dot += q[i][k] * q[i][j];
+                    for (int i = 0; i < n; i++)
+                        q[i][j] -= dot * q[i][k];
+                }
+            }
+            double norm = columnNorm(q, j);
+            if (norm <= initialNorm * 1e-10 || norm == 0) {
+                for (int i = 0; i < n; i++)
+                    q[i][j] = 0;
+            } else {
+                for (int i = 0; i < n; i++)
+                    q[i][j] /= norm;
+            }
+        }
+        return q;
+    }
+
+    private static double columnNorm(double[][] m, int column) {
+        double sum = 0;
+        for (double[] row : m)
+            sum += row[column] * row[column];
+        return Math.sqrt(sum);
+    }
+
+}
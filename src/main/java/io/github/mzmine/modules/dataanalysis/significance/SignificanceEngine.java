@@ -0,0 +1,341 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.dataanalysis.significance;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.apache.commons.math3.special.Beta;
+
+import io.github.mzmine.datamodel.PeakListRow;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.util.FeatureMatrix;
+import io.github.mzmine.util.PeakMeasurementType;
+
+/**
+ * Computes test statistics for all rows of a feature intensity matrix at once.
+ * The intensities are packed into one column-major array (one column per
+ * sample), missing values are NaN and ignored. Rows are processed in parallel
+ * blocks. Undefined results (too few values, zero variance) are NaN.
+ *
+ * Each sample (column) belongs to at most one group; the tests compare these
+ * groups.
+ */
+public class SignificanceEngine {
+
+    // Number of rows processed by one parallel work unit
+    private static final int BLOCK_SIZE = 1024;
+
+    private final double[] intensities;
+    private final int numRows, numColumns;
+    private final int[] columnGroups;
+    private final int numGroups;
+
+    /**
+     * @param intensities
+     *            column-major intensity matrix, the value of row r in column c
+     *            is intensities[c * numRows + r], NaN if missing
+     * @param numRows
+     *            number of rows (features)
+     * @param columnGroups
+     *            group index of each column (sample), -1 if the sample is not
+     *            in any group
+     * @param numGroups
+     *            number of groups
+     */
+    public SignificanceEngine(double[] intensities, int numRows,
+            int[] columnGroups, int numGroups) {
+        if (intensities.length != numRows * columnGroups.length)
+            throw new IllegalArgumentException(
+                    "Matrix size does not match the number of rows and columns");
+        this.intensities = intensities;
+        this.numRows = numRows;
+        this.numColumns = columnGroups.length;
+        this.columnGroups = columnGroups;
+        this.numGroups = numGroups;
+    }
+
+    /**
+     * Copies the feature heights of the rows from the feature matrix into an
+     * engine. The columns are the files of the groups.
+     *
+     * @param matrix
+     *            feature matrix of the feature list of the rows
+     * @param rows
+     *            feature list rows
+     * @param groups
+     *            groups of raw data files
+     */
+    public static SignificanceEngine fromMatrix(FeatureMatrix matrix,
+            PeakListRow[] rows, List<Set<RawDataFile>> groups) {
+
+        int numColumns = groups.stream().mapToInt(Set::size).sum();
+        RawDataFile[] columnFiles = new RawDataFile[numColumns];
+        int[] columnGroups = new int[numColumns];
+        int column = 0;
+        for (int g = 0; g < groups.size(); g++) {
+            for (RawDataFile file : groups.get(g)) {
+                columnFiles[column] = file;
+                columnGroups[column] = g;
+                column++;
+            }
+        }
+
+        final double[] intensities = matrix.getColumnMajorValues(
+                PeakMeasurementType.HEIGHT, rows, columnFiles, Double.NaN);
+
+        return new SignificanceEngine(intensities, rows.length, columnGroups,
+                groups.size());
+    }
+
+    public int getNumberOfRows() {
+        return numRows;
+    }
+
+    public int getNumberOfGroups() {
+        return numGroups;
+    }
+
+    /**
+     * One-way ANOVA over all groups.
+     *
+     * @return p-value of each row
+     */
+    public double[] anovaPValues() {
+
+        final double[] pValues = new double[numRows];
+        forEachBlock((start, end) -> {
+            final double[] sums = new double[numGroups];
+            final int[] counts = new int[numGroups];
+            final double[] means = new double[numGroups];
+            for (int r = start; r < end; r++) {
+
+                Arrays.fill(sums, 0.0);
+                Arrays.fill(counts, 0);
+                double totalSum = 0.0;
+                int totalCount = 0;
+                for (int c = 0; c < numColumns; c++) {
+                    final double value = intensities[c * numRows + r];
+                    final int g = columnGroups[c];
+                    if (g < 0 || Double.isNaN(value))
+                        continue;
+                    sums[g] += value;
+                    counts[g]++;
+                    totalSum += value;
+                    totalCount++;
+                }
+
+                // Groups without values do not take part in the test
+                int presentGroups = 0;
+                for (int g = 0; g < numGroups; g++) {
+                    if (counts[g] > 0) {
+                        means[g] = sums[g] / counts[g];
+                        presentGroups++;
+                    }
+                }
+
+                final int dfTreatment = presentGroups - 1;
+                final int dfError = totalCount - presentGroups;
+                if (dfTreatment <= 0 || dfError <= 0) {
+                    pValues[r] = Double.NaN;
+                    continue;
+                }
+
+                final double overallMean = totalSum / totalCount;
+                double ssTreatment = 0.0;
+                for (int g = 0; g < numGroups; g++) {
+                    if (counts[g] > 0) {
+                        final double d = means[g] - overallMean;
+                        ssTreatment += counts[g] * d * d;
+                    }
+                }
+                double ssError = 0.0;
+                for (int c = 0; c < numColumns; c++) {
+                    final double value = intensities[c * numRows + r];
+                    final int g = columnGroups[c];
+                    if (g < 0 || Double.isNaN(value))
+                        continue;
+                    final double d = value - means[g];
+                    ssError += d * d;
+                }
+
+                final double msError = ssError / dfError;
+                if (msError == 0.0) {
+                    pValues[r] = Double.NaN;
+                    continue;
+                }
+                final double f = (ssTreatment / dfTreatment) / msError;
+                pValues[r] = fDistributionUpperTail(f, dfTreatment, dfError);
+            }
+        });
+        return pValues;
+    }
+
+    /**
+     * Welch's two-sided t-test between two groups.
+     *
+     * @return p-value of each row
+     */
+    public double[] tTestPValues(int groupA, int groupB) {
+
+        final double[] pValues = new double[numRows];
+        forEachBlock((start, end) -> {
+            for (int r = start; r < end; r++) {
+
+                double sumA = 0.0, sumB = 0.0, sumSqA = 0.0, sumSqB = 0.0;
+                int nA = 0, nB = 0;
+                for (int c = 0; c < numColumns; c++) {
+                    final double value = intensities[c * numRows + r];
+                    if (Double.isNaN(value))
+                        continue;
+                    final int g = columnGroups[c];
+                    if (g == groupA) {
+                        sumA += value;
+                        sumSqA += value * value;
+                        nA++;
+                    } else if (g == groupB) {
+                        sumB += value;
+                        sumSqB += value * value;
+                        nB++;
+                    }
+                }
+
+                if (nA < 2 || nB < 2) {
+                    pValues[r] = Double.NaN;
+                    continue;
+                }
+
+                final double meanA = sumA / nA, meanB = sumB / nB;
+                final double varA = Math.max(0.0,
+                        (sumSqA - nA * meanA * meanA) / (nA - 1));
+                final double varB = Math.max(0.0,
+                        (sumSqB - nB * meanB * meanB) / (nB - 1));
+                final double seA = varA / nA, seB = varB / nB;
+                final double se = seA + seB;
+                if (se == 0.0) {
+                    pValues[r] = Double.NaN;
+                    continue;
+                }
+
+                final double t = (meanA - meanB) / Math.sqrt(se);
+                // Welch-Satterthwaite degrees of freedom
+                final double df = se * se / (seA * seA / (nA - 1)
+                        + seB * seB / (nB - 1));
+                pValues[r] = tDistributionTwoTailed(t, df);
+            }
+        });
+        return pValues;
+    }
+
+    /**
+     * @return log2 of the ratio of the mean intensities of group A and group B
+     *         for each row
+     */
+    public double[] log2FoldChanges(int groupA, int groupB) {
+
+        final double[] foldChanges = new double[numRows];
+        forEachBlock((start, end) -> {
+            for (int r = start; r < end; r++) {
+                double sumA = 0.0, sumB = 0.0;
+                int nA = 0, nB = 0;
+                for (int c = 0; c < numColumns; c++) {
+                    final double value = intensities[c * numRows + r];
+                    if (Double.isNaN(value))
+                        continue;
+                    final int g = columnGroups[c];
+                    if (g == groupA) {
+                        sumA += value;
+                        nA++;
+                    } else if (g == groupB) {
+                        sumB += value;
+                        nB++;
+                    }
+                }
+                if (nA == 0 || nB == 0 || sumA <= 0.0 || sumB <= 0.0)
+                    foldChanges[r] = Double.NaN;
+                else
+                    foldChanges[r] = Math.log((sumA / nA) / (sumB / nB))
+                            / Math.log(2.0);
+            }
+        });
+        return foldChanges;
+    }
+
+    /**
+     * Benjamini-Hochberg adjustment of p-values for the false discovery rate.
+     * NaN p-values are ignored and stay NaN.
+     *
+     * @return adjusted p-values (q-values), in the order of the input
+     */
+    public static double[] benjaminiHochberg(double[] pValues) {
+
+        final double[] adjusted = new double[pValues.length];
+        Arrays.fill(adjusted, Double.NaN);
+
+        // Indices of the valid p-values, sorted by p-value
+        final int[] order = IntStream.range(0, pValues.length)
+                .filter(i -> !Double.isNaN(pValues[i])).boxed()
+                .sorted((a, b) -> Double.compare(pValues[a], pValues[b]))
+                .mapToInt(Integer::intValue).toArray();
+
+        final int m = order.length;
+        double minimum = 1.0;
+        for (int k = m - 1; k >= 0; k--) {
+            final int i = order[k];
+            minimum = Math.min(minimum, pValues[i] * m / (k + 1));
+            adjusted[i] = minimum;
+        }
+        return adjusted;
+    }
+
+    /**
+     * P(F > f) for the F distribution with d1 and d2 degrees of freedom
+     */
+    private static double fDistributionUpperTail(double f, double d1,
+            double d2) {
+        if (f <= 0.0)
+            return 1.0;
+        if (Double.isInfinite(f))
+            return 0.0;
+        return Beta.regularizedBeta(d2 / (d2 + d1 * f), d2 / 2.0, d1 / 2.0);
+    }
+
+    /**
+     * P(|T| > |t|) for Student's t distribution with df degrees of freedom
+     */
+    private static double tDistributionTwoTailed(double t, double df) {
+        if (Double.isInfinite(t))
+            return 0.0;
+        return Beta.regularizedBeta(df / (df + t * t), df / 2.0, 0.5);
+    }
+
+    private interface BlockProcessor {
+        void process(int start, int end);
+    }
+
+    private void forEachBlock(BlockProcessor processor) {
+        final int numBlocks = (numRows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        IntStream.range(0, numBlocks).parallel().forEach(block -> processor
+                .process(block * BLOCK_SIZE,
+                        Math.min(numRows, (block + 1) * BLOCK_SIZE)));
+    }
+
+}
@@ -24,36 +24,40 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
-import java.util.stream.IntStream;
-
-import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
-import org.apache.commons.math3.distribution.FDistribution;
-import org.apache.commons.math3.exception.MathIllegalArgumentException;
-
 import io.github.mzmine.datamodel.*;
 import io.github.mzmine.datamodel.impl.SimplePeakInformation;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.UserParameter;
+import io.github.mzmine.parameters.parametertypes.ComboParameter;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.FeatureMatrix;
 
 public class SignificanceTask extends AbstractTask {
 
     private static final String EMPTY_STRING = "";
 
     private static final String P_VALUE_KEY = "ANOVA_P_VALUE";
+    private static final String FDR_KEY = "ANOVA_FDR";
+    private static final String T_TEST_P_VALUE_KEY = "T_TEST_P_VALUE";
+    private static final String T_TEST_FDR_KEY = "T_TEST_FDR";
+    private static final String LOG2_FOLD_CHANGE_KEY = "LOG2_FOLD_CHANGE";
+    private static final String LOG2_FOLD_CHANGE_GROUPS_KEY = "LOG2_FOLD_CHANGE_GROUPS";
 
     private Logger logger = Logger.getLogger(this.getClass().getName());
     private double finishedPercentage = 0.0;
 
+    private final PeakList peakList;
     private final PeakListRow[] peakListRows;
     private final UserParameter userParameter;
 
-    public SignificanceTask(PeakListRow[] peakListRows,
-            ParameterSet parameters) {
-        this.peakListRows = peakListRows;
+    // Parameter value of each group, in the order of the groups
+    private List<Object> groupValues;
+
+    public SignificanceTask(PeakList peakList, ParameterSet parameters) {
+        this.peakList = peakList;
+        this.peakListRows = peakList.getRows();
         this.userParameter = parameters
                 .getParameter(SignificanceParameters.selectionData).getValue();
     }
@@ -108,35 +112,56 @@ public class SignificanceTask extends AbstractTask {
         List<Set<RawDataFile>> groups = getGroups(userParameter);
 
         finishedPercentage = 0.0;
-        final double finishedStep = 1.0 / peakListRows.length;
-
-        for (PeakListRow row : peakListRows) {
-
-            if (isCanceled()) {
-                break;
-            }
-
-            finishedPercentage += finishedStep;
 
-            double[][] intensityGroups = new double[groups.size()][];
-            for (int i = 0; i < groups.size(); ++i) {
-                Set<RawDataFile> groupFiles = groups.get(i);
-                intensityGroups[i] = Arrays.stream(row.getPeaks())
-                        .filter(peak -> groupFiles.contains(peak.getDataFile()))
-                        .mapToDouble(Feature::getHeight).toArray();
-            }
+        // Pack the feature heights and test all rows at once
+        SignificanceEngine engine = SignificanceEngine.fromMatrix(
+                FeatureMatrix.getMatrix(peakList), peakListRows, groups);
+        finishedPercentage = 0.2;
+
+        double[] anovaPValues = engine.anovaPValues();
+        double[] anovaFDR = SignificanceEngine.benjaminiHochberg(anovaPValues);
+        finishedPercentage = 0.6;
+
+        // With two groups, also report the t-test and the fold change
+        // (the first group is the numerator of the fold change)
+        double[] tTestPValues = null, tTestFDR = null, foldChanges = null;
+        String foldChangeGroups = null;
+        if (groups.size() == 2) {
+            tTestPValues = engine.tTestPValues(0, 1);
+            tTestFDR = SignificanceEngine.benjaminiHochberg(tTestPValues);
+            foldChanges = engine.log2FoldChanges(0, 1);
+            foldChangeGroups = groupValues.get(0) + " / " + groupValues.get(1);
+        }
+        finishedPercentage = 0.8;
 
-            Double pValue = oneWayAnova(intensityGroups);
+        if (isCanceled()) {
+            return;
+        }
 
-            // Save results
+        // Save results
+        for (int i = 0; i < peakListRows.length; i++) {
+            PeakListRow row = peakListRows[i];
             PeakInformation peakInformation = row.getPeakInformation();
             if (peakInformation == null) {
                 peakInformation = new SimplePeakInformation();
             }
-            peakInformation.getAllProperties().put(P_VALUE_KEY,
-                    pValue == null ? EMPTY_STRING : pValue.toString());
+            Map<String, String> properties = peakInformation
+                    .getAllProperties();
+            properties.put(P_VALUE_KEY, format(anovaPValues[i]));
+            properties.put(FDR_KEY, format(anovaFDR[i]));
+            if (tTestPValues != null) {
+                properties.put(T_TEST_P_VALUE_KEY, format(tTestPValues[i]));
+                properties.put(T_TEST_FDR_KEY, format(tTestFDR[i]));
+                properties.put(LOG2_FOLD_CHANGE_KEY, format(foldChanges[i]));
+                properties.put(LOG2_FOLD_CHANGE_GROUPS_KEY, foldChangeGroups);
+            }
             row.setPeakInformation(peakInformation);
         }
+        finishedPercentage = 1.0;
+    }
+
+    private static String format(double value) {
+        return Double.isNaN(value) ? EMPTY_STRING : Double.toString(value);
     }
 
     private List<Set<RawDataFile>> getGroups(UserParameter factor) {
@@ -155,12 +180,14 @@ public class SignificanceTask extends AbstractTask {
             }
         }
 
-        // Find unique parameter values
-        Object[] paramValues = paramMap.values().stream().distinct().toArray();
+        // Find unique parameter values, in a fixed order so that the first
+        // and the second group do not depend on the hash order of the files
+        groupValues = paramMap.values().stream().distinct()
+                .sorted(getValueOrder(factor)).collect(Collectors.toList());
 
         // Form groups of files for each parameter value
-        List<Set<RawDataFile>> groups = new ArrayList<>(paramValues.length);
-        for (Object paramValue : paramValues) {
+        List<Set<RawDataFile>> groups = new ArrayList<>(groupValues.size());
+        for (Object paramValue : groupValues) {
             groups.add(paramMap.entrySet().stream()
                     .filter(e -> paramValue.equals(e.getValue()))
                     .map(Entry::getKey).collect(Collectors.toSet()));
@@ -169,57 +196,21 @@ public class SignificanceTask extends AbstractTask {
         return groups;
     }
 
-    @Nullable
-    private Double oneWayAnova(@Nonnull double[][] intensityGroups) {
-
-        int numGroups = intensityGroups.length;
-        long numIntensities = Arrays.stream(intensityGroups)
-                .flatMapToDouble(Arrays::stream).count();
-
-        double[] groupMeans = Arrays.stream(intensityGroups).mapToDouble(
-                intensities -> Arrays.stream(intensities).average().orElse(0.0))
-                .toArray();
-
-        double overallMean = Arrays.stream(intensityGroups)
-                .flatMapToDouble(Arrays::stream).average().orElse(0.0);
-
-        double sumOfSquaresOfError = IntStream.range(0, intensityGroups.length)
-                .mapToDouble(i -> Arrays.stream(intensityGroups[i])
-                        .map(x -> x - groupMeans[i]).map(x -> x * x).sum())
-                .sum();
-
-        double sumOfSquaresOfTreatment = (numGroups - 1)
-                * Arrays.stream(groupMeans).map(x -> x - overallMean)
-                        .map(x -> x * x).sum();
-
-        long degreesOfFreedomOfTreatment = numGroups - 1;
-        long degreesOfFreedomOfError = numIntensities - numGroups;
-
-        if (degreesOfFreedomOfTreatment <= 0 || degreesOfFreedomOfError <= 0) {
-            return null;
+    /**
+     * @return the order of the choices of a combo parameter, otherwise the
+     *         natural order of the values
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Comparator<Object> getValueOrder(UserParameter factor) {
+        if (factor instanceof ComboParameter) {
+            List<Object> choices = Arrays
+                    .asList(((ComboParameter) factor).getChoices());
+            return Comparator.comparingInt(choices::indexOf);
         }
-
-        double meanSquareOfTreatment = sumOfSquaresOfTreatment
-                / degreesOfFreedomOfTreatment;
-        double meanSquareOfError = sumOfSquaresOfError
-                / degreesOfFreedomOfError;
-
-        if (meanSquareOfError == 0.0) {
-            return null;
-        }
-
-        double anovaStatistics = meanSquareOfTreatment / meanSquareOfError;
-
-        Double pValue = null;
-        try {
-            FDistribution distribution = new FDistribution(
-                    degreesOfFreedomOfTreatment, degreesOfFreedomOfError);
-            pValue = 1.0 - distribution.cumulativeProbability(anovaStatistics);
-        } catch (MathIllegalArgumentException ex) {
-            logger.warning("Error during F-distribution calculation: "
-                    + ex.getMessage());
-        }
-
-        return pValue;
+        return (a, b) -> {
+            if ((a instanceof Comparable) && (a.getClass() == b.getClass()))
+                return ((Comparable) a).compareTo(b);
+            return a.toString().compareTo(b.toString());
+        };
     }
 }
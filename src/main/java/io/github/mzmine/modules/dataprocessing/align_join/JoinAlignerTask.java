@@ -367,6 +367,7 @@ public class JoinAlignerTask extends AbstractTask {
 
         logger.info("Finished join aligner");
 
+        getMetrics().addProcessedItems(processedRows);
         setStatus(TaskStatus.FINISHED);
 
     }
@@ -17,17 +17,10 @@
  */
 package io.github.mzmine.modules.dataprocessing.align_ransac;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
-import org.apache.commons.math.analysis.polynomials.PolynomialFunction;
-import org.apache.commons.math.optimization.fitting.PolynomialFitter;
-import org.apache.commons.math.optimization.general.GaussNewtonOptimizer;
-
-import com.google.common.collect.Range;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
 
 import io.github.mzmine.parameters.ParameterSet;
 
@@ -45,10 +38,21 @@ public class RANSAC {
     private int n;
     private double d = 1;
     private int k = 0;
-    private int AlsoNumber;
     private double numRatePoints, t;
     private boolean Linear;
 
+    // Iterations evaluated in parallel between two checks of the adaptive
+    // number of iterations
+    private static final int BATCH_SIZE = 256;
+
+    // Probability of drawing at least one sample of inliers, used for the
+    // adaptive number of iterations
+    private static final double CONFIDENCE = 0.99;
+
+    // Each iteration draws its points from its own random stream, so the
+    // result does not depend on the number of threads
+    private static final long SEED = 0x2545F4914F6CDD1DL;
+
     public RANSAC(ParameterSet parameters) {
 
         this.numRatePoints = parameters
@@ -115,189 +119,296 @@ public class RANSAC {
     }
 
     /**
-     * RANSAC algorithm
+     * RANSAC algorithm. The iterations run in parallel batches; after each
+     * batch the number of iterations is reduced to the number needed to draw
+     * a sample of inliers with 99% probability, given the inlier ratio of the
+     * best model so far. The points which fit the best model are marked as
+     * aligned.
      * 
      * @param data
      *            vector with the points which represent all possible
      *            alignments.
      */
     public void ransac(List<AlignStructMol> data) {
-        double besterr = 9.9E99;
-
-        for (int iterations = 0; iterations < k; iterations++) {
-            AlsoNumber = n;
-            // Get the initial points
-            boolean initN = getInitN(data);
-            if (!initN) {
-                continue;
-            }
 
-            // Calculate the model
-            fittPolinomialFunction(data, Linear);
-
-            // If the model has the minimun number of points
-            if (AlsoNumber >= d) {
-                // Get the error of the model based on the number of points
-                double error = 9.9E99;
-                try {
-                    error = newError(data);
-                } catch (Exception ex) {
-                    Logger.getLogger(RANSAC.class.getName()).log(Level.SEVERE,
-                            null, ex);
-                }
+        final int size = data.size();
+        if (size <= n) {
+            return;
+        }
 
-                // If the error is less than the error of the last model
-                if (error < besterr) {
-                    besterr = error;
-                    for (int i = 0; i < data.size(); i++) {
-                        AlignStructMol alignStruct = data.get(i);
-                        if (alignStruct.ransacAlsoInLiers
-                                || alignStruct.ransacMaybeInLiers) {
-                            alignStruct.Aligned = true;
-                        } else {
-                            alignStruct.Aligned = false;
-                        }
-
-                        alignStruct.ransacAlsoInLiers = false;
-                        alignStruct.ransacMaybeInLiers = false;
-
-                    }
-                }
-            }
-            // remove the model
-            for (int i = 0; i < data.size(); i++) {
-                AlignStructMol alignStruct = data.get(i);
-                alignStruct.ransacAlsoInLiers = false;
-                alignStruct.ransacMaybeInLiers = false;
+        Collections.sort(data, new AlignStructMol());
+        final double rt[] = new double[size];
+        final double rt2[] = new double[size];
+        for (int i = 0; i < size; i++) {
+            rt[i] = data.get(i).RT;
+            rt2[i] = data.get(i).RT2;
+        }
+
+        // The initial points are taken half from the first and half from the
+        // second half of the retention time range
+        final double middle = (rt[size - 1] - rt[0]) / 2 + rt[0];
+        int lowerEnd = 0;
+        while (lowerEnd < size && rt[lowerEnd] <= middle) {
+            lowerEnd++;
+        }
+        int upperStart = lowerEnd;
+        while (upperStart > 0 && rt[upperStart - 1] >= middle) {
+            upperStart--;
+        }
+        final int lowerHalfEnd = lowerEnd, upperHalfStart = upperStart;
+
+        Model best = null;
+        int limit = k;
+        for (int start = 0; start < limit; start += BATCH_SIZE) {
+            final int end = Math.min(limit, start + BATCH_SIZE);
+            Model batchBest = IntStream.range(start, end).parallel()
+                    .mapToObj(iteration -> evaluate(iteration, rt, rt2,
+                            lowerHalfEnd, upperHalfStart))
+                    .filter(model -> model != null)
+                    .reduce(RANSAC::better).orElse(null);
+            best = better(best, batchBest);
+
+            if (best != null) {
+                limit = Math.min(k, Math.max(end,
+                        getAdaptiveK((double) best.inliers / size)));
             }
+        }
 
+        if (best == null) {
+            return;
+        }
+
+        // Mark the points which fit the best model
+        boolean isSample[] = new boolean[size];
+        for (int index : best.sample) {
+            isSample[index] = true;
+        }
+        for (int i = 0; i < size; i++) {
+            data.get(i).Aligned = isSample[i]
+                    || Math.abs(rt2[i] - best.value(rt[i])) < t;
         }
     }
 
     /**
-     * Take the initial points ramdoly. The points are divided by the initial
-     * number of points. If the fractions contain enough number of points took
-     * one point from each part.
-     * 
-     * @param data
-     *            vector with the points which represent all possible
-     *            alignments.
-     * @return false if there is any problem.
+     * Model fitted to the points drawn in one iteration
      */
-    private boolean getInitN(List<AlignStructMol> data) {
-        if (data.size() > n) {
-            Collections.sort(data, new AlignStructMol());
-            double min = data.get(0).RT;
-            double max = data.get(data.size() - 1).RT;
-
-            Range<Double> rtRange = Range.closed(min, ((max - min) / 2) + min);
-
-            int cont = 0, bucle = 0;
-            while (cont < n / 2 && bucle < 1000) {
-                int index = (int) (data.size() * Math.random());
-                if (!data.get(index).ransacMaybeInLiers
-                        && rtRange.contains(data.get(index).RT)) {
-                    data.get(index).ransacMaybeInLiers = true;
-                    cont++;
+    private static class Model {
 
-                }
+        final int iteration;
+        final int sample[];
+        final double coefficients[];
 
-                bucle++;
-            }
-            if (bucle >= 1000) {
-                getN(data, (n / 2) - cont);
-            }
+        // Number of points within the threshold t
+        int inliers;
 
-            bucle = 0;
-            rtRange = Range.closed(((max - min) / 2) + min, max);
+        // Number of points within the threshold or in the sample
+        int fittingPoints;
 
-            while (cont < n && bucle < 1000) {
+        Model(int iteration, int sample[], double coefficients[]) {
+            this.iteration = iteration;
+            this.sample = sample;
+            this.coefficients = coefficients;
+        }
 
-                int index = (int) (data.size() * Math.random());
-                if (!data.get(index).ransacMaybeInLiers
-                        && rtRange.contains(data.get(index).RT)) {
-                    data.get(index).ransacMaybeInLiers = true;
-                    cont++;
-                }
-                bucle++;
-            }
-            if (bucle >= 1000) {
-                getN(data, n - cont);
+        double value(double x) {
+            double y = 0;
+            for (int i = coefficients.length - 1; i >= 0; i--) {
+                y = y * x + coefficients[i];
             }
-            return true;
-        } else {
-            return false;
+            return y;
         }
     }
 
-    private void getN(List<AlignStructMol> data, int newN) {
-        if (newN < 1) {
-            return;
+    /**
+     * @return the model with more fitting points (the lower error), the one
+     *         of the earlier iteration if equal
+     */
+    private static Model better(Model a, Model b) {
+        if (a == null) {
+            return b;
         }
-        int cont = 0;
-        while (cont < newN) {
-            int index = (int) (data.size() * Math.random());
-            if (!data.get(index).ransacMaybeInLiers) {
-                data.get(index).ransacMaybeInLiers = true;
-                cont++;
-            }
+        if (b == null) {
+            return a;
+        }
+        if (a.fittingPoints != b.fittingPoints) {
+            return a.fittingPoints > b.fittingPoints ? a : b;
         }
+        return a.iteration <= b.iteration ? a : b;
     }
 
-    private void fittPolinomialFunction(List<AlignStructMol> data,
-            boolean linear) {
-        List<AlignStructMol> points = new ArrayList<AlignStructMol>();
+    /**
+     * One RANSAC iteration: draw the initial points, fit the model and count
+     * the points which fit it.
+     * 
+     * @return the model, or null if it has less than d fitting points or
+     *         cannot be fitted
+     */
+    private Model evaluate(int iteration, double rt[], double rt2[],
+            int lowerHalfEnd, int upperHalfStart) {
+
+        final int size = rt.length;
+        final SplittableRandom random = new SplittableRandom(
+                SEED + iteration * 0x9E3779B97F4A7C15L);
+
+        int sample[] = new int[n];
+        int count = drawPoints(random, 0, lowerHalfEnd, n / 2, sample, 0);
+        count = drawPoints(random, upperHalfStart, size, n - count, sample,
+                count);
+        // Not enough points in the ranges, take any points
+        while (count < n) {
+            int index = random.nextInt(size);
+            if (!contains(sample, count, index)) {
+                sample[count++] = index;
+            }
+        }
+
+        double x[] = new double[n], y[] = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = rt[sample[i]];
+            y[i] = rt2[sample[i]];
+        }
+        double coefficients[] = interpolate(x, y);
+        if (coefficients == null) {
+            return null;
+        }
+        Model model = new Model(iteration, sample, coefficients);
+
+        // Count the points which fit the model
+        final double c0 = coefficients[0], c1 = coefficients[1];
+        final double c2 = n > 2 ? coefficients[2] : 0;
+        final double c3 = n > 3 ? coefficients[3] : 0;
+        int inliers = 0;
+        for (int i = 0; i < size; i++) {
+            final double xi = rt[i];
+            final double fitted = c0 + xi * (c1 + xi * (c2 + xi * c3));
+            if (Math.abs(rt2[i] - fitted) < t) {
+                inliers++;
+            }
+        }
+        model.inliers = inliers;
 
-        int degree = 3;
-        if (linear) {
-            degree = 1;
+        // If the model has the minimun number of points (the initial points
+        // are counted twice, as in the original algorithm)
+        if (n + inliers < d) {
+            return null;
         }
 
-        PolynomialFitter fitter = new PolynomialFitter(degree,
-                new GaussNewtonOptimizer(true));
-        for (int i = 0; i < data.size(); i++) {
-            AlignStructMol point = data.get(i);
-            if (point.ransacMaybeInLiers) {
-                points.add(point);
-                fitter.addObservedPoint(1, point.RT, point.RT2);
+        int fittingPoints = inliers;
+        for (int index : sample) {
+            if (!(Math.abs(rt2[index] - model.value(rt[index])) < t)) {
+                fittingPoints++;
             }
         }
-        try {
-            PolynomialFunction function = fitter.fit();
-            for (AlignStructMol point : data) {
-                double y = point.RT2;
-                double bestY = function.value(point.RT);
-                if (Math.abs(y - bestY) < t) {
-                    point.ransacAlsoInLiers = true;
-                    AlsoNumber++;
-                } else {
-                    point.ransacAlsoInLiers = false;
-                }
+        model.fittingPoints = fittingPoints;
+
+        return model;
+    }
+
+    /**
+     * Draws up to count distinct random points from the index range [from,
+     * to), giving up after 1000 attempts
+     * 
+     * @return the number of points in the sample
+     */
+    private static int drawPoints(SplittableRandom random, int from, int to,
+            int count, int sample[], int sampleSize) {
+        if (to <= from) {
+            return sampleSize;
+        }
+        int target = sampleSize + count;
+        for (int attempt = 0; attempt < 1000
+                && sampleSize < target; attempt++) {
+            int index = random.nextInt(from, to);
+            if (!contains(sample, sampleSize, index)) {
+                sample[sampleSize++] = index;
             }
-        } catch (Exception ex) {
         }
+        return sampleSize;
+    }
+
+    private static boolean contains(int values[], int size, int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * calculate the error in the model
+     * Polynomial of degree x.length - 1 through the points. This is the
+     * least squares polynomial fit of the points.
      * 
-     * @param data
-     *            vector with the points which represent all possible
-     *            alignments.
-     * @param regression
-     *            regression of the alignment points
-     * @return the error in the model
+     * @return coefficients, starting with the constant term, or null if the
+     *         points have equal x values
      */
-    private double newError(List<AlignStructMol> data) throws Exception {
+    static double[] interpolate(double x[], double y[]) {
+        final int m = x.length;
+
+        // Vandermonde system, solved by Gaussian elimination
+        double a[][] = new double[m][m + 1];
+        for (int i = 0; i < m; i++) {
+            double power = 1;
+            for (int j = 0; j < m; j++) {
+                a[i][j] = power;
+                power *= x[i];
+            }
+            a[i][m] = y[i];
+        }
 
-        double numT = 1;
-        for (int i = 0; i < data.size(); i++) {
-            if (data.get(i).ransacAlsoInLiers
-                    || data.get(i).ransacMaybeInLiers) {
-                numT++;
+        for (int col = 0; col < m; col++) {
+            int pivot = col;
+            for (int row = col + 1; row < m; row++) {
+                if (Math.abs(a[row][col]) > Math.abs(a[pivot][col])) {
+                    pivot = row;
+                }
+            }
+            if (Math.abs(a[pivot][col]) < 1e-12) {
+                return null;
+            }
+            double tmp[] = a[col];
+            a[col] = a[pivot];
+            a[pivot] = tmp;
+            for (int row = col + 1; row < m; row++) {
+                double factor = a[row][col] / a[col][col];
+                for (int j = col; j <= m; j++) {
+                    a[row][j] -= factor * a[col][j];
+                }
             }
         }
-        return 1 / numT;
 
+        double coefficients[] = new double[m];
+        for (int row = m - 1; row >= 0; row--) {
+            double sum = a[row][m];
+            for (int j = row + 1; j < m; j++) {
+                sum -= a[row][j] * coefficients[j];
+            }
+            coefficients[row] = sum / a[row][row];
+        }
+        for (double c : coefficients) {
+            if (Double.isNaN(c) || Double.isInfinite(c)) {
+                return null;
+            }
+        }
+        return coefficients;
+    }
+
+    /**
+     * Number of iterations needed to draw a sample of n inliers at least
+     * once with 99% probability
+     * 
+     * @param inlierRatio
+     *            ratio of inliers among all points
+     */
+    private int getAdaptiveK(double inlierRatio) {
+        double b = Math.pow(inlierRatio, n);
+        if (b >= 1) {
+            return 1;
+        }
+        if (b <= 0) {
+            return Integer.MAX_VALUE;
+        }
+        double iterations = Math.log(1 - CONFIDENCE) / Math.log(1 - b);
+        return (int) Math.min(Integer.MAX_VALUE, Math.ceil(iterations));
     }
 }
@@ -61,6 +61,8 @@ public class ADAPChromatogram implements Feature {
     // points mz value
     private double mz, rt, height, area, weightedMz;
     private Double fwhm = null, tf = null, af = null;
+    private Double gaussianSimilarity = null, jaggedness = null,
+            sharpness = null;
 
     // Top intensity scan, fragment scan
     private int representativeScan = -1, fragmentScan = -1;
@@ -568,6 +570,29 @@ public class ADAPChromatogram implements Feature {
         this.af = af;
     }
 
+    @Override
+    public Double getGaussianSimilarity() {
+        return gaussianSimilarity;
+    }
+
+    @Override
+    public Double getJaggedness() {
+        return jaggedness;
+    }
+
+    @Override
+    public Double getSharpness() {
+        return sharpness;
+    }
+
+    @Override
+    public void setPeakShapeMetrics(Double gaussianSimilarity,
+            Double jaggedness, Double sharpness) {
+        this.gaussianSimilarity = gaussianSimilarity;
+        this.jaggedness = jaggedness;
+        this.sharpness = sharpness;
+    }
+
     @Override
     public void setPeakInformation(SimplePeakInformation peakInfoIn) {
         this.peakInfo = peakInfoIn;
@@ -26,6 +26,7 @@ import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.dialogs.ParameterSetupDialog;
 import io.github.mzmine.parameters.impl.SimpleParameterSet;
+import io.github.mzmine.parameters.parametertypes.BooleanParameter;
 import io.github.mzmine.parameters.parametertypes.DoubleParameter;
 import io.github.mzmine.parameters.parametertypes.IntegerParameter;
 import io.github.mzmine.parameters.parametertypes.MassListParameter;
@@ -70,10 +71,16 @@ public class ADAPChromatogramBuilderParameters extends SimpleParameterSet {
             MZmineCore.getConfiguration().getIntensityFormat());
     // End Owen Edit
 
+    public static final BooleanParameter peakShapeMetrics = new BooleanParameter(
+            "Calculate peak shape metrics",
+            "If checked, the Gaussian similarity, jaggedness and sharpness of each feature are calculated\n"
+                    + "and stored together with the FWHM, tailing and asymmetry factors",
+            false);
+
     public ADAPChromatogramBuilderParameters() {
         super(new Parameter[] { dataFiles, scanSelection, massList,
                 minimumScanSpan, IntensityThresh2, startIntensity, mzTolerance,
-                suffix });
+                suffix, peakShapeMetrics });
     }
 
     public ExitCode showSetupDialog(Window parent, boolean valueCheckRequired) {
@@ -79,6 +79,7 @@ public class ADAPChromatogramBuilderTask extends AbstractTask {
     // Owen added User parameers;
     private double IntensityThresh2;
     private double minIntensityForStartChrom;
+    private boolean peakShapeMetrics;
 
     private SimplePeakList newPeakList;
 
@@ -121,6 +122,10 @@ public class ADAPChromatogramBuilderTask extends AbstractTask {
                 .getParameter(ADAPChromatogramBuilderParameters.startIntensity)
                 .getValue();
 
+        this.peakShapeMetrics = parameters
+                .getParameter(ADAPChromatogramBuilderParameters.peakShapeMetrics)
+                .getValue();
+
     }
 
     /**
@@ -434,7 +439,8 @@ public class ADAPChromatogramBuilderTask extends AbstractTask {
         project.addPeakList(newPeakList);
 
         // Add quality parameters to peaks
-        QualityParameters.calculateQualityParameters(newPeakList);
+        QualityParameters.calculateQualityParameters(newPeakList,
+                peakShapeMetrics);
 
         progress = 1.0;
 
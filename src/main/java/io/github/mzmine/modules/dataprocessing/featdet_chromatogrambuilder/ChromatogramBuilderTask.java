@@ -27,6 +27,7 @@ import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.MassList;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.ScanAccessPlan;
 import io.github.mzmine.datamodel.impl.SimplePeakList;
 import io.github.mzmine.datamodel.impl.SimplePeakListRow;
 import io.github.mzmine.modules.tools.qualityparameters.QualityParameters;
@@ -148,31 +149,36 @@ public class ChromatogramBuilderTask extends AbstractTask {
                 dataFile, allScanNumbers, minimumTimeSpan, minimumHeight,
                 mzTolerance);
 
-        for (Scan scan : scans) {
-
-            if (isCanceled())
-                return;
-
-            MassList massList = scan.getMassList(massListName);
-            if (massList == null) {
-                setStatus(TaskStatus.ERROR);
-                setErrorMessage("Scan " + dataFile + " #" + scan.getScanNumber()
-                        + " does not have a mass list " + massListName);
-                return;
+        // Read the mass lists ahead while the scans are connected
+        try (ScanAccessPlan plan = dataFile.planScanAccess(allScanNumbers,
+                massListName)) {
+            for (Scan scan : scans) {
+
+                if (isCanceled())
+                    return;
+
+                MassList massList = scan.getMassList(massListName);
+                if (massList == null) {
+                    setStatus(TaskStatus.ERROR);
+                    setErrorMessage("Scan " + dataFile + " #"
+                            + scan.getScanNumber()
+                            + " does not have a mass list " + massListName);
+                    return;
+                }
+
+                DataPoint mzValues[] = massList.getDataPoints();
+
+                if (mzValues == null) {
+                    setStatus(TaskStatus.ERROR);
+                    setErrorMessage("Mass list " + massListName
+                            + " does not contain m/z values for scan #"
+                            + scan.getScanNumber() + " of file " + dataFile);
+                    return;
+                }
+
+                massConnector.addScan(scan.getScanNumber(), mzValues);
+                processedScans++;
             }
-
-            DataPoint mzValues[] = massList.getDataPoints();
-
-            if (mzValues == null) {
-                setStatus(TaskStatus.ERROR);
-                setErrorMessage("Mass list " + massListName
-                        + " does not contain m/z values for scan #"
-                        + scan.getScanNumber() + " of file " + dataFile);
-                return;
-            }
-
-            massConnector.addScan(scan.getScanNumber(), mzValues);
-            processedScans++;
         }
 
         chromatograms = massConnector.finishChromatograms();
@@ -195,6 +201,7 @@ public class ChromatogramBuilderTask extends AbstractTask {
         // Add quality parameters to peaks
         QualityParameters.calculateQualityParameters(newPeakList);
 
+        getMetrics().addProcessedItems(processedScans);
         setStatus(TaskStatus.FINISHED);
 
         logger.info("Finished chromatogram builder on " + dataFile);
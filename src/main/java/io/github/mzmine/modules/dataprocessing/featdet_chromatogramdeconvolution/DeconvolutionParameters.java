@@ -74,9 +74,15 @@ public class DeconvolutionParameters extends SimpleParameterSet {
                             + "considered belonging to the same feature. If not activated, the pairing of MS1 scan with the corresponding MS2 scan\n"
                             + "will be done on the full retention time range of the chromatogram."));
 
+    public static final BooleanParameter PEAK_SHAPE_METRICS = new BooleanParameter(
+            "Calculate peak shape metrics",
+            "If checked, the Gaussian similarity, jaggedness and sharpness of each feature are calculated\n"
+                    + "and stored together with the FWHM, tailing and asymmetry factors",
+            false);
+
     public DeconvolutionParameters() {
         super(new Parameter[] { PEAK_LISTS, SUFFIX, PEAK_RESOLVER,
                 MZ_CENTER_FUNCTION, mzRangeMSMS, RetentionTimeMSMS,
-                AUTO_REMOVE });
+                PEAK_SHAPE_METRICS, AUTO_REMOVE });
     }
 }
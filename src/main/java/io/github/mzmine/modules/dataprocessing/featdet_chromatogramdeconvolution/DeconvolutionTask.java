@@ -19,6 +19,7 @@
 package io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution;
 
 import static io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.DeconvolutionParameters.AUTO_REMOVE;
+import static io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.DeconvolutionParameters.PEAK_SHAPE_METRICS;
 import static io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.DeconvolutionParameters.PEAK_RESOLVER;
 import static io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.DeconvolutionParameters.RetentionTimeMSMS;
 import static io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.DeconvolutionParameters.SUFFIX;
@@ -42,6 +43,7 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.R.REngineType;
+import io.github.mzmine.util.R.RSessionPool;
 import io.github.mzmine.util.R.RSessionWrapper;
 import io.github.mzmine.util.R.RSessionWrapperException;
 import io.github.mzmine.util.maths.CenterFunction;
@@ -143,10 +145,9 @@ public class DeconvolutionTask extends AbstractTask {
 
                         REngineType rEngineType = resolver.getModule()
                                 .getREngineType(resolver.getParameterSet());
-                        this.rSession = new RSessionWrapper(rEngineType,
-                                callerFeatureName, reqPackages,
+                        this.rSession = RSessionPool.getInstance().lease(
+                                rEngineType, callerFeatureName, reqPackages,
                                 reqPackagesVersions);
-                        this.rSession.open();
                     } else {
                         this.rSession = null;
                     }
@@ -160,21 +161,21 @@ public class DeconvolutionTask extends AbstractTask {
                         project.addPeakList(newPeakList);
 
                         // Add quality parameters to peaks
-                        QualityParameters
-                                .calculateQualityParameters(newPeakList);
+                        QualityParameters.calculateQualityParameters(
+                                newPeakList, parameters
+                                        .getParameter(PEAK_SHAPE_METRICS)
+                                        .getValue());
 
                         // Remove the original peaklist if requested.
                         if (parameters.getParameter(AUTO_REMOVE).getValue()) {
                             project.removePeakList(originalPeakList);
                         }
 
+                        getMetrics().addProcessedItems(processedRows);
                         setStatus(TaskStatus.FINISHED);
                         LOG.info("Finished peak recognition on "
                                 + originalPeakList);
                     }
-                    // Turn off R instance.
-                    if (this.rSession != null)
-                        this.rSession.close(false);
 
                 } catch (RSessionWrapperException e) {
                     errorMsg = "'R computing error' during CentWave detection. \n"
@@ -187,20 +188,20 @@ public class DeconvolutionTask extends AbstractTask {
                     setStatus(TaskStatus.ERROR);
                     setErrorMessage(t.getMessage());
                     LOG.log(Level.SEVERE, "Peak deconvolution error", t);
-                }
-
-                // Turn off R instance, once task ended UNgracefully.
-                try {
-                    if (this.rSession != null && !isCanceled())
-                        rSession.close(isCanceled());
-                } catch (RSessionWrapperException e) {
-                    if (!isCanceled()) {
-                        // Do not override potential previous error message.
-                        if (errorMsg == null) {
-                            errorMsg = e.getMessage();
+                } finally {
+                    // Hand the R instance back to the pool, also when the task
+                    // was canceled (the pool discards the closed session).
+                    try {
+                        RSessionPool.getInstance().release(this.rSession);
+                    } catch (RSessionWrapperException e) {
+                        if (!isCanceled()) {
+                            // Do not override potential previous error message.
+                            if (errorMsg == null) {
+                                errorMsg = e.getMessage();
+                            }
+                        } else {
+                            // User canceled: Silent.
                         }
-                    } else {
-                        // User canceled: Silent.
                     }
                 }
 
@@ -306,10 +307,9 @@ public class DeconvolutionTask extends AbstractTask {
     public void cancel() {
 
         super.cancel();
-        // Turn off R instance, if already existing.
+        // Turn off R instance, if it is still leased.
         try {
-            if (this.rSession != null)
-                this.rSession.close(true);
+            RSessionPool.getInstance().closeLeased(this.rSession);
         } catch (RSessionWrapperException e) {
             // Silent, always...
         }
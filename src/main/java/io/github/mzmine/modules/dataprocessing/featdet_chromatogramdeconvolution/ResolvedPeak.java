@@ -48,6 +48,8 @@ public class ResolvedPeak implements Feature {
     // Chromatogram m/z, RT, height, area
     private double mz, rt, height, area;
     private Double fwhm = null, tf = null, af = null;
+    private Double gaussianSimilarity = null, jaggedness = null,
+            sharpness = null;
 
     // Scan numbers
     private int scanNumbers[];
@@ -357,6 +359,29 @@ public class ResolvedPeak implements Feature {
         this.af = af;
     }
 
+    @Override
+    public Double getGaussianSimilarity() {
+        return gaussianSimilarity;
+    }
+
+    @Override
+    public Double getJaggedness() {
+        return jaggedness;
+    }
+
+    @Override
+    public Double getSharpness() {
+        return sharpness;
+    }
+
+    @Override
+    public void setPeakShapeMetrics(Double gaussianSimilarity,
+            Double jaggedness, Double sharpness) {
+        this.gaussianSimilarity = gaussianSimilarity;
+        this.jaggedness = jaggedness;
+        this.sharpness = sharpness;
+    }
+
     // dulab Edit
     @Override
     public void outputChromToFile() {
@@ -236,8 +236,8 @@ public class CentWaveDetector implements PeakResolver {
         rSession.eval("xRaw@env$intensity <- intensity");
 
         // Construct ROIs.
-        rSession.eval("ROIs <- list()");
-        int roi = 1;
+        final List<Integer> roiStarts = new ArrayList<>();
+        final List<Integer> roiEnds = new ArrayList<>();
         for (int start = 0; start < intensity.length; start++) {
 
             // Found non-zero section.
@@ -251,17 +251,25 @@ public class CentWaveDetector implements PeakResolver {
                 }
 
                 // Add ROI to list.
-                rSession.eval("ROIs[[" + roi + "]] <- list('scmin'="
-                        + (start + 1) + ", 'scmax'=" + end
-                        + ", 'mzmin'=mz, 'mzmax'=mz)");
+                roiStarts.add(start + 1);
+                roiEnds.add(end);
 
                 // Next ROI.
                 start = end;
-                roi++;
 
             }
         }
 
+        // Transfer all ROIs at once.
+        final int roi = roiStarts.size() + 1;
+        rSession.assign("roiScmin",
+                roiStarts.stream().mapToDouble(i -> i).toArray());
+        rSession.assign("roiScmax",
+                roiEnds.stream().mapToDouble(i -> i).toArray());
+        rSession.eval("ROIs <- lapply(seq_along(roiScmin), function(i) "
+                + "list('scmin'=roiScmin[i], 'scmax'=roiScmax[i], "
+                + "'mzmin'=mz, 'mzmax'=mz))");
+
         // Do peak picking.
         rSession.eval(
                 "mtx <- findPeaks.centWave(xRaw, ppm=0, mzdiff=0, verbose=TRUE"
@@ -31,13 +31,11 @@ import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.PeakList;
 import io.github.mzmine.datamodel.PeakListRow;
 import io.github.mzmine.datamodel.RawDataFile;
-import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.modules.tools.qualityparameters.QualityParameters;
 import io.github.mzmine.modules.visualization.featurelisttable.table.PeakListTable;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
-import io.github.mzmine.util.scans.ScanUtils;
 
 class ManualPickerTask extends AbstractTask {
 
@@ -101,26 +99,26 @@ class ManualPickerTask extends AbstractTask {
 
             int[] scanNumbers = dataFile.getScanNumbers(1, rtRange);
 
-            for (int scanNumber : scanNumbers) {
+            // Find most intense m/z peak in each scan
+            DataPoint[] basePeaks = dataFile.findBasePeaks(scanNumbers,
+                    mzRange);
+
+            for (int i = 0; i < scanNumbers.length; i++) {
 
                 if (isCanceled())
                     return;
 
-                // Get next scan
-                Scan scan = dataFile.getScan(scanNumber);
-
-                // Find most intense m/z peak
-                DataPoint basePeak = ScanUtils.findBasePeak(scan, mzRange);
+                DataPoint basePeak = basePeaks[i];
 
                 if (basePeak != null) {
                     if (basePeak.getIntensity() > 0)
                         dataPointFound = true;
-                    newPeak.addDatapoint(scan.getScanNumber(), basePeak);
+                    newPeak.addDatapoint(scanNumbers[i], basePeak);
                 } else {
                     final double mzCenter = (mzRange.lowerEndpoint()
                             + mzRange.upperEndpoint()) / 2.0;
                     DataPoint fakeDataPoint = new SimpleDataPoint(mzCenter, 0);
-                    newPeak.addDatapoint(scan.getScanNumber(), fakeDataPoint);
+                    newPeak.addDatapoint(scanNumbers[i], fakeDataPoint);
                 }
 
                 processedScans++;
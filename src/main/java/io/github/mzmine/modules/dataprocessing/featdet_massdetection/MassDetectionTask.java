@@ -309,6 +309,7 @@ public class MassDetectionTask extends AbstractTask {
             setStatus(TaskStatus.ERROR);
         }
 
+        getMetrics().addProcessedItems(processedScans);
         setStatus(TaskStatus.FINISHED);
 
         logger.info("Finished mass detector on " + dataFile);
@@ -18,7 +18,15 @@
 
 package io.github.mzmine.modules.dataprocessing.featdet_msms;
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Range;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.FeatureStatus;
@@ -26,6 +34,7 @@ import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.PeakListRow;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.datamodel.impl.SimpleFeature;
 import io.github.mzmine.datamodel.impl.SimplePeakList;
 import io.github.mzmine.datamodel.impl.SimplePeakListRow;
@@ -34,12 +43,19 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
-import io.github.mzmine.util.scans.ScanUtils;
 
 public class MsMsPeakPickingTask extends AbstractTask {
+
+    // Maximum number of MS1 data points in the cache
+    private static final long MAX_CACHED_DATA_POINTS = 1L << 22;
+
+    // Number of consecutive (in RT order) MS/MS scans processed together
+    private static final int CHUNK_SIZE = 64;
+
     private Logger logger = Logger.getLogger(this.getClass().getName());
 
-    private int processedScans, totalScans;
+    private final AtomicInteger processedScans = new AtomicInteger();
+    private int totalScans;
 
     private final MZmineProject project;
     private final RawDataFile dataFile;
@@ -72,7 +88,7 @@ public class MsMsPeakPickingTask extends AbstractTask {
     public double getFinishedPercentage() {
         if (totalScans == 0)
             return 0f;
-        return (double) processedScans / totalScans;
+        return (double) processedScans.get() / totalScans;
     }
 
     @Override
@@ -87,63 +103,45 @@ public class MsMsPeakPickingTask extends AbstractTask {
 
         final Scan scans[] = scanSelection.getMatchingScans(dataFile);
         totalScans = scans.length;
-        for (Scan scan : scans) {
-            if (isCanceled())
-                return;
-
-            // Get the MS Scan
-            Scan bestScan = null;
-            Range<Double> rtWindow = Range.closed(
-                    scan.getRetentionTime() - (binTime / 2.0),
-                    scan.getRetentionTime() + (binTime / 2.0));
-            Range<Double> mzWindow = Range.closed(
-                    scan.getPrecursorMZ() - (binSize / 2.0),
-                    scan.getPrecursorMZ() + (binSize / 2.0));
-            DataPoint point;
-            DataPoint maxPoint = null;
-            int[] regionScanNumbers = dataFile.getScanNumbers(1, rtWindow);
-            for (int regionScanNumber : regionScanNumbers) {
-                Scan regionScan = dataFile.getScan(regionScanNumber);
-                point = ScanUtils.findBasePeak(regionScan, mzWindow);
-
-                // no datapoint found
-                if (point == null) {
-                    continue;
-                }
-                if (maxPoint == null) {
-                    maxPoint = point;
-                }
-                int result = Double.compare(maxPoint.getIntensity(),
-                        point.getIntensity());
-                if (result <= 0) {
-                    maxPoint = point;
-                    bestScan = regionScan;
-                }
 
-            }
+        // Data points of the MS1 scans, shared by MS/MS scans with
+        // overlapping RT windows
+        final LoadingCache<Integer, MS1Peaks> ms1Cache = CacheBuilder
+                .newBuilder().maximumWeight(MAX_CACHED_DATA_POINTS)
+                .weigher((Integer scanNumber, MS1Peaks peaks) -> 1
+                        + peaks.mzs.length)
+                .build(CacheLoader.from(scanNumber -> new MS1Peaks(
+                        dataFile.getScan(scanNumber))));
 
-            // if no representative dataPoint
-            if (bestScan == null) {
-                continue;
-            }
+        // Process the MS/MS scans in RT order, in parallel chunks, so that
+        // the scans of one chunk share their MS1 neighbourhood
+        final Integer byRT[] = new Integer[scans.length];
+        for (int i = 0; i < scans.length; i++)
+            byRT[i] = i;
+        Arrays.sort(byRT, Comparator
+                .comparingDouble((Integer i) -> scans[i].getRetentionTime()));
 
-            assert maxPoint != null;
-
-            SimpleFeature c = new SimpleFeature(dataFile, scan.getPrecursorMZ(),
-                    bestScan.getRetentionTime(), maxPoint.getIntensity(),
-                    maxPoint.getIntensity(),
-                    new int[] { bestScan.getScanNumber() },
-                    new DataPoint[] { maxPoint }, FeatureStatus.DETECTED,
-                    bestScan.getScanNumber(), scan.getScanNumber(),
-                    new int[] {}, Range.singleton(bestScan.getRetentionTime()),
-                    Range.singleton(scan.getPrecursorMZ()),
-                    Range.singleton(maxPoint.getIntensity()));
+        final SimpleFeature features[] = new SimpleFeature[scans.length];
+        final int numOfChunks = (scans.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream.range(0, numOfChunks).parallel().forEach(chunk -> {
+            final int end = Math.min(scans.length, (chunk + 1) * CHUNK_SIZE);
+            for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+                if (isCanceled())
+                    return;
+                features[byRT[i]] = pickPeak(scans[byRT[i]], ms1Cache);
+                processedScans.incrementAndGet();
+            }
+        });
 
-            PeakListRow entry = new SimplePeakListRow(scan.getScanNumber());
-            entry.addPeak(dataFile, c);
+        if (isCanceled())
+            return;
 
+        for (int i = 0; i < scans.length; i++) {
+            if (features[i] == null)
+                continue;
+            PeakListRow entry = new SimplePeakListRow(scans[i].getScanNumber());
+            entry.addPeak(dataFile, features[i]);
             newPeakList.addRow(entry);
-            processedScans++;
         }
 
         project.addPeakList(newPeakList);
@@ -157,4 +155,102 @@ public class MsMsPeakPickingTask extends AbstractTask {
         setStatus(TaskStatus.FINISHED);
     }
 
+    /**
+     * Finds the most intense data point of the precursor in the MS1 scans of
+     * the RT window, and builds a feature of it
+     *
+     * @return the feature, or null if the precursor is not found
+     */
+    private SimpleFeature pickPeak(Scan scan,
+            LoadingCache<Integer, MS1Peaks> ms1Cache) {
+
+        // Get the MS Scan
+        Scan bestScan = null;
+        Range<Double> rtWindow = Range.closed(
+                scan.getRetentionTime() - (binTime / 2.0),
+                scan.getRetentionTime() + (binTime / 2.0));
+        final double lowerMZ = scan.getPrecursorMZ() - (binSize / 2.0);
+        final double upperMZ = scan.getPrecursorMZ() + (binSize / 2.0);
+        MS1Peaks bestPeaks = null;
+        int bestIndex = -1;
+        int[] regionScanNumbers = dataFile.getScanNumbers(1, rtWindow);
+        for (int regionScanNumber : regionScanNumbers) {
+            MS1Peaks regionPeaks = ms1Cache.getUnchecked(regionScanNumber);
+            int index = regionPeaks.findBasePeak(lowerMZ, upperMZ);
+
+            // no datapoint found
+            if (index < 0) {
+                continue;
+            }
+            if ((bestPeaks == null) || (Double.compare(
+                    bestPeaks.intensities[bestIndex],
+                    regionPeaks.intensities[index]) <= 0)) {
+                bestPeaks = regionPeaks;
+                bestIndex = index;
+                bestScan = regionPeaks.scan;
+            }
+        }
+
+        // if no representative dataPoint
+        if (bestScan == null) {
+            return null;
+        }
+
+        DataPoint maxPoint = new SimpleDataPoint(bestPeaks.mzs[bestIndex],
+                bestPeaks.intensities[bestIndex]);
+
+        return new SimpleFeature(dataFile, scan.getPrecursorMZ(),
+                bestScan.getRetentionTime(), maxPoint.getIntensity(),
+                maxPoint.getIntensity(), new int[] { bestScan.getScanNumber() },
+                new DataPoint[] { maxPoint }, FeatureStatus.DETECTED,
+                bestScan.getScanNumber(), scan.getScanNumber(), new int[] {},
+                Range.singleton(bestScan.getRetentionTime()),
+                Range.singleton(scan.getPrecursorMZ()),
+                Range.singleton(maxPoint.getIntensity()));
+    }
+
+    /**
+     * Data points of an MS1 scan in primitive arrays, in the order of the scan
+     * (by m/z)
+     */
+    private static class MS1Peaks {
+
+        private final Scan scan;
+        private final double mzs[], intensities[];
+
+        MS1Peaks(Scan scan) {
+            this.scan = scan;
+            final DataPoint dataPoints[] = scan.getDataPoints();
+            mzs = new double[dataPoints.length];
+            intensities = new double[dataPoints.length];
+            for (int i = 0; i < dataPoints.length; i++) {
+                mzs[i] = dataPoints[i].getMZ();
+                intensities[i] = dataPoints[i].getIntensity();
+            }
+        }
+
+        /**
+         * Same as ScanUtils.findBasePeak(), within the closed m/z range
+         *
+         * @return index of the most intense data point, or -1 if there is none
+         */
+        int findBasePeak(double lowerMZ, double upperMZ) {
+            int low = 0, high = mzs.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (mzs[mid] < lowerMZ)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+
+            int basePeak = -1;
+            for (int i = low; i < mzs.length && mzs[i] <= upperMZ; i++) {
+                if ((basePeak < 0) || (intensities[i] > intensities[basePeak]))
+                    basePeak = i;
+            }
+            return basePeak;
+        }
+    }
+
 }
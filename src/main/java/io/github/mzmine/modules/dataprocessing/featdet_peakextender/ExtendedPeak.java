@@ -197,12 +197,14 @@ public class ExtendedPeak implements Feature {
         }
         mz = MathUtils.calcQuantile(allMzValues, 0.5f);
 
+        final double retentionTimes[] = dataFile
+                .getRetentionTimes(allScanNumbers);
+
         // Update raw data point ranges, height, rt and representative scan
         height = Double.MIN_VALUE;
         for (int i = 0; i < allScanNumbers.length; i++) {
 
             DataPoint mzPeak = dataPointsMap.get(allScanNumbers[i]);
-            Scan aScan = dataFile.getScan(allScanNumbers[i]);
 
             // Replace the MzPeak instance with an instance of SimpleDataPoint,
             // to reduce the memory usage. After we finish this extended peak,
@@ -214,20 +216,19 @@ public class ExtendedPeak implements Feature {
                 rawDataPointsIntensityRange = Range
                         .singleton(mzPeak.getIntensity());
                 rawDataPointsMZRange = Range.singleton(mzPeak.getMZ());
-                rawDataPointsRTRange = Range
-                        .singleton(aScan.getRetentionTime());
+                rawDataPointsRTRange = Range.singleton(retentionTimes[i]);
             } else {
                 rawDataPointsIntensityRange = rawDataPointsIntensityRange
                         .span(Range.singleton(mzPeak.getIntensity()));
                 rawDataPointsMZRange = rawDataPointsMZRange
                         .span(Range.singleton(mzPeak.getMZ()));
                 rawDataPointsRTRange = rawDataPointsRTRange
-                        .span(Range.singleton(aScan.getRetentionTime()));
+                        .span(Range.singleton(retentionTimes[i]));
             }
 
             if (height < mzPeak.getIntensity()) {
                 height = mzPeak.getIntensity();
-                rt = aScan.getRetentionTime();
+                rt = retentionTimes[i];
                 representativeScan = allScanNumbers[i];
             }
         }
@@ -237,10 +238,8 @@ public class ExtendedPeak implements Feature {
 
         for (int i = 1; i < allScanNumbers.length; i++) {
             // For area calculation, we use retention time in seconds
-            double previousRT = dataFile.getScan(allScanNumbers[i - 1])
-                    .getRetentionTime() * 60d;
-            double currentRT = dataFile.getScan(allScanNumbers[i])
-                    .getRetentionTime() * 60d;
+            double previousRT = retentionTimes[i - 1] * 60d;
+            double currentRT = retentionTimes[i] * 60d;
 
             double previousHeight = dataPointsMap.get(allScanNumbers[i - 1])
                     .getIntensity();
@@ -43,7 +43,6 @@ import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.Feature;
 import io.github.mzmine.datamodel.PeakList;
 import io.github.mzmine.datamodel.PeakListRow;
-import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.ChromatogramTICDataSet;
 import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.PeakPreviewComboRenderer;
@@ -188,12 +187,8 @@ public class ShapeModelerSetupDialog extends ParameterSetupDialog
         ticPlot.removeAllTICDataSets();
 
         // Load the intensities into array
-        RawDataFile dataFile = previewPeak.getDataFile();
         int scanNumbers[] = previewPeak.getScanNumbers();
-        double retentionTimes[] = new double[scanNumbers.length];
-        for (int i = 0; i < scanNumbers.length; i++)
-            retentionTimes[i] = dataFile.getScan(scanNumbers[i])
-                    .getRetentionTime();
+        double retentionTimes[] = previewPeak.getRetentionTimes();
         double intensities[] = new double[scanNumbers.length];
         for (int i = 0; i < scanNumbers.length; i++) {
             DataPoint dp = previewPeak.getDataPoint(scanNumbers[i]);
@@ -128,10 +128,7 @@ class ShapeModelerTask extends AbstractTask {
                     // Load the intensities into array
                     dataFile = peak.getDataFile();
                     scanNumbers = peak.getScanNumbers();
-                    retentionTimes = new double[scanNumbers.length];
-                    for (int i = 0; i < scanNumbers.length; i++)
-                        retentionTimes[i] = dataFile.getScan(scanNumbers[i])
-                                .getRetentionTime();
+                    retentionTimes = peak.getRetentionTimes();
 
                     intensities = new double[scanNumbers.length];
                     for (int i = 0; i < scanNumbers.length; i++) {
@@ -86,10 +86,8 @@ public class EMGPeakModel implements Feature {
         double shapeHeight, currentRT, previousRT, previousHeight;
 
         int allScanNumbers[] = rawDataFile.getScanNumbers(1);
-        double allRetentionTimes[] = new double[allScanNumbers.length];
-        for (int i = 0; i < allScanNumbers.length; i++)
-            allRetentionTimes[i] = rawDataFile.getScan(allScanNumbers[i])
-                    .getRetentionTime();
+        double allRetentionTimes[] = rawDataFile
+                .getRetentionTimes(allScanNumbers);
 
         previousHeight = calculateEMGIntensity(H, M, Dp, Ap, C,
                 allRetentionTimes[0]);
@@ -82,10 +82,8 @@ public class GaussianPeakModel implements Feature {
         double shapeHeight, currentRT, previousRT, previousHeight;
 
         int allScanNumbers[] = rawDataFile.getScanNumbers(1);
-        double allRetentionTimes[] = new double[allScanNumbers.length];
-        for (int i = 0; i < allScanNumbers.length; i++)
-            allRetentionTimes[i] = rawDataFile.getScan(allScanNumbers[i])
-                    .getRetentionTime();
+        double allRetentionTimes[] = rawDataFile
+                .getRetentionTimes(allScanNumbers);
 
         previousHeight = calculateIntensity(allRetentionTimes[0]);
         previousRT = allRetentionTimes[0] * 60d;
@@ -24,8 +24,10 @@
 
 package io.github.mzmine.modules.dataprocessing.featdet_smoothing;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 import com.google.common.collect.Range;
 
@@ -67,7 +69,10 @@ public class SmoothingTask extends AbstractTask {
     private final boolean removeOriginal;
     private final int filterWidth;
 
-    private int progress;
+    // Number of rows smoothed by one parallel work unit.
+    private static final int CHUNK_SIZE = 1000;
+
+    private final AtomicInteger progress;
     private final int progressMax;
 
     /**
@@ -84,7 +89,7 @@ public class SmoothingTask extends AbstractTask {
         // Initialize.
         this.project = project;
         origPeakList = peakList;
-        progress = 0;
+        progress = new AtomicInteger();
         progressMax = peakList.getNumberOfRows();
 
         // Parameters.
@@ -104,7 +109,7 @@ public class SmoothingTask extends AbstractTask {
     @Override
     public double getFinishedPercentage() {
         return progressMax == 0 ? 0.0
-                : (double) progress / (double) progressMax;
+                : (double) progress.get() / (double) progressMax;
     }
 
     @Override
@@ -121,117 +126,25 @@ public class SmoothingTask extends AbstractTask {
             newPeakList = new SimplePeakList(origPeakList + " " + suffix,
                     origPeakList.getRawDataFiles());
 
-            // Process each row.
-            for (final PeakListRow row : origPeakList.getRows()) {
-
-                if (!isCanceled()) {
-
-                    // Create a new peak-list row.
-                    final int originalID = row.getID();
-                    final PeakListRow newRow = new SimplePeakListRow(
-                            originalID);
-
-                    // Process each peak.
-                    for (final Feature peak : row.getPeaks()) {
-
-                        if (!isCanceled()) {
-
-                            // Copy original peak intensities.
-                            final int[] scanNumbers = peak.getScanNumbers();
-                            final int numScans = scanNumbers.length;
-                            final double[] intensities = new double[numScans];
-                            for (int i = 0; i < numScans; i++) {
-
-                                final DataPoint dataPoint = peak
-                                        .getDataPoint(scanNumbers[i]);
-                                intensities[i] = dataPoint == null ? 0.0
-                                        : dataPoint.getIntensity();
-                            }
-
-                            // Smooth peak.
-                            final double[] smoothed = convolve(intensities,
-                                    filterWeights);
-
-                            // Measure peak (max, ranges, area etc.)
-                            final RawDataFile dataFile = peak.getDataFile();
-                            final DataPoint[] newDataPoints = new DataPoint[numScans];
-                            double maxIntensity = 0.0;
-                            int maxScanNumber = -1;
-                            DataPoint maxDataPoint = null;
-                            Range<Double> intensityRange = null;
-                            double area = 0.0;
-                            for (int i = 0; i < numScans; i++) {
-
-                                final int scanNumber = scanNumbers[i];
-                                final DataPoint dataPoint = peak
-                                        .getDataPoint(scanNumber);
-                                final double intensity = smoothed[i];
-                                if (dataPoint != null && intensity > 0.0) {
-
-                                    // Create a new data point.
-                                    final double mz = dataPoint.getMZ();
-                                    final double rt = dataFile
-                                            .getScan(scanNumber)
-                                            .getRetentionTime();
-                                    final DataPoint newDataPoint = new SimpleDataPoint(
-                                            mz, intensity);
-                                    newDataPoints[i] = newDataPoint;
-
-                                    // Track maximum intensity data point.
-                                    if (intensity > maxIntensity) {
-
-                                        maxIntensity = intensity;
-                                        maxScanNumber = scanNumber;
-                                        maxDataPoint = newDataPoint;
-                                    }
-
-                                    // Update ranges.
-                                    if (intensityRange == null) {
-                                        intensityRange = Range
-                                                .singleton(intensity);
-                                    } else {
-                                        intensityRange = intensityRange.span(
-                                                Range.singleton(intensity));
-                                    }
-
-                                    // Accumulate peak area.
-                                    if (i != 0) {
-
-                                        final DataPoint lastDP = newDataPoints[i
-                                                - 1];
-                                        final double lastIntensity = lastDP == null
-                                                ? 0.0
-                                                : lastDP.getIntensity();
-                                        final double lastRT = dataFile
-                                                .getScan(scanNumbers[i - 1])
-                                                .getRetentionTime();
-                                        area += (rt - lastRT) * 60d
-                                                * (intensity + lastIntensity)
-                                                / 2.0;
-                                    }
-                                }
-                            }
-
-                            assert maxDataPoint != null;
-
-                            if (!isCanceled() && maxScanNumber >= 0) {
-
-                                // Create a new peak.
-                                newRow.addPeak(dataFile, new SimpleFeature(
-                                        dataFile, maxDataPoint.getMZ(),
-                                        peak.getRT(), maxIntensity, area,
-                                        scanNumbers, newDataPoints,
-                                        peak.getFeatureStatus(), maxScanNumber,
-                                        peak.getMostIntenseFragmentScanNumber(),
-                                        peak.getAllMS2FragmentScanNumbers(),
-                                        peak.getRawDataPointsRTRange(),
-                                        peak.getRawDataPointsMZRange(),
-                                        intensityRange));
-                            }
-                        }
-                    }
+            // Smooth the rows in parallel, in chunks of CHUNK_SIZE rows
+            final PeakListRow[] rows = origPeakList.getRows();
+            final PeakListRow[] newRows = new PeakListRow[rows.length];
+            final int numChunks = (rows.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            IntStream.range(0, numChunks).parallel().forEach(chunk -> {
+                final int chunkEnd = Math.min(rows.length,
+                        (chunk + 1) * CHUNK_SIZE);
+                for (int i = chunk * CHUNK_SIZE; i < chunkEnd; i++) {
+                    if (isCanceled())
+                        return;
+                    newRows[i] = smoothRow(rows[i], filterWeights);
+                    progress.incrementAndGet();
+                }
+            });
+
+            // Add the rows in the original order
+            if (!isCanceled()) {
+                for (final PeakListRow newRow : newRows) {
                     newPeakList.addRow(newRow);
-                    progress++;
                 }
             }
 
@@ -265,6 +178,7 @@ public class SmoothingTask extends AbstractTask {
                 LOG.finest("Finished peak smoothing: " + progress
                         + " rows processed");
 
+                getMetrics().addProcessedItems(progress.get());
                 setStatus(TaskStatus.FINISHED);
             }
         } catch (Throwable t) {
@@ -276,38 +190,100 @@ public class SmoothingTask extends AbstractTask {
     }
 
     /**
-     * Convolve a set of weights with a set of intensities.
+     * Smooths the peaks of a row.
      *
-     * @param intensities
-     *            the intensities.
-     * @param weights
+     * @param row
+     *            the row.
+     * @param filterWeights
      *            the filter weights.
-     * @return the convolution results.
+     * @return the new row.
      */
-    private static double[] convolve(final double[] intensities,
-            final double[] weights) {
+    private static PeakListRow smoothRow(final PeakListRow row,
+            final double[] filterWeights) {
+
+        // Create a new peak-list row.
+        final PeakListRow newRow = new SimplePeakListRow(row.getID());
+
+        // Process each peak.
+        for (final Feature peak : row.getPeaks()) {
+
+            // Copy original peak data points and intensities.
+            final int[] scanNumbers = peak.getScanNumbers();
+            final int numScans = scanNumbers.length;
+            final DataPoint[] dataPoints = new DataPoint[numScans];
+            final double[] intensities = new double[numScans];
+            for (int i = 0; i < numScans; i++) {
+
+                final DataPoint dataPoint = peak.getDataPoint(scanNumbers[i]);
+                dataPoints[i] = dataPoint;
+                intensities[i] = dataPoint == null ? 0.0
+                        : dataPoint.getIntensity();
+            }
 
-        // Initialise.
-        final int fullWidth = weights.length;
-        final int halfWidth = (fullWidth - 1) / 2;
-        final int numPoints = intensities.length;
+            // Smooth peak.
+            final double[] smoothed = SavitzkyGolayFilter.convolve(intensities,
+                    filterWeights);
+
+            // Measure peak (max, ranges, area etc.)
+            final RawDataFile dataFile = peak.getDataFile();
+            final double[] retentionTimes = peak.getRetentionTimes();
+            final DataPoint[] newDataPoints = new DataPoint[numScans];
+            double maxIntensity = 0.0;
+            int maxScanNumber = -1;
+            DataPoint maxDataPoint = null;
+            double minIntensity = Double.POSITIVE_INFINITY;
+            double area = 0.0;
+            for (int i = 0; i < numScans; i++) {
+
+                final int scanNumber = scanNumbers[i];
+                final DataPoint dataPoint = dataPoints[i];
+                final double intensity = smoothed[i];
+                if (dataPoint != null && intensity > 0.0) {
+
+                    // Create a new data point.
+                    final DataPoint newDataPoint = new SimpleDataPoint(
+                            dataPoint.getMZ(), intensity);
+                    newDataPoints[i] = newDataPoint;
+
+                    // Track maximum intensity data point.
+                    if (intensity > maxIntensity) {
+
+                        maxIntensity = intensity;
+                        maxScanNumber = scanNumber;
+                        maxDataPoint = newDataPoint;
+                    }
 
-        // Convolve.
-        final double[] convolved = new double[numPoints];
-        for (int i = 0; i < numPoints; i++) {
+                    // Update ranges.
+                    minIntensity = Math.min(minIntensity, intensity);
 
-            double sum = 0.0;
-            final int k = i - halfWidth;
-            for (int j = Math.max(0, -k); j < Math.min(fullWidth,
-                    numPoints - k); j++) {
+                    // Accumulate peak area.
+                    if (i != 0) {
 
-                sum += intensities[k + j] * weights[j];
+                        final DataPoint lastDP = newDataPoints[i - 1];
+                        final double lastIntensity = lastDP == null ? 0.0
+                                : lastDP.getIntensity();
+                        final double rt = retentionTimes[i];
+                        final double lastRT = retentionTimes[i - 1];
+                        area += (rt - lastRT) * 60d
+                                * (intensity + lastIntensity) / 2.0;
+                    }
+                }
             }
 
-            // Set the result.
-            convolved[i] = sum;
+            if (maxScanNumber >= 0) {
+
+                // Create a new peak.
+                newRow.addPeak(dataFile, new SimpleFeature(dataFile,
+                        maxDataPoint.getMZ(), peak.getRT(), maxIntensity, area,
+                        scanNumbers, newDataPoints, peak.getFeatureStatus(),
+                        maxScanNumber, peak.getMostIntenseFragmentScanNumber(),
+                        peak.getAllMS2FragmentScanNumbers(),
+                        peak.getRawDataPointsRTRange(),
+                        peak.getRawDataPointsMZRange(),
+                        Range.closed(minIntensity, maxIntensity)));
+            }
         }
 
-        return convolved;
+        return newRow;
     }
 }
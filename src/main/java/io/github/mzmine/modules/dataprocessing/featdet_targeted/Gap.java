@@ -25,7 +25,6 @@ import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.FeatureStatus;
 import io.github.mzmine.datamodel.PeakListRow;
 import io.github.mzmine.datamodel.RawDataFile;
-import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.datamodel.impl.SimpleFeature;
 import io.github.mzmine.util.scans.ScanUtils;
@@ -61,9 +60,26 @@ class Gap {
         this.noiseLevel = noiseLevel;
     }
 
-    void offerNextScan(Scan scan) {
+    Range<Double> getRTRange() {
+        return rtRange;
+    }
+
+    /**
+     * @return true if no scan with a higher retention time can change this gap
+     */
+    boolean isFinished(double scanRT) {
+        return (scanRT > rtRange.upperEndpoint())
+                && (currentPeakDataPoints == null);
+    }
 
-        double scanRT = scan.getRetentionTime();
+    /**
+     * @param dataPoints
+     *            data points of the scan
+     * @param sortedByMZ
+     *            true if the data points are sorted by m/z
+     */
+    void offerNextScan(int scanNumber, double scanRT, DataPoint dataPoints[],
+            boolean sortedByMZ) {
 
         // If not yet inside the RT range
         if (scanRT < rtRange.lowerEndpoint()) {
@@ -77,17 +93,17 @@ class Gap {
         }
 
         // Find top m/z peak in our range
-        DataPoint basePeak = ScanUtils.findBasePeak(scan, mzRange);
+        DataPoint basePeak = findBasePeak(dataPoints, sortedByMZ);
 
         GapDataPoint currentDataPoint;
         if (basePeak != null) {
-            currentDataPoint = new GapDataPoint(scan.getScanNumber(),
-                    basePeak.getMZ(), scanRT, basePeak.getIntensity());
+            currentDataPoint = new GapDataPoint(scanNumber, basePeak.getMZ(),
+                    scanRT, basePeak.getIntensity());
         } else {
             final double mzCenter = (mzRange.lowerEndpoint()
                     + mzRange.upperEndpoint()) / 2.0;
-            currentDataPoint = new GapDataPoint(scan.getScanNumber(), mzCenter,
-                    scanRT, 0);
+            currentDataPoint = new GapDataPoint(scanNumber, mzCenter, scanRT,
+                    0);
         }
 
         // If we have not yet started, just create a new peak
@@ -115,6 +131,45 @@ class Gap {
 
     }
 
+    /**
+     * Finds the highest data point in the m/z range, like
+     * ScanUtils.findBasePeak(), but with a binary search for the first data
+     * point if the data points are sorted
+     */
+    private DataPoint findBasePeak(DataPoint dataPoints[], boolean sortedByMZ) {
+
+        final double lowerMZ = mzRange.lowerEndpoint();
+        final double upperMZ = mzRange.upperEndpoint();
+
+        int start;
+        if (sortedByMZ) {
+            int low = 0, high = dataPoints.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (dataPoints[mid].getMZ() < lowerMZ)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            start = low;
+        } else {
+            for (start = 0; start < dataPoints.length; start++) {
+                if (dataPoints[start].getMZ() >= lowerMZ)
+                    break;
+            }
+        }
+
+        DataPoint basePeak = null;
+        for (int i = start; i < dataPoints.length; i++) {
+            final DataPoint dp = dataPoints[i];
+            if (dp.getMZ() > upperMZ)
+                break;
+            if ((basePeak == null) || (dp.getIntensity() > basePeak.getIntensity()))
+                basePeak = dp;
+        }
+        return basePeak;
+    }
+
     public void noMoreOffers() {
 
         // Check peak that was last constructed
@@ -20,13 +20,17 @@ package io.github.mzmine.modules.dataprocessing.featdet_targeted;
 import java.io.File;
 import java.io.FileReader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 import com.Ostermiller.util.CSVParser;
 import com.google.common.collect.Range;
 
+import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.PeakList;
 import io.github.mzmine.datamodel.PeakListRow;
@@ -46,6 +50,9 @@ import io.github.mzmine.taskcontrol.TaskStatus;
 
 class TargetedPeakDetectionModuleTask extends AbstractTask {
 
+    // Minimum number of active gaps to process a scan in parallel
+    private static final int PARALLEL_GAPS = 256;
+
     private Logger logger = Logger.getLogger(this.getClass().getName());
 
     private final MZmineProject project;
@@ -168,20 +175,53 @@ class TargetedPeakDetectionModuleTask extends AbstractTask {
             return;
         }
 
+        // Sort the gaps by the start of their RT range, so that each scan is
+        // offered only to the active gaps, i.e. the gaps whose RT range has
+        // started and which are not finished yet. If the retention times of
+        // the scans are not increasing, all gaps stay active.
+        final Gap sortedGaps[] = gaps.toArray(new Gap[0]);
+        Arrays.sort(sortedGaps, Comparator
+                .comparingDouble(gap -> gap.getRTRange().lowerEndpoint()));
+        final double retentionTimes[] = dataFile
+                .getRetentionTimes(scanNumbers);
+        final boolean rtSorted = isSorted(retentionTimes);
+
+        List<Gap> activeGaps = new ArrayList<Gap>();
+        int nextGap = 0;
+
         // Process each scan
-        for (int scanNumber : scanNumbers) {
+        for (int i = 0; i < scanNumbers.length; i++) {
 
             // Canceled?
             if (isCanceled()) {
                 return;
             }
 
-            // Get the scan
-            Scan scan = dataFile.getScan(scanNumber);
+            final int scanNumber = scanNumbers[i];
+            final double scanRT = retentionTimes[i];
+
+            while ((nextGap < sortedGaps.length) && (!rtSorted
+                    || sortedGaps[nextGap].getRTRange().lowerEndpoint() <= scanRT)) {
+                activeGaps.add(sortedGaps[nextGap++]);
+            }
 
-            // Feed this scan to all gaps
-            for (Gap gap : gaps) {
-                gap.offerNextScan(scan);
+            if (rtSorted) {
+                activeGaps.removeIf(gap -> gap.isFinished(scanRT));
+            }
+
+            if (!activeGaps.isEmpty()) {
+
+                // Read the data points once for all gaps
+                Scan scan = dataFile.getScan(scanNumber);
+                final DataPoint dataPoints[] = scan.getDataPoints();
+                final boolean sortedByMZ = isSortedByMZ(dataPoints);
+
+                // Feed this scan to all active gaps
+                Stream<Gap> gapStream = activeGaps.size() >= PARALLEL_GAPS
+                        ? activeGaps.parallelStream()
+                        : activeGaps.stream();
+                gapStream.forEach(gap -> gap.offerNextScan(scanNumber, scanRT,
+                        dataPoints, sortedByMZ));
             }
 
             processedScans++;
@@ -208,6 +248,22 @@ class TargetedPeakDetectionModuleTask extends AbstractTask {
         setStatus(TaskStatus.FINISHED);
     }
 
+    private static boolean isSorted(double values[]) {
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] < values[i - 1])
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isSortedByMZ(DataPoint dataPoints[]) {
+        for (int i = 1; i < dataPoints.length; i++) {
+            if (dataPoints[i].getMZ() < dataPoints[i - 1].getMZ())
+                return false;
+        }
+        return true;
+    }
+
     public List<PeakInformation> readFile() {
         FileReader dbFileReader = null;
         try {
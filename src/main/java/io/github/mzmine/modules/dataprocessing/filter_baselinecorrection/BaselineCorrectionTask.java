@@ -34,6 +34,7 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.R.REngineType;
+import io.github.mzmine.util.R.RSessionPool;
 import io.github.mzmine.util.R.RSessionWrapper;
 import io.github.mzmine.util.R.RSessionWrapperException;
 
@@ -128,10 +129,8 @@ public class BaselineCorrectionTask extends AbstractTask {
                     .getRequiredRPackages();
             String callerFeatureName = this.baselineCorrectorProcStep
                     .getModule().getName();
-            this.rSession = new RSessionWrapper(rEngineType, callerFeatureName,
-                    reqPackages, null);
-
-            this.rSession.open();
+            this.rSession = RSessionPool.getInstance().lease(rEngineType,
+                    callerFeatureName, reqPackages, null);
 
             this.baselineCorrectorProcStep.getModule()
                     .initProgress(origDataFile);
@@ -159,9 +158,6 @@ public class BaselineCorrectionTask extends AbstractTask {
 
                 LOG.info("Baseline corrected " + origDataFile.getName());
             }
-            // Turn off R instance, once task ended gracefully.
-            if (!isCanceled())
-                this.rSession.close(false);
 
         } catch (IOException | RSessionWrapperException e) {
             if (!isCanceled()) {
@@ -173,23 +169,23 @@ public class BaselineCorrectionTask extends AbstractTask {
                 errorMsg = "'Unknown error' during baseline correction. \n"
                         + e.getMessage();
             }
-        }
-
-        this.baselineCorrectorProcStep.getModule()
-                .setAbortProcessing(origDataFile, true);
-
-        // Turn off R instance, once task ended UNgracefully.
-        try {
-            if (!isCanceled())
-                this.rSession.close(isCanceled());
-        } catch (RSessionWrapperException e) {
-            if (!isCanceled()) {
-                // Do not override potential previous error message.
-                if (errorMsg == null) {
-                    errorMsg = e.getMessage();
+        } finally {
+            this.baselineCorrectorProcStep.getModule()
+                    .setAbortProcessing(origDataFile, true);
+
+            // Hand the R instance back to the pool, also when the task
+            // was canceled (the pool discards the closed session).
+            try {
+                RSessionPool.getInstance().release(this.rSession);
+            } catch (RSessionWrapperException e) {
+                if (!isCanceled()) {
+                    // Do not override potential previous error message.
+                    if (errorMsg == null) {
+                        errorMsg = e.getMessage();
+                    }
+                } else {
+                    // User canceled: Silent.
                 }
-            } else {
-                // User canceled: Silent.
             }
         }
 
@@ -211,10 +207,9 @@ public class BaselineCorrectionTask extends AbstractTask {
                 true);
 
         super.cancel();
-        // Turn off R instance, if already existing.
+        // Turn off R instance, if it is still leased.
         try {
-            if (this.rSession != null)
-                this.rSession.close(true);
+            RSessionPool.getInstance().closeLeased(this.rSession);
         } catch (RSessionWrapperException e) {
             // Silent, always...
         }
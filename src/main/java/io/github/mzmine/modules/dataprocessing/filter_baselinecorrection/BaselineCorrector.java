@@ -28,6 +28,7 @@ import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.RawDataFileWriter;
 import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.ScanAccessPlan;
 import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.datamodel.impl.SimpleScan;
 import io.github.mzmine.main.MZmineCore;
@@ -224,27 +225,31 @@ public abstract class BaselineCorrector
         final int numScans = scanNumbers.length;
 
         // Create copy of scans.
-        for (int scanIndex = 0; !isAborted(origDataFile)
-                && scanIndex < numScans; scanIndex++) {
+        try (ScanAccessPlan plan = origDataFile
+                .planScanAccess(scanNumbers, null)) {
+            for (int scanIndex = 0; !isAborted(origDataFile)
+                    && scanIndex < numScans; scanIndex++) {
 
-            // Get original scan.
-            final Scan origScan = origDataFile.getScan(scanNumbers[scanIndex]);
+                // Get original scan.
+                final Scan origScan = origDataFile
+                        .getScan(scanNumbers[scanIndex]);
 
-            // Get data points (m/z and intensity pairs) of the original scan
-            final DataPoint[] origDataPoints = origScan.getDataPoints();
-            final DataPoint[] newDataPoints = new DataPoint[origDataPoints.length];
+                // Get data points (m/z and intensity pairs) of the original scan
+                final DataPoint[] origDataPoints = origScan.getDataPoints();
+                final DataPoint[] newDataPoints = new DataPoint[origDataPoints.length];
 
-            // Copy original data points.
-            int i = 0;
-            for (final DataPoint dp : origDataPoints) {
-                newDataPoints[i++] = new SimpleDataPoint(dp);
-            }
+                // Copy original data points.
+                int i = 0;
+                for (final DataPoint dp : origDataPoints) {
+                    newDataPoints[i++] = new SimpleDataPoint(dp);
+                }
 
-            // Create new copied scan.
-            final SimpleScan newScan = new SimpleScan(origScan);
-            newScan.setDataPoints(newDataPoints);
-            writer.addScan(newScan);
-            progressMap.get(origDataFile)[0]++;
+                // Create new copied scan.
+                final SimpleScan newScan = new SimpleScan(origScan);
+                newScan.setDataPoints(newDataPoints);
+                writer.addScan(newScan);
+                progressMap.get(origDataFile)[0]++;
+            }
         }
     }
 
@@ -294,21 +299,25 @@ public abstract class BaselineCorrector
 
         // Subtract baselines.
         LOG.finest("Subtracting baselines.");
-        for (int scanIndex = 0; !isAborted(origDataFile)
-                && scanIndex < numScans; scanIndex++) {
+        try (ScanAccessPlan plan = origDataFile
+                .planScanAccess(scanNumbers, null)) {
+            for (int scanIndex = 0; !isAborted(origDataFile)
+                    && scanIndex < numScans; scanIndex++) {
 
-            // Get original scan.
-            final Scan origScan = origDataFile.getScan(scanNumbers[scanIndex]);
+                // Get original scan.
+                final Scan origScan = origDataFile
+                        .getScan(scanNumbers[scanIndex]);
 
-            // Get data points (m/z and intensity pairs) of the original scan
-            final DataPoint[] origDataPoints = origScan.getDataPoints();
+                // Get data points (m/z and intensity pairs) of the original scan
+                final DataPoint[] origDataPoints = origScan.getDataPoints();
 
-            // Create and write new corrected scan.
-            final SimpleScan newScan = new SimpleScan(origScan);
-            newScan.setDataPoints(subtractBasePeakBaselines(origDataFile,
-                    origDataPoints, baseChrom, numBins, scanIndex));
-            writer.addScan(newScan);
-            progressMap.get(origDataFile)[0]++;
+                // Create and write new corrected scan.
+                final SimpleScan newScan = new SimpleScan(origScan);
+                newScan.setDataPoints(subtractBasePeakBaselines(origDataFile,
+                        origDataPoints, baseChrom, numBins, scanIndex));
+                writer.addScan(newScan);
+                progressMap.get(origDataFile)[0]++;
+            }
         }
     }
 
@@ -369,21 +378,25 @@ public abstract class BaselineCorrector
 
         // Subtract baselines.
         LOG.finest("Subtracting baselines.");
-        for (int scanIndex = 0; !isAborted(origDataFile)
-                && scanIndex < numScans; scanIndex++) {
+        try (ScanAccessPlan plan = origDataFile
+                .planScanAccess(scanNumbers, null)) {
+            for (int scanIndex = 0; !isAborted(origDataFile)
+                    && scanIndex < numScans; scanIndex++) {
 
-            // Get original scan.
-            final Scan origScan = origDataFile.getScan(scanNumbers[scanIndex]);
+                // Get original scan.
+                final Scan origScan = origDataFile
+                        .getScan(scanNumbers[scanIndex]);
 
-            // Get data points (m/z and intensity pairs) of the original scan
-            final DataPoint[] origDataPoints = origScan.getDataPoints();
+                // Get data points (m/z and intensity pairs) of the original scan
+                final DataPoint[] origDataPoints = origScan.getDataPoints();
 
-            // Create and write new corrected scan.
-            final SimpleScan newScan = new SimpleScan(origScan);
-            newScan.setDataPoints(subtractTICBaselines(origDataFile,
-                    origDataPoints, baseChrom, numBins, scanIndex));
-            writer.addScan(newScan);
-            progressMap.get(origDataFile)[0]++;
+                // Create and write new corrected scan.
+                final SimpleScan newScan = new SimpleScan(origScan);
+                newScan.setDataPoints(subtractTICBaselines(origDataFile,
+                        origDataPoints, baseChrom, numBins, scanIndex));
+                writer.addScan(newScan);
+                progressMap.get(origDataFile)[0]++;
+            }
         }
 
     }
@@ -413,23 +426,26 @@ public abstract class BaselineCorrector
         // Create chromatograms.
         final double[][] chromatograms = new double[numBins][numScans];
 
-        for (int scanIndex = 0; !isAborted(origDataFile)
-                && scanIndex < numScans; scanIndex++) {
+        try (ScanAccessPlan plan = origDataFile
+                .planScanAccess(scanNumbers, null)) {
+            for (int scanIndex = 0; !isAborted(origDataFile)
+                    && scanIndex < numScans; scanIndex++) {
 
-            // Get original scan.
-            final Scan scan = origDataFile.getScan(scanNumbers[scanIndex]);
+                // Get original scan.
+                final Scan scan = origDataFile.getScan(scanNumbers[scanIndex]);
 
-            // Process data points.
-            for (final DataPoint dataPoint : scan.getDataPoints()) {
+                // Process data points.
+                for (final DataPoint dataPoint : scan.getDataPoints()) {
 
-                final int bin = RangeUtils.binNumber(mzRange, numBins,
-                        dataPoint.getMZ());
+                    final int bin = RangeUtils.binNumber(mzRange, numBins,
+                            dataPoint.getMZ());
 
-                final double value = chromatograms[bin][scanIndex];
-                chromatograms[bin][scanIndex] = Math.max(value,
-                        dataPoint.getIntensity());
+                    final double value = chromatograms[bin][scanIndex];
+                    chromatograms[bin][scanIndex] = Math.max(value,
+                            dataPoint.getIntensity());
+                }
+                progressMap.get(origDataFile)[0]++;
             }
-            progressMap.get(origDataFile)[0]++;
         }
 
         return chromatograms;
@@ -459,20 +475,23 @@ public abstract class BaselineCorrector
         // Create chromatograms.
         final double[][] chromatograms = new double[numBins][numScans];
 
-        for (int scanIndex = 0; !isAborted(origDataFile)
-                && scanIndex < numScans; scanIndex++) {
+        try (ScanAccessPlan plan = origDataFile
+                .planScanAccess(scanNumbers, null)) {
+            for (int scanIndex = 0; !isAborted(origDataFile)
+                    && scanIndex < numScans; scanIndex++) {
 
-            // Get original scan.
-            final Scan scan = origDataFile.getScan(scanNumbers[scanIndex]);
+                // Get original scan.
+                final Scan scan = origDataFile.getScan(scanNumbers[scanIndex]);
 
-            // Process data points.
-            for (final DataPoint dataPoint : scan.getDataPoints()) {
+                // Process data points.
+                for (final DataPoint dataPoint : scan.getDataPoints()) {
 
-                chromatograms[RangeUtils.binNumber(mzRange, numBins,
-                        dataPoint.getMZ())][scanIndex] += dataPoint
-                                .getIntensity();
+                    chromatograms[RangeUtils.binNumber(mzRange, numBins,
+                            dataPoint.getMZ())][scanIndex] += dataPoint
+                                    .getIntensity();
+                }
+                progressMap.get(origDataFile)[0]++;
             }
-            progressMap.get(origDataFile)[0]++;
         }
 
         return chromatograms;
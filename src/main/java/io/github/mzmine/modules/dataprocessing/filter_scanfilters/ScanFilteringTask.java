@@ -25,6 +25,7 @@ import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.RawDataFileWriter;
 import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.ScanAccessPlan;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingStep;
 import io.github.mzmine.parameters.ParameterSet;
@@ -117,25 +118,29 @@ class ScanFilteringTask extends AbstractTask {
             RawDataFileWriter rawDataFileWriter = MZmineCore
                     .createNewFile(newName);
 
-            for (int i = 0; i < totalScans; i++) {
+            // Read the scans ahead while they are filtered
+            try (ScanAccessPlan plan = dataFile.planScanAccess(scanNumbers,
+                    null)) {
+                for (int i = 0; i < totalScans; i++) {
 
-                if (isCanceled()) {
-                    return;
-                }
+                    if (isCanceled()) {
+                        return;
+                    }
 
-                Scan scan = dataFile.getScan(scanNumbers[i]);
-                Scan newScan = null;
-                if (select.matches(scan))
-                    newScan = rawDataFilter.getModule().filterScan(scan,
-                            rawDataFilter.getParameterSet());
-                else
-                    newScan = scan;
+                    Scan scan = dataFile.getScan(scanNumbers[i]);
+                    Scan newScan = null;
+                    if (select.matches(scan))
+                        newScan = rawDataFilter.getModule().filterScan(scan,
+                                rawDataFilter.getParameterSet());
+                    else
+                        newScan = scan;
 
-                if (newScan != null) {
-                    rawDataFileWriter.addScan(newScan);
-                }
+                    if (newScan != null) {
+                        rawDataFileWriter.addScan(newScan);
+                    }
 
-                processedScans++;
+                    processedScans++;
+                }
             }
 
             // Finalize writing
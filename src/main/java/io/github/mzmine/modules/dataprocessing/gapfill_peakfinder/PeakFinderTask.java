@@ -33,6 +33,7 @@ import io.github.mzmine.datamodel.PeakList;
 import io.github.mzmine.datamodel.PeakListRow;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.ScanAccessPlan;
 import io.github.mzmine.datamodel.impl.SimplePeakList;
 import io.github.mzmine.datamodel.impl.SimplePeakListAppliedMethod;
 import io.github.mzmine.datamodel.impl.SimplePeakListRow;
@@ -188,22 +189,25 @@ class PeakFinderTask extends AbstractTask {
                 int scanNumbers[] = dataFile.getScanNumbers(1);
 
                 // Process each scan
-                for (int scanNumber : scanNumbers) {
-                    // Canceled?
-                    if (isCanceled()) {
-                        // inside stream - only skips this element
-                        return;
-                    }
+                try (ScanAccessPlan plan = dataFile.planScanAccess(scanNumbers,
+                        null)) {
+                    for (int scanNumber : scanNumbers) {
+                        // Canceled?
+                        if (isCanceled()) {
+                            // inside stream - only skips this element
+                            return;
+                        }
 
-                    // Get the scan
-                    Scan scan = dataFile.getScan(scanNumber);
+                        // Get the scan
+                        Scan scan = dataFile.getScan(scanNumber);
 
-                    // Feed this scan to all gaps
-                    for (Gap gap : gaps) {
-                        gap.offerNextScan(scan);
-                    }
+                        // Feed this scan to all gaps
+                        for (Gap gap : gaps) {
+                            gap.offerNextScan(scan);
+                        }
 
-                    processedScans.incrementAndGet();
+                        processedScans.incrementAndGet();
+                    }
                 }
 
                 // Finalize gaps
@@ -331,21 +335,24 @@ class PeakFinderTask extends AbstractTask {
                 int scanNumbers[] = datafile1.getScanNumbers(1);
 
                 // Process each scan
-                for (int scanNumber : scanNumbers) {
+                try (ScanAccessPlan plan = datafile1
+                        .planScanAccess(scanNumbers, null)) {
+                    for (int scanNumber : scanNumbers) {
 
-                    // Canceled?
-                    if (isCanceled()) {
-                        return;
-                    }
+                        // Canceled?
+                        if (isCanceled()) {
+                            return;
+                        }
 
-                    // Get the scan
-                    Scan scan = datafile1.getScan(scanNumber);
+                        // Get the scan
+                        Scan scan = datafile1.getScan(scanNumber);
 
-                    // Feed this scan to all gaps
-                    for (Gap gap : gaps) {
-                        gap.offerNextScan(scan);
+                        // Feed this scan to all gaps
+                        for (Gap gap : gaps) {
+                            gap.offerNextScan(scan);
+                        }
+                        processedScans.incrementAndGet();
                     }
-                    processedScans.incrementAndGet();
                 }
 
                 // Finalize gaps
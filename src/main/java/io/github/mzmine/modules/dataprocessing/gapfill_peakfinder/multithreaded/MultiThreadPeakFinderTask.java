@@ -29,6 +29,7 @@ import io.github.mzmine.datamodel.PeakList;
 import io.github.mzmine.datamodel.PeakListRow;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.ScanAccessPlan;
 import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.Gap;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
@@ -141,21 +142,24 @@ class MultiThreadPeakFinderTask extends AbstractTask {
             int scanNumbers[] = dataFile.getScanNumbers(1);
 
             // Process each scan
-            for (int scanNumber : scanNumbers) {
-                // Canceled?
-                if (isCanceled()) {
-                    return;
+            try (ScanAccessPlan plan = dataFile.planScanAccess(scanNumbers,
+                    null)) {
+                for (int scanNumber : scanNumbers) {
+                    // Canceled?
+                    if (isCanceled()) {
+                        return;
+                    }
+
+                    // Get the scan
+                    Scan scan = dataFile.getScan(scanNumber);
+
+                    // Feed this scan to all gaps
+                    for (Gap gap : gaps) {
+                        gap.offerNextScan(scan);
+                    }
+
+                    processedScans++;
                 }
-
-                // Get the scan
-                Scan scan = dataFile.getScan(scanNumber);
-
-                // Feed this scan to all gaps
-                for (Gap gap : gaps) {
-                    gap.offerNextScan(scan);
-                }
-
-                processedScans++;
             }
 
             // Finalize gaps
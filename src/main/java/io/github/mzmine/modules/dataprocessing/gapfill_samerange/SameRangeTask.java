@@ -32,7 +32,6 @@ import io.github.mzmine.datamodel.PeakIdentity;
 import io.github.mzmine.datamodel.PeakList;
 import io.github.mzmine.datamodel.PeakListRow;
 import io.github.mzmine.datamodel.RawDataFile;
-import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.datamodel.impl.SimplePeakList;
 import io.github.mzmine.datamodel.impl.SimplePeakListAppliedMethod;
@@ -43,7 +42,6 @@ import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.RangeUtils;
-import io.github.mzmine.util.scans.ScanUtils;
 
 class SameRangeTask extends AbstractTask {
 
@@ -205,25 +203,25 @@ class SameRangeTask extends AbstractTask {
 
         boolean dataPointFound = false;
 
-        for (int scanNumber : scanNumbers) {
+        // Find most intense m/z peak in each scan
+        DataPoint[] basePeaks = column.findBasePeaks(scanNumbers,
+                mzRangeWithTol);
+
+        for (int i = 0; i < scanNumbers.length; i++) {
 
             if (isCanceled())
                 return null;
 
-            // Get next scan
-            Scan scan = column.getScan(scanNumber);
-
-            // Find most intense m/z peak
-            DataPoint basePeak = ScanUtils.findBasePeak(scan, mzRangeWithTol);
+            DataPoint basePeak = basePeaks[i];
 
             if (basePeak != null) {
                 if (basePeak.getIntensity() > 0)
                     dataPointFound = true;
-                newPeak.addDatapoint(scan.getScanNumber(), basePeak);
+                newPeak.addDatapoint(scanNumbers[i], basePeak);
             } else {
                 DataPoint fakeDataPoint = new SimpleDataPoint(
                         RangeUtils.rangeCenter(mzRangeWithTol), 0);
-                newPeak.addDatapoint(scan.getScanNumber(), fakeDataPoint);
+                newPeak.addDatapoint(scanNumbers[i], fakeDataPoint);
             }
 
         }
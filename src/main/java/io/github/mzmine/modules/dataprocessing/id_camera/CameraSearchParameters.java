@@ -26,6 +26,8 @@ package io.github.mzmine.modules.dataprocessing.id_camera;
 
 import java.text.NumberFormat;
 
+import org.w3c.dom.Element;
+
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.impl.SimpleParameterSet;
 import io.github.mzmine.parameters.parametertypes.BooleanParameter;
@@ -124,6 +126,14 @@ public class CameraSearchParameters extends SimpleParameterSet {
     public static final StringParameter SUFFIX = new StringParameter("Suffix",
             "This string is added to feature list name as suffix", "CAMERA");
 
+    public static final String ENGINE_JAVA = "MZmine (Java)";
+    public static final String ENGINE_R = "Bioconductor CAMERA (R)";
+
+    public static final ComboParameter<String> ENGINE = new ComboParameter<>(
+            "Grouping engine",
+            "Native Java implementation of the CAMERA grouping, or the CAMERA package in R",
+            new String[] { ENGINE_JAVA, ENGINE_R }, ENGINE_JAVA);
+
     /**
      * R engine type.
      */
@@ -137,6 +147,16 @@ public class CameraSearchParameters extends SimpleParameterSet {
                 ISOTOPES_MAX_CHARGE, ISOTOPES_MAXIMUM, ISOTOPES_MZ_TOLERANCE,
                 CORRELATION_THRESHOLD, CORRELATION_P_VALUE, POLARITY,
                 DONT_SPLIT_ISOTOPES, ORDER, CREATE_NEW_LIST, GROUP_BY,
-                INCLUDE_SINGLETONS, SUFFIX, RENGINE_TYPE });
+                INCLUDE_SINGLETONS, SUFFIX, ENGINE, RENGINE_TYPE });
+    }
+
+    /**
+     * Configurations and batches saved before the grouping engine could be
+     * chosen have no engine entry, they keep running CAMERA in R
+     */
+    @Override
+    public void loadValuesFromXML(Element xmlElement) {
+        getParameter(ENGINE).setValue(ENGINE_R);
+        super.loadValuesFromXML(xmlElement);
     }
 }
@@ -43,7 +43,6 @@ import io.github.mzmine.datamodel.PeakIdentity;
 import io.github.mzmine.datamodel.PeakList;
 import io.github.mzmine.datamodel.PeakListRow;
 import io.github.mzmine.datamodel.RawDataFile;
-import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.IsotopePattern.IsotopePatternStatus;
 import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.datamodel.impl.SimpleIsotopePattern;
@@ -62,6 +61,7 @@ import io.github.mzmine.util.DataPointSorter;
 import io.github.mzmine.util.SortingDirection;
 import io.github.mzmine.util.SortingProperty;
 import io.github.mzmine.util.R.REngineType;
+import io.github.mzmine.util.R.RSessionPool;
 import io.github.mzmine.util.R.RSessionWrapper;
 import io.github.mzmine.util.R.RSessionWrapperException;
 
@@ -207,7 +207,15 @@ public class CameraSearchTask extends AbstractTask {
             }
 
             // Run the search.
-            cameraSearch(peakList.getRawDataFile(0));
+            final String engine = parameters
+                    .getParameter(CameraSearchParameters.ENGINE).getValue();
+            LOG.info("Grouping the features of " + peakList + " with "
+                    + engine);
+            if (CameraSearchParameters.ENGINE_R.equals(engine)) {
+                cameraSearch(peakList.getRawDataFile(0));
+            } else {
+                groupFeatures(peakList.getRawDataFile(0));
+            }
 
             // Create new list with IsotopePattern information
             PeakList newPeakList = null;
@@ -264,23 +272,21 @@ public class CameraSearchTask extends AbstractTask {
 
             String[] reqPackages = { "CAMERA" };
             String[] reqPackagesVersions = { CAMERA_VERSION };
-            this.rSession = new RSessionWrapper(this.rEngineType,
+            this.rSession = RSessionPool.getInstance().lease(this.rEngineType,
                     "Camera search feature", reqPackages, reqPackagesVersions);
-            this.rSession.open();
-
-            // Create empty peaks matrix.
-            this.rSession.eval(
-                    "columnHeadings <- c('mz','mzmin','mzmax','rt','rtmin','rtmax','into','intb','maxo','sn')");
-            this.rSession.eval(
-                    "peaks <- matrix(nrow=0, ncol=length(columnHeadings))");
-            this.rSession.eval("colnames(peaks) <- columnHeadings");
 
             // Initialize.
             final Feature[] peaks = peakList.getPeaks(rawFile);
             progress = 0.0;
 
+            // Peaks matrix, transferred to R in one piece.
+            final String[] columnHeadings = { "mz", "mzmin", "mzmax", "rt",
+                    "rtmin", "rtmax", "into", "intb", "maxo", "sn" };
+            final double[][] peaksMatrix = new double[peaks.length][];
+            int peakIndex = 0;
+
             // Initialize scan map.
-            final Map<Scan, Set<DataPoint>> peakDataPointsByScan = new HashMap<Scan, Set<DataPoint>>(
+            final Map<Integer, Set<DataPoint>> peakDataPointsByScan = new HashMap<Integer, Set<DataPoint>>(
                     rawFile.getNumOfScans(MS_LEVEL));
             int dataPointCount = 0;
             for (final int scanNumber : rawFile.getScanNumbers(MS_LEVEL)) {
@@ -294,8 +300,7 @@ public class CameraSearchTask extends AbstractTask {
                 dataPointCount++;
 
                 // Map the set.
-                peakDataPointsByScan.put(rawFile.getScan(scanNumber),
-                        dataPoints);
+                peakDataPointsByScan.put(scanNumber, dataPoints);
             }
 
             // Add peaks.
@@ -309,10 +314,14 @@ public class CameraSearchTask extends AbstractTask {
                 final double mz = peak.getMZ();
 
                 // Get the peak's data points per scan.
-                for (final int scanNumber : peak.getScanNumbers()) {
+                final int[] scanNumbers = peak.getScanNumbers();
+                final double[] retentionTimes = peak.getRetentionTimes();
+                for (int i = 0; i < scanNumbers.length; i++) {
 
-                    final Scan scan = rawFile.getScan(scanNumber);
-                    if (scan.getMSLevel() != MS_LEVEL) {
+                    final int scanNumber = scanNumbers[i];
+                    final Set<DataPoint> scanDataPoints = peakDataPointsByScan
+                            .get(scanNumber);
+                    if (scanDataPoints == null) {
 
                         throw new IllegalStateException(
                                 "CAMERA can only process feature lists from MS-level "
@@ -324,12 +333,11 @@ public class CameraSearchTask extends AbstractTask {
                     if (dataPoint != null) {
 
                         final double intensity = dataPoint.getIntensity();
-                        peakDataPointsByScan.get(scan)
-                                .add(new SimpleDataPoint(mz, intensity));
+                        scanDataPoints.add(new SimpleDataPoint(mz, intensity));
                         dataPointCount++;
 
                         // Update RT & intensity range.
-                        final double rt = scan.getRetentionTime();
+                        final double rt = retentionTimes[i];
                         if (rtRange == null) {
                             rtRange = Range.singleton(rt);
                             intRange = Range.singleton(intensity);
@@ -354,16 +362,16 @@ public class CameraSearchTask extends AbstractTask {
                         : rtRange).upperEndpoint();
 
                 // Add peak row.
-                this.rSession.eval("peaks <- rbind(peaks, c(" + mz + ", " // mz
-                        + mz + ", " // mzmin: use the same as mz.
-                        + mz + ", " // mzmax: use the same as mz.
-                        + peak.getRT() + ", " // rt
-                        + rtMin + ", " // rtmin
-                        + rtMax + ", " // rtmax
-                        + area + ", " // into: peak area.
-                        + area + ", " // intb: doesn't affect result, use area.
-                        + maxo + ", " // maxo
-                        + SIGNAL_TO_NOISE + "))", false);
+                peaksMatrix[peakIndex++] = new double[] { mz, // mz
+                        mz, // mzmin: use the same as mz.
+                        mz, // mzmax: use the same as mz.
+                        peak.getRT(), // rt
+                        rtMin, // rtmin
+                        rtMax, // rtmax
+                        area, // into: peak area.
+                        area, // intb: doesn't affect result, use area.
+                        maxo, // maxo
+                        SIGNAL_TO_NOISE };
 
                 progress += progressInc;
             }
@@ -381,15 +389,17 @@ public class CameraSearchTask extends AbstractTask {
             // Fill vectors.
             int scanIndex = 0;
             int pointIndex = 0;
-            for (final int scanNumber : rawFile.getScanNumbers(MS_LEVEL)) {
+            final int[] msScanNumbers = rawFile.getScanNumbers(MS_LEVEL);
+            final double[] msRetentionTimes = rawFile
+                    .getRetentionTimes(msScanNumbers);
+            for (final int scanNumber : msScanNumbers) {
 
-                final Scan scan = rawFile.getScan(scanNumber);
-                scanTimes[scanIndex] = scan.getRetentionTime();
+                scanTimes[scanIndex] = msRetentionTimes[scanIndex];
                 scanIndices[scanIndex] = pointIndex + 1;
                 scanIndex++;
 
                 for (final DataPoint dataPoint : peakDataPointsByScan
-                        .get(scan)) {
+                        .get(scanNumber)) {
 
                     masses[pointIndex] = dataPoint.getMZ();
                     intensities[pointIndex] = dataPoint.getIntensity();
@@ -397,7 +407,9 @@ public class CameraSearchTask extends AbstractTask {
                 }
             }
 
-            // Set vectors.
+            // Set peaks matrix and vectors.
+            this.rSession.assignMatrix("peaks", peaksMatrix, null,
+                    columnHeadings);
             this.rSession.assign("scantime", scanTimes);
             this.rSession.assign("scanindex", scanIndices);
             this.rSession.assign("mass", masses);
@@ -498,12 +510,10 @@ public class CameraSearchTask extends AbstractTask {
             // Add identities.
             if (spectra != null) {
 
-                addPseudoSpectraIdentities(peaks, spectra, isotopes, adducts);
+                addPseudoSpectraIdentities(peaks, spectra, isotopes, adducts,
+                        "Bioconductor CAMERA");
             }
             progress += progressInc;
-            // Turn off R instance, once task ended gracefully.
-            if (!this.userCanceled)
-                this.rSession.close(false);
 
         } catch (RSessionWrapperException e) {
             if (!this.userCanceled) {
@@ -517,20 +527,20 @@ public class CameraSearchTask extends AbstractTask {
                         + e.getMessage();
                 e.printStackTrace();
             }
-        }
-
-        // Turn off R instance, once task ended UNgracefully.
-        try {
-            if (!this.userCanceled)
-                this.rSession.close(this.userCanceled);
-        } catch (RSessionWrapperException e) {
-            if (!this.userCanceled) {
-                // Do not override potential previous error message.
-                if (errorMsg == null) {
-                    errorMsg = e.getMessage();
+        } finally {
+            // Hand the R instance back to the pool, also when the task
+            // was canceled (the pool discards the closed session).
+            try {
+                RSessionPool.getInstance().release(this.rSession);
+            } catch (RSessionWrapperException e) {
+                if (!this.userCanceled) {
+                    // Do not override potential previous error message.
+                    if (errorMsg == null) {
+                        errorMsg = e.getMessage();
+                    }
+                } else {
+                    // User canceled: Silent.
                 }
-            } else {
-                // User canceled: Silent.
             }
         }
 
@@ -541,6 +551,39 @@ public class CameraSearchTask extends AbstractTask {
         }
     }
 
+    /**
+     * Group the features with the native Java implementation of CAMERA.
+     *
+     * @param rawFile
+     *            raw data file of feature list to process.
+     */
+    private void groupFeatures(final RawDataFile rawFile) {
+
+        LOG.finest("Grouping features.");
+
+        final Feature[] peaks = peakList.getPeaks(rawFile);
+        final FeatureGrouper grouper = new FeatureGrouper(peaks,
+                rawFile.getScanNumbers(MS_LEVEL), fwhmSigma, fwhmPercentage,
+                isoMaxCharge, isoMaxCount, isoMassTolerance, corrThreshold,
+                corrPValue, "positive".equals(polarity), calcIso,
+                !CameraSearchParameters.GROUP_CORR_FIRST.equals(parameters
+                        .getParameter(CameraSearchParameters.ORDER)
+                        .getValue()));
+        progress = 0.2;
+        if (isCanceled())
+            return;
+
+        grouper.group();
+        progress = 0.9;
+        if (isCanceled())
+            return;
+
+        addPseudoSpectraIdentities(peaks, grouper.getPCGroups(),
+                grouper.getIsotopes(), grouper.getAdducts(),
+                CameraSearchParameters.ENGINE_JAVA);
+        progress = 1.0;
+    }
+
     /**
      * Add pseudo-spectra identities.
      *
@@ -550,10 +593,12 @@ public class CameraSearchTask extends AbstractTask {
      *            the pseudo-spectra ids vector.
      * @param isotopeExp
      *            the isotopes vector.
+     * @param method
+     *            the identification method.
      */
     private void addPseudoSpectraIdentities(final Feature[] peaks,
             final int[] spectra, final String[] isotopes,
-            final String[] adducts) {
+            final String[] adducts, final String method) {
 
         // Add identities for each peak.
         int peakIndex = 0;
@@ -563,8 +608,7 @@ public class CameraSearchTask extends AbstractTask {
             final SimplePeakIdentity identity = new SimplePeakIdentity(
                     "Pseudo-spectrum #"
                             + String.format("%03d", spectra[peakIndex]));
-            identity.setPropertyValue(PeakIdentity.PROPERTY_METHOD,
-                    "Bioconductor CAMERA");
+            identity.setPropertyValue(PeakIdentity.PROPERTY_METHOD, method);
 
             // Add isotope info, if any.
             if (isotopes != null) {
@@ -609,10 +653,9 @@ public class CameraSearchTask extends AbstractTask {
 
         super.cancel();
 
-        // Turn off R instance, if already existing.
+        // Turn off R instance, if it is still leased.
         try {
-            if (this.rSession != null)
-                this.rSession.close(true);
+            RSessionPool.getInstance().closeLeased(this.rSession);
         } catch (RSessionWrapperException e) {
             // Silent, always...
         }
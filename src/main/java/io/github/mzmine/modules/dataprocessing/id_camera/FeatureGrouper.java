@@ -0,0 +1,661 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_camera;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.commons.math3.distribution.TDistribution;
+
+import com.google.common.collect.Range;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.Feature;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+
+/**
+ * Groups the features of one raw data file into pseudo-spectra, following the
+ * steps of Bioconductor CAMERA (groupFWHM, findIsotopes, groupCorr,
+ * findAdducts) without R:
+ *
+ * 1. The features are pre-grouped by retention time. Starting with the most
+ * intense feature, all features within a window around its retention time
+ * (derived from its peak width) form a group.
+ *
+ * 2. Within each group, the shapes of the features are correlated (Pearson
+ * correlation of their intensities over the MS1 scans). Correlations above
+ * the threshold and below the p-value form the edges of a graph, which is
+ * split into pseudo-spectra by a greedy approximation of highly connected
+ * subgraphs.
+ *
+ * 3. Isotope clusters (13C spacing, up to the maximum charge) are searched
+ * within the groups, before or after the shape correlation.
+ *
+ * 4. Features of the same pseudo-spectrum that are explained as different
+ * adducts of the same neutral mass are annotated.
+ *
+ * The groups are independent, so they are processed in parallel. The results
+ * are the pseudo-spectrum, isotope and adduct annotations in the format of
+ * CAMERA's getPeaklist().
+ */
+class FeatureGrouper {
+
+    // Mass difference of 13C and 12C
+    private static final double C13_MASS_DIFFERENCE = 1.003355;
+
+    // Maximum intensity ratio of consecutive isotopes per carbon atom (natural
+    // abundance of 13C, with some margin)
+    private static final double C13_RATIO_PER_CARBON = 0.011;
+
+    private static final double CARBON_MASS = 12.0;
+
+    private static final int MIN_CORRELATION_POINTS = 3;
+
+    private static final AdductRule POSITIVE_ADDUCTS[] = {
+            new AdductRule("[M+H]+", 1, 1, 1.007276),
+            new AdductRule("[M+Na]+", 1, 1, 22.989218),
+            new AdductRule("[M+K]+", 1, 1, 38.963158),
+            new AdductRule("[M+NH4]+", 1, 1, 18.033823),
+            new AdductRule("[M+H-H2O]+", 1, 1, -17.003289),
+            new AdductRule("[2M+H]+", 1, 2, 1.007276),
+            new AdductRule("[2M+Na]+", 1, 2, 22.989218),
+            new AdductRule("[M+2H]2+", 2, 1, 2.014552),
+            new AdductRule("[M+H+Na]2+", 2, 1, 23.996494) };
+
+    private static final AdductRule NEGATIVE_ADDUCTS[] = {
+            new AdductRule("[M-H]-", 1, 1, -1.007276),
+            new AdductRule("[M+Cl]-", 1, 1, 34.969402),
+            new AdductRule("[M+FA-H]-", 1, 1, 44.998201),
+            new AdductRule("[M+Na-2H]-", 1, 1, 20.974666),
+            new AdductRule("[M-H-H2O]-", 1, 1, -19.017841),
+            new AdductRule("[2M-H]-", 1, 2, -1.007276),
+            new AdductRule("[M-2H]2-", 2, 1, -2.014552) };
+
+    private final Feature peaks[];
+
+    // Parameters
+    private final double fwhmSigma, fwhmPercentage;
+    private final int isoMaxCharge, isoMaxCount;
+    private final MZTolerance isoMassTolerance;
+    private final double corrThreshold, corrPValue;
+    private final boolean positive, dontSplitIsotopes, isotopesFirst;
+
+    // Feature values
+    private final double mzs[], rts[], rtMins[], rtMaxs[], maxos[];
+
+    // Intensities of each feature in consecutive MS1 scans, starting at the
+    // index firstScans[i] in the MS1 scan numbers
+    private final int firstScans[];
+    private final double traces[][];
+
+    // Results
+    private final int pcGroups[];
+    private final String isotopes[];
+    private final String adducts[];
+
+    // Isotope number and charge of each feature, 0 if not in an isotope
+    // cluster
+    private final int isoNumber[], isoCharge[];
+
+    // Distributions of the correlation test, by degrees of freedom
+    private final Map<Integer, TDistribution> tDistributions =
+            new ConcurrentHashMap<>();
+
+    FeatureGrouper(Feature peaks[], int msScanNumbers[], double fwhmSigma,
+            double fwhmPercentage, int isoMaxCharge, int isoMaxCount,
+            MZTolerance isoMassTolerance, double corrThreshold,
+            double corrPValue, boolean positive, boolean dontSplitIsotopes,
+            boolean isotopesFirst) {
+
+        this.peaks = peaks;
+        this.fwhmSigma = fwhmSigma;
+        this.fwhmPercentage = fwhmPercentage;
+        this.isoMaxCharge = isoMaxCharge;
+        this.isoMaxCount = isoMaxCount;
+        this.isoMassTolerance = isoMassTolerance;
+        this.corrThreshold = corrThreshold;
+        this.corrPValue = corrPValue;
+        this.positive = positive;
+        this.dontSplitIsotopes = dontSplitIsotopes;
+        this.isotopesFirst = isotopesFirst;
+
+        final int n = peaks.length;
+        mzs = new double[n];
+        rts = new double[n];
+        rtMins = new double[n];
+        rtMaxs = new double[n];
+        maxos = new double[n];
+        firstScans = new int[n];
+        traces = new double[n][];
+
+        pcGroups = new int[n];
+        isotopes = new String[n];
+        adducts = new String[n];
+        isoNumber = new int[n];
+        isoCharge = new int[n];
+
+        // Read the traces of the features
+        IntStream.range(0, n).parallel()
+                .forEach(i -> readTrace(i, msScanNumbers));
+    }
+
+    private void readTrace(int i, int msScanNumbers[]) {
+
+        final Feature peak = peaks[i];
+        mzs[i] = peak.getMZ();
+        rts[i] = peak.getRT();
+
+        final Range<Double> rtRange = peak.getRawDataPointsRTRange();
+        rtMins[i] = rtRange.lowerEndpoint();
+        rtMaxs[i] = rtRange.upperEndpoint();
+
+        final int scanNumbers[] = peak.getScanNumbers();
+        int first = Integer.MAX_VALUE, last = -1;
+        for (int scanNumber : scanNumbers) {
+            final int index = Arrays.binarySearch(msScanNumbers, scanNumber);
+            if (index < 0) {
+                throw new IllegalStateException(
+                        "Features can only be grouped in MS1 feature lists");
+            }
+            first = Math.min(first, index);
+            last = Math.max(last, index);
+        }
+
+        double maxo = 0;
+        final double trace[] = new double[Math.max(0, last - first + 1)];
+        for (int scanNumber : scanNumbers) {
+            final DataPoint dataPoint = peak.getDataPoint(scanNumber);
+            if (dataPoint == null)
+                continue;
+            final int index = Arrays.binarySearch(msScanNumbers, scanNumber);
+            trace[index - first] = dataPoint.getIntensity();
+            maxo = Math.max(maxo, dataPoint.getIntensity());
+        }
+
+        firstScans[i] = last < 0 ? 0 : first;
+        traces[i] = trace;
+        maxos[i] = maxo > 0 ? maxo : peak.getHeight();
+    }
+
+    /**
+     * @return pseudo-spectrum number (starting with 1) of each feature
+     */
+    int[] getPCGroups() {
+        return pcGroups;
+    }
+
+    /**
+     * @return isotope annotation of each feature, e.g. "[3][M+1]+", or an
+     *         empty string
+     */
+    String[] getIsotopes() {
+        return isotopes;
+    }
+
+    /**
+     * @return adduct annotations of each feature, e.g. "[M+H]+ 180.0634
+     *         [M+Na]+ 180.0634", or an empty string
+     */
+    String[] getAdducts() {
+        return adducts;
+    }
+
+    void group() {
+
+        Arrays.fill(isotopes, "");
+        Arrays.fill(adducts, "");
+
+        final List<int[]> rtGroups = groupByRT();
+
+        // Pseudo-spectra and isotope clusters of each RT group
+        final List<List<int[]>> spectra = new ArrayList<>(rtGroups.size());
+        final List<List<int[]>> clusters = new ArrayList<>(rtGroups.size());
+        for (int g = 0; g < rtGroups.size(); g++) {
+            spectra.add(null);
+            clusters.add(null);
+        }
+
+        IntStream.range(0, rtGroups.size()).parallel().forEach(g -> {
+            final int members[] = rtGroups.get(g);
+            List<int[]> groupSpectra;
+            final List<int[]> groupClusters = new ArrayList<>();
+            if (isotopesFirst) {
+                groupClusters.addAll(findIsotopes(members));
+                groupSpectra = groupByShape(members, dontSplitIsotopes
+                        ? groupClusters
+                        : new ArrayList<>());
+            } else {
+                groupSpectra = groupByShape(members, new ArrayList<>());
+                for (int spectrum[] : groupSpectra)
+                    groupClusters.addAll(findIsotopes(spectrum));
+            }
+            for (int spectrum[] : groupSpectra)
+                findAdducts(spectrum);
+            spectra.set(g, groupSpectra);
+            clusters.set(g, groupClusters);
+        });
+
+        // Number the pseudo-spectra and isotope clusters in order of the RT
+        // groups
+        int pcGroup = 0, isotopeCluster = 0;
+        for (int g = 0; g < rtGroups.size(); g++) {
+            for (int spectrum[] : spectra.get(g)) {
+                pcGroup++;
+                for (int i : spectrum)
+                    pcGroups[i] = pcGroup;
+            }
+            for (int cluster[] : clusters.get(g)) {
+                isotopeCluster++;
+                for (int i : cluster) {
+                    isotopes[i] = "[" + isotopeCluster + "]"
+                            + (isoNumber[i] == 0 ? "[M]"
+                                    : "[M+" + isoNumber[i] + "]")
+                            + (isoCharge[i] > 1 ? isoCharge[i] : "")
+                            + (positive ? "+" : "-");
+                }
+            }
+        }
+    }
+
+    /**
+     * Groups the features by retention time, like CAMERA's groupFWHM()
+     */
+    private List<int[]> groupByRT() {
+
+        final int n = peaks.length;
+        final Integer byIntensity[] = new Integer[n];
+        final Integer byRT[] = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            byIntensity[i] = i;
+            byRT[i] = i;
+        }
+        Arrays.sort(byIntensity, Comparator
+                .comparingDouble((Integer i) -> -maxos[i])
+                .thenComparing(i -> i));
+        Arrays.sort(byRT, Comparator.comparingDouble((Integer i) -> rts[i])
+                .thenComparing(i -> i));
+        final double sortedRTs[] = new double[n];
+        for (int i = 0; i < n; i++)
+            sortedRTs[i] = rts[byRT[i]];
+
+        final boolean assigned[] = new boolean[n];
+        final List<int[]> groups = new ArrayList<>();
+        for (int seed : byIntensity) {
+            if (assigned[seed])
+                continue;
+
+            final double hwhm = ((rtMaxs[seed] - rtMins[seed]) / fwhmSigma
+                    * 2.35 * fwhmPercentage) / 2.0;
+            final double left = rts[seed] - hwhm;
+            final double right = rts[seed] + hwhm;
+
+            List<Integer> members = new ArrayList<>();
+            members.add(seed);
+            assigned[seed] = true;
+            for (int r = firstAbove(sortedRTs, left); r < n
+                    && sortedRTs[r] < right; r++) {
+                final int i = byRT[r];
+                if (!assigned[i]) {
+                    members.add(i);
+                    assigned[i] = true;
+                }
+            }
+            groups.add(members.stream().mapToInt(Integer::intValue).toArray());
+        }
+        return groups;
+    }
+
+    /**
+     * @return first position of a value above the bound
+     */
+    private static int firstAbove(double sortedValues[], double bound) {
+        int low = 0, high = sortedValues.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (sortedValues[mid] <= bound)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return first position of a value not below the bound
+     */
+    private static int firstNotBelow(double sortedValues[], double bound) {
+        int low = 0, high = sortedValues.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (sortedValues[mid] < bound)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Finds the isotope clusters among the features, like CAMERA's
+     * findIsotopes(). Sets the isotope number and charge of the members.
+     *
+     * @return the clusters, each starting with the monoisotopic feature
+     */
+    private List<int[]> findIsotopes(int members[]) {
+
+        final int byMZ[] = Arrays.stream(members).boxed()
+                .sorted(Comparator.comparingDouble((Integer i) -> mzs[i]))
+                .mapToInt(Integer::intValue).toArray();
+        final double sortedMZs[] = new double[byMZ.length];
+        for (int k = 0; k < byMZ.length; k++)
+            sortedMZs[k] = mzs[byMZ[k]];
+
+        final boolean assigned[] = new boolean[byMZ.length];
+        final List<int[]> clusters = new ArrayList<>();
+
+        for (int m = 0; m < byMZ.length; m++) {
+            if (assigned[m])
+                continue;
+
+            // Try all charges, keep the longest cluster
+            int best[] = null;
+            int bestCharge = 0;
+            for (int charge = 1; charge <= isoMaxCharge; charge++) {
+                int cluster[] = findIsotopeCluster(m, charge, byMZ, sortedMZs,
+                        assigned);
+                if (cluster.length > 1
+                        && (best == null || cluster.length > best.length)) {
+                    best = cluster;
+                    bestCharge = charge;
+                }
+            }
+            if (best == null)
+                continue;
+
+            final int cluster[] = new int[best.length];
+            for (int k = 0; k < best.length; k++) {
+                assigned[best[k]] = true;
+                cluster[k] = byMZ[best[k]];
+                isoNumber[cluster[k]] = k;
+                isoCharge[cluster[k]] = bestCharge;
+            }
+            clusters.add(cluster);
+        }
+        return clusters;
+    }
+
+    /**
+     * @return positions (in byMZ) of the isotopes of the monoisotopic feature
+     *         at position m, including m
+     */
+    private int[] findIsotopeCluster(int m, int charge, int byMZ[],
+            double sortedMZs[], boolean assigned[]) {
+
+        final double monoMZ = sortedMZs[m];
+        final double maxRatio = Math.max(1.0,
+                monoMZ * charge / CARBON_MASS * C13_RATIO_PER_CARBON);
+
+        List<Integer> cluster = new ArrayList<>();
+        cluster.add(m);
+        double previousIntensity = maxos[byMZ[m]];
+
+        for (int k = 1; k < isoMaxCount; k++) {
+            final Range<Double> range = isoMassTolerance.getToleranceRange(
+                    monoMZ + k * C13_MASS_DIFFERENCE / charge);
+
+            // Most intense unassigned feature in the m/z range
+            int found = -1;
+            for (int p = firstNotBelow(sortedMZs, range.lowerEndpoint());
+                    p < sortedMZs.length
+                            && sortedMZs[p] <= range.upperEndpoint();
+                    p++) {
+                if (p == m || assigned[p])
+                    continue;
+                if (found < 0 || maxos[byMZ[p]] > maxos[byMZ[found]])
+                    found = p;
+            }
+            if (found < 0)
+                break;
+
+            final double intensity = maxos[byMZ[found]];
+            if (intensity <= 0 || intensity > previousIntensity * maxRatio)
+                break;
+
+            cluster.add(found);
+            previousIntensity = intensity;
+        }
+        return cluster.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Splits the features into pseudo-spectra by the correlation of their
+     * shapes, like CAMERA's groupCorr()
+     *
+     * @param isotopeClusters
+     *            clusters that are not split, represented by their
+     *            monoisotopic feature
+     */
+    private List<int[]> groupByShape(int members[],
+            List<int[]> isotopeClusters) {
+
+        // Nodes of the graph: isotope clusters and the remaining features
+        final List<int[]> nodes = new ArrayList<>(isotopeClusters);
+        final Set<Integer> inClusters = isotopeClusters.stream()
+                .flatMapToInt(Arrays::stream).boxed()
+                .collect(Collectors.toSet());
+        for (int i : members) {
+            if (!inClusters.contains(i))
+                nodes.add(new int[] { i });
+        }
+        final int n = nodes.size();
+
+        // Edges between correlated nodes
+        final BitSet edges[] = new BitSet[n];
+        IntStream.range(0, n).parallel().forEach(a -> {
+            edges[a] = new BitSet(n);
+            for (int b = 0; b < n; b++) {
+                if (b != a && correlates(nodes.get(a)[0], nodes.get(b)[0]))
+                    edges[a].set(b);
+            }
+        });
+
+        // Highly connected subgraphs, starting with the most intense nodes:
+        // a node joins a subgraph if it is connected to more than half of its
+        // members
+        final Integer byIntensity[] = new Integer[n];
+        for (int a = 0; a < n; a++)
+            byIntensity[a] = a;
+        Arrays.sort(byIntensity, Comparator.comparingDouble(
+                (Integer a) -> -maxos[nodes.get(a)[0]]).thenComparing(a -> a));
+
+        final boolean assigned[] = new boolean[n];
+        final List<int[]> spectra = new ArrayList<>();
+        for (int seed : byIntensity) {
+            if (assigned[seed])
+                continue;
+
+            final BitSet subgraph = new BitSet(n);
+            subgraph.set(seed);
+            assigned[seed] = true;
+            for (int candidate : byIntensity) {
+                if (assigned[candidate] || !edges[seed].get(candidate))
+                    continue;
+                final BitSet connections = (BitSet) edges[candidate].clone();
+                connections.and(subgraph);
+                if (2 * connections.cardinality() > subgraph.cardinality()) {
+                    subgraph.set(candidate);
+                    assigned[candidate] = true;
+                }
+            }
+
+            spectra.add(subgraph.stream()
+                    .flatMap(a -> Arrays.stream(nodes.get(a))).toArray());
+        }
+        return spectra;
+    }
+
+    /**
+     * @return true if the shapes of the features are significantly correlated
+     */
+    private boolean correlates(int a, int b) {
+
+        final int first = Math.min(firstScans[a], firstScans[b]);
+        final int last = Math.max(firstScans[a] + traces[a].length,
+                firstScans[b] + traces[b].length);
+        final int n = last - first;
+        if (n < MIN_CORRELATION_POINTS)
+            return false;
+
+        double sumX = 0, sumY = 0, sumXX = 0, sumYY = 0, sumXY = 0;
+        for (int s = first; s < last; s++) {
+            final double x = getIntensity(a, s);
+            final double y = getIntensity(b, s);
+            sumX += x;
+            sumY += y;
+            sumXX += x * x;
+            sumYY += y * y;
+            sumXY += x * y;
+        }
+        final double covariance = sumXY - sumX * sumY / n;
+        final double varianceX = sumXX - sumX * sumX / n;
+        final double varianceY = sumYY - sumY * sumY / n;
+        if (varianceX <= 0 || varianceY <= 0)
+            return false;
+
+        final double r = covariance / Math.sqrt(varianceX * varianceY);
+        if (r < corrThreshold)
+            return false;
+        if (r >= 1.0)
+            return true;
+
+        // Two-sided p-value of the correlation
+        final double t = r * Math.sqrt((n - 2) / (1.0 - r * r));
+        final TDistribution tDistribution = tDistributions
+                .computeIfAbsent(n - 2, TDistribution::new);
+        final double p = 2.0 * (1.0 - tDistribution.cumulativeProbability(t));
+        return p <= corrPValue;
+    }
+
+    private double getIntensity(int i, int scan) {
+        final int index = scan - firstScans[i];
+        if (index < 0 || index >= traces[i].length)
+            return 0.0;
+        return traces[i][index];
+    }
+
+    /**
+     * Annotates features of the pseudo-spectrum that are different adducts of
+     * the same neutral mass, like CAMERA's findAdducts()
+     */
+    private void findAdducts(int spectrum[]) {
+
+        final AdductRule rules[] = positive ? POSITIVE_ADDUCTS
+                : NEGATIVE_ADDUCTS;
+
+        // Isotopes (except the monoisotopic feature) are not adducts
+        final int candidates[] = Arrays.stream(spectrum)
+                .filter(i -> isoNumber[i] == 0).toArray();
+
+        final List<Set<String>> annotations = new ArrayList<>();
+        for (int c = 0; c < candidates.length; c++)
+            annotations.add(new LinkedHashSet<>());
+
+        for (int a = 0; a < candidates.length; a++) {
+            for (int b = a + 1; b < candidates.length; b++) {
+                for (AdductRule ruleA : rules) {
+                    if (!ruleA.matchesCharge(isoCharge[candidates[a]]))
+                        continue;
+                    final double massA = ruleA
+                            .getNeutralMass(mzs[candidates[a]]);
+                    for (AdductRule ruleB : rules) {
+                        if (ruleA == ruleB
+                                || !(ruleA.isPrimary() || ruleB.isPrimary())
+                                || !ruleB.matchesCharge(
+                                        isoCharge[candidates[b]]))
+                            continue;
+                        final double massB = ruleB
+                                .getNeutralMass(mzs[candidates[b]]);
+                        if (massA > 0 && isoMassTolerance
+                                .checkWithinTolerance(massA, massB)) {
+                            annotations.get(a).add(ruleA.format(massA));
+                            annotations.get(b).add(ruleB.format(massB));
+                        }
+                    }
+                }
+            }
+        }
+
+        for (int c = 0; c < candidates.length; c++)
+            adducts[candidates[c]] = String.join(" ", annotations.get(c));
+    }
+
+    /**
+     * Adduct of nmol molecules with the given charge and added mass
+     */
+    private static class AdductRule {
+
+        private final String name;
+        private final int charge, nmol;
+        private final double massDifference;
+
+        AdductRule(String name, int charge, int nmol,
+                double massDifference) {
+            this.name = name;
+            this.charge = charge;
+            this.nmol = nmol;
+            this.massDifference = massDifference;
+        }
+
+        /**
+         * @param isotopeCharge
+         *            charge found by the isotope search, 0 if unknown
+         */
+        boolean matchesCharge(int isotopeCharge) {
+            return isotopeCharge == 0 || isotopeCharge == charge;
+        }
+
+        /**
+         * @return true for adducts of one molecule with one charge, at least
+         *         one of which must be involved in each annotation
+         */
+        boolean isPrimary() {
+            return charge == 1 && nmol == 1;
+        }
+
+        double getNeutralMass(double mz) {
+            return (mz * charge - massDifference) / nmol;
+        }
+
+        String format(double neutralMass) {
+            return name + " " + String.format(Locale.ENGLISH, "%.4f",
+                    neutralMass);
+        }
+    }
+
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_formulaprediction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.openscience.cdk.formula.MolecularFormulaGenerator;
+import org.openscience.cdk.formula.MolecularFormulaRange;
+import org.openscience.cdk.interfaces.IIsotope;
+import org.openscience.cdk.interfaces.IMolecularFormula;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Range;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import io.github.mzmine.datamodel.IsotopePattern;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.impl.SimpleIsotopePattern;
+import io.github.mzmine.modules.tools.isotopeprediction.IsotopePatternCalculator;
+
+/**
+ * Caches shared by the formula prediction tasks, so that rows with similar
+ * masses do not enumerate and simulate the same formulas again.
+ *
+ * Candidate formulas are enumerated once per mass bucket (BUCKET_WIDTH Da) and
+ * set of element constraints; the candidates of a mass range are collected
+ * from the buckets it covers. Mass ranges covering more than MAX_BUCKETS
+ * buckets (wide tolerances) are enumerated directly and not cached, so that
+ * the number of formula generators per request is bounded. Predicted isotope patterns are cached per
+ * formula, charge, polarity and merge width (resolution). Both caches are
+ * size-bounded, drop the entries which were not used for EXPIRY_MINUTES, so
+ * that the memory is freed after the prediction tasks, and are safe for use by
+ * several threads.
+ *
+ * The cached formulas are shared and must not be modified.
+ */
+public class FormulaPredictionService {
+
+    private static final FormulaPredictionService instance = new FormulaPredictionService();
+
+    // Width of the mass buckets, in Da
+    private static final double BUCKET_WIDTH = 0.002;
+
+    // Maximum number of buckets per request (0.1 Da), wider mass ranges are
+    // enumerated by a single formula generator
+    private static final long MAX_BUCKETS = 50;
+
+    // Maximum number of cached candidate formulas (all buckets together,
+    // roughly 100 MB)
+    private static final long MAX_CACHED_FORMULAS = 200000;
+
+    private static final long MAX_CACHED_PATTERNS = 50000;
+
+    private static final long EXPIRY_MINUTES = 5;
+
+    /**
+     * Isotope patterns are cached with isotopes down to this relative
+     * intensity and filtered by the requested minimum intensity. Requests for
+     * lower intensities are not cached.
+     */
+    private static final double MIN_CACHED_ABUNDANCE = 0.001;
+
+    private static final double MERGE_WIDTH = 0.00005;
+
+    /**
+     * Candidate formulas of one mass bucket
+     */
+    private static class Bucket {
+        final IMolecularFormula formulas[];
+        final double masses[];
+
+        Bucket(IMolecularFormula formulas[], double masses[]) {
+            this.formulas = formulas;
+            this.masses = masses;
+        }
+    }
+
+    private final Cache<String, Bucket> buckets = CacheBuilder.newBuilder()
+            .maximumWeight(MAX_CACHED_FORMULAS)
+            .weigher((String key, Bucket bucket) -> bucket.formulas.length + 1)
+            .expireAfterAccess(EXPIRY_MINUTES, TimeUnit.MINUTES).build();
+
+    private final Cache<String, IsotopePattern> isotopePatterns = CacheBuilder
+            .newBuilder().maximumSize(MAX_CACHED_PATTERNS)
+            .expireAfterAccess(EXPIRY_MINUTES, TimeUnit.MINUTES).build();
+
+    private FormulaPredictionService() {
+    }
+
+    public static FormulaPredictionService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns all formulas within the mass range and the element constraints,
+     * in order of mass. The result is the same as enumerating the formulas
+     * with {@link MolecularFormulaGenerator}.
+     *
+     * @param massRange
+     *            range of the neutral mass
+     * @param canceled
+     *            polled during the enumeration, which is stopped when it
+     *            returns true
+     * @return the formulas, or an empty list if the enumeration was canceled
+     */
+    public List<IMolecularFormula> getFormulas(Range<Double> massRange,
+            MolecularFormulaRange elements, BooleanSupplier canceled) {
+
+        final double minMass = massRange.lowerEndpoint();
+        final double maxMass = massRange.upperEndpoint();
+        final String elementsKey = getElementsKey(elements);
+
+        List<IMolecularFormula> result = new ArrayList<>();
+        final long firstBucket = (long) Math.floor(minMass / BUCKET_WIDTH);
+        final long lastBucket = (long) Math.floor(maxMass / BUCKET_WIDTH);
+
+        if (lastBucket - firstBucket >= MAX_BUCKETS) {
+            try {
+                enumerate(minMass, maxMass, elements, canceled)
+                        .subMap(minMass, true, maxMass, true).values()
+                        .forEach(result::addAll);
+            } catch (CancellationException e) {
+                return new ArrayList<>();
+            }
+            return result;
+        }
+
+        for (long b = firstBucket; b <= lastBucket; b++) {
+            Bucket bucket = getBucket(b, elements, elementsKey, canceled);
+            if (bucket == null)
+                return new ArrayList<>();
+            for (int i = 0; i < bucket.formulas.length; i++) {
+                if (bucket.masses[i] >= minMass && bucket.masses[i] <= maxMass)
+                    result.add(bucket.formulas[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the bucket, or null if the enumeration was canceled
+     */
+    private Bucket getBucket(long bucketNumber, MolecularFormulaRange elements,
+            String elementsKey, BooleanSupplier canceled) {
+        while (true) {
+            try {
+                return buckets.get(elementsKey + "@" + bucketNumber,
+                        () -> enumerateBucket(bucketNumber, elements,
+                                canceled));
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(
+                        "Could not generate formulas: " + e.getCause(),
+                        e.getCause());
+            } catch (UncheckedExecutionException e) {
+                if (!(e.getCause() instanceof CancellationException))
+                    throw e;
+                // The bucket is not cached. If another task canceled the
+                // enumeration we were waiting for, enumerate it again.
+                if (canceled.getAsBoolean())
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * Enumerates the formulas with mass in [bucket start, bucket end)
+     */
+    private static Bucket enumerateBucket(long bucketNumber,
+            MolecularFormulaRange elements, BooleanSupplier canceled) {
+
+        final double start = bucketNumber * BUCKET_WIDTH;
+        final double end = (bucketNumber + 1) * BUCKET_WIDTH;
+
+        // Generate with a small margin, so that formulas at the bucket borders
+        // are assigned to exactly one bucket by their calculated mass
+        final double margin = 1e-6;
+        SortedMap<Double, List<IMolecularFormula>> formulas = enumerate(
+                start - margin, end + margin, elements, canceled)
+                        .subMap(start, end);
+
+        final int count = formulas.values().stream().mapToInt(List::size)
+                .sum();
+        IMolecularFormula formulaArray[] = new IMolecularFormula[count];
+        double massArray[] = new double[count];
+        int i = 0;
+        for (Map.Entry<Double, List<IMolecularFormula>> sameMass : formulas
+                .entrySet()) {
+            for (IMolecularFormula f : sameMass.getValue()) {
+                formulaArray[i] = f;
+                massArray[i] = sameMass.getKey();
+                i++;
+            }
+        }
+        return new Bucket(formulaArray, massArray);
+    }
+
+    /**
+     * Enumerates the formulas within the mass range, by mass
+     *
+     * @throws CancellationException
+     *             if canceled returned true during the enumeration
+     */
+    private static TreeMap<Double, List<IMolecularFormula>> enumerate(
+            double minMass, double maxMass, MolecularFormulaRange elements,
+            BooleanSupplier canceled) {
+
+        MolecularFormulaGenerator generator = new MolecularFormulaGenerator(
+                SilentChemObjectBuilder.getInstance(), Math.max(0, minMass),
+                maxMass, elements);
+
+        TreeMap<Double, List<IMolecularFormula>> formulas = new TreeMap<>();
+        IMolecularFormula formula;
+        while ((formula = generator.getNextFormula()) != null) {
+            if (canceled.getAsBoolean())
+                throw new CancellationException();
+            double mass = MolecularFormulaManipulator
+                    .getTotalExactMass(formula);
+            formulas.computeIfAbsent(mass, m -> new ArrayList<>(1))
+                    .add(formula);
+        }
+        return formulas;
+    }
+
+    /**
+     * @return a key identifying the element constraints
+     */
+    private static String getElementsKey(MolecularFormulaRange elements) {
+        // Sorted, so that the same constraints in a different order match
+        TreeMap<String, String> constraints = new TreeMap<>();
+        for (IIsotope isotope : elements.isotopes()) {
+            constraints.put(isotope.getSymbol() + isotope.getMassNumber(),
+                    elements.getIsotopeCountMin(isotope) + "-"
+                            + elements.getIsotopeCountMax(isotope));
+        }
+        return constraints.toString();
+    }
+
+    /**
+     * Predicted isotope pattern of the (ionized) formula, see
+     * {@link IsotopePatternCalculator#calculateIsotopePattern(String, double, int, PolarityType)}.
+     * Isotopes are included down to minAbundance relative intensity.
+     */
+    public IsotopePattern getIsotopePattern(String formula,
+            double minAbundance, int charge, PolarityType polarity) {
+
+        if (minAbundance < MIN_CACHED_ABUNDANCE)
+            return IsotopePatternCalculator.calculateIsotopePattern(formula,
+                    minAbundance, MERGE_WIDTH, charge, polarity, false);
+
+        IsotopePattern pattern;
+        try {
+            pattern = isotopePatterns.get(
+                    formula + "|" + charge + "|" + polarity + "|" + MERGE_WIDTH,
+                    () -> IsotopePatternCalculator.calculateIsotopePattern(
+                            formula, MIN_CACHED_ABUNDANCE, MERGE_WIDTH, charge,
+                            polarity, false));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not predict the isotope "
+                    + "pattern of " + formula + ": " + e.getCause(),
+                    e.getCause());
+        }
+
+        // removeDataPointsBelowIntensity() modifies the data point array, so
+        // it must get a copy of the cached pattern
+        IsotopePattern copy = new SimpleIsotopePattern(
+                pattern.getDataPoints().clone(), pattern.getStatus(),
+                pattern.getDescription());
+        return IsotopePatternCalculator.removeDataPointsBelowIntensity(copy,
+                minAbundance * pattern.getHighestDataPoint().getIntensity());
+    }
+
+}
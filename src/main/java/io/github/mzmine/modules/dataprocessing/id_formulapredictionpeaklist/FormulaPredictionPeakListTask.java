@@ -18,13 +18,13 @@
 package io.github.mzmine.modules.dataprocessing.id_formulapredictionpeaklist;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.openscience.cdk.formula.MolecularFormulaGenerator;
 import org.openscience.cdk.formula.MolecularFormulaRange;
-import org.openscience.cdk.interfaces.IChemObjectBuilder;
 import org.openscience.cdk.interfaces.IMolecularFormula;
-import org.openscience.cdk.silent.SilentChemObjectBuilder;
 import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
 import com.google.common.collect.Range;
 import io.github.mzmine.datamodel.Feature;
@@ -39,11 +39,11 @@ import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.identities.MolecularFormulaIdentity;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.dataprocessing.id_formula_sort.FormulaSortParameters;
+import io.github.mzmine.modules.dataprocessing.id_formulaprediction.FormulaPredictionService;
 import io.github.mzmine.modules.dataprocessing.id_formulaprediction.restrictions.elements.ElementalHeuristicChecker;
 import io.github.mzmine.modules.dataprocessing.id_formulaprediction.restrictions.rdbe.RDBERestrictionChecker;
 import io.github.mzmine.modules.tools.isotopepatternscore.IsotopePatternScoreCalculator;
 import io.github.mzmine.modules.tools.isotopepatternscore.IsotopePatternScoreParameters;
-import io.github.mzmine.modules.tools.isotopeprediction.IsotopePatternCalculator;
 import io.github.mzmine.modules.tools.msmsscore.MSMSScore;
 import io.github.mzmine.modules.tools.msmsscore.MSMSScoreCalculator;
 import io.github.mzmine.modules.tools.msmsscore.MSMSScoreParameters;
@@ -56,18 +56,16 @@ import io.github.mzmine.util.FormulaUtils;
 public class FormulaPredictionPeakListTask extends AbstractTask {
 
   private Logger logger = Logger.getLogger(this.getClass().getName());
-  private Range<Double> massRange;
   private MolecularFormulaRange elementCounts;
-  private MolecularFormulaGenerator generator;
   private IonizationType ionType;
-  private double searchedMass;
   private int charge;
   private PeakList peakList;
   private boolean checkIsotopes, checkMSMS, checkRatios, checkRDBE;
   private ParameterSet isotopeParameters, msmsParameters, ratiosParameters, rdbeParameters;
   private MZTolerance mzTolerance;
   private String message;
-  private int totalRows, finishedRows;
+  private int totalRows;
+  private final AtomicInteger finishedRows = new AtomicInteger();
   private int maxBestFormulasPerPeak;
   private final double minScore;
   private final double minMSMSScore;
@@ -146,7 +144,7 @@ public class FormulaPredictionPeakListTask extends AbstractTask {
   public double getFinishedPercentage() {
     if (totalRows == 0)
       return 0.0;
-    return (double) finishedRows / (double) totalRows;
+    return (double) finishedRows.get() / (double) totalRows;
   }
 
   /**
@@ -167,77 +165,83 @@ public class FormulaPredictionPeakListTask extends AbstractTask {
 
     totalRows = peakList.getNumberOfRows();
 
-    for (PeakListRow row : peakList.getRows()) {
+    // Candidate formulas and isotope patterns are cached by the service, so
+    // rows with similar masses share them
+    FormulaPredictionService service = FormulaPredictionService.getInstance();
 
-      if (row.getPeakIdentities().length > 0) {
-        continue;
-      }
+    try {
+      Arrays.stream(peakList.getRows()).parallel().forEach(row -> {
+        if (isCanceled() || getStatus() == TaskStatus.ERROR)
+          return;
+        if (row.getPeakIdentities().length == 0)
+          predictFormulas(row, service);
+        finishedRows.incrementAndGet();
+      });
+    } catch (IllegalStateException e) {
+      logger.log(Level.SEVERE, "Formula prediction error", e);
+      setStatus(TaskStatus.ERROR);
+      setErrorMessage(e.getMessage());
+      return;
+    }
 
-      this.searchedMass = (row.getAverageMZ() - ionType.getAddedMass()) * charge;
+    if (isCanceled() || getStatus() == TaskStatus.ERROR)
+      return;
+
+    logger.finest("Finished formula search for all the peaks");
 
-      message = "Formula prediction for "
-          + MZmineCore.getConfiguration().getMZFormat().format(searchedMass);
+    setStatus(TaskStatus.FINISHED);
 
-      massRange = mzTolerance.getToleranceRange(searchedMass);
+  }
 
-      IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
-      generator = new MolecularFormulaGenerator(builder, massRange.lowerEndpoint(),
-          massRange.upperEndpoint(), elementCounts);
+  private void predictFormulas(PeakListRow row, FormulaPredictionService service) {
 
-      IMolecularFormula cdkFormula;
+    final double searchedMass = (row.getAverageMZ() - ionType.getAddedMass()) * charge;
 
-      // create a map to store ResultFormula and relative mass deviation
-      // for sorting
-      List<MolecularFormulaIdentity> flist = new ArrayList<>();
-      while ((cdkFormula = generator.getNextFormula()) != null) {
-        if (isCanceled())
-          return;
+    message = "Formula prediction for "
+        + MZmineCore.getConfiguration().getMZFormat().format(searchedMass);
 
-        // Mass is ok, so test other constraints
-        if (checkConstraints(cdkFormula, row)) {
-          Double isotopeScore = calcIsotopePatternScore(cdkFormula, row);
-          Double msmsScore = calcIsotopePatternScore(cdkFormula, row);
-          if (getStatus().equals(TaskStatus.ERROR))
-            return;
-
-          if ((isotopeScore == null || isotopeScore >= minScore)
-              && (msmsScore == null || msmsScore >= minMSMSScore)) {
-            // write to map
-            MolecularFormulaIdentity molf =
-                new MolecularFormulaIdentity(cdkFormula, searchedMass, isotopeScore, msmsScore);
-            flist.add(molf);
-          }
-        }
-      }
+    Range<Double> massRange = mzTolerance.getToleranceRange(searchedMass);
 
+    // create a map to store ResultFormula and relative mass deviation
+    // for sorting
+    List<MolecularFormulaIdentity> flist = new ArrayList<>();
+    for (IMolecularFormula cdkFormula : service.getFormulas(massRange, elementCounts,
+        this::isCanceled)) {
       if (isCanceled())
         return;
 
-      // sort formulas by ppm difference
-      FormulaUtils.sortFormulaList(flist, sortPPMFactor, sortIsotopeFactor, sortMSMSFactor);
+      // Mass is ok, so test other constraints
+      if (checkConstraints(cdkFormula, row)) {
+        Double isotopeScore = calcIsotopePatternScore(cdkFormula, row);
+        Double msmsScore = calcIsotopePatternScore(cdkFormula, row);
+        if (getStatus().equals(TaskStatus.ERROR))
+          return;
 
-      // Add the new formula entry top results
-      int ctr = 0;
-      for (MolecularFormulaIdentity f : flist) {
-        if (ctr < maxBestFormulasPerPeak) {
-          f.setPropertyValue(PeakIdentity.PROPERTY_METHOD, this.getClass().getName());
-          row.addPeakIdentity(f, false);
-          ctr++;
+        if ((isotopeScore == null || isotopeScore >= minScore)
+            && (msmsScore == null || msmsScore >= minMSMSScore)) {
+          // write to map
+          MolecularFormulaIdentity molf =
+              new MolecularFormulaIdentity(cdkFormula, searchedMass, isotopeScore, msmsScore);
+          flist.add(molf);
         }
       }
-      if (isCanceled())
-        return;
-      finishedRows++;
-
     }
 
     if (isCanceled())
       return;
 
-    logger.finest("Finished formula search for all the peaks");
-
-    setStatus(TaskStatus.FINISHED);
+    // sort formulas by ppm difference
+    FormulaUtils.sortFormulaList(flist, sortPPMFactor, sortIsotopeFactor, sortMSMSFactor);
 
+    // Add the new formula entry top results
+    int ctr = 0;
+    for (MolecularFormulaIdentity f : flist) {
+      if (ctr < maxBestFormulasPerPeak) {
+        f.setPropertyValue(PeakIdentity.PROPERTY_METHOD, this.getClass().getName());
+        row.addPeakIdentity(f, false);
+        ctr++;
+      }
+    }
   }
 
   private boolean checkConstraints(IMolecularFormula cdkFormula, PeakListRow peakListRow) {
@@ -319,24 +323,12 @@ public class FormulaPredictionPeakListTask extends AbstractTask {
 
       final double minPredictedAbundance = isotopeNoiseLevel / detectedPatternHeight;
 
-      predictedIsotopePattern = IsotopePatternCalculator.calculateIsotopePattern(adjustedFormula,
-          minPredictedAbundance, charge, ionType.getPolarity());
+      predictedIsotopePattern = FormulaPredictionService.getInstance()
+          .getIsotopePattern(adjustedFormula, minPredictedAbundance, charge, ionType.getPolarity());
 
       isotopeScore = IsotopePatternScoreCalculator.getSimilarityScore(detectedPattern,
           predictedIsotopePattern, isotopeParameters);
     }
     return isotopeScore;
   }
-
-  @Override
-  public void cancel() {
-    super.cancel();
-
-    // We need to cancel the formula generator, because searching for next
-    // candidate formula may take a looong time
-    if (generator != null) {
-      generator.cancel();
-    }
-
-  }
 }
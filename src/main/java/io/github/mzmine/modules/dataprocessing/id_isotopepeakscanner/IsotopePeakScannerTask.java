@@ -23,10 +23,13 @@ import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.openscience.cdk.interfaces.IIsotope;
+import com.google.common.collect.Range;
 import io.github.msdk.MSDKRuntimeException;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.Feature;
@@ -93,7 +96,8 @@ public class IsotopePeakScannerTask extends AbstractTask {
     private double minPatternIntensity;
     private double mergeWidth;
     private String message;
-    private int totalRows, finishedRows;
+    private int totalRows;
+    private final AtomicInteger finishedRows = new AtomicInteger();
     private PeakList resultPeakList;
     private MZmineProject project;
     private PeakList peakList;
@@ -112,6 +116,12 @@ public class IsotopePeakScannerTask extends AbstractTask {
     private int autoCarbonMinPatternSize;
     private boolean excludeZeroCPattern;
 
+    // Number of m/z-sorted rows searched by one parallel work unit
+    private static final int WINDOW_SIZE = 256;
+
+    // Average m/z, RT and height of the m/z-sorted rows
+    private double[] rowMZs, rowRTs, rowHeights;
+
     public enum RatingType {
         HIGHEST, TEMPAVG
     };
@@ -236,7 +246,7 @@ public class IsotopePeakScannerTask extends AbstractTask {
     public double getFinishedPercentage() {
         if (totalRows == 0)
             return 0.0;
-        return (double) finishedRows / (double) totalRows;
+        return (double) finishedRows.get() / (double) totalRows;
     }
 
     /**
@@ -279,184 +289,45 @@ public class IsotopePeakScannerTask extends AbstractTask {
                 peakList.getRawDataFiles());
         PeakListHandler resultMap = new PeakListHandler();
 
+        // Search the rows for isotope patterns in parallel. The m/z-sorted rows
+        // are split into windows of WINDOW_SIZE rows; the peaks grouped with
+        // the last rows of a window may lie in the next window, so all windows
+        // read the complete row arrays. The results are stored per row and
+        // merged in m/z order, which gives the same result feature list as a
+        // sequential scan.
+        message = "Searching isotope patterns in " + totalRows + " rows";
+        final double maxDiff = diff[maxPatternIndex][maxPatternSize - 1];
+        rowMZs = new double[totalRows];
+        rowRTs = new double[totalRows];
+        rowHeights = new double[totalRows];
         for (int i = 0; i < totalRows; i++) {
-            // i will represent the index of the row in peakList
-            if (rows[i].getPeakIdentities().length > 0) {
-                finishedRows++;
-                continue;
-            }
-
-            message = "Row " + i + "/" + totalRows;
-
-            // now get all peaks that lie within RT and maxIsotopeMassRange:
-            // pL[index].mz ->
-            // pL[index].mz+maxMass
-            ArrayList<PeakListRow> groupedPeaks = groupPeaks(rows, i,
-                    diff[maxPatternIndex][diff[maxPatternIndex].length - 1]);
+            rowMZs[i] = rows[i].getAverageMZ();
+            rowRTs[i] = rows[i].getAverageRT();
+            rowHeights[i] = rows[i].getAverageHeight();
+        }
 
-            if (groupedPeaks.size() < 2) {
-                finishedRows++;
-                continue;
-            }
-            // else
-            // logger.info("groupedPeaks.size > 2 in row: " + i + " size: " +
-            // groupedPeaks.size());
-
-            ResultBuffer[][] resultBuffer = new ResultBuffer[diff.length][]; // this
-                                                                             // will
-                                                                             // store
-                                                                             // row
-                                                                             // indexes
-            // TODO: it should be possible to use a single array of result
-            // buffer instead of a 2D array
-            // which should reduce computation time later on. the problem is
-            // that some carbon peaks
-            // might pop up within
-            // the pattern and change indices. for testing purposes ill do it as
-            // it is
-
-            for (int p = 0; p < diff.length; p++) { // resultBuffer[i] index
-                                                    // will represent Isotope[i]
-                                                    // (if
-                // numAtoms = 0)
-                resultBuffer[p] = new ResultBuffer[diff[p].length];
-
-                for (int k = 0; k < diff[p].length; k++)
-                    resultBuffer[p][k] = new ResultBuffer(); // [p][0] will be
-                                                             // the isotope with
-                                                             // lowest mass#
+        final PatternMatch[] matches = new PatternMatch[totalRows];
+        final int numWindows = (totalRows + WINDOW_SIZE - 1) / WINDOW_SIZE;
+        IntStream.range(0, numWindows).parallel().forEach(window -> {
+            final int end = Math.min(totalRows, (window + 1) * WINDOW_SIZE);
+            for (int i = window * WINDOW_SIZE; i < end; i++) {
+                if (isCanceled())
+                    return;
+                matches[i] = findPattern(rows, i, diff, maxDiff, plh);
+                finishedRows.incrementAndGet();
             }
+        });
 
-            // of all features with fitting rt
-            // and mz
-            boolean trueBuffers[] = new boolean[diff.length];
-            Arrays.fill(trueBuffers, false);
-
-            for (int j = 0; j < groupedPeaks.size(); j++) // go through all
-                                                          // possible peaks
-            {
-                for (int p = 0; p < diff.length; p++) {
-
-                    for (int k = 0; k < diff[p].length; k++) // check for each
-                                                             // peak if it is a
-                                                             // possible
-                                                             // feature
-                    // for
-                    // every diff[](isotope)
-                    { // this is necessary bc there might be more than one
-                      // possible feature
-                      // j represents the row index in groupedPeaks
-                      // k represents the isotope number the peak will be a
-                      // candidate for
-                      // p = pattern index for autoCarbon
-                        if (mzTolerance.checkWithinTolerance(
-                                groupedPeaks.get(0).getAverageMZ() + diff[p][k],
-                                groupedPeaks.get(j).getAverageMZ())) {
-                            // this will automatically add groupedPeaks[0] to
-                            // the list -> isotope with
-                            // lowest mass
-                            resultBuffer[p][k].addFound(); // +1 result for
-                                                           // isotope k
-                            resultBuffer[p][k].addRow(j); // row in
-                                                          // groupedPeaks[]
-                            resultBuffer[p][k]
-                                    .addID(groupedPeaks.get(j).getID());
-                        }
-                    }
-                }
-            }
-
-            boolean foundOne = false;
+        if (isCanceled())
+            return;
 
-            for (int p = 0; p < diff.length; p++)
-                if (checkIfAllTrue(resultBuffer[p])) { // this means that for
-                                                       // every isotope we
-                                                       // expected to
-                                                       // find,
-                    foundOne = true; // we found one or more possible features
-                    trueBuffers[p] = true;
-                    // logger.info("Row: " + i + " filled buffer[" + p +"]");
-                }
-            if (!foundOne) {
-                finishedRows++;
+        message = "Creating result feature list";
+        for (int i = 0; i < totalRows; i++) {
+            if (matches[i] == null)
                 continue;
-            }
-
-            Candidates[] candidates = new Candidates[diff.length];
-            for (int p = 0; p < diff.length; p++)
-                candidates[p] = new Candidates(diff[p].length, minHeight,
-                        mzTolerance, pattern[p], massListName, plh, ratingType);
-
-            for (int p = 0; p < diff.length; p++) {
-                if (!trueBuffers[p])
-                    continue;
-                for (int k = 0; k < resultBuffer[p].length; k++) // reminder:
-                                                                 // resultBuffer.length
-                                                                 // =
-                                                                 // diff.length
-                {
-                    for (int l = 0; l < resultBuffer[p][k]
-                            .getFoundCount(); l++) {
-                        // k represents index resultBuffer[k] and thereby the
-                        // isotope number
-                        // l represents the number of results in resultBuffer[k]
-                        candidates[p].checkForBetterRating(k,
-                                groupedPeaks.get(0),
-                                groupedPeaks.get(resultBuffer[p][k].getRow(l)),
-                                minRating, checkIntensity);
-
-                    }
-                }
-            }
-
-            foundOne = false;
-            boolean trueCandidates[] = new boolean[diff.length];
-            Arrays.fill(trueCandidates, false);
-
-            for (int p = 0; p < diff.length; p++) {
-                if (trueBuffers[p]
-                        && checkIfAllTrue(candidates[p].getCandidates())) {
-                    trueCandidates[p] = true;
-                    foundOne = true;
-                    // logger.info("Row: " + i + " filled candidates[" + p +
-                    // "]");
-                }
-            }
-            if (!foundOne) {
-                finishedRows++;
-                // logger.info("Not enough valid candidates for parent feature "
-                // +
-                // groupedPeaks.get(0).getAverageMZ() + "\talthough enough peaks
-                // were found.") ;
-                continue; // jump to next i
-            }
-
-            // find best result now, first we have to calc avg ratings if
-            // specified by user
-            int bestPatternIndex = 0;
-            double bestRating = 0.0;
-            for (int p = 0; p < diff.length; p++) {
 
-                if (!trueCandidates[p])
-                    continue;
-
-                if (accurateAvgIntensity)
-                    candidates[p].calcAvgRatings();
-                // this is a final rating, with averaged intensities in all
-                // mass lists that contain EVERY peak that was selected.
-                // thats why we can only do it after ALL peaks have been
-                // found
-
-                if (accurateAvgIntensity
-                        && candidates[p].getAvgAccAvgRating() > bestRating) {
-                    bestPatternIndex = p;
-                    bestRating = candidates[p].getAvgAccAvgRating();
-                } else if (!accurateAvgIntensity
-                        && candidates[p].getSimpleAvgRating() > bestRating) {
-                    bestPatternIndex = p;
-                    bestRating = candidates[p].getSimpleAvgRating();
-                }
-            }
+            final Candidates[] candidates = matches[i].candidates;
+            final int bestPatternIndex = matches[i].bestPatternIndex;
 
             if (!checkIfAllTrue(candidates[bestPatternIndex].getCandidates())) {
                 logger.warning(
@@ -599,11 +470,6 @@ public class IsotopePeakScannerTask extends AbstractTask {
                 row.getBestPeak().setIsotopePattern(resultPattern);
                 resultMap.addRow(row);
             }
-
-            if (isCanceled())
-                return;
-
-            finishedRows++;
         }
 
         ArrayList<Integer> keys = resultMap.getAllKeys();
@@ -618,6 +484,150 @@ public class IsotopePeakScannerTask extends AbstractTask {
 
     }
 
+    /**
+     * Candidates of all isotope patterns found for one parent row
+     */
+    private static class PatternMatch {
+        final Candidates[] candidates;
+        final int bestPatternIndex;
+
+        PatternMatch(Candidates[] candidates, int bestPatternIndex) {
+            this.candidates = candidates;
+            this.bestPatternIndex = bestPatternIndex;
+        }
+    }
+
+    /**
+     * Searches the isotope patterns for the row at index i of the m/z-sorted
+     * rows. The expected isotope peaks are looked up by binary search in the
+     * m/z values of the grouped peaks. This only reads the rows and plh, so it
+     * can be called for several rows in parallel.
+     * 
+     * @return the rated candidates of all patterns and the best pattern, null
+     *         if no pattern was found
+     */
+    private @Nullable PatternMatch findPattern(PeakListRow[] rows, int i,
+            double[][] diff, double maxDiff, PeakListHandler plh) {
+
+        // i will represent the index of the row in peakList
+        if (rows[i].getPeakIdentities().length > 0)
+            return null;
+
+        // now get all peaks that lie within RT and maxIsotopeMassRange:
+        // pL[index].mz -> pL[index].mz+maxMass
+        final int[] groupedPeaks = groupPeaks(i, maxDiff);
+
+        if (groupedPeaks.length < 2)
+            return null;
+
+        final double[] groupedMZs = new double[groupedPeaks.length];
+        for (int j = 0; j < groupedPeaks.length; j++)
+            groupedMZs[j] = rowMZs[groupedPeaks[j]];
+
+        // this will store indexes in groupedPeaks
+        ResultBuffer[][] resultBuffer = new ResultBuffer[diff.length][];
+        boolean trueBuffers[] = new boolean[diff.length];
+        boolean foundOne = false;
+
+        for (int p = 0; p < diff.length; p++) {
+            // resultBuffer[p][k] will represent Isotope[k] of pattern p,
+            // [p][0] will be the isotope with lowest mass
+            resultBuffer[p] = new ResultBuffer[diff[p].length];
+
+            for (int k = 0; k < diff[p].length; k++) {
+                resultBuffer[p][k] = new ResultBuffer();
+
+                // j represents the row index in groupedPeaks. This will
+                // automatically add groupedPeaks[0] to the list -> isotope
+                // with lowest mass
+                Range<Double> mzRange = mzTolerance
+                        .getToleranceRange(groupedMZs[0] + diff[p][k]);
+                for (int j = lowerBound(groupedMZs, 0, groupedMZs.length,
+                        mzRange.lowerEndpoint()); j < groupedMZs.length
+                                && groupedMZs[j] <= mzRange
+                                        .upperEndpoint(); j++) {
+                    if (!mzRange.contains(groupedMZs[j]))
+                        continue;
+                    resultBuffer[p][k].addFound(); // +1 result for isotope k
+                    resultBuffer[p][k].addRow(j); // row in groupedPeaks[]
+                    resultBuffer[p][k].addID(rows[groupedPeaks[j]].getID());
+                }
+            }
+
+            // this means that for every isotope we expected to find, we found
+            // one or more possible features
+            if (checkIfAllTrue(resultBuffer[p])) {
+                foundOne = true;
+                trueBuffers[p] = true;
+            }
+        }
+        if (!foundOne)
+            return null;
+
+        Candidates[] candidates = new Candidates[diff.length];
+        for (int p = 0; p < diff.length; p++)
+            candidates[p] = new Candidates(diff[p].length, minHeight,
+                    mzTolerance, pattern[p], massListName, plh, ratingType);
+
+        final PeakListRow parent = rows[groupedPeaks[0]];
+        for (int p = 0; p < diff.length; p++) {
+            if (!trueBuffers[p])
+                continue;
+            for (int k = 0; k < resultBuffer[p].length; k++) {
+                for (int l = 0; l < resultBuffer[p][k].getFoundCount(); l++) {
+                    // k represents index resultBuffer[k] and thereby the
+                    // isotope number
+                    // l represents the number of results in resultBuffer[k]
+                    candidates[p].checkForBetterRating(k, parent,
+                            rows[groupedPeaks[resultBuffer[p][k].getRow(l)]],
+                            minRating, checkIntensity);
+                }
+            }
+        }
+
+        foundOne = false;
+        boolean trueCandidates[] = new boolean[diff.length];
+
+        for (int p = 0; p < diff.length; p++) {
+            if (trueBuffers[p]
+                    && checkIfAllTrue(candidates[p].getCandidates())) {
+                trueCandidates[p] = true;
+                foundOne = true;
+            }
+        }
+        if (!foundOne)
+            return null;
+
+        // find best result now, first we have to calc avg ratings if
+        // specified by user
+        int bestPatternIndex = 0;
+        double bestRating = 0.0;
+        for (int p = 0; p < diff.length; p++) {
+
+            if (!trueCandidates[p])
+                continue;
+
+            if (accurateAvgIntensity)
+                candidates[p].calcAvgRatings();
+            // this is a final rating, with averaged intensities in all
+            // mass lists that contain EVERY peak that was selected.
+            // thats why we can only do it after ALL peaks have been
+            // found
+
+            if (accurateAvgIntensity
+                    && candidates[p].getAvgAccAvgRating() > bestRating) {
+                bestPatternIndex = p;
+                bestRating = candidates[p].getAvgAccAvgRating();
+            } else if (!accurateAvgIntensity
+                    && candidates[p].getSimpleAvgRating() > bestRating) {
+                bestPatternIndex = p;
+                bestRating = candidates[p].getSimpleAvgRating();
+            }
+        }
+
+        return new PatternMatch(candidates, bestPatternIndex);
+    }
+
     /**
      * 
      * @param b
@@ -779,51 +789,73 @@ public class IsotopePeakScannerTask extends AbstractTask {
 
     /**
      * 
-     * @param pL
      * @param parentIndex
-     *            index of possible parent peak
-     * @param maxMass
-     * @return will return ArrayList<PeakListRow> of all peaks within the range
-     *         of pL[parentIndex].mz -> pL[parentIndex].mz+maxMass
+     *            index of possible parent peak in the m/z-sorted rows
+     * @param maxDiff
+     * @return indexes of all rows within the range of mz[parentIndex] ->
+     *         mz[parentIndex]+maxDiff, starting with parentIndex. The indexes
+     *         are in ascending order and thereby sorted by m/z.
      */
-    private ArrayList<PeakListRow> groupPeaks(PeakListRow[] pL, int parentIndex,
-            double maxDiff) {
-
-        ArrayList<PeakListRow> buf = new ArrayList<PeakListRow>();
+    private int[] groupPeaks(int parentIndex, double maxDiff) {
 
-        buf.add(pL[parentIndex]); // this means the result will contain
-                                  // row(parentIndex) itself
+        final double mz = rowMZs[parentIndex];
+        final double rt = rowRTs[parentIndex];
+        final double maxMZ = mz + maxDiff + mzTolerance.getMzTolerance();
 
-        double mz = pL[parentIndex].getAverageMZ();
-        double rt = pL[parentIndex].getAverageRT();
+        // rows are sorted by ascending mass, so the group ends before the
+        // first row above maxMZ
+        final int end = upperBound(rowMZs, parentIndex + 1, rowMZs.length,
+                maxMZ);
 
-        for (int i = parentIndex + 1; i < pL.length; i++) // will not add the
-                                                          // parent peak itself
-        {
-            PeakListRow r = pL[i];
-            // check for rt
+        int[] buf = new int[end - parentIndex];
+        int size = 0;
+        buf[size++] = parentIndex; // this means the result will contain
+                                   // row(parentIndex) itself
 
-            if (r.getAverageHeight() < minHeight)
+        for (int i = parentIndex + 1; i < end; i++) {
+            if (rowHeights[i] < minHeight || !(rowMZs[i] > mz))
                 continue;
 
-            if (!(pL[i].getAverageMZ() > mz && pL[i].getAverageMZ() <= (mz
-                    + maxDiff + mzTolerance.getMzTolerance()))) {
-
-                if (pL[i].getAverageMZ() > (mz + maxDiff)) // since pL is sorted
-                                                           // by ascending mass,
-                                                           // we can
-                    // stop now
-                    return buf;
+            if (checkRT && !rtTolerance.checkWithinTolerance(rt, rowRTs[i]))
                 continue;
-            }
 
-            if (checkRT
-                    && !rtTolerance.checkWithinTolerance(rt, r.getAverageRT()))
-                continue;
+            buf[size++] = i;
+        }
+        return Arrays.copyOf(buf, size);
+    }
 
-            buf.add(pL[i]);
+    /**
+     * @return index of the first value in values[from, to) that is greater
+     *         than key, values must be sorted in ascending order
+     */
+    private static int upperBound(double[] values, int from, int to,
+            double key) {
+        int low = from, high = to;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (values[mid] <= key)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return index of the first value in values[from, to) that is greater
+     *         than or equal to key, values must be sorted in ascending order
+     */
+    private static int lowerBound(double[] values, int from, int to,
+            double key) {
+        int low = from, high = to;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (values[mid] < key)
+                low = mid + 1;
+            else
+                high = mid;
         }
-        return buf;
+        return low;
     }
 
     /**
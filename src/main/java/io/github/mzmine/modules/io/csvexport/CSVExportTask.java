@@ -398,6 +398,21 @@ public class CSVExportTask extends AbstractTask {
                             line.append(
                                     peak.getAsymmetryFactor() + fieldSeparator);
                             break;
+                        case PEAK_GAUSSIANSIMILARITY:
+                            line.append((peak.getGaussianSimilarity() != null
+                                    ? peak.getGaussianSimilarity()
+                                    : "") + fieldSeparator);
+                            break;
+                        case PEAK_JAGGEDNESS:
+                            line.append((peak.getJaggedness() != null
+                                    ? peak.getJaggedness()
+                                    : "") + fieldSeparator);
+                            break;
+                        case PEAK_SHARPNESS:
+                            line.append((peak.getSharpness() != null
+                                    ? peak.getSharpness()
+                                    : "") + fieldSeparator);
+                            break;
                         case PEAK_MZMIN:
                             line.append(peak.getRawDataPointsMZRange()
                                     .lowerEndpoint() + fieldSeparator);
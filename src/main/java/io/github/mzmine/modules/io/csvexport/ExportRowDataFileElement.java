@@ -36,6 +36,12 @@ public enum ExportRowDataFileElement {
                                                                             "Peak tailing factor",
                                                                             false), PEAK_ASYMMETRYFACTOR(
                                                                                     "Peak asymmetry factor",
+                                                                                    false), PEAK_GAUSSIANSIMILARITY(
+                                                                                    "Peak Gaussian similarity",
+                                                                                    false), PEAK_JAGGEDNESS(
+                                                                                    "Peak jaggedness",
+                                                                                    false), PEAK_SHARPNESS(
+                                                                                    "Peak sharpness",
                                                                                     false), PEAK_MZMIN(
                                                                                             "Peak m/z min",
                                                                                             false), PEAK_MZMAX(
@@ -34,6 +34,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.Feature;
@@ -45,7 +46,7 @@ import io.github.mzmine.datamodel.impl.SimpleFeature;
 import io.github.mzmine.datamodel.impl.SimplePeakListRow;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.tools.msmsspectramerge.MergedSpectrum;
-import io.github.mzmine.modules.tools.msmsspectramerge.MsMsSpectraMergeModule;
+import io.github.mzmine.modules.tools.msmsspectramerge.MsMsSpectraMergeService;
 import io.github.mzmine.modules.tools.msmsspectramerge.MsMsSpectraMergeParameters;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.AbstractTask;
@@ -171,6 +172,17 @@ public class GnpsFbmnExportTask extends AbstractTask {
             throws IOException {
         final String newLine = System.lineSeparator();
 
+        // merge the MS/MS spectra of all exported rows (with a fragment scan)
+        // in parallel
+        if (mergeParameters != null)
+            MsMsSpectraMergeService.getInstance().mergeRows(mergeParameters,
+                    Arrays.stream(peakList.getRows())
+                            .filter(row -> Arrays.stream(row.getPeaks())
+                                    .anyMatch(peak -> peak
+                                            .getMostIntenseFragmentScanNumber() >= 1))
+                            .collect(Collectors.toList()),
+                    massListName);
+
         for (PeakListRow row : peakList.getRows()) {
             String rowID = Integer.toString(row.getID());
 
@@ -243,10 +255,9 @@ public class GnpsFbmnExportTask extends AbstractTask {
                 writer.write("MSLEVEL=2" + newLine);
                 DataPoint[] dataPoints = massList.getDataPoints();
                 if (mergeParameters != null) {
-                    MsMsSpectraMergeModule merger = MZmineCore
-                            .getModuleInstance(MsMsSpectraMergeModule.class);
-                    MergedSpectrum spectrum = merger.getBestMergedSpectrum(
-                            mergeParameters, row, massListName);
+                    MergedSpectrum spectrum = MsMsSpectraMergeService
+                            .getInstance().getBestMergedSpectrum(
+                                    mergeParameters, row, massListName);
                     if (spectrum != null) {
                         dataPoints = spectrum.data;
                         writer.write("MERGED_STATS=");
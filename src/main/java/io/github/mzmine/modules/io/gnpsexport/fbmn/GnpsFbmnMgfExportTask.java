@@ -39,6 +39,7 @@ import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.Feature;
@@ -51,7 +52,7 @@ import io.github.mzmine.datamodel.impl.SimplePeakListRow;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.io.gnpsexport.fbmn.GnpsFbmnExportAndSubmitParameters.RowFilter;
 import io.github.mzmine.modules.tools.msmsspectramerge.MergedSpectrum;
-import io.github.mzmine.modules.tools.msmsspectramerge.MsMsSpectraMergeModule;
+import io.github.mzmine.modules.tools.msmsspectramerge.MsMsSpectraMergeService;
 import io.github.mzmine.modules.tools.msmsspectramerge.MsMsSpectraMergeParameters;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.AbstractTask;
@@ -197,6 +198,14 @@ public class GnpsFbmnMgfExportTask extends AbstractTask {
         // count exported
         int count = 0;
         int countMissingMassList = 0;
+
+        // merge the MS/MS spectra of all exported rows in parallel
+        if (mergeParameters != null)
+            MsMsSpectraMergeService.getInstance().mergeRows(mergeParameters,
+                    Arrays.stream(peakList.getRows()).filter(filter::filter)
+                            .collect(Collectors.toList()),
+                    massListName);
+
         for (PeakListRow row : peakList.getRows()) {
             // do not export if no MSMS
             if (!filter.filter(row))
@@ -277,10 +286,9 @@ public class GnpsFbmnMgfExportTask extends AbstractTask {
 
                 DataPoint[] dataPoints = massList.getDataPoints();
                 if (mergeParameters != null) {
-                    MsMsSpectraMergeModule merger = MZmineCore
-                            .getModuleInstance(MsMsSpectraMergeModule.class);
-                    MergedSpectrum spectrum = merger.getBestMergedSpectrum(
-                            mergeParameters, row, massListName);
+                    MergedSpectrum spectrum = MsMsSpectraMergeService
+                            .getInstance().getBestMergedSpectrum(
+                                    mergeParameters, row, massListName);
                     if (spectrum != null) {
                         dataPoints = spectrum.data;
                         writer.write("MERGED_STATS=");
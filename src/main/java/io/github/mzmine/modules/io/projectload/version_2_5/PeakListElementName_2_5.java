@@ -46,7 +46,10 @@ public enum PeakListElementName_2_5 {
                                                                                                                                                                                             "method_parameters"), REPRESENTATIVE_SCAN(
                                                                                                                                                                                                     "best_scan"), FRAGMENT_SCAN(
                                                                                                                                                                                                             "fragment_scan"), ALL_MS2_FRAGMENT_SCANS(
-                                                                                                                                                                                                                    "all_MS2_fragment_scans"), PARENT_CHROMATOGRAM_ROW_ID(
+                                                                                                                                                                                                                    "all_MS2_fragment_scans"), GAUSSIAN_SIMILARITY(
+                                                                                                                                                                                                                    "gaussian_similarity"), JAGGEDNESS(
+                                                                                                                                                                                                                    "jaggedness"), SHARPNESS(
+                                                                                                                                                                                                                    "sharpness"), PARENT_CHROMATOGRAM_ROW_ID(
                                                                                                                                                                                                                             "parent_chromatogram_row_id");
 
     private String elementName;
@@ -89,6 +89,7 @@ public class PeakListOpenHandler_2_5 extends DefaultHandler
     private String currentIsotopePatternDescription;
 
     private Integer parentChromatogramRowID = null;
+    private Double gaussianSimilarity, jaggedness, sharpness;
 
     private Hashtable<String, RawDataFile> dataFilesIDMap;
 
@@ -235,6 +236,13 @@ public class PeakListOpenHandler_2_5 extends DefaultHandler
             } catch (NumberFormatException e) {
                 parentChromatogramRowID = null;
             }
+            gaussianSimilarity = parseOptionalDouble(attrs.getValue(
+                    PeakListElementName_2_5.GAUSSIAN_SIMILARITY
+                            .getElementName()));
+            jaggedness = parseOptionalDouble(attrs.getValue(
+                    PeakListElementName_2_5.JAGGEDNESS.getElementName()));
+            sharpness = parseOptionalDouble(attrs.getValue(
+                    PeakListElementName_2_5.SHARPNESS.getElementName()));
         }
 
         // <MZPEAK>
@@ -443,6 +451,11 @@ public class PeakListOpenHandler_2_5 extends DefaultHandler
 
             peak.setParentChromatogramRowID(parentChromatogramRowID);
 
+            if ((gaussianSimilarity != null) || (jaggedness != null)
+                    || (sharpness != null))
+                peak.setPeakShapeMetrics(gaussianSimilarity, jaggedness,
+                        sharpness);
+
             buildingRow.addPeak(dataFile, peak);
 
         }
@@ -518,6 +531,20 @@ public class PeakListOpenHandler_2_5 extends DefaultHandler
         return text;
     }
 
+    /**
+     * @return the attribute value as a Double, or null if it is missing or
+     *         not a number
+     */
+    private Double parseOptionalDouble(String value) {
+        if (value == null)
+            return null;
+        try {
+            return Double.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     /**
      * characters()
      * 
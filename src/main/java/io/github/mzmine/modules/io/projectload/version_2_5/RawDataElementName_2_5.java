@@ -38,7 +38,11 @@ enum RawDataElementName_2_5 {
                                                                                                                             "storage_id"), POLARITY(
                                                                                                                                     "polarity"), SCAN_DESCRIPTION(
                                                                                                                                             "scan_description"), SCAN_MZ_RANGE(
-                                                                                                                                                    "scan_mz_range");
+                                                                                                                                                    "scan_mz_range"), TIC(
+                                                                                                                                                            "tic"), BASE_PEAK_MZ(
+                                                                                                                                                                    "base_peak_mz"), BASE_PEAK_INTENSITY(
+                                                                                                                                                                            "base_peak_intensity"), DATA_MZ_RANGE(
+                                                                                                                                                                                    "data_mz_range");
 
     private String elementName;
 
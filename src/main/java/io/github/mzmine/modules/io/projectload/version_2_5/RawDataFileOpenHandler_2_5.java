@@ -35,8 +35,10 @@ import org.xml.sax.helpers.DefaultHandler;
 
 import com.google.common.collect.Range;
 
+import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.PolarityType;
 import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.io.projectload.RawDataFileOpenHandler;
 import io.github.mzmine.project.impl.RawDataFileImpl;
@@ -69,6 +71,9 @@ public class RawDataFileOpenHandler_2_5 extends DefaultHandler
     private PolarityType polarity = PolarityType.UNKNOWN;
     private String scanDescription = "";
     private Range<Double> scanMZRange = null;
+    private Double totalIonCurrent = null;
+    private Double basePeakMZ = null, basePeakIntensity = null;
+    private Range<Double> dataMZRange = null;
 
     private boolean canceled = false;
 
@@ -219,6 +224,25 @@ public class RawDataFileOpenHandler_2_5 extends DefaultHandler
             scanMZRange = RangeUtils.parseRange(text);
         }
 
+        if (qName.equals(RawDataElementName_2_5.TIC.getElementName())) {
+            totalIonCurrent = Double.parseDouble(getTextOfElement());
+        }
+
+        if (qName
+                .equals(RawDataElementName_2_5.BASE_PEAK_MZ.getElementName())) {
+            basePeakMZ = Double.parseDouble(getTextOfElement());
+        }
+
+        if (qName.equals(
+                RawDataElementName_2_5.BASE_PEAK_INTENSITY.getElementName())) {
+            basePeakIntensity = Double.parseDouble(getTextOfElement());
+        }
+
+        if (qName.equals(
+                RawDataElementName_2_5.DATA_MZ_RANGE.getElementName())) {
+            dataMZRange = RangeUtils.parseRange(getTextOfElement());
+        }
+
         if (qName.equals(
                 RawDataElementName_2_5.PRECURSOR_CHARGE.getElementName())) {
             precursorCharge = Integer.parseInt(getTextOfElement());
@@ -249,10 +273,18 @@ public class RawDataFileOpenHandler_2_5 extends DefaultHandler
 
         if (qName.equals(RawDataElementName_2_5.SCAN.getElementName())) {
 
+            // Projects saved by older versions do not contain the TIC, base
+            // peak and m/z range of the data points, so they are calculated
+            // from the data points
+            DataPoint basePeak = null;
+            if ((basePeakMZ != null) && (basePeakIntensity != null))
+                basePeak = new SimpleDataPoint(basePeakMZ, basePeakIntensity);
+
             StorableScan storableScan = new StorableScan(newRawDataFile,
                     currentStorageID, dataPointsNumber, scanNumber, msLevel,
                     retentionTime, precursorMZ, precursorCharge, fragmentScan,
-                    null, polarity, scanDescription, scanMZRange);
+                    null, polarity, scanDescription, scanMZRange,
+                    totalIonCurrent, basePeak, dataMZRange);
 
             try {
                 newRawDataFile.addScan(storableScan);
@@ -278,6 +310,10 @@ public class RawDataFileOpenHandler_2_5 extends DefaultHandler
             polarity = PolarityType.UNKNOWN;
             scanDescription = "";
             scanMZRange = null;
+            totalIonCurrent = null;
+            basePeakMZ = null;
+            basePeakIntensity = null;
+            dataMZRange = null;
 
         }
     }
@@ -48,7 +48,9 @@ enum PeakListElementName {
                                                                                                                                                                                                             "fragment_scan"), ALL_MS2_FRAGMENT_SCANS(
                                                                                                                                                                                                                     "all_MS2_fragment_scans"), INDEX(
                                                                                                                                                                                                                             "index"), SHARPNESS(
-                                                                                                                                                                                                                                    "sharpness"), PARENT_CHROMATOGRAM_ROW_ID(
+                                                                                                                                                                                                                                    "sharpness"), GAUSSIAN_SIMILARITY(
+                                                                                                                                                                                                                                    "gaussian_similarity"), JAGGEDNESS(
+                                                                                                                                                                                                                                    "jaggedness"), PARENT_CHROMATOGRAM_ROW_ID(
                                                                                                                                                                                                                                             "parent_chromatogram_row_id");
 
     private String elementName;
@@ -284,6 +284,20 @@ public class PeakListSaveHandler {
                     p.getParentChromatogramRowID() != null
                             ? String.valueOf(p.getParentChromatogramRowID())
                             : "");
+            // Peak shape metrics, if they were calculated
+            if (p.getGaussianSimilarity() != null)
+                atts.addAttribute("", "",
+                        PeakListElementName.GAUSSIAN_SIMILARITY
+                                .getElementName(),
+                        "CDATA", String.valueOf(p.getGaussianSimilarity()));
+            if (p.getJaggedness() != null)
+                atts.addAttribute("", "",
+                        PeakListElementName.JAGGEDNESS.getElementName(),
+                        "CDATA", String.valueOf(p.getJaggedness()));
+            if (p.getSharpness() != null)
+                atts.addAttribute("", "",
+                        PeakListElementName.SHARPNESS.getElementName(),
+                        "CDATA", String.valueOf(p.getSharpness()));
             hd.startElement("", "", PeakListElementName.PEAK.getElementName(),
                     atts);
 
@@ -39,6 +39,7 @@ import org.xml.sax.helpers.AttributesImpl;
 
 import com.google.common.collect.Range;
 
+import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MassList;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.project.impl.RawDataFileImpl;
@@ -358,6 +359,45 @@ class RawDataFileSaveHandler {
         hd.endElement("", "",
                 RawDataElementName.SCAN_MZ_RANGE.getElementName());
 
+        // <TIC>
+        hd.startElement("", "", RawDataElementName.TIC.getElementName(),
+                atts);
+        String tic = String.valueOf(scan.getTIC());
+        hd.characters(tic.toCharArray(), 0, tic.length());
+        hd.endElement("", "", RawDataElementName.TIC.getElementName());
+
+        DataPoint basePeak = scan.getHighestDataPoint();
+        if (basePeak != null) {
+            // <BASE_PEAK_MZ>
+            hd.startElement("", "",
+                    RawDataElementName.BASE_PEAK_MZ.getElementName(), atts);
+            String basePeakMZ = String.valueOf(basePeak.getMZ());
+            hd.characters(basePeakMZ.toCharArray(), 0, basePeakMZ.length());
+            hd.endElement("", "",
+                    RawDataElementName.BASE_PEAK_MZ.getElementName());
+
+            // <BASE_PEAK_INTENSITY>
+            hd.startElement("", "",
+                    RawDataElementName.BASE_PEAK_INTENSITY.getElementName(),
+                    atts);
+            String basePeakIntensity = String.valueOf(basePeak.getIntensity());
+            hd.characters(basePeakIntensity.toCharArray(), 0,
+                    basePeakIntensity.length());
+            hd.endElement("", "",
+                    RawDataElementName.BASE_PEAK_INTENSITY.getElementName());
+        }
+
+        // <DATA_MZ_RANGE>
+        hd.startElement("", "",
+                RawDataElementName.DATA_MZ_RANGE.getElementName(), atts);
+        Range<Double> dataMZRange = scan.getDataPointMZRange();
+        String dataMZRangeStr = dataMZRange.lowerEndpoint() + "-"
+                + dataMZRange.upperEndpoint();
+        hd.characters(dataMZRangeStr.toCharArray(), 0,
+                dataMZRangeStr.length());
+        hd.endElement("", "",
+                RawDataElementName.DATA_MZ_RANGE.getElementName());
+
     }
 
     /**
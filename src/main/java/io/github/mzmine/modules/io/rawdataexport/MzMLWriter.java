@@ -0,0 +1,343 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.rawdataexport;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.io.mzml.data.MzMLCompressionType;
+import io.github.msdk.io.mzml.util.MSNumpress;
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.main.MZmineCore;
+
+/**
+ * Writes a raw data file as indexed mzML 1.1. The peak arrays are zlib
+ * compressed, optionally after MS-Numpress compression (linear prediction for
+ * m/z, short logged float for intensities).
+ */
+class MzMLWriter extends RawDataWriter {
+
+    private static final String SCAN_INDENTATION = "\n      ";
+
+    private final boolean numpress;
+
+    MzMLWriter(RawDataFile dataFile, File outputFile, boolean numpress) {
+        super(dataFile, outputFile);
+        this.numpress = numpress;
+    }
+
+    @Override
+    protected void writeHeader(int scanNumbers[]) throws IOException {
+        final String id = escape(dataFile.getName());
+
+        boolean hasMS1 = false, hasMSn = false;
+        for (int scanNumber : scanNumbers) {
+            if (dataFile.getScan(scanNumber).getMSLevel() == 1)
+                hasMS1 = true;
+            else
+                hasMSn = true;
+        }
+
+        StringBuilder header = new StringBuilder();
+        header.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        header.append("<indexedmzML xmlns=\"http://psi.hupo.org/ms/mzml\" "
+                + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" "
+                + "xsi:schemaLocation=\"http://psi.hupo.org/ms/mzml "
+                + "http://psidev.info/files/ms/mzML/xsd/mzML1.1.2_idx.xsd\">\n");
+        header.append("  <mzML xmlns=\"http://psi.hupo.org/ms/mzml\" "
+                + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" "
+                + "xsi:schemaLocation=\"http://psi.hupo.org/ms/mzml "
+                + "http://psidev.info/files/ms/mzML/xsd/mzML1.1.0.xsd\" id=\"")
+                .append(id).append("\" version=\"1.1.0\">\n");
+        header.append("    <cvList count=\"2\">\n");
+        header.append("      <cv id=\"MS\" fullName=\"Proteomics Standards "
+                + "Initiative Mass Spectrometry Ontology\" "
+                + "URI=\"https://raw.githubusercontent.com/HUPO-PSI/psi-ms-CV/master/psi-ms.obo\"/>\n");
+        header.append("      <cv id=\"UO\" fullName=\"Unit Ontology\" "
+                + "URI=\"https://raw.githubusercontent.com/bio-ontology-research-group/unit-ontology/master/unit.obo\"/>\n");
+        header.append("    </cvList>\n");
+        header.append("    <fileDescription>\n");
+        header.append("      <fileContent>\n");
+        if (hasMS1)
+            header.append("        ")
+                    .append(cvParam("MS:1000579", "MS1 spectrum", ""))
+                    .append('\n');
+        if (hasMSn)
+            header.append("        ")
+                    .append(cvParam("MS:1000580", "MSn spectrum", ""))
+                    .append('\n');
+        header.append("      </fileContent>\n");
+        header.append("    </fileDescription>\n");
+        header.append("    <softwareList count=\"1\">\n");
+        header.append("      <software id=\"MZmine\" version=\"")
+                .append(escape(MZmineCore.getMZmineVersion()))
+                .append("\">\n");
+        header.append("        ").append(cvParam("MS:1002342", "MZmine", ""))
+                .append('\n');
+        header.append("      </software>\n");
+        header.append("    </softwareList>\n");
+        header.append("    <instrumentConfigurationList count=\"1\">\n");
+        header.append("      <instrumentConfiguration id=\"IC1\">\n");
+        header.append("        ")
+                .append(cvParam("MS:1000031", "instrument model", ""))
+                .append('\n');
+        header.append("      </instrumentConfiguration>\n");
+        header.append("    </instrumentConfigurationList>\n");
+        header.append("    <dataProcessingList count=\"1\">\n");
+        header.append("      <dataProcessing id=\"MZmine_export\">\n");
+        header.append("        <processingMethod order=\"0\" "
+                + "softwareRef=\"MZmine\">\n");
+        header.append("          ")
+                .append(cvParam("MS:1000544", "Conversion to mzML", ""))
+                .append('\n');
+        header.append("        </processingMethod>\n");
+        header.append("      </dataProcessing>\n");
+        header.append("    </dataProcessingList>\n");
+        header.append("    <run id=\"").append(id)
+                .append("\" defaultInstrumentConfigurationRef=\"IC1\">\n");
+        header.append("      <spectrumList count=\"").append(scanNumbers.length)
+                .append("\" defaultDataProcessingRef=\"MZmine_export\">");
+        write(header.toString());
+    }
+
+    @Override
+    protected String getScanIndentation() {
+        return SCAN_INDENTATION;
+    }
+
+    @Override
+    protected byte[] encodeScan(int index, Scan scan) {
+        final DataPoint dataPoints[] = scan.getDataPoints();
+        final double peaks[][] = getPeakArrays(dataPoints);
+
+        StringBuilder xml = new StringBuilder(256 + dataPoints.length * 12);
+        xml.append("<spectrum index=\"").append(index)
+                .append("\" id=\"scan=").append(scan.getScanNumber())
+                .append("\" defaultArrayLength=\"").append(dataPoints.length)
+                .append("\">\n");
+
+        final String indent = "          ";
+        appendLine(xml, indent, cvParam("MS:1000511", "ms level",
+                String.valueOf(scan.getMSLevel())));
+        if (scan.getMSLevel() == 1)
+            appendLine(xml, indent, cvParam("MS:1000579", "MS1 spectrum", ""));
+        else
+            appendLine(xml, indent, cvParam("MS:1000580", "MSn spectrum", ""));
+        if (scan.getSpectrumType() == MassSpectrumType.PROFILE)
+            appendLine(xml, indent,
+                    cvParam("MS:1000128", "profile spectrum", ""));
+        else
+            appendLine(xml, indent,
+                    cvParam("MS:1000127", "centroid spectrum", ""));
+        if (scan.getPolarity() == PolarityType.POSITIVE)
+            appendLine(xml, indent, cvParam("MS:1000130", "positive scan", ""));
+        else if (scan.getPolarity() == PolarityType.NEGATIVE)
+            appendLine(xml, indent, cvParam("MS:1000129", "negative scan", ""));
+        appendLine(xml, indent, cvParam("MS:1000285", "total ion current",
+                String.valueOf(scan.getTIC())));
+        final DataPoint basePeak = scan.getHighestDataPoint();
+        if (basePeak != null) {
+            appendLine(xml, indent,
+                    cvParam("MS:1000504", "base peak m/z",
+                            String.valueOf(basePeak.getMZ()), "MS",
+                            "MS:1000040", "m/z"));
+            appendLine(xml, indent,
+                    cvParam("MS:1000505", "base peak intensity",
+                            String.valueOf(basePeak.getIntensity()), "MS",
+                            "MS:1000131", "number of detector counts"));
+        }
+        if (dataPoints.length > 0) {
+            appendLine(xml, indent,
+                    cvParam("MS:1000528", "lowest observed m/z",
+                            String.valueOf(peaks[0][0]), "MS", "MS:1000040",
+                            "m/z"));
+            appendLine(xml, indent,
+                    cvParam("MS:1000527", "highest observed m/z",
+                            String.valueOf(peaks[0][dataPoints.length - 1]),
+                            "MS", "MS:1000040", "m/z"));
+        }
+
+        // Scan
+        xml.append(indent).append("<scanList count=\"1\">\n");
+        appendLine(xml, indent + "  ",
+                cvParam("MS:1000795", "no combination", ""));
+        xml.append(indent).append("  <scan>\n");
+        appendLine(xml, indent + "    ",
+                cvParam("MS:1000016", "scan start time",
+                        String.valueOf(scan.getRetentionTime()), "UO",
+                        "UO:0000031", "minute"));
+        final String definition = scan.getScanDefinition();
+        if (definition != null && !definition.isEmpty())
+            appendLine(xml, indent + "    ",
+                    cvParam("MS:1000512", "filter string", definition));
+        final Range<Double> scanningRange = scan.getScanningMZRange();
+        xml.append(indent).append("    <scanWindowList count=\"1\">\n");
+        xml.append(indent).append("      <scanWindow>\n");
+        appendLine(xml, indent + "        ",
+                cvParam("MS:1000501", "scan window lower limit",
+                        String.valueOf(scanningRange.lowerEndpoint()), "MS",
+                        "MS:1000040", "m/z"));
+        appendLine(xml, indent + "        ",
+                cvParam("MS:1000500", "scan window upper limit",
+                        String.valueOf(scanningRange.upperEndpoint()), "MS",
+                        "MS:1000040", "m/z"));
+        xml.append(indent).append("      </scanWindow>\n");
+        xml.append(indent).append("    </scanWindowList>\n");
+        xml.append(indent).append("  </scan>\n");
+        xml.append(indent).append("</scanList>\n");
+
+        // Precursor
+        if (scan.getMSLevel() > 1 && scan.getPrecursorMZ() > 0) {
+            xml.append(indent).append("<precursorList count=\"1\">\n");
+            xml.append(indent).append("  <precursor>\n");
+            xml.append(indent).append("    <selectedIonList count=\"1\">\n");
+            xml.append(indent).append("      <selectedIon>\n");
+            appendLine(xml, indent + "        ",
+                    cvParam("MS:1000744", "selected ion m/z",
+                            String.valueOf(scan.getPrecursorMZ()), "MS",
+                            "MS:1000040", "m/z"));
+            if (scan.getPrecursorCharge() > 0)
+                appendLine(xml, indent + "        ",
+                        cvParam("MS:1000041", "charge state",
+                                String.valueOf(scan.getPrecursorCharge())));
+            xml.append(indent).append("      </selectedIon>\n");
+            xml.append(indent).append("    </selectedIonList>\n");
+            xml.append(indent).append("    <activation/>\n");
+            xml.append(indent).append("  </precursor>\n");
+            xml.append(indent).append("</precursorList>\n");
+        }
+
+        // Peaks
+        xml.append(indent).append("<binaryDataArrayList count=\"2\">\n");
+        if (numpress) {
+            appendBinaryArray(xml, indent + "  ",
+                    encodeNumpressLinear(peaks[0]), 64,
+                    MzMLCompressionType.NUMPRESS_LINPRED_ZLIB,
+                    cvParam("MS:1000514", "m/z array", "", "MS", "MS:1000040",
+                            "m/z"));
+            appendBinaryArray(xml, indent + "  ",
+                    encodeNumpressSlof(peaks[1]), 64,
+                    MzMLCompressionType.NUMPRESS_SHLOGF_ZLIB,
+                    cvParam("MS:1000515", "intensity array", "", "MS",
+                            "MS:1000131", "number of detector counts"));
+        } else {
+            appendBinaryArray(xml, indent + "  ",
+                    toBytes(peaks[0], 64, ByteOrder.LITTLE_ENDIAN), 64,
+                    MzMLCompressionType.ZLIB,
+                    cvParam("MS:1000514", "m/z array", "", "MS", "MS:1000040",
+                            "m/z"));
+            appendBinaryArray(xml, indent + "  ",
+                    toBytes(peaks[1], 32, ByteOrder.LITTLE_ENDIAN), 32,
+                    MzMLCompressionType.ZLIB,
+                    cvParam("MS:1000515", "intensity array", "", "MS",
+                            "MS:1000131", "number of detector counts"));
+        }
+        xml.append(indent).append("</binaryDataArrayList>\n");
+        xml.append("        </spectrum>");
+
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected void writeFooter(int scanNumbers[], long offsets[])
+            throws IOException {
+        write("\n      </spectrumList>\n    </run>\n  </mzML>\n");
+
+        final long indexListOffset = getOffset();
+        StringBuilder index = new StringBuilder();
+        index.append("  <indexList count=\"1\">\n");
+        index.append("    <index name=\"spectrum\">\n");
+        for (int i = 0; i < scanNumbers.length; i++) {
+            index.append("      <offset idRef=\"scan=").append(scanNumbers[i])
+                    .append("\">").append(offsets[i]).append("</offset>\n");
+        }
+        index.append("    </index>\n");
+        index.append("  </indexList>\n");
+        index.append("  <indexListOffset>").append(indexListOffset)
+                .append("</indexListOffset>\n");
+        index.append("  <fileChecksum>");
+        write(index.toString());
+
+        // The checksum covers the file up to and including <fileChecksum>
+        write(getChecksum() + "</fileChecksum>\n</indexedmzML>\n");
+    }
+
+    private static void appendBinaryArray(StringBuilder xml, String indent,
+            byte data[], int precision, MzMLCompressionType compression,
+            String arrayType) {
+        final String encoded = base64(compress(data));
+        xml.append(indent).append("<binaryDataArray encodedLength=\"")
+                .append(encoded.length()).append("\">\n");
+        if (precision == 32)
+            appendLine(xml, indent + "  ",
+                    cvParam("MS:1000521", "32-bit float", ""));
+        else
+            appendLine(xml, indent + "  ",
+                    cvParam("MS:1000523", "64-bit float", ""));
+        appendLine(xml, indent + "  ", cvParam(compression.getAccession(),
+                compression.getName(), ""));
+        appendLine(xml, indent + "  ", arrayType);
+        xml.append(indent).append("  <binary>").append(encoded)
+                .append("</binary>\n");
+        xml.append(indent).append("</binaryDataArray>\n");
+    }
+
+    private static byte[] encodeNumpressLinear(double values[]) {
+        byte buffer[] = new byte[8 + values.length * 5];
+        int length = MSNumpress.encodeLinear(values, values.length, buffer,
+                MSNumpress.optimalLinearFixedPoint(values, values.length));
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private static byte[] encodeNumpressSlof(double values[]) {
+        byte buffer[] = new byte[8 + values.length * 2];
+        int length = MSNumpress.encodeSlof(values, values.length, buffer,
+                MSNumpress.optimalSlofFixedPoint(values, values.length));
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private static void appendLine(StringBuilder xml, String indent,
+            String line) {
+        xml.append(indent).append(line).append('\n');
+    }
+
+    private static String cvParam(String accession, String name,
+            String value) {
+        return "<cvParam cvRef=\"MS\" accession=\"" + accession + "\" name=\""
+                + name + "\" value=\"" + escape(value) + "\"/>";
+    }
+
+    private static String cvParam(String accession, String name, String value,
+            String unitCvRef, String unitAccession, String unitName) {
+        return "<cvParam cvRef=\"MS\" accession=\"" + accession + "\" name=\""
+                + name + "\" value=\"" + escape(value) + "\" unitCvRef=\""
+                + unitCvRef + "\" unitAccession=\"" + unitAccession
+                + "\" unitName=\"" + unitName + "\"/>";
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.rawdataexport;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.main.MZmineCore;
+
+/**
+ * Writes a raw data file as indexed mzXML 3.2. The peaks are written as zlib
+ * compressed, 64 bit m/z-intensity pairs. MS-Numpress is not part of the mzXML
+ * format.
+ */
+class MzXMLWriter extends RawDataWriter {
+
+    private static final String SCAN_INDENTATION = "\n    ";
+
+    MzXMLWriter(RawDataFile dataFile, File outputFile) {
+        super(dataFile, outputFile);
+    }
+
+    @Override
+    protected void writeHeader(int scanNumbers[]) throws IOException {
+        StringBuilder header = new StringBuilder();
+        header.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        header.append("<mzXML xmlns=\"http://sashimi.sourceforge.net/schema_revision/mzXML_3.2\" "
+                + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" "
+                + "xsi:schemaLocation=\"http://sashimi.sourceforge.net/schema_revision/mzXML_3.2 "
+                + "http://sashimi.sourceforge.net/schema_revision/mzXML_3.2/mzXML_idx_3.2.xsd\">\n");
+        header.append("  <msRun scanCount=\"").append(scanNumbers.length)
+                .append('"');
+        if (scanNumbers.length > 0) {
+            header.append(" startTime=\"")
+                    .append(toDuration(dataFile.getScan(scanNumbers[0])
+                            .getRetentionTime()))
+                    .append("\" endTime=\"")
+                    .append(toDuration(dataFile
+                            .getScan(scanNumbers[scanNumbers.length - 1])
+                            .getRetentionTime()))
+                    .append('"');
+        }
+        header.append(">\n");
+        header.append("    <dataProcessing>\n");
+        header.append("      <software type=\"conversion\" name=\"MZmine\" "
+                + "version=\"")
+                .append(escape(MZmineCore.getMZmineVersion()))
+                .append("\"/>\n");
+        header.append("    </dataProcessing>");
+        write(header.toString());
+    }
+
+    @Override
+    protected String getScanIndentation() {
+        return SCAN_INDENTATION;
+    }
+
+    @Override
+    protected byte[] encodeScan(int index, Scan scan) {
+        final DataPoint dataPoints[] = scan.getDataPoints();
+
+        StringBuilder xml = new StringBuilder(256 + dataPoints.length * 12);
+        xml.append("<scan num=\"").append(scan.getScanNumber())
+                .append("\" msLevel=\"").append(scan.getMSLevel())
+                .append("\" peaksCount=\"").append(dataPoints.length)
+                .append('"');
+        if (scan.getPolarity() == PolarityType.POSITIVE)
+            xml.append(" polarity=\"+\"");
+        else if (scan.getPolarity() == PolarityType.NEGATIVE)
+            xml.append(" polarity=\"-\"");
+        xml.append(" centroided=\"")
+                .append(scan.getSpectrumType() == MassSpectrumType.PROFILE ? 0
+                        : 1)
+                .append('"');
+        xml.append(" retentionTime=\"")
+                .append(toDuration(scan.getRetentionTime())).append('"');
+        if (dataPoints.length > 0) {
+            xml.append(" lowMz=\"").append(dataPoints[0].getMZ())
+                    .append("\" highMz=\"")
+                    .append(dataPoints[dataPoints.length - 1].getMZ())
+                    .append('"');
+        }
+        final DataPoint basePeak = scan.getHighestDataPoint();
+        if (basePeak != null) {
+            xml.append(" basePeakMz=\"").append(basePeak.getMZ())
+                    .append("\" basePeakIntensity=\"")
+                    .append(basePeak.getIntensity()).append('"');
+        }
+        xml.append(" totIonCurrent=\"").append(scan.getTIC()).append('"');
+        final String definition = scan.getScanDefinition();
+        if (definition != null && !definition.isEmpty())
+            xml.append(" filterLine=\"").append(escape(definition))
+                    .append('"');
+        xml.append(">\n");
+
+        if (scan.getMSLevel() > 1 && scan.getPrecursorMZ() > 0) {
+            xml.append("      <precursorMz precursorIntensity=\"0\"");
+            if (scan.getPrecursorCharge() > 0)
+                xml.append(" precursorCharge=\"")
+                        .append(scan.getPrecursorCharge()).append('"');
+            xml.append('>').append(scan.getPrecursorMZ())
+                    .append("</precursorMz>\n");
+        }
+
+        // m/z-intensity pairs
+        final double pairs[] = new double[dataPoints.length * 2];
+        for (int i = 0; i < dataPoints.length; i++) {
+            pairs[2 * i] = dataPoints[i].getMZ();
+            pairs[2 * i + 1] = dataPoints[i].getIntensity();
+        }
+        final byte compressed[] = compress(
+                toBytes(pairs, 64, ByteOrder.BIG_ENDIAN));
+        xml.append("      <peaks compressionType=\"zlib\" compressedLen=\"")
+                .append(compressed.length)
+                .append("\" precision=\"64\" byteOrder=\"network\" "
+                        + "contentType=\"m/z-int\">")
+                .append(base64(compressed)).append("</peaks>\n");
+        xml.append("    </scan>");
+
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected void writeFooter(int scanNumbers[], long offsets[])
+            throws IOException {
+        write("\n  </msRun>\n");
+
+        final long indexOffset = getOffset();
+        StringBuilder index = new StringBuilder();
+        index.append("  <index name=\"scan\">\n");
+        for (int i = 0; i < scanNumbers.length; i++) {
+            index.append("    <offset id=\"").append(scanNumbers[i])
+                    .append("\">").append(offsets[i]).append("</offset>\n");
+        }
+        index.append("  </index>\n");
+        index.append("  <indexOffset>").append(indexOffset)
+                .append("</indexOffset>\n");
+        index.append("  <sha1>");
+        write(index.toString());
+
+        // The checksum covers the file up to and including <sha1>
+        write(getChecksum() + "</sha1>\n</mzXML>\n");
+    }
+
+    /**
+     * @return the retention time (in minutes) as xs:duration in seconds, in
+     *         fixed-point notation as required by xs:duration
+     */
+    private static String toDuration(double retentionTime) {
+        return String.format(Locale.ENGLISH, "PT%.4fS", retentionTime * 60.0);
+    }
+
+}
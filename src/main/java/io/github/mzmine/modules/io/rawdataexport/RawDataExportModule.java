@@ -60,6 +60,9 @@ public class RawDataExportModule implements MZmineProcessingModule {
         case MZML:
             extension = "mzML";
             break;
+        case MZXML:
+            extension = "mzXML";
+            break;
         case NETCDF:
             extension = "cdf";
             break;
@@ -73,6 +76,9 @@ public class RawDataExportModule implements MZmineProcessingModule {
         if (!folder.isDirectory())
             folder = folder.getParentFile();
 
+        boolean numpress = parameters
+                .getParameter(RawDataExportParameters.numpress).getValue();
+
         RawDataFile[] dataFile = parameters
                 .getParameter(RawDataExportParameters.dataFiles).getValue()
                 .getMatchingRawDataFiles();
@@ -80,7 +86,7 @@ public class RawDataExportModule implements MZmineProcessingModule {
         for (RawDataFile r : dataFile) {
             File fullName = FileAndPathUtil.getRealFilePath(folder, r.getName(),
                     extension);
-            Task newTask = new RawDataExportTask(r, fullName);
+            Task newTask = new RawDataExportTask(r, fullName, numpress);
             tasks.add(newTask);
         }
         return ExitCode.OK;
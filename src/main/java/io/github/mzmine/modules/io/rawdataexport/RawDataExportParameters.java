@@ -20,6 +20,7 @@ package io.github.mzmine.modules.io.rawdataexport;
 
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.impl.SimpleParameterSet;
+import io.github.mzmine.parameters.parametertypes.BooleanParameter;
 import io.github.mzmine.parameters.parametertypes.ComboParameter;
 import io.github.mzmine.parameters.parametertypes.filenames.DirectoryParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
@@ -33,11 +34,16 @@ public class RawDataExportParameters extends SimpleParameterSet {
 
     public static final ComboParameter<RawDataFileType> type = new ComboParameter<>(
             "File type", "", new RawDataFileType[] { RawDataFileType.MZML,
-                    RawDataFileType.NETCDF },
+                    RawDataFileType.MZXML, RawDataFileType.NETCDF },
             RawDataFileType.MZML);
 
+    public static final BooleanParameter numpress = new BooleanParameter(
+            "MS-Numpress compression",
+            "Compress the peak arrays of mzML files with MS-Numpress. The files are considerably smaller, but m/z and intensity values are stored with slightly reduced precision.",
+            false);
+
     public RawDataExportParameters() {
-        super(new Parameter[] { dataFiles, fileName, type });
+        super(new Parameter[] { dataFiles, fileName, type, numpress });
     }
 
 }
@@ -22,8 +22,6 @@ import java.io.File;
 import java.util.logging.Logger;
 
 import io.github.msdk.MSDKMethod;
-import io.github.msdk.io.mzml.MzMLFileExportMethod;
-import io.github.msdk.io.mzml.data.MzMLCompressionType;
 import io.github.msdk.io.netcdf.NetCDFFileExportMethod;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.impl.MZmineToMSDKRawDataFile;
@@ -37,16 +35,26 @@ public class RawDataExportTask extends AbstractTask {
 
     // User parameters
     private File outFilename;
+    private boolean numpress;
 
     private MSDKMethod<?> msdkMethod = null;
+    private volatile RawDataWriter writer = null;
 
     /**
      * @param dataFile
-     * @param parameters
+     * @param outFilename
+     * @param numpress
+     *            compress mzML peak arrays with MS-Numpress
      */
-    public RawDataExportTask(RawDataFile dataFile, File outFilename) {
+    public RawDataExportTask(RawDataFile dataFile, File outFilename,
+            boolean numpress) {
         this.dataFile = dataFile;
         this.outFilename = outFilename;
+        this.numpress = numpress;
+    }
+
+    public RawDataExportTask(RawDataFile dataFile, File outFilename) {
+        this(dataFile, outFilename, false);
     }
 
     /**
@@ -60,6 +68,8 @@ public class RawDataExportTask extends AbstractTask {
      * @see io.github.mzmine.taskcontrol.Task#getFinishedPercentage()
      */
     public double getFinishedPercentage() {
+        if (writer != null)
+            return writer.getFinishedPercentage();
         if ((msdkMethod == null)
                 || (msdkMethod.getFinishedPercentage() == null))
             return 0;
@@ -78,22 +88,29 @@ public class RawDataExportTask extends AbstractTask {
             logger.info("Started export of file " + dataFile + " to "
                     + outFilename);
 
-            MZmineToMSDKRawDataFile msdkDataFile = new MZmineToMSDKRawDataFile(
-                    dataFile);
+            final String name = outFilename.getName().toLowerCase();
 
-            if (outFilename.getName().toLowerCase().endsWith("mzml")) {
-                msdkMethod = new MzMLFileExportMethod(msdkDataFile, outFilename,
-                        MzMLCompressionType.ZLIB, MzMLCompressionType.ZLIB);
-            }
+            // mzML and mzXML are written directly from the MZmine data model
+            if (name.endsWith("mzml"))
+                writer = new MzMLWriter(dataFile, outFilename, numpress);
+            if (name.endsWith("mzxml"))
+                writer = new MzXMLWriter(dataFile, outFilename);
 
-            if (outFilename.getName().toLowerCase().endsWith("cdf")) {
+            if (name.endsWith("cdf")) {
+                MZmineToMSDKRawDataFile msdkDataFile = new MZmineToMSDKRawDataFile(
+                        dataFile);
                 msdkMethod = new NetCDFFileExportMethod(msdkDataFile,
                         outFilename);
             }
 
             if (isCanceled())
                 return;
-            msdkMethod.execute();
+            if (writer != null) {
+                if (!writer.write())
+                    return;
+            } else {
+                msdkMethod.execute();
+            }
 
             setStatus(TaskStatus.FINISHED);
 
@@ -111,6 +128,8 @@ public class RawDataExportTask extends AbstractTask {
     @Override
     public void cancel() {
         super.cancel();
+        if (writer != null)
+            writer.cancel();
         if (msdkMethod != null)
             msdkMethod.cancel();
     }
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.rawdataexport;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.Deflater;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+
+/**
+ * Streaming writer of XML raw data formats with a scan index (indexed mzML,
+ * mzXML). The scans are read and encoded (zlib, Base64) by parallel workers,
+ * while the calling thread writes the encoded scans in scan order and records
+ * their byte offsets for the index. At most MAX_PENDING_SCANS encoded scans are
+ * held in memory.
+ *
+ * The SHA-1 checksum of the written bytes is available for the checksum element
+ * at the end of the file.
+ */
+abstract class RawDataWriter {
+
+    private static final int MAX_PENDING_SCANS = 4
+            * Runtime.getRuntime().availableProcessors();
+
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+
+    protected final RawDataFile dataFile;
+    private final File outputFile;
+
+    private IndexingOutputStream out;
+    private volatile int writtenScans, totalScans;
+    private volatile boolean canceled = false;
+
+    RawDataWriter(RawDataFile dataFile, File outputFile) {
+        this.dataFile = dataFile;
+        this.outputFile = outputFile;
+    }
+
+    /**
+     * Writes the file. If writing is canceled or fails, the incomplete file is
+     * deleted.
+     *
+     * @return false if canceled
+     */
+    boolean write() throws IOException {
+
+        final int scanNumbers[] = dataFile.getScanNumbers();
+        totalScans = scanNumbers.length;
+
+        boolean complete = false;
+        try {
+            complete = write(scanNumbers);
+            return complete;
+        } finally {
+            if (!complete)
+                outputFile.delete();
+        }
+    }
+
+    private boolean write(int scanNumbers[]) throws IOException {
+
+        final long offsets[] = new long[scanNumbers.length];
+
+        try (IndexingOutputStream stream = new IndexingOutputStream(
+                new BufferedOutputStream(new FileOutputStream(outputFile),
+                        OUTPUT_BUFFER_SIZE))) {
+            out = stream;
+
+            writeHeader(scanNumbers);
+
+            final Deque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+            int submitted = 0;
+            for (int i = 0; i < scanNumbers.length; i++) {
+                // Keep the workers busy while this thread writes
+                while (submitted < scanNumbers.length
+                        && submitted < i + MAX_PENDING_SCANS) {
+                    final int index = submitted;
+                    final Scan scan = dataFile.getScan(scanNumbers[index]);
+                    pending.add(CompletableFuture
+                            .supplyAsync(() -> encodeScan(index, scan)));
+                    submitted++;
+                }
+
+                final byte encodedScan[];
+                try {
+                    encodedScan = pending.poll().join();
+                } catch (CompletionException e) {
+                    pending.forEach(f -> f.cancel(false));
+                    if (e.getCause() instanceof RuntimeException)
+                        throw (RuntimeException) e.getCause();
+                    throw new IOException(e.getCause());
+                }
+
+                if (canceled) {
+                    pending.forEach(f -> f.cancel(false));
+                    return false;
+                }
+
+                write(getScanIndentation());
+                offsets[i] = out.getCount();
+                out.write(encodedScan);
+                writtenScans++;
+            }
+
+            writeFooter(scanNumbers, offsets);
+        } finally {
+            out = null;
+        }
+        return true;
+    }
+
+    double getFinishedPercentage() {
+        if (totalScans == 0)
+            return 0.0;
+        return (double) writtenScans / totalScans;
+    }
+
+    void cancel() {
+        canceled = true;
+    }
+
+    /**
+     * Writes everything before the first scan
+     */
+    protected abstract void writeHeader(int scanNumbers[]) throws IOException;
+
+    /**
+     * Writes everything after the last scan, including the index
+     *
+     * @param offsets
+     *            byte offset of each scan element
+     */
+    protected abstract void writeFooter(int scanNumbers[], long offsets[])
+            throws IOException;
+
+    /**
+     * @return whitespace written before each scan element
+     */
+    protected abstract String getScanIndentation();
+
+    /**
+     * Encodes one scan element. Called by several threads at once.
+     *
+     * @param index
+     *            index of the scan in the file
+     * @return UTF-8 encoded scan element, starting with its opening tag
+     */
+    protected abstract byte[] encodeScan(int index, Scan scan);
+
+    /**
+     * @return number of bytes written so far
+     */
+    protected long getOffset() {
+        return out.getCount();
+    }
+
+    protected void write(String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return hexadecimal SHA-1 of all bytes written so far
+     */
+    protected String getChecksum() {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : out.getDigest())
+            hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    /**
+     * @return the m/z and intensity values of the data points
+     */
+    protected static double[][] getPeakArrays(DataPoint dataPoints[]) {
+        double[][] arrays = new double[2][dataPoints.length];
+        for (int i = 0; i < dataPoints.length; i++) {
+            arrays[0][i] = dataPoints[i].getMZ();
+            arrays[1][i] = dataPoints[i].getIntensity();
+        }
+        return arrays;
+    }
+
+    /**
+     * Packs the values as 32 or 64 bit floating point numbers
+     */
+    protected static byte[] toBytes(double values[], int precision,
+            ByteOrder byteOrder) {
+        ByteBuffer buffer = ByteBuffer
+                .allocate(values.length * (precision / 8)).order(byteOrder);
+        if (precision == 32) {
+            for (double value : values)
+                buffer.putFloat((float) value);
+        } else {
+            for (double value : values)
+                buffer.putDouble(value);
+        }
+        return buffer.array();
+    }
+
+    protected static byte[] compress(byte data[]) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        byte buffer[] = new byte[Math.max(64, data.length / 2)];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == buffer.length)
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        deflater.end();
+        return Arrays.copyOf(buffer, length);
+    }
+
+    protected static String base64(byte data[]) {
+        return Base64.getEncoder().encodeToString(data);
+    }
+
+    /**
+     * Escapes the characters that are not allowed in XML attribute values
+     */
+    protected static String escape(String text) {
+        if (text == null)
+            return "";
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '&':
+                escaped.append("&amp;");
+                break;
+            case '<':
+                escaped.append("&lt;");
+                break;
+            case '>':
+                escaped.append("&gt;");
+                break;
+            case '"':
+                escaped.append("&quot;");
+                break;
+            default:
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Counts the written bytes and computes their SHA-1 checksum
+     */
+    private static class IndexingOutputStream extends FilterOutputStream {
+
+        private final MessageDigest digest;
+        private long count = 0;
+
+        IndexingOutputStream(OutputStream out) {
+            super(out);
+            try {
+                digest = MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            digest.update((byte) b);
+            count++;
+        }
+
+        @Override
+        public void write(byte b[], int off, int len) throws IOException {
+            out.write(b, off, len);
+            digest.update(b, off, len);
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        byte[] getDigest() {
+            try {
+                // Digest of the bytes so far, without resetting the digest
+                return ((MessageDigest) digest.clone()).digest();
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+}
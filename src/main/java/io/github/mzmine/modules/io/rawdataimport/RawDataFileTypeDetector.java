@@ -18,8 +18,10 @@
 
 package io.github.mzmine.modules.io.rawdataimport;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -94,45 +96,76 @@ public class RawDataFileTypeDetector {
             reader.close();
             String fileHeader = new String(buffer);
 
-            if (fileName.getName().toLowerCase().endsWith(".csv")) {
-                if (fileHeader.contains(":") && fileHeader.contains("\\")
-                        && !fileHeader.contains("file name")) {
-                    logger.fine("ICP raw file detected");
-                    return RawDataFileType.ICPMSMS_CSV;
-                }
-                logger.fine("Agilent raw detected");
-                return RawDataFileType.AGILENT_CSV;
-            }
+            return detectDataFileType(fileName.getName(), fileHeader);
 
-            if (fileHeader.startsWith(THERMO_HEADER)) {
-                return RawDataFileType.THERMO_RAW;
-            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
 
-            if (fileHeader.startsWith(GZIP_HEADER)) {
-                return RawDataFileType.GZIP;
-            }
+        return null;
 
-            if (fileHeader.startsWith(ZIP_HEADER)) {
-                return RawDataFileType.ZIP;
-            }
+    }
+
+    /**
+     * Detects the type of data provided by a stream, e.g. the contents of a
+     * compressed file. The stream must support mark/reset, its position is
+     * restored after reading the header.
+     * 
+     * @return Detected file type or null if the data is not of any supported
+     *         type
+     */
+    public static RawDataFileType detectDataFileType(
+            BufferedInputStream stream, String fileName) throws IOException {
 
-            if (fileHeader.startsWith(CDF_HEADER)) {
-                return RawDataFileType.NETCDF;
+        // Read the first 1kB of the stream into a String
+        byte buffer[] = new byte[1024];
+        stream.mark(buffer.length);
+        int len = stream.readNBytes(buffer, 0, buffer.length);
+        stream.reset();
+        String fileHeader = new String(buffer, 0, len, "ISO-8859-1");
+
+        return detectDataFileType(fileName, fileHeader);
+
+    }
+
+    private static RawDataFileType detectDataFileType(String fileName,
+            String fileHeader) {
+
+        if (fileName.toLowerCase().endsWith(".csv")) {
+            if (fileHeader.contains(":") && fileHeader.contains("\\")
+                    && !fileHeader.contains("file name")) {
+                logger.fine("ICP raw file detected");
+                return RawDataFileType.ICPMSMS_CSV;
             }
+            logger.fine("Agilent raw detected");
+            return RawDataFileType.AGILENT_CSV;
+        }
 
-            if (fileHeader.contains(MZML_HEADER))
-                return RawDataFileType.MZML;
+        if (fileHeader.startsWith(THERMO_HEADER)) {
+            return RawDataFileType.THERMO_RAW;
+        }
 
-            if (fileHeader.contains(MZDATA_HEADER))
-                return RawDataFileType.MZDATA;
+        if (fileHeader.startsWith(GZIP_HEADER)) {
+            return RawDataFileType.GZIP;
+        }
 
-            if (fileHeader.contains(MZXML_HEADER))
-                return RawDataFileType.MZXML;
+        if (fileHeader.startsWith(ZIP_HEADER)) {
+            return RawDataFileType.ZIP;
+        }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+        if (fileHeader.startsWith(CDF_HEADER)) {
+            return RawDataFileType.NETCDF;
         }
 
+        if (fileHeader.contains(MZML_HEADER))
+            return RawDataFileType.MZML;
+
+        if (fileHeader.contains(MZDATA_HEADER))
+            return RawDataFileType.MZDATA;
+
+        if (fileHeader.contains(MZXML_HEADER))
+            return RawDataFileType.MZXML;
+
         return null;
 
     }
@@ -20,6 +20,7 @@ package io.github.mzmine.modules.io.rawdataimport;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -43,6 +44,7 @@ import io.github.mzmine.modules.io.rawdataimport.fileformats.AgilentCsvReadTask;
 import io.github.mzmine.modules.io.rawdataimport.fileformats.CsvReadTask;
 import io.github.mzmine.modules.io.rawdataimport.fileformats.MzDataReadTask;
 import io.github.mzmine.modules.io.rawdataimport.fileformats.MzMLReadTask;
+import io.github.mzmine.modules.io.rawdataimport.fileformats.MzXMLIndexedReadTask;
 import io.github.mzmine.modules.io.rawdataimport.fileformats.MzXMLReadTask;
 import io.github.mzmine.modules.io.rawdataimport.fileformats.NativeFileReadTask;
 import io.github.mzmine.modules.io.rawdataimport.fileformats.NetCDFReadTask;
@@ -216,7 +218,8 @@ public class RawDataImportModule implements MZmineProcessingModule {
             newTask = new MzMLReadTask(project, fileName, newMZmineFile);
             break;
         case MZXML:
-            newTask = new MzXMLReadTask(project, fileName, newMZmineFile);
+            newTask = new MzXMLIndexedReadTask(project, fileName,
+                    newMZmineFile);
             break;
         case NETCDF:
             newTask = new NetCDFReadTask(project, fileName, newMZmineFile);
@@ -238,4 +241,28 @@ public class RawDataImportModule implements MZmineProcessingModule {
         return newTask;
     }
 
+    /**
+     * Creates a task that imports the data directly from the given stream, or
+     * returns null if the file type cannot be parsed in a single pass (e.g.,
+     * mzML files are read through an index that requires random access).
+     */
+    public static Task createStreamingOpeningTask(RawDataFileType fileType,
+            MZmineProject project, File fileName, InputStream inputStream,
+            RawDataFileWriter newMZmineFile) {
+        Task newTask = null;
+        switch (fileType) {
+        case MZDATA:
+            newTask = new MzDataReadTask(project, fileName, inputStream,
+                    newMZmineFile);
+            break;
+        case MZXML:
+            newTask = new MzXMLReadTask(project, fileName, inputStream,
+                    newMZmineFile);
+            break;
+        default:
+            break;
+        }
+        return newTask;
+    }
+
 }
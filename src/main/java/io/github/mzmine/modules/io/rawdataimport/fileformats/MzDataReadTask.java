@@ -20,6 +20,7 @@ package io.github.mzmine.modules.io.rawdataimport.fileformats;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Base64;
@@ -54,6 +55,7 @@ public class MzDataReadTask extends AbstractTask {
     private Logger logger = Logger.getLogger(this.getClass().getName());
 
     private File file;
+    private InputStream inputStream;
     private MZmineProject project;
     private RawDataFileWriter newMZmineFile;
     private RawDataFile finalRawDataFile;
@@ -112,6 +114,18 @@ public class MzDataReadTask extends AbstractTask {
         this.newMZmineFile = newMZmineFile;
     }
 
+    /**
+     * Creates a task that parses the data from the given stream instead of
+     * opening the file. The file is only used for the task description and
+     * logging. This allows compressed files to be decompressed on the fly,
+     * without writing the uncompressed data to disk first.
+     */
+    public MzDataReadTask(MZmineProject project, File fileToOpen,
+            InputStream inputStream, RawDataFileWriter newMZmineFile) {
+        this(project, fileToOpen, newMZmineFile);
+        this.inputStream = inputStream;
+    }
+
     /**
      * @see io.github.mzmine.taskcontrol.Task#getFinishedPercentage()
      */
@@ -133,7 +147,10 @@ public class MzDataReadTask extends AbstractTask {
         try {
 
             SAXParser saxParser = factory.newSAXParser();
-            saxParser.parse(file, handler);
+            if (inputStream != null)
+                saxParser.parse(inputStream, handler);
+            else
+                saxParser.parse(file, handler);
 
             // Close file
             finalRawDataFile = newMZmineFile.finishWriting();
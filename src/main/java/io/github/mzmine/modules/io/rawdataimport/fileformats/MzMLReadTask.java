@@ -204,6 +204,7 @@ public class MzMLReadTask extends AbstractTask {
 
         logger.info("Finished parsing " + file + ", parsed " + parsedScans
                 + " scans");
+        getMetrics().addProcessedItems(parsedScans);
         setStatus(TaskStatus.FINISHED);
 
     }
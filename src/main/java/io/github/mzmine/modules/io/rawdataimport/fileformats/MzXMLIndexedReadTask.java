@@ -0,0 +1,673 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.rawdataimport.fileformats;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Range;
+import com.google.common.primitives.Ints;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.RawDataFileWriter;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.project.impl.StorableScan;
+import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.CompressionUtils;
+import io.github.mzmine.util.ExceptionUtils;
+import io.github.mzmine.util.scans.ScanUtils;
+
+/**
+ * High-throughput mzXML reader. Instead of parsing the whole document, the
+ * positions of the scans are taken from the index at the end of the file and
+ * the scans are decoded in parallel blocks. The base64 peak data is decoded
+ * directly from the file bytes into primitive arrays, which are written to the
+ * data points storage without creating DataPoint instances. Files without a
+ * valid index are read by {@link MzXMLReadTask}.
+ */
+public class MzXMLIndexedReadTask extends AbstractTask {
+
+    private Logger logger = Logger.getLogger(this.getClass().getName());
+
+    private static final Pattern INDEX_OFFSET_PATTERN = Pattern
+            .compile("<indexOffset>\\s*([0-9]+)\\s*</indexOffset>");
+    private static final Pattern OFFSET_PATTERN = Pattern
+            .compile(
+                    "<offset\\s+id=\"([0-9]+)\"[^>]*>\\s*([0-9]+)\\s*</offset>");
+    private static final Pattern ATTRIBUTE_PATTERN = Pattern
+            .compile("([\\w:]+)\\s*=\\s*\"([^\"]*)\"");
+
+    private static final byte[] SCAN_TAG = "<scan"
+            .getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] PRECURSOR_TAG = "<precursorMz"
+            .getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] PEAKS_TAG = "<peaks"
+            .getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] SCAN_END_TAG = "</scan>"
+            .getBytes(StandardCharsets.ISO_8859_1);
+
+    // Size of the end of the file that is searched for the <indexOffset>
+    private static final int TAIL_SIZE = 4096;
+
+    // Maximum size of a <scan> start tag when the index is validated
+    private static final int SCAN_TAG_SIZE = 4096;
+
+    // Number of scans that are decoded in parallel before being stored
+    private static final int BLOCK_SIZE = 256;
+
+    // DatatypeFactory is not guaranteed to be thread-safe
+    private static final ThreadLocal<DatatypeFactory> dataTypeFactory = ThreadLocal
+            .withInitial(() -> {
+                try {
+                    return DatatypeFactory.newInstance();
+                } catch (DatatypeConfigurationException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+    private File file;
+    private MZmineProject project;
+    private RawDataFileWriter newMZmineFile;
+    private RawDataFile finalRawDataFile;
+    private int totalScans = 0, parsedScans;
+
+    // Used for files without index
+    private MzXMLReadTask saxReadTask;
+
+    public MzXMLIndexedReadTask(MZmineProject project, File fileToOpen,
+            RawDataFileWriter newMZmineFile) {
+        this.project = project;
+        this.file = fileToOpen;
+        this.newMZmineFile = newMZmineFile;
+    }
+
+    /**
+     * @see io.github.mzmine.taskcontrol.Task#getFinishedPercentage()
+     */
+    public double getFinishedPercentage() {
+        if (saxReadTask != null)
+            return saxReadTask.getFinishedPercentage();
+        return totalScans == 0 ? 0 : (double) parsedScans / totalScans;
+    }
+
+    /**
+     * @see java.lang.Runnable#run()
+     */
+    public void run() {
+
+        setStatus(TaskStatus.PROCESSING);
+        logger.info("Started parsing file " + file);
+
+        boolean indexed = false;
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+
+            final long scanOffsets[] = readScanOffsets(channel);
+            indexed = (scanOffsets != null)
+                    && (newMZmineFile instanceof RawDataFileImpl);
+            if (indexed)
+                readIndexedScans(channel, scanOffsets);
+
+        } catch (Throwable e) {
+            e.printStackTrace();
+            /* we may already have set the status to CANCELED */
+            if (getStatus() == TaskStatus.PROCESSING) {
+                setStatus(TaskStatus.ERROR);
+                setErrorMessage(ExceptionUtils.exceptionToString(e));
+            }
+            return;
+        }
+
+        if (!indexed) {
+            logger.info("File " + file
+                    + " does not contain a valid index, parsing the whole file");
+            runSaxReadTask();
+            return;
+        }
+
+        if (isCanceled())
+            return;
+
+        if (parsedScans == 0) {
+            setStatus(TaskStatus.ERROR);
+            setErrorMessage("No scans found");
+            return;
+        }
+
+        logger.info("Finished parsing " + file + ", parsed " + parsedScans
+                + " scans");
+        getMetrics().addProcessedItems(parsedScans);
+        setStatus(TaskStatus.FINISHED);
+
+    }
+
+    /**
+     * Decodes the scans at the given offsets in parallel blocks and adds them
+     * to the raw data file
+     */
+    private void readIndexedScans(FileChannel channel, long scanOffsets[])
+            throws IOException {
+
+        RawDataFileImpl storage = (RawDataFileImpl) newMZmineFile;
+
+        // The last offset is the start of the index
+        totalScans = scanOffsets.length - 1;
+        List<ScanRecord> records = new ArrayList<>(totalScans);
+
+        for (int blockStart = 0; blockStart < totalScans;
+                blockStart += BLOCK_SIZE) {
+
+            if (isCanceled())
+                return;
+
+            final int blockEnd = Math.min(blockStart + BLOCK_SIZE,
+                    totalScans);
+
+            // Decode the scans of this block in parallel
+            ScanRecord block[] = IntStream.range(blockStart, blockEnd)
+                    .parallel()
+                    .mapToObj(i -> decodeScan(channel, scanOffsets[i],
+                            scanOffsets[i + 1]))
+                    .toArray(ScanRecord[]::new);
+
+            // Store the data points in the original order of the scans
+            for (ScanRecord record : block) {
+                record.storageID = storage.storeDataPoints(record.mzValues,
+                        record.intensityValues);
+                record.mzValues = null;
+                record.intensityValues = null;
+                records.add(record);
+                parsedScans++;
+            }
+
+        }
+
+        addScans(storage, records);
+
+        // Close file
+        finalRawDataFile = newMZmineFile.finishWriting();
+        project.addFile(finalRawDataFile);
+    }
+
+    public String getTaskDescription() {
+        return "Opening file " + file;
+    }
+
+    @Override
+    public void cancel() {
+        super.cancel();
+        if (saxReadTask != null)
+            saxReadTask.cancel();
+    }
+
+    private void runSaxReadTask() {
+        saxReadTask = new MzXMLReadTask(project, file, newMZmineFile);
+        saxReadTask.run();
+        if (isCanceled())
+            return;
+        setErrorMessage(saxReadTask.getErrorMessage());
+        setStatus(saxReadTask.getStatus());
+    }
+
+    /**
+     * Reads the scan index of the file.
+     *
+     * @return Sorted file positions of all scans, followed by the position of
+     *         the index, or null if the file does not contain a valid index.
+     *         The index is valid if each offset points to the start tag of
+     *         the scan with the number of the index entry.
+     */
+    private long[] readScanOffsets(FileChannel channel) throws IOException {
+
+        final long fileSize = channel.size();
+        final long tailStart = Math.max(0, fileSize - TAIL_SIZE);
+        String tail = readString(channel, tailStart, fileSize);
+
+        Matcher indexOffsetMatcher = INDEX_OFFSET_PATTERN.matcher(tail);
+        if (!indexOffsetMatcher.find())
+            return null;
+
+        final long indexOffset = Long.parseLong(indexOffsetMatcher.group(1));
+        if ((indexOffset <= 0) || (indexOffset >= fileSize))
+            return null;
+
+        String index = readString(channel, indexOffset, fileSize);
+        if (!index.startsWith("<index"))
+            return null;
+
+        // Only the first index (name="scan") is relevant
+        int indexEnd = index.indexOf("</index>");
+        if (indexEnd > 0)
+            index = index.substring(0, indexEnd);
+
+        // Offset and scan number of each entry
+        List<long[]> entries = new ArrayList<>();
+        Matcher offsetMatcher = OFFSET_PATTERN.matcher(index);
+        while (offsetMatcher.find())
+            entries.add(new long[] { Long.parseLong(offsetMatcher.group(2)),
+                    Long.parseLong(offsetMatcher.group(1)) });
+
+        if (entries.isEmpty())
+            return null;
+
+        entries.sort((a, b) -> Long.compare(a[0], b[0]));
+        long scanOffsets[] = new long[entries.size() + 1];
+        for (int i = 0; i < entries.size(); i++)
+            scanOffsets[i] = entries.get(i)[0];
+        scanOffsets[entries.size()] = indexOffset;
+
+        // Each scan must end before the next one and before the index
+        for (int i = 0; i < entries.size(); i++) {
+            if (scanOffsets[i] >= scanOffsets[i + 1])
+                return null;
+        }
+
+        // Verify that the offsets really point to the scans, so that a stale
+        // or corrupt index is not used
+        try {
+            final boolean valid = IntStream.range(0, entries.size()).parallel()
+                    .allMatch(i -> isScanStart(channel, scanOffsets[i],
+                            scanOffsets[i + 1], entries.get(i)[1]));
+            if (!valid)
+                return null;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        return scanOffsets;
+    }
+
+    /**
+     * @return true if the file contains the start tag of the scan with the
+     *         given number at the start position
+     */
+    private static boolean isScanStart(FileChannel channel, long start,
+            long end, long scanNumber) {
+        final byte data[];
+        try {
+            data = readBytes(channel, start,
+                    Math.min(end, start + SCAN_TAG_SIZE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!isScanTagAt(data, 0))
+            return false;
+        final int scanTagEnd = indexOf(data, (byte) '>', 0, data.length);
+        if (scanTagEnd < 0)
+            return false;
+        final String num = parseAttributes(data, 0, scanTagEnd).get("num");
+        return String.valueOf(scanNumber).equals(num);
+    }
+
+    /**
+     * @return true if there is a "<scan" tag (and not e.g. "<scanOrigin") at
+     *         the position
+     */
+    private static boolean isScanTagAt(byte data[], int position) {
+        if (position + SCAN_TAG.length >= data.length)
+            return false;
+        for (int j = 0; j < SCAN_TAG.length; j++) {
+            if (data[position + j] != SCAN_TAG[j])
+                return false;
+        }
+        return Character
+                .isWhitespace((char) data[position + SCAN_TAG.length]);
+    }
+
+    /**
+     * Decodes a scan from the given part of the file. Called from multiple
+     * threads.
+     */
+    private ScanRecord decodeScan(FileChannel channel, long start, long end) {
+
+        final byte data[];
+        try {
+            data = readBytes(channel, start, end);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // <scan>, the offsets were checked by readScanOffsets()
+        final int scanTagStart = 0;
+        int scanTagEnd = indexOf(data, (byte) '>', scanTagStart, data.length);
+        if (!isScanTagAt(data, scanTagStart) || (scanTagEnd < 0))
+            throw new IllegalStateException(
+                    "Invalid mzXML index in file " + file);
+        Map<String, String> attrs = parseAttributes(data, scanTagStart,
+                scanTagEnd);
+
+        ScanRecord record = new ScanRecord();
+
+        /*
+         * Only num, msLevel & peaksCount values are required according with
+         * mzxml standard, the others are optional
+         */
+        record.scanNumber = Integer.parseInt(attrs.get("num"));
+
+        // mzXML files with empty msLevel attribute do exist, so we use 1 as
+        // default
+        record.msLevel = 1;
+        if (!Strings.isNullOrEmpty(attrs.get("msLevel")))
+            record.msLevel = Integer.parseInt(attrs.get("msLevel"));
+
+        // Same limit as the SAX reader, see MzXMLReadTask
+        if (record.msLevel > 9)
+            throw new IllegalStateException(
+                    "The value of msLevel is bigger than 10");
+
+        record.scanDefinition = attrs.get("filterLine");
+        if (Strings.isNullOrEmpty(record.scanDefinition))
+            record.scanDefinition = attrs.get("scanType");
+
+        String polarityAttr = attrs.get("polarity");
+        if ((polarityAttr != null) && (polarityAttr.length() == 1))
+            record.polarity = PolarityType.fromSingleChar(polarityAttr);
+        else
+            record.polarity = PolarityType.UNKNOWN;
+
+        final int peaksCount = Integer.parseInt(attrs.get("peaksCount"));
+
+        // Parse retention time
+        String retentionTimeStr = attrs.get("retentionTime");
+        if (retentionTimeStr == null)
+            throw new IllegalStateException(
+                    "This file does not contain retentionTime for scans");
+        record.retentionTime = dataTypeFactory.get()
+                .newDuration(retentionTimeStr).getTimeInMillis(new Date())
+                / 1000d / 60d;
+
+        int peaksTagStart = indexOf(data, PEAKS_TAG, scanTagEnd, data.length);
+        if (peaksTagStart < 0)
+            peaksTagStart = data.length;
+
+        // <precursorMz>
+        int precursorTagStart = indexOf(data, PRECURSOR_TAG, scanTagEnd,
+                peaksTagStart);
+        if (precursorTagStart >= 0) {
+            int precursorTagEnd = indexOf(data, (byte) '>', precursorTagStart,
+                    peaksTagStart);
+            int precursorTextEnd = indexOf(data, (byte) '<', precursorTagEnd,
+                    peaksTagStart);
+            if ((precursorTagEnd >= 0) && (precursorTextEnd >= 0)) {
+                Map<String, String> precursorAttrs = parseAttributes(data,
+                        precursorTagStart, precursorTagEnd);
+                String precursorCharge = precursorAttrs.get("precursorCharge");
+                if (precursorCharge != null)
+                    record.precursorCharge = Integer.parseInt(precursorCharge);
+                String textContent = new String(data, precursorTagEnd + 1,
+                        precursorTextEnd - precursorTagEnd - 1,
+                        StandardCharsets.ISO_8859_1).trim();
+                if (!textContent.isEmpty())
+                    record.precursorMz = Double.parseDouble(textContent);
+            }
+        }
+
+        // <peaks>
+        record.numberOfDataPoints = peaksCount;
+        record.mzValues = new double[peaksCount];
+        record.intensityValues = new double[peaksCount];
+        if ((peaksCount > 0) && (peaksTagStart < data.length)) {
+            int peaksTagEnd = indexOf(data, (byte) '>', peaksTagStart,
+                    data.length);
+            int peaksTextEnd = indexOf(data, (byte) '<', peaksTagEnd,
+                    data.length);
+            if ((peaksTagEnd < 0) || (peaksTextEnd < 0))
+                throw new IllegalStateException("Corrupt mzXML file " + file);
+            Map<String, String> peaksAttrs = parseAttributes(data,
+                    peaksTagStart, peaksTagEnd);
+            decodePeaks(data, peaksTagEnd + 1, peaksTextEnd, peaksAttrs,
+                    record);
+        }
+
+        // Auto-detect whether this scan is centroided
+        record.spectrumType = ScanUtils.detectSpectrumType(record.mzValues,
+                record.intensityValues);
+
+        calculateScanValues(record);
+
+        // Number of scans closed within this part of the file (the scan
+        // itself, unless fragment scans are nested in it, and its parents)
+        for (int i = indexOf(data, SCAN_END_TAG, scanTagEnd,
+                data.length); i >= 0; i = indexOf(data, SCAN_END_TAG,
+                        i + SCAN_END_TAG.length, data.length))
+            record.closedScans++;
+
+        return record;
+    }
+
+    /**
+     * Decodes the base64 (and optionally zlib-compressed) peak data directly
+     * into the m/z and intensity arrays of the record
+     */
+    private void decodePeaks(byte data[], int start, int end,
+            Map<String, String> peaksAttrs, ScanRecord record) {
+
+        // The MIME decoder skips line breaks that some writers insert
+        ByteBuffer peakBytes = Base64.getMimeDecoder()
+                .decode(ByteBuffer.wrap(data, start, end - start));
+
+        String compressionType = peaksAttrs.get("compressionType");
+        if ((compressionType != null) && (!compressionType.equals("none"))) {
+            byte compressed[] = new byte[peakBytes.remaining()];
+            peakBytes.get(compressed);
+            try {
+                peakBytes = ByteBuffer
+                        .wrap(CompressionUtils.decompress(compressed));
+            } catch (DataFormatException e) {
+                throw new IllegalStateException(
+                        "Corrupt compressed peak: " + e.toString());
+            }
+        }
+
+        // mzXML always uses network byte order and pairOrder="m/z-int"
+        peakBytes.order(ByteOrder.BIG_ENDIAN);
+        final int peaksCount = record.mzValues.length;
+
+        if ("64".equals(peaksAttrs.get("precision"))) {
+            DoubleBuffer doubleBuffer = peakBytes.asDoubleBuffer();
+            if (doubleBuffer.remaining() < peaksCount * 2)
+                throw new IllegalStateException("Corrupt mzXML file " + file);
+            for (int i = 0; i < peaksCount; i++) {
+                record.mzValues[i] = doubleBuffer.get();
+                record.intensityValues[i] = doubleBuffer.get();
+            }
+        } else {
+            FloatBuffer floatBuffer = peakBytes.asFloatBuffer();
+            if (floatBuffer.remaining() < peaksCount * 2)
+                throw new IllegalStateException("Corrupt mzXML file " + file);
+            for (int i = 0; i < peaksCount; i++) {
+                record.mzValues[i] = floatBuffer.get();
+                record.intensityValues[i] = floatBuffer.get();
+            }
+        }
+    }
+
+    /**
+     * Calculates the TIC, base peak and m/z range of the scan from the data
+     * points as they are stored (in float precision), so that the raw data
+     * file does not read the scans again when writing is finished
+     */
+    private static void calculateScanValues(ScanRecord record) {
+        double tic = 0;
+        for (int i = 0; i < record.numberOfDataPoints; i++) {
+            final double mz = (float) record.mzValues[i];
+            final double intensity = (float) record.intensityValues[i];
+            if ((i == 0) || (intensity > record.basePeak.getIntensity()))
+                record.basePeak = new SimpleDataPoint(mz, intensity);
+            record.mzRange = i == 0 ? Range.singleton(mz)
+                    : record.mzRange.span(Range.singleton(mz));
+            tic += intensity;
+        }
+        if (record.numberOfDataPoints == 0)
+            record.mzRange = Range.singleton(0.0);
+        record.totalIonCurrent = tic;
+    }
+
+    /**
+     * Links the fragment scans to their parent scans and adds all scans to the
+     * raw data file. The scans are linked as by {@link MzXMLReadTask}: the
+     * parent is the last preceding scan of the previous MS level, if both are
+     * nested in the same top-level scan. Scans of files without nesting are
+     * not linked.
+     */
+    private void addScans(RawDataFileImpl storage, List<ScanRecord> records)
+            throws IOException {
+
+        final int lastScanOfLevel[] = new int[10];
+        final Map<Integer, ScanRecord> currentTree = new HashMap<>();
+        int depth = 0;
+        for (ScanRecord record : records) {
+            if (record.msLevel > 1) {
+                ScanRecord parent = currentTree
+                        .get(lastScanOfLevel[record.msLevel - 1]);
+                if (parent != null) {
+                    if (parent.fragmentScans == null)
+                        parent.fragmentScans = new ArrayList<>();
+                    parent.fragmentScans.add(record.scanNumber);
+                }
+            }
+            lastScanOfLevel[record.msLevel] = record.scanNumber;
+            currentTree.put(record.scanNumber, record);
+
+            // The tree ends when the top-level scan is closed
+            depth += 1 - record.closedScans;
+            if (depth <= 0) {
+                depth = 0;
+                currentTree.clear();
+            }
+        }
+
+        for (ScanRecord record : records) {
+            int fragmentScans[] = null;
+            if (record.fragmentScans != null) {
+                fragmentScans = Ints.toArray(record.fragmentScans);
+                Arrays.sort(fragmentScans);
+            }
+            StorableScan scan = new StorableScan(storage, record.storageID,
+                    record.numberOfDataPoints, record.scanNumber,
+                    record.msLevel, record.retentionTime, record.precursorMz,
+                    record.precursorCharge, fragmentScans, record.spectrumType,
+                    record.polarity, record.scanDefinition, null,
+                    record.totalIonCurrent, record.basePeak, record.mzRange);
+            storage.addScan(scan);
+        }
+    }
+
+    private static Map<String, String> parseAttributes(byte data[], int start,
+            int end) {
+        Map<String, String> attrs = new HashMap<>();
+        Matcher matcher = ATTRIBUTE_PATTERN.matcher(new String(data, start,
+                end - start, StandardCharsets.ISO_8859_1));
+        while (matcher.find())
+            attrs.put(matcher.group(1), matcher.group(2));
+        return attrs;
+    }
+
+    private static int indexOf(byte data[], byte value, int from, int to) {
+        if (from < 0)
+            return -1;
+        for (int i = from; i < to; i++) {
+            if (data[i] == value)
+                return i;
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte data[], byte pattern[], int from,
+            int to) {
+        if (from < 0)
+            return -1;
+        outer: for (int i = from; i <= to - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j])
+                    continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static byte[] readBytes(FileChannel channel, long start, long end)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        // Positional reads are safe to use from multiple threads
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0)
+                break;
+        }
+        if (buffer.hasRemaining())
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        return buffer.array();
+    }
+
+    private static String readString(FileChannel channel, long start,
+            long end) throws IOException {
+        return new String(readBytes(channel, start, end),
+                StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Scan data decoded from the file
+     */
+    private static class ScanRecord {
+        int scanNumber, msLevel, precursorCharge, storageID;
+        double retentionTime, precursorMz;
+        String scanDefinition;
+        PolarityType polarity;
+        MassSpectrumType spectrumType;
+        int numberOfDataPoints;
+        double mzValues[], intensityValues[];
+        double totalIonCurrent;
+        DataPoint basePeak;
+        Range<Double> mzRange;
+        int closedScans;
+        List<Integer> fragmentScans;
+    }
+
+}
@@ -18,10 +18,14 @@
 
 package io.github.mzmine.modules.io.rawdataimport.fileformats;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
@@ -32,6 +36,7 @@ import javax.annotation.Nonnull;
 
 import org.apache.commons.io.FilenameUtils;
 
+import com.google.common.io.CountingInputStream;
 import com.google.common.io.Files;
 
 import io.github.mzmine.datamodel.MZmineProject;
@@ -46,17 +51,31 @@ import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ExceptionUtils;
 import io.github.mzmine.util.StreamCopy;
 
+/**
+ * Opens zipped or gzipped raw data files. Formats that can be parsed in a
+ * single pass (mzXML, mzData) are decompressed on a separate thread and piped
+ * directly into the reader. Other formats are first decompressed into a
+ * temporary file.
+ */
 public class ZipReadTask extends AbstractTask {
 
     private Logger logger = Logger.getLogger(this.getClass().getName());
 
+    // 1 MB buffer between the decompressing thread and the parser
+    private static final int PIPE_BUFFER_SIZE = 1 << 20;
+
     private final File file;
     private final @Nonnull MZmineProject project;
     private final RawDataFileType fileType;
 
     private File tmpDir, tmpFile;
+    private CountingInputStream cis;
+    private PipedInputStream pipeInput;
     private StreamCopy copy = null;
     private Task decompressedOpeningTask = null;
+    private boolean streaming = false;
+    private volatile boolean readerFinished = false;
+    private volatile IOException decompressionError = null;
 
     public ZipReadTask(@Nonnull MZmineProject project, File fileToOpen,
             RawDataFileType fileType) {
@@ -84,12 +103,12 @@ public class ZipReadTask extends AbstractTask {
             }
 
             // Create decompressing stream
-            FileInputStream fis = new FileInputStream(file);
+            cis = new CountingInputStream(new FileInputStream(file));
             InputStream is;
             long decompressedSize = 0;
             switch (fileType) {
             case ZIP:
-                ZipInputStream zis = new ZipInputStream(fis);
+                ZipInputStream zis = new ZipInputStream(cis);
                 ZipEntry entry = zis.getNextEntry();
                 newName = entry.getName();
                 decompressedSize = entry.getSize();
@@ -98,7 +117,7 @@ public class ZipReadTask extends AbstractTask {
                 is = zis;
                 break;
             case GZIP:
-                is = new GZIPInputStream(fis);
+                is = new GZIPInputStream(cis);
                 decompressedSize = (long) (file.length() * 1.5); // Ballpark a
                                                                  // decompressedFile
                                                                  // size so the
@@ -108,63 +127,57 @@ public class ZipReadTask extends AbstractTask {
                     decompressedSize = 0;
                 break;
             default:
+                cis.close();
                 setErrorMessage("Cannot decompress file type: " + fileType);
                 setStatus(TaskStatus.ERROR);
                 return;
             }
 
-            tmpDir = Files.createTempDir();
-            tmpFile = new File(tmpDir, newName);
-            logger.finest("Decompressing to file " + tmpFile);
-            tmpFile.deleteOnExit();
-            tmpDir.deleteOnExit();
-            FileOutputStream ous = new FileOutputStream(tmpFile);
-
-            // Decompress the contents
-            copy = new StreamCopy();
-            copy.copy(is, ous, decompressedSize);
-
-            // Close the streams
-            is.close();
-            ous.close();
-
-            if (isCanceled())
-                return;
-
-            // Find the type of the decompressed file
-            RawDataFileType fileType = RawDataFileTypeDetector
-                    .detectDataFileType(tmpFile);
-            logger.finest("File " + tmpFile + " type detected as " + fileType);
+            // Find the type of the compressed contents
+            BufferedInputStream bis = new BufferedInputStream(is);
+            RawDataFileType decompressedType = RawDataFileTypeDetector
+                    .detectDataFileType(bis, newName);
+            logger.finest("Contents of file " + file + " detected as "
+                    + decompressedType);
 
-            if (fileType == null) {
+            if (decompressedType == null) {
+                bis.close();
                 setErrorMessage(
                         "Could not determine the file type of file " + newName);
                 setStatus(TaskStatus.ERROR);
                 return;
             }
 
-            // Run the import module on the decompressed file
             RawDataFileWriter newMZmineFile = MZmineCore.createNewFile(newName);
-            decompressedOpeningTask = RawDataImportModule.createOpeningTask(
-                    fileType, project, tmpFile, newMZmineFile);
 
-            if (decompressedOpeningTask == null) {
-                setErrorMessage("File type " + fileType + " of file " + newName
-                        + " is not supported.");
-                setStatus(TaskStatus.ERROR);
-                return;
+            pipeInput = new PipedInputStream(PIPE_BUFFER_SIZE);
+            decompressedOpeningTask = RawDataImportModule
+                    .createStreamingOpeningTask(decompressedType, project,
+                            file, pipeInput, newMZmineFile);
+
+            if (decompressedOpeningTask != null) {
+                streaming = true;
+                openStreaming(bis, decompressedSize);
+            } else {
+                pipeInput = null;
+                openExtracted(bis, decompressedSize, newName, newMZmineFile);
             }
 
-            // Run the underlying task
-            decompressedOpeningTask.run();
-
-            // Delete the temporary folder
-            tmpFile.delete();
-            tmpDir.delete();
-
             if (isCanceled())
                 return;
 
+            // Forward errors of the underlying task
+            if ((decompressedOpeningTask != null) && (decompressedOpeningTask
+                    .getStatus() == TaskStatus.ERROR)) {
+                String errorMsg = decompressedOpeningTask.getErrorMessage();
+                if (decompressionError != null)
+                    errorMsg = ExceptionUtils
+                            .exceptionToString(decompressionError);
+                setErrorMessage(errorMsg);
+                setStatus(TaskStatus.ERROR);
+                return;
+            }
+
         } catch (Throwable e) {
             e.printStackTrace();
             logger.log(Level.SEVERE, "Could not open file " + file.getPath(),
@@ -181,6 +194,109 @@ public class ZipReadTask extends AbstractTask {
 
     }
 
+    /**
+     * Decompresses the data on a separate thread and feeds it to the
+     * underlying reader through a pipe, so no temporary file is written and
+     * decompression runs in parallel with parsing.
+     */
+    private void openStreaming(InputStream is, long decompressedSize)
+            throws IOException, InterruptedException {
+
+        final PipedOutputStream pipeOutput = new PipedOutputStream(pipeInput);
+        copy = new StreamCopy();
+
+        Thread decompressionThread = new Thread(() -> {
+            try {
+                copy.copy(is, pipeOutput, decompressedSize);
+            } catch (IOException e) {
+                // The pipe is also closed when the reader stops early, in
+                // which case the reader reports the reason itself
+                if (!readerFinished && !isCanceled())
+                    decompressionError = e;
+            } finally {
+                try {
+                    pipeOutput.close();
+                    is.close();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING,
+                            "Could not close file " + file.getPath(), e);
+                }
+            }
+        }, "Decompressing file " + file.getName());
+
+        logger.finest("Decompressing file " + file + " on thread "
+                + decompressionThread.getName());
+        decompressionThread.start();
+
+        // Run the underlying task, which reads from the pipe
+        decompressedOpeningTask.run();
+        readerFinished = true;
+
+        // Unblock the decompressing thread in case the reader did not consume
+        // all the data
+        pipeInput.close();
+        decompressionThread.join();
+
+    }
+
+    /**
+     * Decompresses the data to a temporary file and runs the underlying
+     * reader on that file. Used for formats that need random access.
+     */
+    private void openExtracted(InputStream is, long decompressedSize,
+            String newName, RawDataFileWriter newMZmineFile)
+            throws IOException {
+
+        tmpDir = Files.createTempDir();
+        tmpFile = new File(tmpDir, newName);
+        logger.finest("Decompressing to file " + tmpFile);
+        tmpFile.deleteOnExit();
+        tmpDir.deleteOnExit();
+        FileOutputStream ous = new FileOutputStream(tmpFile);
+
+        // Decompress the contents
+        copy = new StreamCopy();
+        copy.copy(is, ous, decompressedSize);
+
+        // Close the streams
+        is.close();
+        ous.close();
+
+        if (isCanceled())
+            return;
+
+        // Find the type of the decompressed file
+        RawDataFileType fileType = RawDataFileTypeDetector
+                .detectDataFileType(tmpFile);
+        logger.finest("File " + tmpFile + " type detected as " + fileType);
+
+        if (fileType == null) {
+            setErrorMessage(
+                    "Could not determine the file type of file " + newName);
+            setStatus(TaskStatus.ERROR);
+            return;
+        }
+
+        // Run the import module on the decompressed file
+        decompressedOpeningTask = RawDataImportModule
+                .createOpeningTask(fileType, project, tmpFile, newMZmineFile);
+
+        if (decompressedOpeningTask == null) {
+            setErrorMessage("File type " + fileType + " of file " + newName
+                    + " is not supported.");
+            setStatus(TaskStatus.ERROR);
+            return;
+        }
+
+        // Run the underlying task
+        decompressedOpeningTask.run();
+
+        // Delete the temporary folder
+        tmpFile.delete();
+        tmpDir.delete();
+
+    }
+
     public String getTaskDescription() {
         if (decompressedOpeningTask != null)
             return decompressedOpeningTask.getTaskDescription();
@@ -192,6 +308,13 @@ public class ZipReadTask extends AbstractTask {
      * @see io.github.mzmine.taskcontrol.Task#getFinishedPercentage()
      */
     public double getFinishedPercentage() {
+        if (streaming) {
+            // Decompression and parsing run in parallel, so the progress is
+            // given by the amount of compressed data consumed
+            if ((cis == null) || (file.length() == 0))
+                return 0.0;
+            return Math.min(1.0, (double) cis.getCount() / file.length());
+        }
         if (decompressedOpeningTask != null)
             return (decompressedOpeningTask.getFinishedPercentage() / 2.0)
                     + 0.5; // Reports 50% to 100%
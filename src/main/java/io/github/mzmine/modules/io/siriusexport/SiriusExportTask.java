@@ -36,7 +36,7 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.tools.msmsspectramerge.MergeMode;
 import io.github.mzmine.modules.tools.msmsspectramerge.MergedSpectrum;
-import io.github.mzmine.modules.tools.msmsspectramerge.MsMsSpectraMergeModule;
+import io.github.mzmine.modules.tools.msmsspectramerge.MsMsSpectraMergeService;
 import io.github.mzmine.modules.tools.msmsspectramerge.MsMsSpectraMergeParameters;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.AbstractTask;
@@ -163,6 +163,10 @@ public class SiriusExportTask extends AbstractTask {
         setStatus(TaskStatus.PROCESSING);
         // prefill statistics
         prefillStatistics(rows);
+        if (mergeEnabled)
+            MsMsSpectraMergeService.getInstance().mergeRows(mergeParameters,
+                    Arrays.asList(rows), massListName,
+                    SiriusExportTask::isExportedFeature);
         try (final BufferedWriter bw = new BufferedWriter(
                 new FileWriter(fileName, true))) {
             for (PeakListRow row : rows)
@@ -183,6 +187,14 @@ public class SiriusExportTask extends AbstractTask {
 
     private void exportPeakList(PeakList peakList, BufferedWriter writer)
             throws IOException {
+        // merge the MS/MS spectra of all exported rows in parallel
+        if (mergeEnabled)
+            MsMsSpectraMergeService.getInstance().mergeRows(mergeParameters,
+                    Arrays.stream(peakList.getRows())
+                            .filter(row -> !isSkipRow(row))
+                            .collect(Collectors.toList()),
+                    massListName, SiriusExportTask::isExportedFeature);
+
         for (PeakListRow row : peakList.getRows()) {
             if (!isSkipRow(row))
                 exportPeakListRow(row, writer);
@@ -212,12 +224,11 @@ public class SiriusExportTask extends AbstractTask {
             MergeMode mergeMode = mergeParameters
                     .getParameter(MsMsSpectraMergeParameters.MERGE_MODE)
                     .getValue();
-            MsMsSpectraMergeModule merger = MZmineCore
-                    .getModuleInstance(MsMsSpectraMergeModule.class);
+            MsMsSpectraMergeService merger = MsMsSpectraMergeService
+                    .getInstance();
             if (mergeMode != MergeMode.ACROSS_SAMPLES) {
                 for (Feature f : row.getPeaks()) {
-                    if (f.getFeatureStatus() == FeatureStatus.DETECTED
-                            && f.getMostIntenseFragmentScanNumber() >= 0) {
+                    if (isExportedFeature(f)) {
                         // write correlation spectrum
                         writeHeader(writer, row, f.getDataFile(), polarity,
                                 MsType.CORRELATED, -1);
@@ -225,8 +236,8 @@ public class SiriusExportTask extends AbstractTask {
                         if (mergeMode == MergeMode.CONSECUTIVE_SCANS) {
                             // merge MS/MS
                             List<MergedSpectrum> spectra = merger
-                                    .mergeConsecutiveScans(mergeParameters, f,
-                                            massListName);
+                                    .mergeConsecutiveScans(mergeParameters,
+                                            row, f, massListName);
                             for (MergedSpectrum spectrum : spectra) {
                                 writeHeader(writer, row, f.getDataFile(),
                                         polarity, MsType.MSMS,
@@ -238,8 +249,8 @@ public class SiriusExportTask extends AbstractTask {
                             }
                         } else {
                             MergedSpectrum spectrum = merger
-                                    .mergeFromSameSample(mergeParameters, f,
-                                            massListName)
+                                    .mergeFromSameSample(mergeParameters,
+                                            row, f, massListName)
                                     .filterByRelativeNumberOfScans(
                                             mergeParameters.getParameter(
                                                     MsMsSpectraMergeParameters.PEAK_COUNT_PARAMETER)
@@ -296,6 +307,15 @@ public class SiriusExportTask extends AbstractTask {
         }
     }
 
+    /**
+     * @return true if the MS/MS spectra of the feature are exported when they
+     *         are merged per feature
+     */
+    private static boolean isExportedFeature(Feature f) {
+        return f.getFeatureStatus() == FeatureStatus.DETECTED
+                && f.getMostIntenseFragmentScanNumber() >= 0;
+    }
+
     private boolean isSkipRow(PeakListRow row) {
         // skip rows which have no isotope pattern and no MS/MS spectrum
         for (Feature f : row.getPeaks()) {
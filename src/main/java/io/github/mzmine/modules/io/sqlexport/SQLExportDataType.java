@@ -50,6 +50,9 @@ public enum SQLExportDataType {
     FWHM("      FWHM", false, true, "DOUBLE"), //
     TAILINGFACTOR("      Tailing factor", false, true, "DOUBLE"), //
     ASYMMETRYFACTOR("      Asymmetry factor", false, true, "DOUBLE"), //
+    GAUSSIANSIMILARITY("      Gaussian similarity", false, true, "DOUBLE"), //
+    JAGGEDNESS("      Jaggedness", false, true, "DOUBLE"), //
+    SHARPNESS("      Sharpness", false, true, "DOUBLE"), //
     RAWFILE("      Raw data file name", false, true, "STRING"), //
 
     TITLE4("Other", false, false, ""), //
@@ -255,6 +255,30 @@ class SQLExportTask extends AbstractTask {
                         statement.setDouble(i + 1, peak.getAsymmetryFactor());
                         loopDataFiles = true;
                         break;
+                    case GAUSSIANSIMILARITY:
+                        if (peak.getGaussianSimilarity() != null) {
+                            statement.setDouble(i + 1, peak.getGaussianSimilarity());
+                        } else {
+                            statement.setNull(i + 1, Types.DOUBLE);
+                        }
+                        loopDataFiles = true;
+                        break;
+                    case JAGGEDNESS:
+                        if (peak.getJaggedness() != null) {
+                            statement.setDouble(i + 1, peak.getJaggedness());
+                        } else {
+                            statement.setNull(i + 1, Types.DOUBLE);
+                        }
+                        loopDataFiles = true;
+                        break;
+                    case SHARPNESS:
+                        if (peak.getSharpness() != null) {
+                            statement.setDouble(i + 1, peak.getSharpness());
+                        } else {
+                            statement.setNull(i + 1, Types.DOUBLE);
+                        }
+                        loopDataFiles = true;
+                        break;
                     case RAWFILE:
                         statement.setString(i + 1, rawDataFile.getName());
                         loopDataFiles = true;
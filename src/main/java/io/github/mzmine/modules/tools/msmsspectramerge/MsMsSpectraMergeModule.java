@@ -563,21 +563,29 @@ public class MsMsSpectraMergeModule implements MZmineModule {
         // measurement
         expectedPPM = new MZTolerance(expectedPPM.getMzTolerance() * 4,
                 expectedPPM.getPpmTolerance() * 4);
+        // m/z and intensity of the merged peaks, updated together with
+        // orderedByMz
+        final double[] mzs = new double[orderedByMz.length];
+        final double[] intensities = new double[orderedByMz.length];
+        for (int i = 0; i < orderedByMz.length; ++i) {
+            mzs[i] = orderedByMz[i].getMZ();
+            intensities[i] = orderedByMz[i].getIntensity();
+        }
         final List<MergedDataPoint> append = new ArrayList<>();
         for (int k = 0; k < orderedByInt.length; ++k) {
             final DataPoint peak = orderedByInt[k];
-            final double dev = expectedPPM.getMzToleranceForMass(peak.getMZ());
-            final double lb = peak.getMZ() - dev, ub = peak.getMZ() + dev;
-            int mz1 = Arrays.binarySearch(orderedByMz, peak,
-                    Comparator.comparingDouble(DataPoint::getMZ));
+            final double peakMz = peak.getMZ();
+            final double dev = expectedPPM.getMzToleranceForMass(peakMz);
+            final double lb = peakMz - dev, ub = peakMz + dev;
+            int mz1 = Arrays.binarySearch(mzs, peakMz);
             if (mz1 < 0) {
                 mz1 = -(mz1 + 1);
             }
             int mz0 = mz1 - 1;
-            while (mz1 < orderedByMz.length && orderedByMz[mz1].getMZ() <= ub)
+            while (mz1 < mzs.length && mzs[mz1] <= ub)
                 ++mz1;
             --mz1;
-            while (mz0 >= 0 && orderedByMz[mz0].getMZ() >= lb)
+            while (mz0 >= 0 && mzs[mz0] >= lb)
                 --mz0;
             ++mz0;
             if (mz0 <= mz1) {
@@ -585,11 +593,9 @@ public class MsMsSpectraMergeModule implements MZmineModule {
                 int mostIntense = mz0;
                 double bestScore = Double.NEGATIVE_INFINITY;
                 for (int i = mz0; i <= mz1; ++i) {
-                    final double massDiff = orderedByMz[i].getMZ()
-                            - peak.getMZ();
+                    final double massDiff = mzs[i] - peakMz;
                     final double score = Erf.erfc(3 * massDiff)
-                            / (dev * Math.sqrt(2))
-                            * orderedByMz[i].getIntensity();
+                            / (dev * Math.sqrt(2)) * intensities[i];
                     if (score > bestScore) {
                         bestScore = score;
                         mostIntense = i;
@@ -598,6 +604,9 @@ public class MsMsSpectraMergeModule implements MZmineModule {
 
                 orderedByMz[mostIntense] = orderedByMz[mostIntense].merge(peak,
                         mzMergeMode, intensityMergeMode);
+                mzs[mostIntense] = orderedByMz[mostIntense].getMZ();
+                intensities[mostIntense] = orderedByMz[mostIntense]
+                        .getIntensity();
 
             } else {
                 // append
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.tools.msmsspectramerge;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import io.github.mzmine.datamodel.Feature;
+import io.github.mzmine.datamodel.PeakListRow;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.ParameterSet;
+
+/**
+ * Caches the merged MS/MS spectra of feature list rows, so that several
+ * exports of the same feature list (e.g. SIRIUS and GNPS) merge each row only
+ * once. The methods return the same spectra as the corresponding methods of
+ * {@link MsMsSpectraMergeModule}.
+ *
+ * Spectra are cached per row (or feature), merge parameters and mass list. A
+ * row, or a feature of the row, is merged again after the features of the row
+ * have changed (see {@link PeakListRow#getModificationCount()}). The cache is bounded by
+ * the total number of merged peaks and entries expire when they are not used
+ * for EXPIRE_MINUTES minutes. The cached spectra are shared and must not be
+ * modified.
+ */
+public class MsMsSpectraMergeService {
+
+    private static final Logger logger = Logger
+            .getLogger(MsMsSpectraMergeService.class.getName());
+
+    private static final MsMsSpectraMergeService instance = new MsMsSpectraMergeService();
+
+    // Maximum number of merged peaks in all cached spectra
+    private static final long MAX_CACHED_PEAKS = 2000000;
+
+    private static final long EXPIRE_MINUTES = 10;
+
+    /**
+     * Identifies the merged spectra of one row or feature. Rows and features
+     * are compared by identity.
+     */
+    private static class Key {
+        final Object source;
+        final long modificationCount;
+        final String parameters;
+
+        Key(Object source, long modificationCount, String parameters) {
+            this.source = source;
+            this.modificationCount = modificationCount;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return source == other.source
+                    && modificationCount == other.modificationCount
+                    && parameters.equals(other.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(source)
+                    + Long.hashCode(modificationCount) * 17
+                    + parameters.hashCode();
+        }
+    }
+
+    private final Cache<Key, List<MergedSpectrum>> spectra = CacheBuilder
+            .newBuilder().maximumWeight(MAX_CACHED_PEAKS)
+            .weigher((Key key, List<MergedSpectrum> value) -> 1 + value
+                    .stream().mapToInt(s -> s.data.length).sum())
+            .expireAfterAccess(EXPIRE_MINUTES, TimeUnit.MINUTES).build();
+
+    private MsMsSpectraMergeService() {
+    }
+
+    public static MsMsSpectraMergeService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Merges the MS/MS spectra of the rows in parallel, as required by the
+     * merge mode of the parameters. The merged spectra are cached and
+     * returned by the other methods of this class.
+     */
+    public void mergeRows(ParameterSet parameters,
+            Collection<PeakListRow> rows, String massList) {
+        mergeRows(parameters, rows, massList, feature -> true);
+    }
+
+    /**
+     * Merges the MS/MS spectra of the rows in parallel, like
+     * {@link #mergeRows(ParameterSet, Collection, String)}. If the spectra are
+     * merged per feature, only the features accepted by the filter are merged.
+     */
+    public void mergeRows(ParameterSet parameters,
+            Collection<PeakListRow> rows, String massList,
+            Predicate<Feature> featureFilter) {
+        final MergeMode mode = parameters
+                .getParameter(MsMsSpectraMergeParameters.MERGE_MODE).getValue();
+        rows.parallelStream().forEach(row -> {
+            try {
+                if (mode == MergeMode.ACROSS_SAMPLES) {
+                    mergeAcrossSamples(parameters, row, massList);
+                } else {
+                    for (Feature feature : row.getPeaks()) {
+                        if (!featureFilter.test(feature))
+                            continue;
+                        if (mode == MergeMode.SAME_SAMPLE)
+                            mergeFromSameSample(parameters, row, feature,
+                                    massList);
+                        else
+                            mergeConsecutiveScans(parameters, row, feature,
+                                    massList);
+                    }
+                }
+            } catch (RuntimeException e) {
+                // The error is reported when the spectra of the row are
+                // requested
+                logger.log(Level.FINE,
+                        "Could not merge MS/MS spectra of row " + row.getID(),
+                        e);
+            }
+        });
+    }
+
+    /**
+     * @see MsMsSpectraMergeModule#getMergedSpectra(ParameterSet, PeakListRow,
+     *      String)
+     */
+    public List<MergedSpectrum> getMergedSpectra(ParameterSet parameters,
+            PeakListRow row, String massList) {
+        final MergeMode mode = parameters
+                .getParameter(MsMsSpectraMergeParameters.MERGE_MODE).getValue();
+        final double npeaksFilter = parameters
+                .getParameter(MsMsSpectraMergeParameters.PEAK_COUNT_PARAMETER)
+                .getValue();
+        switch (mode) {
+        case CONSECUTIVE_SCANS:
+            return Arrays.stream(row.getPeaks())
+                    .flatMap(x -> mergeConsecutiveScans(parameters, row, x,
+                            massList).stream())
+                    .filter(x -> x.data.length > 0)
+                    .map(x -> x.filterByRelativeNumberOfScans(npeaksFilter))
+                    .collect(Collectors.toList());
+        case SAME_SAMPLE:
+            return Arrays.stream(row.getPeaks())
+                    .map(x -> mergeFromSameSample(parameters, row, x,
+                            massList))
+                    .filter(x -> x.data.length > 0)
+                    .map(x -> x.filterByRelativeNumberOfScans(npeaksFilter))
+                    .collect(Collectors.toList());
+        case ACROSS_SAMPLES:
+            MergedSpectrum mergedSpectrum = mergeAcrossSamples(parameters, row,
+                    massList).filterByRelativeNumberOfScans(npeaksFilter);
+            return mergedSpectrum.data.length == 0 ? Collections.emptyList()
+                    : Collections.singletonList(mergedSpectrum);
+        default:
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @see MsMsSpectraMergeModule#getBestMergedSpectrum(ParameterSet,
+     *      PeakListRow, String)
+     */
+    public MergedSpectrum getBestMergedSpectrum(ParameterSet parameters,
+            PeakListRow row, String massList) {
+        return getMergedSpectra(parameters, row, massList).stream()
+                .max(Comparator.comparingDouble(
+                        MergedSpectrum::getBestFragmentScanScore))
+                .orElse(null);
+    }
+
+    /**
+     * @see MsMsSpectraMergeModule#mergeAcrossSamples(ParameterSet,
+     *      PeakListRow, String)
+     */
+    public MergedSpectrum mergeAcrossSamples(ParameterSet parameters,
+            PeakListRow row, String massList) {
+        return get(new Key(row, row.getModificationCount(),
+                MergeMode.ACROSS_SAMPLES + "|"
+                        + getParametersKey(parameters, massList)),
+                () -> Collections.singletonList(getModule()
+                        .mergeAcrossSamples(parameters, row, massList)))
+                                .get(0);
+    }
+
+    /**
+     * @param row
+     *            row of the feature
+     * @see MsMsSpectraMergeModule#mergeFromSameSample(ParameterSet, Feature,
+     *      String)
+     */
+    public MergedSpectrum mergeFromSameSample(ParameterSet parameters,
+            PeakListRow row, Feature feature, String massList) {
+        return get(new Key(feature, row.getModificationCount(),
+                MergeMode.SAME_SAMPLE + "|"
+                        + getParametersKey(parameters, massList)),
+                () -> Collections.singletonList(getModule()
+                        .mergeFromSameSample(parameters, feature, massList)))
+                                .get(0);
+    }
+
+    /**
+     * @param row
+     *            row of the feature
+     * @see MsMsSpectraMergeModule#mergeConsecutiveScans(ParameterSet, Feature,
+     *      String)
+     */
+    public List<MergedSpectrum> mergeConsecutiveScans(ParameterSet parameters,
+            PeakListRow row, Feature feature, String massList) {
+        return get(new Key(feature, row.getModificationCount(),
+                MergeMode.CONSECUTIVE_SCANS + "|"
+                        + getParametersKey(parameters, massList)),
+                () -> Collections.unmodifiableList(getModule()
+                        .mergeConsecutiveScans(parameters, feature, massList)));
+    }
+
+    private List<MergedSpectrum> get(Key key,
+            Callable<List<MergedSpectrum>> loader) {
+        try {
+            return spectra.get(key, loader);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            // Throw the same exception as the module
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static MsMsSpectraMergeModule getModule() {
+        return MZmineCore.getModuleInstance(MsMsSpectraMergeModule.class);
+    }
+
+    /**
+     * @return a key identifying the values of the merge parameters
+     */
+    private static String getParametersKey(ParameterSet parameters,
+            String massList) {
+        StringBuilder key = new StringBuilder(massList);
+        for (Parameter<?> parameter : parameters.getParameters()) {
+            key.append('|').append(parameter.getName()).append('=')
+                    .append(parameter.getValue());
+        }
+        return key.toString();
+    }
+
+}
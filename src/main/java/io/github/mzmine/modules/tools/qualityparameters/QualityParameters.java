@@ -18,6 +18,10 @@
 
 package io.github.mzmine.modules.tools.qualityparameters;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.Feature;
 import io.github.mzmine.datamodel.PeakList;
 import io.github.mzmine.datamodel.RawDataFile;
@@ -25,87 +29,126 @@ import io.github.mzmine.datamodel.RawDataFile;
 /**
  * Calculates quality parameters for each peak in a feature list: - Full width
  * at half maximum (FWHM) - Tailing Factor - Asymmetry factor
+ *
+ * Optionally also the peak shape metrics: - Gaussian similarity - Jaggedness -
+ * Sharpness
+ *
+ * The peaks are processed in parallel. The retention times and intensities of
+ * each peak are read once into primitive arrays (the trace of the peak), and
+ * all parameters are calculated from the trace.
  */
 public class QualityParameters {
 
+    // FWHM of a Gaussian peak in units of its standard deviation
+    private static final double FWHM_TO_SIGMA = 2.0
+            * Math.sqrt(2.0 * Math.log(2.0));
+
     public static void calculateQualityParameters(PeakList peakList) {
+        calculateQualityParameters(peakList, false);
+    }
 
-        Feature peak;
-        double height, rt;
+    /**
+     * @param shapeMetrics
+     *            if true, also calculate the Gaussian similarity, jaggedness
+     *            and sharpness of each peak
+     */
+    public static void calculateQualityParameters(PeakList peakList,
+            boolean shapeMetrics) {
 
+        List<Feature> peaks = new ArrayList<>();
         for (int i = 0; i < peakList.getNumberOfRows(); i++) {
-            for (int x = 0; x < peakList.getNumberOfRawDataFiles(); x++) {
-
-                peak = peakList.getPeak(i, peakList.getRawDataFile(x));
+            for (RawDataFile dataFile : peakList.getRawDataFiles()) {
+                Feature peak = peakList.getPeak(i, dataFile);
                 if (peak != null) {
-                    height = peak.getHeight();
-                    rt = peak.getRT();
-
-                    // FWHM
-                    double rtValues[] = PeakFindRTs(height / 2, rt, peak);
-                    Double fwhm = rtValues[1] - rtValues[0];
-                    if (fwhm <= 0 || Double.isNaN(fwhm)
-                            || Double.isInfinite(fwhm)) {
-                        fwhm = null;
-                    }
-                    peak.setFWHM(fwhm);
-
-                    // Tailing Factor - TF
-                    double rtValues2[] = PeakFindRTs(height * 0.05, rt, peak);
-                    Double tf = (rtValues2[1] - rtValues2[0])
-                            / (2 * (rt - rtValues2[0]));
-                    if (tf <= 0 || Double.isNaN(tf) || Double.isInfinite(tf)) {
-                        tf = null;
-                    }
-                    peak.setTailingFactor(tf);
-
-                    // Asymmetry factor - AF
-                    double rtValues3[] = PeakFindRTs(height * 0.1, rt, peak);
-                    Double af = (rtValues3[1] - rt) / (rt - rtValues3[0]);
-                    if (af <= 0 || Double.isNaN(af) || Double.isInfinite(af)) {
-                        af = null;
-                    }
-                    peak.setAsymmetryFactor(af);
-
+                    peaks.add(peak);
                 }
             }
         }
 
+        peaks.parallelStream()
+                .forEach(peak -> calculateQualityParameters(peak, shapeMetrics));
+
+    }
+
+    private static void calculateQualityParameters(Feature peak,
+            boolean shapeMetrics) {
+
+        final double height = peak.getHeight();
+        final double rt = peak.getRT();
+
+        // Trace of the peak, NaN intensity for scans without data point
+        final int scanNumbers[] = peak.getScanNumbers();
+        final double retentionTimes[] = peak.getRetentionTimes();
+        final double intensities[] = new double[scanNumbers.length];
+        for (int i = 0; i < scanNumbers.length; i++) {
+            DataPoint dp = peak.getDataPoint(scanNumbers[i]);
+            intensities[i] = dp != null ? dp.getIntensity() : Double.NaN;
+        }
+
+        // FWHM
+        double rtValues[] = peakFindRTs(height / 2, rt, peak, retentionTimes,
+                intensities);
+        Double fwhm = rtValues[1] - rtValues[0];
+        if (fwhm <= 0 || Double.isNaN(fwhm) || Double.isInfinite(fwhm)) {
+            fwhm = null;
+        }
+        peak.setFWHM(fwhm);
+
+        // Tailing Factor - TF
+        double rtValues2[] = peakFindRTs(height * 0.05, rt, peak,
+                retentionTimes, intensities);
+        Double tf = (rtValues2[1] - rtValues2[0]) / (2 * (rt - rtValues2[0]));
+        if (tf <= 0 || Double.isNaN(tf) || Double.isInfinite(tf)) {
+            tf = null;
+        }
+        peak.setTailingFactor(tf);
+
+        // Asymmetry factor - AF
+        double rtValues3[] = peakFindRTs(height * 0.1, rt, peak,
+                retentionTimes, intensities);
+        Double af = (rtValues3[1] - rt) / (rt - rtValues3[0]);
+        if (af <= 0 || Double.isNaN(af) || Double.isInfinite(af)) {
+            af = null;
+        }
+        peak.setAsymmetryFactor(af);
+
+        if (shapeMetrics) {
+            peak.setPeakShapeMetrics(
+                    gaussianSimilarity(retentionTimes, intensities, rt, height,
+                            fwhm),
+                    jaggedness(intensities), sharpness(intensities));
+        }
+
     }
 
-    private static double[] PeakFindRTs(double intensity, double rt,
-            Feature peak) {
+    private static double[] peakFindRTs(double intensity, double rt,
+            Feature peak, double retentionTimes[], double intensities[]) {
 
         double x1 = 0, x2 = 0, x3 = 0, x4 = 0, y1 = 0, y2 = 0, y3 = 0, y4 = 0,
                 lastDiff1 = intensity, lastDiff2 = intensity, currentDiff,
                 currentRT;
-        int[] scanNumbers = peak.getScanNumbers();
-        RawDataFile dataFile = peak.getDataFile();
 
         // Find the data points closet to input intensity on both side of the
         // peak apex
-        for (int i = 1; i < scanNumbers.length - 1; i++) {
+        for (int i = 1; i < intensities.length - 1; i++) {
 
-            if (peak.getDataPoint(scanNumbers[i]) != null) {
-                currentDiff = Math.abs(intensity
-                        - peak.getDataPoint(scanNumbers[i]).getIntensity());
-                currentRT = dataFile.getScan(scanNumbers[i]).getRetentionTime();
+            if (!Double.isNaN(intensities[i])) {
+                currentDiff = Math.abs(intensity - intensities[i]);
+                currentRT = retentionTimes[i];
                 if (currentDiff < lastDiff1 & currentDiff > 0 & currentRT <= rt
-                        & peak.getDataPoint(scanNumbers[i + 1]) != null) {
-                    x1 = dataFile.getScan(scanNumbers[i]).getRetentionTime();
-                    y1 = peak.getDataPoint(scanNumbers[i]).getIntensity();
-                    x2 = dataFile.getScan(scanNumbers[i + 1])
-                            .getRetentionTime();
-                    y2 = peak.getDataPoint(scanNumbers[i + 1]).getIntensity();
+                        & !Double.isNaN(intensities[i + 1])) {
+                    x1 = retentionTimes[i];
+                    y1 = intensities[i];
+                    x2 = retentionTimes[i + 1];
+                    y2 = intensities[i + 1];
                     lastDiff1 = currentDiff;
                 } else if (currentDiff < lastDiff2 & currentDiff > 0
                         & currentRT >= rt
-                        & peak.getDataPoint(scanNumbers[i - 1]) != null) {
-                    x3 = dataFile.getScan(scanNumbers[i - 1])
-                            .getRetentionTime();
-                    y3 = peak.getDataPoint(scanNumbers[i - 1]).getIntensity();
-                    x4 = dataFile.getScan(scanNumbers[i]).getRetentionTime();
-                    y4 = peak.getDataPoint(scanNumbers[i]).getIntensity();
+                        & !Double.isNaN(intensities[i - 1])) {
+                    x3 = retentionTimes[i - 1];
+                    y3 = intensities[i - 1];
+                    x4 = retentionTimes[i];
+                    y4 = intensities[i];
                     lastDiff2 = currentDiff;
                 }
             }
@@ -135,4 +178,123 @@ public class QualityParameters {
         return new double[] { rt1, rt2 };
     }
 
+    /**
+     * Pearson correlation of the intensities with a Gaussian peak with the
+     * apex at (rt, height) and the given FWHM. Null without FWHM or with less
+     * than 3 data points.
+     */
+    private static Double gaussianSimilarity(double retentionTimes[],
+            double intensities[], double rt, double height, Double fwhm) {
+
+        if (fwhm == null) {
+            return null;
+        }
+        final double sigma = fwhm / FWHM_TO_SIGMA;
+
+        int n = 0;
+        double sumX = 0, sumY = 0, sumXX = 0, sumYY = 0, sumXY = 0;
+        for (int i = 0; i < intensities.length; i++) {
+            if (Double.isNaN(intensities[i])) {
+                continue;
+            }
+            final double z = (retentionTimes[i] - rt) / sigma;
+            final double x = height * Math.exp(-0.5 * z * z);
+            final double y = intensities[i];
+            n++;
+            sumX += x;
+            sumY += y;
+            sumXX += x * x;
+            sumYY += y * y;
+            sumXY += x * y;
+        }
+        if (n < 3) {
+            return null;
+        }
+
+        final double covariance = sumXY - sumX * sumY / n;
+        final double varianceX = sumXX - sumX * sumX / n;
+        final double varianceY = sumYY - sumY * sumY / n;
+        if (varianceX <= 0 || varianceY <= 0) {
+            return null;
+        }
+        return covariance / Math.sqrt(varianceX * varianceY);
+    }
+
+    /**
+     * Number of changes of direction of the intensities, except the one at
+     * the apex, divided by the number of possible changes. 0 for a smooth
+     * peak, 1 for a zigzag. Null with less than 3 data points.
+     */
+    private static Double jaggedness(double intensities[]) {
+
+        int n = 0, changes = 0, lastDirection = 0;
+        double last = Double.NaN;
+        for (double intensity : intensities) {
+            if (Double.isNaN(intensity)) {
+                continue;
+            }
+            if (n > 0) {
+                final int direction = (int) Math.signum(intensity - last);
+                if (direction != 0) {
+                    if (lastDirection != 0 && direction != lastDirection) {
+                        changes++;
+                    }
+                    lastDirection = direction;
+                }
+            }
+            last = intensity;
+            n++;
+        }
+        if (n < 3) {
+            return null;
+        }
+        return Math.max(0, changes - 1) / (double) (n - 2);
+    }
+
+    /**
+     * Sum of the relative intensity increases towards the apex, on both sides
+     * of the apex. Null with less than 3 data points.
+     */
+    private static Double sharpness(double intensities[]) {
+
+        int n = 0, apex = -1;
+        for (int i = 0; i < intensities.length; i++) {
+            if (Double.isNaN(intensities[i])) {
+                continue;
+            }
+            n++;
+            if (apex < 0 || intensities[i] > intensities[apex]) {
+                apex = i;
+            }
+        }
+        if (n < 3) {
+            return null;
+        }
+
+        double sharpness = 0;
+        int previous = -1;
+        for (int i = 0; i <= apex; i++) {
+            if (Double.isNaN(intensities[i])) {
+                continue;
+            }
+            if (previous >= 0 && intensities[previous] > 0) {
+                sharpness += (intensities[i] - intensities[previous])
+                        / intensities[previous];
+            }
+            previous = i;
+        }
+        previous = -1;
+        for (int i = intensities.length - 1; i >= apex; i--) {
+            if (Double.isNaN(intensities[i])) {
+                continue;
+            }
+            if (previous >= 0 && intensities[previous] > 0) {
+                sharpness += (intensities[i] - intensities[previous])
+                        / intensities[previous];
+            }
+            previous = i;
+        }
+        return sharpness;
+    }
+
 }
@@ -41,7 +41,13 @@ public enum DataFileColumnType {
                                                                                             "Asymmetry factor",
                                                                                             Double.class), PARENT_ROW_ID(
                                                                                                     "Parent Row ID",
-                                                                                                    Integer.class);
+                                                                                                    Integer.class), GAUSSIAN_SIMILARITY(
+                                                                                                    "Gaussian similarity",
+                                                                                                    Double.class), JAGGEDNESS(
+                                                                                                    "Jaggedness",
+                                                                                                    Double.class), SHARPNESS(
+                                                                                                    "Sharpness",
+                                                                                                    Double.class);
 
     private final String columnName;
     private final Class<?> columnClass;
@@ -95,7 +95,7 @@ public class PeakListTable extends JTable implements ComponentToolTipProvider {
         cm.createColumns();
 
         // Initialize sorter
-        sorter = new TableRowSorter<PeakListTableModel>(pkTableModel);
+        sorter = new PeakListTableRowSorter(pkTableModel);
         setRowSorter(sorter);
 
         PeakListTablePopupMenu popupMenu = new PeakListTablePopupMenu(window,
@@ -251,6 +251,11 @@ public class PeakListTableColumnModel extends DefaultTableColumnModel
                 case AF:
                     newColumn.setCellRenderer(qcRenderer);
                     break;
+                case GAUSSIAN_SIMILARITY:
+                case JAGGEDNESS:
+                case SHARPNESS:
+                    newColumn.setCellRenderer(qcRenderer);
+                    break;
                 default:
                     newColumn.setCellRenderer(defaultRenderer);
                     break;
@@ -18,7 +18,15 @@
 
 package io.github.mzmine.modules.visualization.featurelisttable.table;
 
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+import javax.swing.event.TableModelEvent;
 import javax.swing.table.AbstractTableModel;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import io.github.mzmine.datamodel.Feature;
 import io.github.mzmine.datamodel.FeatureStatus;
 import io.github.mzmine.datamodel.PeakIdentity;
@@ -26,14 +34,57 @@ import io.github.mzmine.datamodel.PeakList;
 import io.github.mzmine.datamodel.PeakListRow;
 import io.github.mzmine.datamodel.RawDataFile;
 
+/**
+ * Table model of a feature list. The values of the numeric columns can be
+ * precomputed into primitive column vectors (see
+ * {@link #buildColumnVector(int)}), usually in the background before the table
+ * is sorted, so that sorting and filtering only read the vectors. The vectors
+ * are dropped when the table data changes, rows are added to or removed from
+ * the feature list, or the features of a row change.
+ */
 public class PeakListTableModel extends AbstractTableModel {
 
     /**
      * 
      */
     private static final long serialVersionUID = 1L;
+
+    private static final Logger logger = Logger
+            .getLogger(PeakListTableModel.class.getName());
+
+    // Maximum number of values of all column vectors (128 MB)
+    private static final long MAX_VECTOR_VALUES = 1L << 24;
+
     private PeakList peakList;
 
+    /**
+     * Values of a numeric column, NaN for null values
+     */
+    private static class ColumnVector {
+        private final long modificationCount;
+        private final long rowModificationCounts[];
+        private final int dataVersion;
+        private final double values[];
+
+        private ColumnVector(long modificationCount,
+                long rowModificationCounts[], int dataVersion,
+                double values[]) {
+            this.modificationCount = modificationCount;
+            this.rowModificationCounts = rowModificationCounts;
+            this.dataVersion = dataVersion;
+            this.values = values;
+        }
+    }
+
+    // Increased whenever the table data changes, so that a vector which is
+    // being built at that time is not used
+    private volatile int dataVersion;
+
+    private final transient Cache<Integer, ColumnVector> columnVectors = CacheBuilder
+            .newBuilder().maximumWeight(MAX_VECTOR_VALUES)
+            .weigher((Integer col, ColumnVector vector) -> vector.values.length)
+            .build();
+
     /**
      * Constructor, assign given dataset to this table
      */
@@ -42,6 +93,91 @@ public class PeakListTableModel extends AbstractTableModel {
 
     }
 
+    /**
+     * @return true if the values of the column are numbers, which can be
+     *         stored in a column vector
+     */
+    boolean isNumericColumn(int col) {
+        final Class<?> columnClass = getColumnClass(col);
+        return (columnClass == Double.class) || (columnClass == Integer.class);
+    }
+
+    /**
+     * @return true if the column vector of the column is built and up to date
+     */
+    boolean hasColumnVector(int col) {
+        final ColumnVector vector = getColumnVector(col);
+        if (vector == null)
+            return false;
+        for (int row = 0; row < vector.values.length; row++) {
+            if (!isRowUpToDate(vector, row)) {
+                columnVectors.invalidate(col);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calculates the values of a numeric column of all rows in parallel and
+     * stores them in a column vector. This method is meant to be called
+     * outside of the event dispatch thread.
+     */
+    void buildColumnVector(int col) {
+
+        if (!isNumericColumn(col) || hasColumnVector(col))
+            return;
+
+        final long startTime = System.currentTimeMillis();
+        final long modificationCount = peakList.getModificationCount();
+        final int version = dataVersion;
+        final int numOfRows = getRowCount();
+        final long rowModificationCounts[] = new long[numOfRows];
+        final double values[] = new double[numOfRows];
+        IntStream.range(0, numOfRows).parallel().forEach(row -> {
+            // Read the count first, so that a concurrent change invalidates
+            // the value rather than being missed
+            rowModificationCounts[row] = peakList.getRow(row)
+                    .getModificationCount();
+            Object value = calculateValueAt(row, col);
+            values[row] = value instanceof Number
+                    ? ((Number) value).doubleValue()
+                    : Double.NaN;
+        });
+        columnVectors.put(col,
+                new ColumnVector(modificationCount, rowModificationCounts,
+                        version, values));
+
+        logger.finest(() -> "Built vector of column " + col + " of "
+                + peakList + " (" + numOfRows + " rows) in "
+                + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    private ColumnVector getColumnVector(int col) {
+        final ColumnVector vector = columnVectors.getIfPresent(col);
+        if ((vector == null) || (vector.dataVersion != dataVersion)
+                || (vector.modificationCount != peakList
+                        .getModificationCount()))
+            return null;
+        return vector;
+    }
+
+    /**
+     * @return true if the features of the row did not change since the vector
+     *         was built
+     */
+    private boolean isRowUpToDate(ColumnVector vector, int row) {
+        return vector.rowModificationCounts[row] == peakList.getRow(row)
+                .getModificationCount();
+    }
+
+    @Override
+    public void fireTableChanged(TableModelEvent e) {
+        dataVersion++;
+        columnVectors.invalidateAll();
+        super.fireTableChanged(e);
+    }
+
     @Override
     public int getColumnCount() {
         return CommonColumnType.values().length
@@ -80,6 +216,27 @@ public class PeakListTableModel extends AbstractTableModel {
     @Override
     public Object getValueAt(int row, int col) {
 
+        final ColumnVector vector = getColumnVector(col);
+        if ((vector != null) && (row < vector.values.length)) {
+            if (!isRowUpToDate(vector, row)) {
+                // The features of the row changed, e.g. by gap filling
+                columnVectors.invalidate(col);
+                return calculateValueAt(row, col);
+            }
+            final double value = vector.values[row];
+            if (Double.isNaN(value))
+                return null;
+            if (getColumnClass(col) == Integer.class)
+                return (int) value;
+            return value;
+        }
+
+        return calculateValueAt(row, col);
+
+    }
+
+    private Object calculateValueAt(int row, int col) {
+
         PeakListRow peakListRow = peakList.getRow(row);
 
         if (isCommonColumn(col)) {
@@ -154,6 +311,12 @@ public class PeakListTableModel extends AbstractTableModel {
                 return peak.getAsymmetryFactor();
             case PARENT_ROW_ID:
                 return peak.getParentChromatogramRowID();
+            case GAUSSIAN_SIMILARITY:
+                return peak.getGaussianSimilarity();
+            case JAGGEDNESS:
+                return peak.getJaggedness();
+            case SHARPNESS:
+                return peak.getSharpness();
             }
 
         }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.visualization.featurelisttable.table;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.SwingWorker;
+import javax.swing.table.TableRowSorter;
+
+/**
+ * Row sorter of the feature list table. Before a numeric column is sorted, its
+ * column vector (see {@link PeakListTableModel#buildColumnVector(int)}) is
+ * built in the background, and the column is sorted when the vector is ready.
+ * The comparisons of the sort then only read the vector, instead of looking
+ * up the row and feature of each value on the event dispatch thread. The
+ * vectors of the common numeric columns, which are also used by the filters
+ * of the table window, are built when the sorter is created.
+ */
+class PeakListTableRowSorter extends TableRowSorter<PeakListTableModel> {
+
+    private static final Logger logger = Logger
+            .getLogger(PeakListTableRowSorter.class.getName());
+
+    // Columns whose vectors are being built (only accessed on the EDT)
+    private final Set<Integer> pendingColumns = new HashSet<>();
+
+    PeakListTableRowSorter(PeakListTableModel model) {
+        super(model);
+
+        for (CommonColumnType columnType : CommonColumnType.values()) {
+            final int column = columnType.ordinal();
+            if (model.isNumericColumn(column))
+                buildColumnVector(column, false);
+        }
+    }
+
+    @Override
+    public void toggleSortOrder(int column) {
+
+        final PeakListTableModel model = getModel();
+        if (!isSortable(column) || !model.isNumericColumn(column)
+                || model.hasColumnVector(column)) {
+            super.toggleSortOrder(column);
+            return;
+        }
+
+        buildColumnVector(column, true);
+    }
+
+    /**
+     * Builds the vector of the column in the background, and optionally
+     * toggles the sort order of the column when it is ready
+     */
+    private void buildColumnVector(int column, boolean toggleSortOrder) {
+
+        // Ignore repeated clicks while the vector is being built
+        if (!pendingColumns.add(column))
+            return;
+
+        new SwingWorker<Void, Void>() {
+
+            @Override
+            protected Void doInBackground() {
+                getModel().buildColumnVector(column);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                pendingColumns.remove(column);
+                try {
+                    get();
+                } catch (InterruptedException | ExecutionException e) {
+                    logger.log(Level.WARNING,
+                            "Could not build the vector of column " + column,
+                            e);
+                }
+                if (toggleSortOrder
+                        && column < getModel().getColumnCount())
+                    PeakListTableRowSorter.super.toggleSortOrder(column);
+            }
+
+        }.execute();
+    }
+
+}
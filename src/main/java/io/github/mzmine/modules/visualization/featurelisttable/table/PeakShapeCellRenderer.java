@@ -20,27 +20,38 @@ package io.github.mzmine.modules.visualization.featurelisttable.table;
 
 import java.awt.Color;
 import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
 
-import javax.swing.JPanel;
+import javax.swing.JComponent;
 import javax.swing.JTable;
-import javax.swing.OverlayLayout;
 import javax.swing.table.TableCellRenderer;
 
 import io.github.mzmine.datamodel.Feature;
 import io.github.mzmine.datamodel.PeakList;
 import io.github.mzmine.datamodel.PeakListRow;
-import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.modules.visualization.featurelisttable.PeakListTableParameters;
 import io.github.mzmine.modules.visualization.featurelisttable.PeakShapeNormalization;
 import io.github.mzmine.parameters.ParameterSet;
-import io.github.mzmine.util.components.CombinedXICComponent;
+import io.github.mzmine.util.components.ComponentToolTipManager;
 import io.github.mzmine.util.components.PeakXICComponent;
 
+/**
+ * Renders the peak shapes of the features and rows. The images are painted in
+ * the background by a {@link PeakShapeImageCache}; until an image is ready,
+ * only the border of the cell is drawn.
+ */
 class PeakShapeCellRenderer implements TableCellRenderer {
 
     private PeakList peakList;
     private ParameterSet parameters;
 
+    // Created with the first table which is rendered
+    private PeakShapeImageCache imageCache;
+
+    // One component is reused for all cells, as in the Swing renderers
+    private final ImageComponent component = new ImageComponent();
+
     PeakShapeCellRenderer(PeakList peakList, ParameterSet parameters) {
         this.peakList = peakList;
         this.parameters = parameters;
@@ -53,8 +64,11 @@ class PeakShapeCellRenderer implements TableCellRenderer {
     public Component getTableCellRendererComponent(JTable table, Object value,
             boolean isSelected, boolean hasFocus, int row, int column) {
 
-        JPanel newPanel = new JPanel();
-        newPanel.setLayout(new OverlayLayout(newPanel));
+        if (imageCache == null) {
+            imageCache = new PeakShapeImageCache(peakList, table);
+            // Repaint the images when the features change
+            table.getModel().addTableModelListener(e -> imageCache.clear());
+        }
 
         Color bgColor;
 
@@ -63,7 +77,12 @@ class PeakShapeCellRenderer implements TableCellRenderer {
         else
             bgColor = table.getBackground();
 
-        newPanel.setBackground(bgColor);
+        component.setBackground(bgColor);
+        component.image = null;
+        component.setToolTipText(null);
+
+        final int width = table.getColumnModel().getColumn(column).getWidth();
+        final int height = table.getRowHeight(row);
 
         if (value instanceof Feature) {
 
@@ -81,7 +100,9 @@ class PeakShapeCellRenderer implements TableCellRenderer {
                 maxHeight = peakList.getDataPointMaxIntensity();
                 break;
             case ROWMAX:
-                int rowNumber = peakList.getPeakRowNum(peak);
+                // The row of the cell, instead of searching all rows for the
+                // feature
+                int rowNumber = table.convertRowIndexToModel(row);
                 maxHeight = peakList.getRow(rowNumber)
                         .getDataPointMaxIntensity();
                 break;
@@ -90,11 +111,11 @@ class PeakShapeCellRenderer implements TableCellRenderer {
                         .upperEndpoint();
                 break;
             }
-            PeakXICComponent xic = new PeakXICComponent(peak, maxHeight);
 
-            newPanel.add(xic);
+            component.image = imageCache.getImage(peak, width, height,
+                    maxHeight);
 
-            newPanel.setToolTipText(xic.getToolTipText());
+            component.setToolTipText(peak.toString());
 
         }
 
@@ -102,22 +123,42 @@ class PeakShapeCellRenderer implements TableCellRenderer {
 
             PeakListRow plRow = (PeakListRow) value;
 
-            RawDataFile[] dataFiles = peakList.getRawDataFiles();
-            Feature[] peaks = new Feature[dataFiles.length];
-            for (int i = 0; i < dataFiles.length; i++) {
-                peaks[i] = plRow.getPeak(dataFiles[i]);
-            }
+            component.image = imageCache.getImage(plRow, width, height);
 
-            CombinedXICComponent xic = new CombinedXICComponent(peaks,
-                    plRow.getID());
+            // We use the tool tip text as a id for customTooltipProvider
+            component.setToolTipText(
+                    ComponentToolTipManager.CUSTOM + plRow.getID());
 
-            newPanel.add(xic);
+        }
 
-            newPanel.setToolTipText(xic.getToolTipText());
+        return component;
 
+    }
+
+    /**
+     * Draws the background and the peak shape image, or only the border while
+     * the image is painted
+     */
+    private static class ImageComponent extends JComponent {
+
+        private static final long serialVersionUID = 1L;
+
+        private BufferedImage image;
+
+        private ImageComponent() {
+            setOpaque(true);
         }
 
-        return newPanel;
+        @Override
+        protected void paintComponent(Graphics g) {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+            if (image != null)
+                g.drawImage(image, 0, 0, null);
+            else
+                PeakXICComponent.componentBorder.paintBorder(this, g, 0, 0,
+                        getWidth(), getHeight());
+        }
 
     }
 
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.visualization.featurelisttable.table;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.JComponent;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.github.mzmine.datamodel.Feature;
+import io.github.mzmine.datamodel.PeakList;
+import io.github.mzmine.datamodel.PeakListRow;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.util.components.CombinedXICComponent;
+import io.github.mzmine.util.components.PeakXICComponent;
+
+/**
+ * Bounded cache of the peak shape images of the feature list table. Missing
+ * images are painted in the background and the table is repainted when they
+ * are ready, so walking the data points of the features does not block the
+ * event dispatch thread while scrolling. The most recently requested images
+ * are painted first, and requests which are no longer repainted (the cell was
+ * scrolled out of view) are dropped when there is newer work.
+ */
+class PeakShapeImageCache {
+
+    private static final Logger logger = Logger
+            .getLogger(PeakShapeImageCache.class.getName());
+
+    // Maximum number of pixels of the cached images (64 MB)
+    private static final long MAX_PIXELS = 1L << 24;
+
+    // Requests older than this are dropped if there are newer requests
+    private static final long STALE_REQUEST_NANOS = TimeUnit.MILLISECONDS
+            .toNanos(500);
+
+    // Painting threads shared by all tables, the queue is last in, first out
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+    private static final ThreadPoolExecutor painter;
+    static {
+        final int numOfThreads = Math.max(1, Math.min(4,
+                Runtime.getRuntime().availableProcessors() / 2));
+        painter = new ThreadPoolExecutor(numOfThreads, numOfThreads, 30L,
+                TimeUnit.SECONDS, new LinkedBlockingDeque<Runnable>() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    public boolean offer(Runnable r) {
+                        return offerFirst(r);
+                    }
+                }, r -> {
+                    Thread thread = new Thread(r, "Peak shape painter #"
+                            + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+        painter.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Feature or row (compared by identity), image size and normalization
+     */
+    private static class Key {
+
+        private final Object value;
+        private final int width, height;
+        private final double maxHeight;
+
+        private Key(Object value, int width, int height, double maxHeight) {
+            this.value = value;
+            this.width = width;
+            this.height = height;
+            this.maxHeight = maxHeight;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = System.identityHashCode(value);
+            hash = 31 * hash + width;
+            hash = 31 * hash + height;
+            hash = 31 * hash + Double.hashCode(maxHeight);
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return (value == other.value) && (width == other.width)
+                    && (height == other.height)
+                    && (Double.compare(maxHeight, other.maxHeight) == 0);
+        }
+
+    }
+
+    private final PeakList peakList;
+    private final JComponent table;
+
+    private final Cache<Key, BufferedImage> images = CacheBuilder.newBuilder()
+            .maximumWeight(MAX_PIXELS)
+            .weigher((Key key, BufferedImage image) -> image.getWidth()
+                    * image.getHeight())
+            .build();
+
+    // Last request time of the images that are being painted
+    private final Map<Key, Long> pending = new ConcurrentHashMap<>();
+
+    /**
+     * @param table
+     *            table which is repainted when an image is ready
+     */
+    PeakShapeImageCache(PeakList peakList, JComponent table) {
+        this.peakList = peakList;
+        this.table = table;
+    }
+
+    /**
+     * Returns the image of the peak shape of a feature, or null if it is not
+     * painted yet
+     *
+     * @param maxHeight
+     *            intensity at the top of the image
+     */
+    BufferedImage getImage(Feature peak, int width, int height,
+            double maxHeight) {
+        return getImage(new Key(peak, width, height, maxHeight));
+    }
+
+    /**
+     * Returns the image of the peak shapes of all features of a row, or null
+     * if it is not painted yet
+     */
+    BufferedImage getImage(PeakListRow row, int width, int height) {
+        return getImage(new Key(row, width, height, 0.0));
+    }
+
+    private BufferedImage getImage(Key key) {
+
+        if ((key.width <= 0) || (key.height <= 0))
+            return null;
+
+        final BufferedImage image = images.getIfPresent(key);
+        if (image != null)
+            return image;
+
+        // Submit the request, or renew its time if it is pending
+        if (pending.put(key, System.nanoTime()) == null)
+            painter.execute(() -> paint(key));
+
+        return null;
+    }
+
+    private void paint(Key key) {
+
+        final Long requestTime = pending.get(key);
+        if ((requestTime == null) || ((System.nanoTime()
+                - requestTime > STALE_REQUEST_NANOS)
+                && !painter.getQueue().isEmpty())) {
+            // Repaint, so that the request is renewed if the cell is visible
+            pending.remove(key);
+            table.repaint();
+            return;
+        }
+
+        final BufferedImage image = new BufferedImage(key.width, key.height,
+                BufferedImage.TYPE_INT_ARGB);
+        // Paint directly into the image, Swing components must only be
+        // created on the event dispatch thread
+        final Graphics2D g2 = image.createGraphics();
+        try {
+            // Border of the components
+            g2.setColor(Color.lightGray);
+            g2.drawRect(0, 0, key.width - 1, key.height - 1);
+
+            final Dimension size = new Dimension(key.width, key.height);
+            if (key.value instanceof Feature) {
+                PeakXICComponent.paintPeakShape(g2, (Feature) key.value,
+                        key.maxHeight, size);
+            } else {
+                PeakListRow row = (PeakListRow) key.value;
+                RawDataFile[] dataFiles = peakList.getRawDataFiles();
+                Feature[] peaks = new Feature[dataFiles.length];
+                for (int i = 0; i < dataFiles.length; i++) {
+                    peaks[i] = row.getPeak(dataFiles[i]);
+                }
+                CombinedXICComponent.paintPeakShapes(g2, peaks, size);
+            }
+        } catch (Exception e) {
+            // Keep the (empty) image, so that the painting is not retried
+            logger.log(Level.WARNING, "Could not paint the peak shape", e);
+        } finally {
+            g2.dispose();
+        }
+
+        images.put(key, image);
+        pending.remove(key);
+
+        table.repaint();
+    }
+
+    /**
+     * Removes all images, e.g. when the features or the normalization changed
+     */
+    void clear() {
+        images.invalidateAll();
+    }
+
+}
@@ -28,14 +28,14 @@ import org.jfree.data.xy.AbstractXYZDataset;
 import com.google.common.collect.Range;
 import com.google.common.primitives.Ints;
 
-import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskPriority;
 import io.github.mzmine.taskcontrol.TaskStatus;
-import io.github.mzmine.util.scans.ScanUtils;
+import io.github.mzmine.util.scans.XICCache;
+import io.github.mzmine.util.scans.XICCache.XIC;
 
 /**
  * TIC visualizer data set. One data set is created per file shown in this
@@ -58,8 +58,11 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
     // Refresh interval (in milliseconds).
     private static final long REDRAW_INTERVAL = 100L;
 
-    // Last time the data set was redrawn.
-    private static long lastRedrawTime = System.currentTimeMillis();
+    // Number of scans calculated at once.
+    private static final int CHUNK_SIZE = 512;
+
+    // Last time the data set was redrawn (only accessed by the task thread).
+    private long lastRedrawTime = System.currentTimeMillis();
 
     private final RawDataFile dataFile;
 
@@ -346,62 +349,65 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
         // Determine plot type (now done from constructor).
         final TICPlotType plotType = this.plotType;
 
-        // Process each scan.
-        for (int index = 0; status != TaskStatus.CANCELED
-                && index < totalScans; index++) {
+        // The base peaks and TICs are taken from the shared XIC cache, which
+        // only reads the scans that are not entirely within the m/z range and
+        // were not calculated before. The scans are processed in chunks, so
+        // that the plot is updated while the values are calculated.
+        for (int start = 0; status != TaskStatus.CANCELED
+                && start < totalScans; start += CHUNK_SIZE) {
 
-            // Current scan.
-            final Scan scan = scans[index];
+            final int end = Math.min(start + CHUNK_SIZE, totalScans);
+            final int scanNumbers[] = new int[end - start];
+            for (int index = start; index < end; index++)
+                scanNumbers[index - start] = scans[index].getScanNumber();
+            final XIC xic = XICCache.getXIC(dataFile, scanNumbers, mzRange);
 
-            // Determine base peak value.
-            final DataPoint basePeak = mzRange.encloses(
-                    scan.getDataPointMZRange()) ? scan.getHighestDataPoint()
-                            : ScanUtils.findBasePeak(scan, mzRange);
-            if (basePeak != null) {
+            for (int index = start; index < end; index++) {
 
-                basePeakValues[index] = basePeak.getMZ();
-            }
+                final int i = index - start;
+
+                // Determine base peak value.
+                final double basePeakMZ = xic.getBasePeakMZ(i);
+                if (!Double.isNaN(basePeakMZ)) {
 
-            // Determine peak intensity.
-            double intensity = 0.0;
-            if (plotType == TICPlotType.TIC) {
+                    basePeakValues[index] = basePeakMZ;
+                }
 
-                // Total ion count.
-                intensity = mzRange.encloses(scan.getDataPointMZRange())
-                        ? scan.getTIC()
-                        : ScanUtils.calculateTIC(scan, mzRange);
+                // Determine peak intensity.
+                double intensity = 0.0;
+                if (plotType == TICPlotType.TIC) {
 
-            } else if (plotType == TICPlotType.BASEPEAK && basePeak != null) {
+                    // Total ion count.
+                    intensity = xic.getTIC(i);
 
-                intensity = basePeak.getIntensity();
-            }
+                } else if (plotType == TICPlotType.BASEPEAK) {
 
-            intensityValues[index] = intensity;
-            rtValues[index] = scan.getRetentionTime();
+                    intensity = xic.getBasePeakIntensity(i);
+                }
 
-            // Update min and max.
-            if (index == 0) {
+                intensityValues[index] = intensity;
+                rtValues[index] = scans[index].getRetentionTime();
 
-                intensityMin = intensity;
-                intensityMax = intensity;
+                // Update min and max.
+                if (index == 0) {
 
-            } else {
+                    intensityMin = intensity;
+                    intensityMax = intensity;
 
-                intensityMin = Math.min(intensity, intensityMin);
-                intensityMax = Math.max(intensity, intensityMax);
+                } else {
+
+                    intensityMin = Math.min(intensity, intensityMin);
+                    intensityMax = Math.max(intensity, intensityMax);
+                }
             }
 
-            processedScans++;
+            processedScans = end;
 
             // Refresh every REDRAW_INTERVAL ms.
-            synchronized (TICDataSet.class) {
-
-                if (System.currentTimeMillis()
-                        - lastRedrawTime > REDRAW_INTERVAL) {
+            if (System.currentTimeMillis() - lastRedrawTime > REDRAW_INTERVAL) {
 
-                    refresh();
-                    lastRedrawTime = System.currentTimeMillis();
-                }
+                refresh();
+                lastRedrawTime = System.currentTimeMillis();
             }
         }
     }
@@ -18,12 +18,11 @@
 
 package io.github.mzmine.parameters.parametertypes.selectors;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.regex.Pattern;
 import javax.annotation.concurrent.Immutable;
 import com.google.common.base.Strings;
 import com.google.common.collect.Range;
-import com.google.common.primitives.Ints;
 
 import io.github.mzmine.datamodel.MassSpectrumType;
 import io.github.mzmine.datamodel.PolarityType;
@@ -42,6 +41,9 @@ public class ScanSelection {
     private final Integer msLevel;
     private String scanDefinition;
 
+    // Compiled wildcard pattern of the scan definition
+    private final Pattern scanDefinitionPattern;
+
     public ScanSelection() {
         this(1);
     }
@@ -65,6 +67,10 @@ public class ScanSelection {
         this.spectrumType = spectrumType;
         this.msLevel = msLevel;
         this.scanDefinition = scanDefinition;
+        this.scanDefinitionPattern = Strings.isNullOrEmpty(scanDefinition)
+                ? null
+                : Pattern.compile(
+                        TextUtils.createRegexFromWildcards(scanDefinition));
     }
 
     public Range<Integer> getScanNumberRange() {
@@ -97,32 +103,76 @@ public class ScanSelection {
 
     public Scan[] getMatchingScans(RawDataFile dataFile) {
 
-        final List<Scan> matchingScans = new ArrayList<>();
+        final int scanNumbers[] = getMatchingScanNumbers(dataFile);
+        final Scan matchingScans[] = new Scan[scanNumbers.length];
+        for (int i = 0; i < scanNumbers.length; i++)
+            matchingScans[i] = dataFile.getScan(scanNumbers[i]);
+
+        return matchingScans;
+    }
 
-        int scanNumbers[] = dataFile.getScanNumbers();
-        for (int scanNumber : scanNumbers) {
+    public int[] getMatchingScanNumbers(RawDataFile dataFile) {
 
-            Scan scan = dataFile.getScan(scanNumber);
-            if (matches(scan))
-                matchingScans.add(scan);
+        final int offset = getScanNumberOffset(dataFile.getScanNumbers());
+
+        // Select by MS level, retention time and polarity without loading the
+        // scans and check the other conditions only for the selected scans
+        final int selected[] = dataFile.getScanNumbers(msLevel, scanRTRange,
+                polarity);
+
+        int matchingScans[] = new int[selected.length];
+        int count = 0;
+        for (int scanNumber : selected) {
+            if (matchesSelectedScan(dataFile, scanNumber, offset))
+                matchingScans[count++] = scanNumber;
         }
 
-        return matchingScans.toArray(new Scan[matchingScans.size()]);
+        return Arrays.copyOf(matchingScans, count);
     }
 
-    public int[] getMatchingScanNumbers(RawDataFile dataFile) {
+    /**
+     * Checks the conditions that are not selected by
+     * {@link RawDataFile#getScanNumbers(Integer, Range, PolarityType)}
+     */
+    private boolean matchesSelectedScan(RawDataFile dataFile, int scanNumber,
+            int scanNumberOffset) {
 
-        final List<Integer> matchingScans = new ArrayList<>();
+        if ((scanNumberRange != null)
+                && (!scanNumberRange.contains(scanNumber)))
+            return false;
 
-        int scanNumbers[] = dataFile.getScanNumbers();
+        if ((baseFilteringInteger != null)
+                && ((scanNumber - scanNumberOffset)
+                        % baseFilteringInteger != 0))
+            return false;
 
-        for (int scanNumber : scanNumbers) {
-            Scan scan = dataFile.getScan(scanNumber);
-            if (matches(scan))
-                matchingScans.add(scanNumber);
+        if (scanDefinitionPattern != null) {
+            final String actualScanDefinition = dataFile
+                    .getScanDefinition(scanNumber);
+            if (Strings.isNullOrEmpty(actualScanDefinition))
+                return false;
+            if (!scanDefinitionPattern.matcher(actualScanDefinition).matches())
+                return false;
         }
 
-        return Ints.toArray(matchingScans);
+        // The spectrum type may require reading the data points
+        if ((spectrumType != null) && (!spectrumType
+                .equals(dataFile.getScan(scanNumber).getSpectrumType())))
+            return false;
+
+        return true;
+    }
+
+    /**
+     * @return the scan number offset used for baseFilteringInteger
+     */
+    private int getScanNumberOffset(int dataFileScanNumbers[]) {
+        if (scanNumberRange != null)
+            return scanNumberRange.lowerEndpoint();
+        // first scan number
+        if (dataFileScanNumbers.length > 0)
+            return dataFileScanNumbers[0];
+        return 1;
     }
 
     public boolean matches(Scan scan) {
@@ -172,17 +222,15 @@ public class ScanSelection {
                 && (!scanRTRange.contains(scan.getRetentionTime())))
             return false;
 
-        if (!Strings.isNullOrEmpty(scanDefinition)) {
+        if (scanDefinitionPattern != null) {
 
             final String actualScanDefinition = scan.getScanDefinition();
 
             if (Strings.isNullOrEmpty(actualScanDefinition))
                 return false;
 
-            final String regex = TextUtils
-                    .createRegexFromWildcards(scanDefinition);
-
-            if (!actualScanDefinition.matches(regex))
+            if (!scanDefinitionPattern.matcher(actualScanDefinition)
+                    .matches())
                 return false;
         }
         return true;
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.project.impl;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.github.mzmine.datamodel.ScanAccessPlan;
+import io.github.mzmine.taskcontrol.TaskMetrics;
+
+/**
+ * Loads the stored data points of a {@link ScanAccessPlan} in the background.
+ * The data points are read ahead of the task in blocks of consecutively stored
+ * scans, so that the file is read with few large reads while the task
+ * processes the previous scans. The loaded bytes which were not taken by the
+ * task yet are limited to MAX_BUFFERED_BYTES, the loading continues as the
+ * task takes them.
+ *
+ * Only the thread which created the plan moves the plan forward. When it
+ * reads a scan, the loaded data points of the scans it skipped are dropped,
+ * and the loading continues after the scan.
+ */
+class DataPointsPrefetcher implements ScanAccessPlan {
+
+    private static final Logger logger = Logger
+            .getLogger(DataPointsPrefetcher.class.getName());
+
+    // Maximum number of bytes read at once
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    // Maximum number of loaded bytes which were not taken yet (32 MB)
+    private static final long MAX_BUFFERED_BYTES = 1L << 25;
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+    private static final ExecutorService loader = Executors
+            .newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "Data points prefetcher #"
+                        + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final RawDataFileImpl dataFile;
+    private final Thread owner;
+
+    // Storage ID, offset in the file and size of the data points, in the
+    // order of the plan
+    private final int storageIDs[];
+    private final long offsets[];
+    private final int sizes[];
+
+    // Position of each storage ID in the plan
+    private final Map<Integer, Integer> positions;
+
+    // Loaded data points, guarded by this
+    private final Map<Integer, ByteBuffer> buffers = new HashMap<>();
+    private long bufferedBytes;
+    private int nextPosition;
+    private int readPosition = -1;
+    private boolean closed;
+
+    DataPointsPrefetcher(RawDataFileImpl dataFile, int storageIDs[],
+            long offsets[], int sizes[]) {
+        this.dataFile = dataFile;
+        this.owner = Thread.currentThread();
+        this.storageIDs = storageIDs;
+        this.offsets = offsets;
+        this.sizes = sizes;
+
+        positions = new HashMap<>(storageIDs.length * 2);
+        for (int p = storageIDs.length - 1; p >= 0; p--)
+            positions.put(storageIDs[p], p);
+    }
+
+    void start() {
+        loader.execute(this::load);
+    }
+
+    /**
+     * Returns the loaded bytes of the data points (pairs of float m/z and
+     * intensity values), or null if they are not loaded (yet)
+     */
+    ByteBuffer take(int storageID) {
+
+        final Integer position = positions.get(storageID);
+        if (position == null)
+            return null;
+
+        synchronized (this) {
+            final ByteBuffer buffer = buffers.remove(storageID);
+            if (buffer != null)
+                bufferedBytes -= buffer.remaining();
+
+            if ((Thread.currentThread() == owner)
+                    && (position > readPosition)) {
+                for (int p = readPosition + 1; p < position; p++)
+                    drop(storageIDs[p]);
+                readPosition = position;
+                nextPosition = Math.max(nextPosition, position + 1);
+            }
+
+            notifyAll();
+            return buffer;
+        }
+    }
+
+    private void drop(int storageID) {
+        final ByteBuffer buffer = buffers.remove(storageID);
+        if (buffer != null)
+            bufferedBytes -= buffer.remaining();
+    }
+
+    private void load() {
+        try {
+            while (true) {
+
+                final int from, to, blockSize;
+                synchronized (this) {
+                    while (!closed && (nextPosition < storageIDs.length)
+                            && (bufferedBytes >= MAX_BUFFERED_BYTES))
+                        wait();
+                    if (closed || (nextPosition >= storageIDs.length))
+                        return;
+
+                    // Read the following scans which are stored right after
+                    // each other at once
+                    from = nextPosition;
+                    int end = from + 1;
+                    int size = sizes[from];
+                    while ((end < storageIDs.length)
+                            && (offsets[end] == offsets[end - 1]
+                                    + sizes[end - 1])
+                            && (size + sizes[end] <= BLOCK_SIZE)) {
+                        size += sizes[end];
+                        end++;
+                    }
+                    to = end;
+                    blockSize = size;
+                    nextPosition = to;
+                    bufferedBytes += blockSize;
+                }
+
+                final ByteBuffer block = ByteBuffer.allocate(blockSize);
+                dataFile.readStoredBytes(offsets[from], block.array());
+                TaskMetrics.recordTempFileRead(blockSize);
+
+                synchronized (this) {
+                    bufferedBytes -= blockSize;
+                    if (closed)
+                        return;
+                    int start = 0;
+                    for (int p = from; p < to; p++) {
+                        if ((p > readPosition)
+                                && !buffers.containsKey(storageIDs[p])) {
+                            ByteBuffer slice = block.duplicate();
+                            // JDK 9 breaks compatibility with JRE8: need to
+                            // cast
+                            ((Buffer) slice).position(start);
+                            ((Buffer) slice).limit(start + sizes[p]);
+                            buffers.put(storageIDs[p], slice.slice());
+                            bufferedBytes += sizes[p];
+                        }
+                        start += sizes[p];
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // The data points which were not loaded are read by the task.
+            // Reads fail when the data file was closed.
+            synchronized (this) {
+                if (closed)
+                    return;
+            }
+            logger.log(Level.WARNING,
+                    "Could not load the data points of " + dataFile, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            buffers.clear();
+            notifyAll();
+        }
+        dataFile.removePrefetcher(this);
+    }
+
+}
@@ -37,6 +37,10 @@ public class ProjectManagerImpl implements ProjectManager {
 
     MZmineProject currentProject;
 
+    // Project bound to a single thread, used when multiple projects are
+    // processed in parallel by the headless batch service
+    private final ThreadLocal<MZmineProject> threadProject = new ThreadLocal<>();
+
     /**
      * @see io.github.mzmine.modules.MZmineModule#initModule(io.github.mzmine.main.MZmineCore)
      */
@@ -46,9 +50,33 @@ public class ProjectManagerImpl implements ProjectManager {
     }
 
     public MZmineProject getCurrentProject() {
+        MZmineProject project = threadProject.get();
+        if (project != null)
+            return project;
         return currentProject;
     }
 
+    /**
+     * Binds the given project to the calling thread, so that
+     * getCurrentProject() returns it when called from this thread. This allows
+     * batches to run on separate projects in parallel. Use null to remove the
+     * binding.
+     */
+    public void setThreadProject(MZmineProject project) {
+        if (project == null)
+            threadProject.remove();
+        else
+            threadProject.set(project);
+    }
+
+    /**
+     * @return the project bound to the calling thread, or null if the thread
+     *         uses the global project
+     */
+    public MZmineProject getThreadProject() {
+        return threadProject.get();
+    }
+
     public void setCurrentProject(MZmineProject project) {
 
         if (project == currentProject)
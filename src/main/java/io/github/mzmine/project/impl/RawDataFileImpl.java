@@ -28,11 +28,11 @@ import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
-import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nonnull;
@@ -42,10 +42,17 @@ import com.google.common.primitives.Ints;
 
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MassList;
+import io.github.mzmine.datamodel.PolarityType;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.RawDataFileWriter;
 import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.ScanAccessPlan;
 import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.taskcontrol.TaskMetrics;
+import io.github.mzmine.util.scans.ScanUtils;
+import io.github.mzmine.util.scans.XICCache;
 
 /**
  * RawDataFile implementation. It provides storage of data points for scans and
@@ -89,6 +96,20 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
      */
     private final Hashtable<Integer, StorableScan> scans;
 
+    // Metadata of the scans, built when writing is finished
+    private volatile ScanIndex scanIndex;
+
+    // Optional index of the MS1 data points
+    private volatile XICIndex xicIndex;
+
+    // Indexes which were replaced while they may still be read, closed when
+    // the file is closed
+    private final List<XICIndex> retiredXICIndexes = new ArrayList<>();
+
+    // Open scan access plans, see planScanAccess()
+    private final List<DataPointsPrefetcher> prefetchers =
+            new CopyOnWriteArrayList<>();
+
     public RawDataFileImpl(String dataFileName) throws IOException {
 
         this.dataFileName = dataFileName;
@@ -176,6 +197,75 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
         return scans.get(scanNumber);
     }
 
+    /**
+     * @see io.github.mzmine.datamodel.RawDataFile#getRetentionTime(int)
+     */
+    @Override
+    public double getRetentionTime(int scanNumber) {
+        final ScanIndex index = getScanIndex();
+        final int i = index.indexOf(scanNumber);
+        return i >= 0 ? index.getRetentionTime(i) : Double.NaN;
+    }
+
+    /**
+     * @see io.github.mzmine.datamodel.RawDataFile#getRetentionTimes(int[])
+     */
+    @Override
+    public @Nonnull double[] getRetentionTimes(@Nonnull int scanNumbers[]) {
+        final ScanIndex index = getScanIndex();
+        final double retentionTimes[] = new double[scanNumbers.length];
+        for (int i = 0; i < scanNumbers.length; i++) {
+            final int scanIndex = index.indexOf(scanNumbers[i]);
+            retentionTimes[i] = scanIndex >= 0
+                    ? index.getRetentionTime(scanIndex)
+                    : Double.NaN;
+        }
+        return retentionTimes;
+    }
+
+    /**
+     * @see io.github.mzmine.datamodel.RawDataFile#getScanDefinition(int)
+     */
+    @Override
+    public @Nullable String getScanDefinition(int scanNumber) {
+        final ScanIndex index = getScanIndex();
+        final int i = index.indexOf(scanNumber);
+        return i >= 0 ? index.getScanDefinition(i) : null;
+    }
+
+    /**
+     * @see io.github.mzmine.datamodel.RawDataFile#getTIC(int)
+     */
+    @Override
+    public double getTIC(int scanNumber) {
+        final ScanIndex index = getScanIndex();
+        final int i = index.indexOf(scanNumber);
+        return i >= 0 ? index.getTIC(i) : Double.NaN;
+    }
+
+    /**
+     * @see io.github.mzmine.datamodel.RawDataFile#getBasePeak(int)
+     */
+    @Override
+    public @Nullable DataPoint getBasePeak(int scanNumber) {
+        final ScanIndex index = getScanIndex();
+        final int i = index.indexOf(scanNumber);
+        if ((i < 0) || Double.isNaN(index.getBasePeakMZ(i)))
+            return null;
+        return new SimpleDataPoint(index.getBasePeakMZ(i),
+                index.getBasePeakIntensity(i));
+    }
+
+    /**
+     * @see io.github.mzmine.datamodel.RawDataFile#getDataPointMZRange(int)
+     */
+    @Override
+    public @Nullable Range<Double> getDataPointMZRange(int scanNumber) {
+        final ScanIndex index = getScanIndex();
+        final int i = index.indexOf(scanNumber);
+        return i >= 0 ? index.getDataPointMZRange(i) : null;
+    }
+
     /**
      * @see io.github.mzmine.datamodel.RawDataFile#getScanNumbers(int)
      */
@@ -199,21 +289,34 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 
         assert rtRange != null;
 
-        ArrayList<Integer> eligibleScanNumbers = new ArrayList<Integer>();
+        return getScanIndex().getScanNumbers(msLevel, rtRange);
+    }
 
-        Enumeration<StorableScan> scansEnum = scans.elements();
-        while (scansEnum.hasMoreElements()) {
-            Scan scan = scansEnum.nextElement();
+    /**
+     * @see io.github.mzmine.datamodel.RawDataFile#getScanNumbers(Integer,
+     *      Range, PolarityType)
+     */
+    @Override
+    public @Nonnull int[] getScanNumbers(@Nullable Integer msLevel,
+            @Nullable Range<Double> rtRange, @Nullable PolarityType polarity) {
+        final ScanIndex index = getScanIndex();
+        return index.getIndexes(msLevel, rtRange, polarity).stream()
+                .map(index::getScanNumber).toArray();
+    }
 
-            if ((scan.getMSLevel() == msLevel)
-                    && (rtRange.contains(scan.getRetentionTime())))
-                eligibleScanNumbers.add(scan.getScanNumber());
+    /**
+     * Returns the index of the scan metadata. The index is built when writing
+     * is finished (or on first use) and rebuilt after new scans are added.
+     */
+    public @Nonnull ScanIndex getScanIndex() {
+        ScanIndex index = scanIndex;
+        if (index != null)
+            return index;
+        synchronized (this) {
+            if (scanIndex == null)
+                scanIndex = new ScanIndex(scans.values());
+            return scanIndex;
         }
-
-        int[] numbersArray = Ints.toArray(eligibleScanNumbers);
-        Arrays.sort(numbersArray);
-
-        return numbersArray;
     }
 
     /**
@@ -240,19 +343,7 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
      */
     @Override
     public @Nonnull int[] getMSLevels() {
-
-        Set<Integer> msLevelsSet = new HashSet<Integer>();
-
-        Enumeration<StorableScan> scansEnum = scans.elements();
-        while (scansEnum.hasMoreElements()) {
-            Scan scan = scansEnum.nextElement();
-            msLevelsSet.add(scan.getMSLevel());
-        }
-
-        int[] msLevels = Ints.toArray(msLevelsSet);
-        Arrays.sort(msLevels);
-        return msLevels;
-
+        return getScanIndex().getMSLevels();
     }
 
     /**
@@ -335,24 +426,44 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
     public synchronized int storeDataPoints(DataPoint dataPoints[])
             throws IOException {
 
-        if (dataPointsFile == null) {
-            File newFile = RawDataFileImpl.createNewDataPointsFile();
-            openDataPointsFile(newFile);
+        final int numOfDataPoints = dataPoints.length;
+        FloatBuffer floatBuffer = prepareBuffer(numOfDataPoints);
+        for (DataPoint dp : dataPoints) {
+            floatBuffer.put((float) dp.getMZ());
+            floatBuffer.put((float) dp.getIntensity());
         }
 
-        final long currentOffset = dataPointsFile.length();
+        return writeBuffer(numOfDataPoints);
 
-        final int currentID;
-        if (!dataPointsOffsets.isEmpty())
-            currentID = dataPointsOffsets.lastKey() + 1;
-        else
-            currentID = 1;
+    }
 
-        final int numOfDataPoints = dataPoints.length;
+    /**
+     * Stores the data points given as arrays of m/z and intensity values,
+     * without creating DataPoint instances
+     */
+    public synchronized int storeDataPoints(double mzValues[],
+            double intensityValues[]) throws IOException {
+
+        assert mzValues.length == intensityValues.length;
+
+        final int numOfDataPoints = mzValues.length;
+        FloatBuffer floatBuffer = prepareBuffer(numOfDataPoints);
+        for (int i = 0; i < numOfDataPoints; i++) {
+            floatBuffer.put((float) mzValues[i]);
+            floatBuffer.put((float) intensityValues[i]);
+        }
+
+        return writeBuffer(numOfDataPoints);
 
-        // Convert the dataPoints into a byte array. Each float takes 4 bytes,
-        // so we get the current float offset by dividing the size of the file
-        // by 4
+    }
+
+    /**
+     * Makes sure the buffer can hold the given number of data points and
+     * returns a float view of it
+     */
+    private FloatBuffer prepareBuffer(int numOfDataPoints) {
+
+        // Each float takes 4 bytes
         final int numOfBytes = numOfDataPoints * 2 * 4;
 
         if (buffer.capacity() < numOfBytes) {
@@ -363,14 +474,33 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
             ((Buffer) buffer).clear();
         }
 
-        FloatBuffer floatBuffer = buffer.asFloatBuffer();
-        for (DataPoint dp : dataPoints) {
-            floatBuffer.put((float) dp.getMZ());
-            floatBuffer.put((float) dp.getIntensity());
+        return buffer.asFloatBuffer();
+    }
+
+    /**
+     * Appends the given number of data points from the buffer to the data
+     * points file and returns the new storage ID
+     */
+    private int writeBuffer(int numOfDataPoints) throws IOException {
+
+        if (dataPointsFile == null) {
+            File newFile = RawDataFileImpl.createNewDataPointsFile();
+            openDataPointsFile(newFile);
         }
 
+        final long currentOffset = dataPointsFile.length();
+
+        final int currentID;
+        if (!dataPointsOffsets.isEmpty())
+            currentID = dataPointsOffsets.lastKey() + 1;
+        else
+            currentID = 1;
+
+        final int numOfBytes = numOfDataPoints * 2 * 4;
+
         dataPointsFile.seek(currentOffset);
         dataPointsFile.write(buffer.array(), 0, numOfBytes);
+        TaskMetrics.recordTempFileWrite(numOfBytes);
 
         dataPointsOffsets.put(currentID, currentOffset);
         dataPointsLengths.put(currentID, numOfDataPoints);
@@ -379,7 +509,21 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 
     }
 
-    public synchronized DataPoint[] readDataPoints(int ID) throws IOException {
+    public DataPoint[] readDataPoints(int ID) throws IOException {
+
+        // Take the data points from a scan access plan, if they are loaded
+        for (DataPointsPrefetcher prefetcher : prefetchers) {
+            final ByteBuffer loaded = prefetcher.take(ID);
+            if (loaded != null)
+                return toDataPoints(loaded.asFloatBuffer(),
+                        loaded.remaining() / (2 * 4));
+        }
+
+        return readStoredDataPoints(ID);
+    }
+
+    private synchronized DataPoint[] readStoredDataPoints(int ID)
+            throws IOException {
 
         final Long currentOffset = dataPointsOffsets.get(ID);
         final Integer numOfDataPoints = dataPointsLengths.get(ID);
@@ -400,8 +544,28 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 
         dataPointsFile.seek(currentOffset);
         dataPointsFile.read(buffer.array(), 0, numOfBytes);
+        TaskMetrics.recordTempFileRead(numOfBytes);
+
+        return toDataPoints(buffer.asFloatBuffer(), numOfDataPoints);
+
+    }
+
+    /**
+     * Reads stored bytes for the data points prefetchers. The reads use the
+     * RandomAccessFile, like all reads and writes of the data points file,
+     * because the reads of a FileChannel close the channel (and the file)
+     * when the reading thread is interrupted.
+     */
+    synchronized void readStoredBytes(long offset, byte bytes[])
+            throws IOException {
+        if (dataPointsFile == null)
+            throw new IOException("Data points file is closed");
+        dataPointsFile.seek(offset);
+        dataPointsFile.readFully(bytes);
+    }
 
-        FloatBuffer floatBuffer = buffer.asFloatBuffer();
+    private static DataPoint[] toDataPoints(FloatBuffer floatBuffer,
+            int numOfDataPoints) {
 
         DataPoint dataPoints[] = new DataPoint[numOfDataPoints];
 
@@ -425,6 +589,12 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 
         // When we are loading the project, scan data file is already prepare
         // and we just need store the reference
+        scanIndex = null;
+        retireXICIndex();
+        // Chromatograms are cached by scan number
+        if (scans.containsKey(newScan.getScanNumber()))
+            XICCache.invalidate(this);
+
         if (newScan instanceof StorableScan) {
             scans.put(newScan.getScanNumber(), (StorableScan) newScan);
             return;
@@ -446,7 +616,18 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
     @Override
     public synchronized RawDataFile finishWriting() throws IOException {
         for (StorableScan scan : scans.values()) {
-            scan.updateValues();
+            if (!scan.hasStoredValues())
+                scan.updateValues();
+        }
+        scanIndex = new ScanIndex(scans.values());
+        if ((xicIndex == null) && isXICIndexEnabled()
+                && (getNumOfScans(1) > 0)) {
+            try {
+                xicIndex = new XICIndex(this, 1);
+            } catch (IOException e) {
+                logger.log(Level.WARNING,
+                        "Could not build the XIC index of " + dataFileName, e);
+            }
         }
         logger.finest(
                 "Writing of scans to file " + dataPointsFileName + " finished");
@@ -541,6 +722,154 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
         return getScanNumbers(msLevel).length;
     }
 
+    /**
+     * @see io.github.mzmine.datamodel.RawDataFile#findBasePeaks(int[], Range)
+     */
+    @Override
+    public @Nonnull DataPoint[] findBasePeaks(@Nonnull int scanNumbers[],
+            @Nonnull Range<Double> mzRange) {
+        final XICIndex index = getXICIndex(scanNumbers);
+        if (index != null)
+            return index.findBasePeaks(scanNumbers, mzRange);
+
+        final DataPoint basePeaks[] = new DataPoint[scanNumbers.length];
+        for (int i = 0; i < scanNumbers.length; i++) {
+            final Scan scan = getScan(scanNumbers[i]);
+            if (scan != null)
+                basePeaks[i] = ScanUtils.findBasePeak(scan, mzRange);
+        }
+        return basePeaks;
+    }
+
+    /**
+     * @see io.github.mzmine.datamodel.RawDataFile#calculateTICs(int[], Range)
+     */
+    @Override
+    public @Nonnull double[] calculateTICs(@Nonnull int scanNumbers[],
+            @Nonnull Range<Double> mzRange) {
+        final XICIndex index = getXICIndex(scanNumbers);
+        if (index != null)
+            return index.calculateTICs(scanNumbers, mzRange);
+
+        final double tics[] = new double[scanNumbers.length];
+        for (int i = 0; i < scanNumbers.length; i++) {
+            final Scan scan = getScan(scanNumbers[i]);
+            if (scan != null)
+                tics[i] = ScanUtils.calculateTIC(scan, mzRange);
+        }
+        return tics;
+    }
+
+    /**
+     * @see io.github.mzmine.datamodel.RawDataFile#isXICIndexed(int[])
+     */
+    @Override
+    public boolean isXICIndexed(@Nonnull int scanNumbers[]) {
+        return getXICIndex(scanNumbers) != null;
+    }
+
+    /**
+     * Returns the index of the data points (see
+     * {@link MZminePreferences#xicIndex}), if it was built and contains all
+     * given scans
+     */
+    private @Nullable XICIndex getXICIndex(int scanNumbers[]) {
+        final XICIndex index = xicIndex;
+        if ((index == null) || (scanNumbers.length == 0))
+            return null;
+        final ScanIndex scanIndex = getScanIndex();
+        final int first = scanIndex.indexOf(scanNumbers[0]);
+        if ((first < 0) || (scanIndex.getMSLevel(first) != index.getMSLevel())
+                || !index.containsScans(scanNumbers))
+            return null;
+        return index;
+    }
+
+    private static boolean isXICIndexEnabled() {
+        if (MZmineCore.getConfiguration() == null)
+            return false;
+        Boolean buildXICIndex = MZmineCore.getConfiguration().getPreferences()
+                .getParameter(MZminePreferences.xicIndex).getValue();
+        return (buildXICIndex != null) && buildXICIndex;
+    }
+
+    /**
+     * Drops the XIC index when the scans change. Tasks may still be reading
+     * it, so it is only closed when the file is closed.
+     */
+    private synchronized void retireXICIndex() {
+        if (xicIndex != null) {
+            retiredXICIndexes.add(xicIndex);
+            xicIndex = null;
+        }
+    }
+
+    private synchronized void closeXICIndex() {
+        retireXICIndex();
+        for (XICIndex index : retiredXICIndexes)
+            index.close();
+        retiredXICIndexes.clear();
+    }
+
+    /**
+     * @see io.github.mzmine.datamodel.RawDataFile#planScanAccess(int[],
+     *      String)
+     */
+    @Override
+    public @Nonnull ScanAccessPlan planScanAccess(@Nonnull int scanNumbers[],
+            @Nullable String massListName) {
+
+        final int storageIDs[] = new int[scanNumbers.length];
+        final long offsets[] = new long[scanNumbers.length];
+        final int sizes[] = new int[scanNumbers.length];
+        int numOfIDs = 0;
+
+        synchronized (this) {
+            if (dataPointsFile == null)
+                return ScanAccessPlan.NONE;
+
+            for (int scanNumber : scanNumbers) {
+                final StorableScan scan = scans.get(scanNumber);
+                if (scan == null)
+                    continue;
+                final int storageID;
+                if (massListName == null) {
+                    storageID = scan.getStorageID();
+                } else {
+                    final MassList massList = scan.getMassList(massListName);
+                    if (!(massList instanceof StorableMassList))
+                        continue;
+                    storageID = ((StorableMassList) massList).getStorageID();
+                }
+                final Long offset = dataPointsOffsets.get(storageID);
+                final Integer numOfDataPoints = dataPointsLengths
+                        .get(storageID);
+                if ((offset == null) || (numOfDataPoints == null)
+                        || (numOfDataPoints == 0))
+                    continue;
+                storageIDs[numOfIDs] = storageID;
+                offsets[numOfIDs] = offset;
+                sizes[numOfIDs] = numOfDataPoints * 2 * 4;
+                numOfIDs++;
+            }
+        }
+
+        if (numOfIDs == 0)
+            return ScanAccessPlan.NONE;
+
+        final DataPointsPrefetcher prefetcher = new DataPointsPrefetcher(this,
+                Arrays.copyOf(storageIDs, numOfIDs),
+                Arrays.copyOf(offsets, numOfIDs),
+                Arrays.copyOf(sizes, numOfIDs));
+        prefetchers.add(prefetcher);
+        prefetcher.start();
+        return prefetcher;
+    }
+
+    void removePrefetcher(DataPointsPrefetcher prefetcher) {
+        prefetchers.remove(prefetcher);
+    }
+
     public synchronized TreeMap<Integer, Long> getDataPointsOffsets() {
         return dataPointsOffsets;
     }
@@ -551,6 +880,10 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 
     @Override
     public synchronized void close() {
+        for (DataPointsPrefetcher prefetcher : prefetchers)
+            prefetcher.close();
+        closeXICIndex();
+        XICCache.invalidate(this);
         try {
             if (dataPointsFileName != null) {
                 dataPointsFile.close();
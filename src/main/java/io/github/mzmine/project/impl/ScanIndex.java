@@ -0,0 +1,337 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.project.impl;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.collect.BoundType;
+import com.google.common.collect.Range;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.Scan;
+
+/**
+ * Immutable index of the scan metadata of a raw data file. The metadata are
+ * stored in primitive arrays ordered by scan number, so that the position of a
+ * scan in the arrays (its index) is the position of its number in
+ * RawDataFile.getScanNumbers(). If the scan numbers are not too sparse, the
+ * index of each scan number is kept in a dense lookup array. The TIC, base
+ * peak and data point m/z range of each scan are kept as well, so that total
+ * ion chromatograms are drawn without reading the scans. For each MS level (and for all scans together)
+ * the indexes are also sorted by retention time, so that retention time ranges
+ * are found by binary search.
+ */
+@Immutable
+public class ScanIndex {
+
+    private final int scanNumbers[];
+    private final double retentionTimes[];
+    private final int msLevels[];
+    private final PolarityType polarities[];
+    private final double precursorMZs[];
+    private final double tics[];
+    private final double basePeakMZs[];
+    private final double basePeakIntensities[];
+    private final double lowestMZs[];
+    private final double highestMZs[];
+    private final String scanDefinitions[];
+
+    // Index of each scan number from firstScanNumber, -1 for missing scans,
+    // or null if the scan numbers are too sparse
+    private final int firstScanNumber;
+    private final int scanNumberIndexes[];
+
+    // Sorted distinct MS levels
+    private final int distinctMSLevels[];
+
+    // Indexes of the scans of each MS level (same order as distinctMSLevels),
+    // sorted by retention time, and their retention times
+    private final int levelIndexes[][];
+    private final double levelRetentionTimes[][];
+
+    // Indexes of all scans sorted by retention time
+    private final int rtIndexes[];
+    private final double rtSortedRetentionTimes[];
+
+    ScanIndex(@Nonnull Collection<? extends Scan> scans) {
+
+        final Scan sortedScans[] = scans.toArray(new Scan[0]);
+        Arrays.sort(sortedScans, Comparator.comparingInt(Scan::getScanNumber));
+
+        final int numOfScans = sortedScans.length;
+        scanNumbers = new int[numOfScans];
+        retentionTimes = new double[numOfScans];
+        msLevels = new int[numOfScans];
+        polarities = new PolarityType[numOfScans];
+        precursorMZs = new double[numOfScans];
+        tics = new double[numOfScans];
+        basePeakMZs = new double[numOfScans];
+        basePeakIntensities = new double[numOfScans];
+        lowestMZs = new double[numOfScans];
+        highestMZs = new double[numOfScans];
+        scanDefinitions = new String[numOfScans];
+
+        for (int i = 0; i < numOfScans; i++) {
+            Scan scan = sortedScans[i];
+            scanNumbers[i] = scan.getScanNumber();
+            retentionTimes[i] = scan.getRetentionTime();
+            msLevels[i] = scan.getMSLevel();
+            polarities[i] = scan.getPolarity();
+            precursorMZs[i] = scan.getPrecursorMZ();
+            tics[i] = scan.getTIC();
+            final DataPoint basePeak = scan.getHighestDataPoint();
+            basePeakMZs[i] = basePeak != null ? basePeak.getMZ() : Double.NaN;
+            basePeakIntensities[i] = basePeak != null
+                    ? basePeak.getIntensity()
+                    : 0.0;
+            final Range<Double> mzRange = scan.getDataPointMZRange();
+            lowestMZs[i] = mzRange.lowerEndpoint();
+            highestMZs[i] = mzRange.upperEndpoint();
+            scanDefinitions[i] = scan.getScanDefinition();
+        }
+
+        if ((numOfScans > 0) && ((long) scanNumbers[numOfScans - 1]
+                - scanNumbers[0] < 4L * numOfScans + 16)) {
+            firstScanNumber = scanNumbers[0];
+            scanNumberIndexes = new int[scanNumbers[numOfScans - 1]
+                    - firstScanNumber + 1];
+            Arrays.fill(scanNumberIndexes, -1);
+            for (int i = 0; i < numOfScans; i++)
+                scanNumberIndexes[scanNumbers[i] - firstScanNumber] = i;
+        } else {
+            firstScanNumber = 0;
+            scanNumberIndexes = null;
+        }
+
+        distinctMSLevels = Arrays.stream(msLevels).distinct().sorted()
+                .toArray();
+
+        rtIndexes = sortByRetentionTime(numOfScans, -1);
+        rtSortedRetentionTimes = getRetentionTimes(rtIndexes);
+
+        levelIndexes = new int[distinctMSLevels.length][];
+        levelRetentionTimes = new double[distinctMSLevels.length][];
+        for (int l = 0; l < distinctMSLevels.length; l++) {
+            levelIndexes[l] = sortByRetentionTime(numOfScans,
+                    distinctMSLevels[l]);
+            levelRetentionTimes[l] = getRetentionTimes(levelIndexes[l]);
+        }
+
+    }
+
+    /**
+     * @return indexes of the scans of the MS level (all scans if msLevel is
+     *         -1), sorted by retention time and scan number
+     */
+    private int[] sortByRetentionTime(int numOfScans, int msLevel) {
+        return IntStream.range(0, numOfScans)
+                .filter(i -> msLevel == -1 || msLevels[i] == msLevel).boxed()
+                .sorted(Comparator
+                        .comparingDouble((Integer i) -> retentionTimes[i])
+                        .thenComparingInt(i -> i))
+                .mapToInt(Integer::intValue).toArray();
+    }
+
+    private double[] getRetentionTimes(int indexes[]) {
+        double rts[] = new double[indexes.length];
+        for (int i = 0; i < indexes.length; i++)
+            rts[i] = retentionTimes[indexes[i]];
+        return rts;
+    }
+
+    public int getNumOfScans() {
+        return scanNumbers.length;
+    }
+
+    /**
+     * @return sorted array of all MS levels
+     */
+    public @Nonnull int[] getMSLevels() {
+        return distinctMSLevels.clone();
+    }
+
+    /**
+     * @return index of the scan number, or -1 if there is no such scan
+     */
+    public int indexOf(int scanNumber) {
+        if (scanNumberIndexes != null) {
+            final int offset = scanNumber - firstScanNumber;
+            if ((offset < 0) || (offset >= scanNumberIndexes.length))
+                return -1;
+            return scanNumberIndexes[offset];
+        }
+        int index = Arrays.binarySearch(scanNumbers, scanNumber);
+        return index >= 0 ? index : -1;
+    }
+
+    public int getScanNumber(int index) {
+        return scanNumbers[index];
+    }
+
+    public double getRetentionTime(int index) {
+        return retentionTimes[index];
+    }
+
+    public int getMSLevel(int index) {
+        return msLevels[index];
+    }
+
+    public PolarityType getPolarity(int index) {
+        return polarities[index];
+    }
+
+    public double getPrecursorMZ(int index) {
+        return precursorMZs[index];
+    }
+
+    public double getTIC(int index) {
+        return tics[index];
+    }
+
+    /**
+     * @return m/z of the most intense data point of the scan, NaN if the scan
+     *         has no data points
+     */
+    public double getBasePeakMZ(int index) {
+        return basePeakMZs[index];
+    }
+
+    /**
+     * @return intensity of the most intense data point of the scan, 0 if the
+     *         scan has no data points
+     */
+    public double getBasePeakIntensity(int index) {
+        return basePeakIntensities[index];
+    }
+
+    public @Nonnull Range<Double> getDataPointMZRange(int index) {
+        return Range.closed(lowestMZs[index], highestMZs[index]);
+    }
+
+    public String getScanDefinition(int index) {
+        return scanDefinitions[index];
+    }
+
+    /**
+     * Returns sorted array of the scan numbers in given MS level and retention
+     * time range
+     */
+    public @Nonnull int[] getScanNumbers(int msLevel,
+            @Nonnull Range<Double> rtRange) {
+        final int level = Arrays.binarySearch(distinctMSLevels, msLevel);
+        if (level < 0)
+            return new int[0];
+
+        final double rts[] = levelRetentionTimes[level];
+        final int from = lowerIndex(rts, rtRange);
+        final int to = upperIndex(rts, rtRange);
+        if (from >= to)
+            return new int[0];
+
+        int result[] = new int[to - from];
+        for (int i = from; i < to; i++)
+            result[i - from] = scanNumbers[levelIndexes[level][i]];
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns the indexes of the scans that match all given conditions. Null
+     * conditions match all scans.
+     */
+    public @Nonnull BitSet getIndexes(@Nullable Integer msLevel,
+            @Nullable Range<Double> rtRange, @Nullable PolarityType polarity) {
+
+        final int indexes[];
+        final double rts[];
+        if (msLevel == null) {
+            indexes = rtIndexes;
+            rts = rtSortedRetentionTimes;
+        } else {
+            final int level = Arrays.binarySearch(distinctMSLevels, msLevel);
+            if (level < 0)
+                return new BitSet();
+            indexes = levelIndexes[level];
+            rts = levelRetentionTimes[level];
+        }
+
+        int from = 0, to = indexes.length;
+        if (rtRange != null) {
+            from = lowerIndex(rts, rtRange);
+            to = upperIndex(rts, rtRange);
+        }
+
+        BitSet result = new BitSet(scanNumbers.length);
+        for (int i = from; i < to; i++) {
+            final int index = indexes[i];
+            if (polarity == null || polarity.equals(polarities[index]))
+                result.set(index);
+        }
+        return result;
+    }
+
+    /**
+     * @return first position in the sorted values that is not below the range
+     */
+    private static int lowerIndex(double sortedValues[], Range<Double> range) {
+        if (!range.hasLowerBound())
+            return 0;
+        final double bound = range.lowerEndpoint();
+        final boolean open = range.lowerBoundType() == BoundType.OPEN;
+        int low = 0, high = sortedValues.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (sortedValues[mid] < bound
+                    || (open && sortedValues[mid] == bound))
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return first position in the sorted values that is above the range
+     */
+    private static int upperIndex(double sortedValues[], Range<Double> range) {
+        if (!range.hasUpperBound())
+            return sortedValues.length;
+        final double bound = range.upperEndpoint();
+        final boolean open = range.upperBoundType() == BoundType.OPEN;
+        int low = 0, high = sortedValues.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (sortedValues[mid] < bound
+                    || (!open && sortedValues[mid] == bound))
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+}
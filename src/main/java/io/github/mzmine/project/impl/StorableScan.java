@@ -64,6 +64,10 @@ public class StorableScan implements Scan {
 
     private int storageID;
 
+    // True if the TIC, base peak and m/z range were given to the constructor
+    // instead of calculated from the stored data points
+    private boolean storedValues;
+
     /**
      * Constructor for creating a storable scan from a given scan
      */
@@ -97,6 +101,25 @@ public class StorableScan implements Scan {
             int fragmentScans[], MassSpectrumType spectrumType,
             PolarityType polarity, String scanDefinition,
             Range<Double> scanMZRange) {
+        this(rawDataFile, storageID, numberOfDataPoints, scanNumber, msLevel,
+                retentionTime, precursorMZ, precursorCharge, fragmentScans,
+                spectrumType, polarity, scanDefinition, scanMZRange, null,
+                null, null);
+    }
+
+    /**
+     * Constructor for a scan with known TIC, base peak and data point m/z
+     * range (e.g. stored in a project), so that they are not calculated by
+     * reading the data points. If any of them is null, all are calculated
+     * when needed.
+     */
+    public StorableScan(RawDataFileImpl rawDataFile, int storageID,
+            int numberOfDataPoints, int scanNumber, int msLevel,
+            double retentionTime, double precursorMZ, int precursorCharge,
+            int fragmentScans[], MassSpectrumType spectrumType,
+            PolarityType polarity, String scanDefinition,
+            Range<Double> scanMZRange, Double totalIonCurrent,
+            DataPoint basePeak, Range<Double> mzRange) {
 
         this.rawDataFile = rawDataFile;
         this.numberOfDataPoints = numberOfDataPoints;
@@ -112,6 +135,22 @@ public class StorableScan implements Scan {
         this.polarity = polarity;
         this.scanDefinition = scanDefinition;
         this.scanMZRange = scanMZRange;
+
+        if ((totalIonCurrent != null) && (mzRange != null)
+                && ((basePeak != null) || (numberOfDataPoints == 0))) {
+            this.totalIonCurrent = totalIonCurrent;
+            this.basePeak = basePeak;
+            this.mzRange = mzRange;
+            this.storedValues = true;
+        }
+    }
+
+    /**
+     * @return true if the TIC, base peak and data point m/z range were given
+     *         to the constructor, so they do not need to be calculated
+     */
+    boolean hasStoredValues() {
+        return storedValues;
     }
 
     /**
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.project.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import javax.annotation.Nonnull;
+
+import com.google.common.collect.Range;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+
+/**
+ * Inverted index of the data points of one MS level, for fast extraction of
+ * ion chromatograms. The data points are sorted into m/z bins of BIN_WIDTH Da
+ * and stored in a memory-mapped temporary file as (scan index, m/z, intensity)
+ * entries, sorted by scan index within each bin. The scan index is the position
+ * of the scan in the {@link ScanIndex} of the data file. An m/z range in a
+ * sorted set of scans is extracted by reading only the entries of the bins
+ * covering the m/z range, between the first and last requested scan.
+ *
+ * The data points are stored with the same (float) precision as in the data
+ * points file of the raw data file, so the extracted values are identical to
+ * those of the scans.
+ */
+public class XICIndex {
+
+    private static final Logger logger = Logger
+            .getLogger(XICIndex.class.getName());
+
+    // Width of the m/z bins
+    private static final double BIN_WIDTH = 0.01;
+
+    // Scan index (int), m/z (float) and intensity (float)
+    private static final int ENTRY_SIZE = 12;
+
+    // Entries per mapped segment (768 MB), so that no entry spans two segments
+    private static final long SEGMENT_ENTRIES = 1L << 26;
+
+    private final ScanIndex scanIndex;
+    private final int msLevel;
+    private final double minMZ;
+    private final int numOfBins;
+
+    // Entry number of the first entry of each bin, and of the end of the last
+    // bin (numOfBins + 1 values)
+    private final long binStarts[];
+
+    private final File indexFileName;
+    private final RandomAccessFile indexFile;
+    private final MappedByteBuffer segments[];
+
+    /**
+     * Builds the index of the data points of all scans of the MS level
+     */
+    XICIndex(@Nonnull RawDataFileImpl dataFile, int msLevel)
+            throws IOException {
+
+        this.msLevel = msLevel;
+        this.scanIndex = dataFile.getScanIndex();
+
+        final Range<Double> mzRange = dataFile.getDataMZRange(msLevel);
+        minMZ = mzRange.lowerEndpoint();
+        numOfBins = Math.max(1,
+                (int) ((mzRange.upperEndpoint() - minMZ) / BIN_WIDTH) + 1);
+
+        final int scanIndexes[] = IntStream.range(0, scanIndex.getNumOfScans())
+                .filter(i -> scanIndex.getMSLevel(i) == msLevel).toArray();
+
+        // Count the data points of each bin
+        final long counts[] = new long[numOfBins];
+        for (int i : scanIndexes) {
+            Scan scan = dataFile.getScan(scanIndex.getScanNumber(i));
+            for (DataPoint dp : scan.getDataPoints())
+                counts[getBin(dp.getMZ())]++;
+        }
+
+        binStarts = new long[numOfBins + 1];
+        for (int b = 0; b < numOfBins; b++)
+            binStarts[b + 1] = binStarts[b] + counts[b];
+        final long numOfEntries = binStarts[numOfBins];
+
+        indexFileName = File.createTempFile("mzmine", ".xic.scans");
+        indexFileName.deleteOnExit();
+        indexFile = new RandomAccessFile(indexFileName, "rw");
+
+        final FileChannel channel = indexFile.getChannel();
+        try {
+            // Lock the file, so that it is not removed when another instance
+            // of MZmine is starting
+            channel.lock();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to lock the file " + indexFileName,
+                    e);
+        }
+
+        segments = new MappedByteBuffer[(int) ((numOfEntries
+                + SEGMENT_ENTRIES - 1) / SEGMENT_ENTRIES)];
+        for (int s = 0; s < segments.length; s++) {
+            final long entries = Math.min(SEGMENT_ENTRIES,
+                    numOfEntries - s * SEGMENT_ENTRIES);
+            segments[s] = channel.map(MapMode.READ_WRITE,
+                    s * SEGMENT_ENTRIES * ENTRY_SIZE, entries * ENTRY_SIZE);
+        }
+
+        // Write the entries, in scan order
+        final long next[] = Arrays.copyOf(binStarts, numOfBins);
+        for (int i : scanIndexes) {
+            Scan scan = dataFile.getScan(scanIndex.getScanNumber(i));
+            for (DataPoint dp : scan.getDataPoints()) {
+                final long entry = next[getBin(dp.getMZ())]++;
+                final MappedByteBuffer segment = segments[(int) (entry
+                        / SEGMENT_ENTRIES)];
+                final int position = (int) (entry % SEGMENT_ENTRIES)
+                        * ENTRY_SIZE;
+                segment.putInt(position, i);
+                segment.putFloat(position + 4, (float) dp.getMZ());
+                segment.putFloat(position + 8, (float) dp.getIntensity());
+            }
+        }
+
+        logger.finest("Built XIC index of " + numOfEntries + " data points of "
+                + dataFile.getName() + " in " + indexFileName);
+    }
+
+    public int getMSLevel() {
+        return msLevel;
+    }
+
+    /**
+     * @return true if the scan numbers are sorted and all scans are in this
+     *         index
+     */
+    public boolean containsScans(@Nonnull int scanNumbers[]) {
+        int previousIndex = -1;
+        for (int scanNumber : scanNumbers) {
+            final int index = scanIndex.indexOf(scanNumber);
+            if ((index <= previousIndex)
+                    || (scanIndex.getMSLevel(index) != msLevel))
+                return false;
+            previousIndex = index;
+        }
+        return true;
+    }
+
+    /**
+     * Finds the most intense data point within the m/z range in each scan
+     *
+     * @param scanNumbers
+     *            sorted scan numbers, see {@link #containsScans(int[])}
+     * @return the data points in order of scanNumbers, null for scans without
+     *         data points in the m/z range
+     */
+    public @Nonnull DataPoint[] findBasePeaks(@Nonnull int scanNumbers[],
+            @Nonnull Range<Double> mzRange) {
+        final int scanIndexes[] = getScanIndexes(scanNumbers);
+        final float mzs[] = new float[scanIndexes.length];
+        final float intensities[] = new float[scanIndexes.length];
+        final boolean found[] = new boolean[scanIndexes.length];
+        extract(scanIndexes, mzRange, (i, mz, intensity) -> {
+            if (!found[i] || intensity > intensities[i]) {
+                found[i] = true;
+                mzs[i] = mz;
+                intensities[i] = intensity;
+            }
+        });
+
+        DataPoint basePeaks[] = new DataPoint[scanIndexes.length];
+        for (int i = 0; i < scanIndexes.length; i++) {
+            if (found[i])
+                basePeaks[i] = new SimpleDataPoint(mzs[i], intensities[i]);
+        }
+        return basePeaks;
+    }
+
+    /**
+     * Sums the intensities within the m/z range in each scan
+     *
+     * @param scanNumbers
+     *            sorted scan numbers, see {@link #containsScans(int[])}
+     * @return the total ion count of each scan in order of scanNumbers
+     */
+    public @Nonnull double[] calculateTICs(@Nonnull int scanNumbers[],
+            @Nonnull Range<Double> mzRange) {
+        final int scanIndexes[] = getScanIndexes(scanNumbers);
+        final double tics[] = new double[scanIndexes.length];
+        extract(scanIndexes, mzRange,
+                (i, mz, intensity) -> tics[i] += intensity);
+        return tics;
+    }
+
+    private int[] getScanIndexes(int scanNumbers[]) {
+        if (!containsScans(scanNumbers))
+            throw new IllegalArgumentException(
+                    "Scans are not sorted or not in the index");
+        final int scanIndexes[] = new int[scanNumbers.length];
+        for (int i = 0; i < scanNumbers.length; i++)
+            scanIndexes[i] = scanIndex.indexOf(scanNumbers[i]);
+        return scanIndexes;
+    }
+
+    @FunctionalInterface
+    private interface EntryConsumer {
+        /**
+         * @param i
+         *            position of the scan in the requested scan indexes
+         */
+        void accept(int i, float mz, float intensity);
+    }
+
+    /**
+     * Passes all entries of the scans within the m/z range (including both
+     * endpoints, as Scan.getDataPointsByMass()) to the consumer, in m/z order
+     * within each scan
+     */
+    private void extract(int scanIndexes[], Range<Double> mzRange,
+            EntryConsumer consumer) {
+        if (scanIndexes.length == 0)
+            return;
+
+        final int firstScan = scanIndexes[0];
+        final int lastScan = scanIndexes[scanIndexes.length - 1];
+
+        // Position of each scan index in the request
+        final int positions[] = new int[lastScan - firstScan + 1];
+        Arrays.fill(positions, -1);
+        for (int i = 0; i < scanIndexes.length; i++)
+            positions[scanIndexes[i] - firstScan] = i;
+
+        final double lowerMZ = mzRange.lowerEndpoint();
+        final double upperMZ = mzRange.upperEndpoint();
+        final int firstBin = getBin(lowerMZ);
+        final int lastBin = getBin(upperMZ);
+        for (int b = firstBin; b <= lastBin; b++) {
+            final long end = binStarts[b + 1];
+            for (long entry = findFirstEntry(b, firstScan); entry < end;
+                    entry++) {
+                final MappedByteBuffer segment = segments[(int) (entry
+                        / SEGMENT_ENTRIES)];
+                final int position = (int) (entry % SEGMENT_ENTRIES)
+                        * ENTRY_SIZE;
+                final int scan = segment.getInt(position);
+                if (scan > lastScan)
+                    break;
+                final int i = positions[scan - firstScan];
+                if (i < 0)
+                    continue;
+                final float mz = segment.getFloat(position + 4);
+                if (mz < lowerMZ || mz > upperMZ)
+                    continue;
+                consumer.accept(i, mz, segment.getFloat(position + 8));
+            }
+        }
+    }
+
+    /**
+     * @return the first entry of the bin with a scan index >= firstScan
+     */
+    private long findFirstEntry(int bin, int firstScan) {
+        long low = binStarts[bin], high = binStarts[bin + 1];
+        while (low < high) {
+            final long mid = (low + high) >>> 1;
+            final int position = (int) (mid % SEGMENT_ENTRIES) * ENTRY_SIZE;
+            if (segments[(int) (mid / SEGMENT_ENTRIES)]
+                    .getInt(position) < firstScan)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return the bin of the m/z value, limited to the existing bins
+     */
+    private int getBin(double mz) {
+        final int bin = (int) Math.floor((mz - minMZ) / BIN_WIDTH);
+        return Math.max(0, Math.min(numOfBins - 1, bin));
+    }
+
+    /**
+     * Closes and removes the index file. The index must not be used anymore.
+     * Java cannot unmap the segments explicitly, they are unmapped by the
+     * garbage collector once they are unreachable, so the references to them
+     * are dropped here. A file that cannot be deleted while it is still mapped
+     * (on Windows) is deleted when MZmine exits.
+     */
+    void close() {
+        Arrays.fill(segments, null);
+        try {
+            indexFile.close();
+        } catch (IOException e) {
+            logger.warning("Could not close file " + indexFileName + ": "
+                    + e.toString());
+        }
+        if (!indexFileName.delete())
+            indexFileName.deleteOnExit();
+    }
+
+}
@@ -27,8 +27,9 @@ import java.util.List;
  */
 public abstract class AbstractTask implements Task {
 
-    private TaskStatus status = TaskStatus.WAITING;
+    private volatile TaskStatus status = TaskStatus.WAITING;
     private String errorMessage = null;
+    private final TaskMetrics metrics = new TaskMetrics();
     // listener to control status changes
     private List<TaskStatusListener> listener;
 
@@ -36,6 +37,12 @@ public abstract class AbstractTask implements Task {
      * @see io.github.mzmine.taskcontrol.Task#setStatus()
      */
     public final void setStatus(TaskStatus newStatus) {
+        // Complete the measurement before the final status is visible, so
+        // that whoever waits for the status reads the complete measurement
+        if ((newStatus == TaskStatus.FINISHED)
+                || (newStatus == TaskStatus.ERROR)
+                || (newStatus == TaskStatus.CANCELED))
+            metrics.finishMeasurement();
         TaskStatus old = status;
         this.status = newStatus;
         if (listener != null && !status.equals(old))
@@ -84,6 +91,15 @@ public abstract class AbstractTask implements Task {
         this.errorMessage = errorMessage;
     }
 
+    /**
+     * Returns the performance measurements of this task. Tasks may report the
+     * number of processed scans or rows via
+     * {@link TaskMetrics#addProcessedItems(long)}.
+     */
+    public final TaskMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public TaskPriority getTaskPriority() {
         return TaskPriority.NORMAL;
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.taskcontrol;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Performance measurements of a single task: wall time, CPU time, allocated
+ * memory and temporary file I/O of the thread that runs the task, and the
+ * number of items (scans, rows, ...) the task reported as processed.
+ *
+ * CPU time, allocations and temporary file I/O are measured on the thread that
+ * called {@link #startMeasurement()}, so work that a task hands over to other
+ * threads (e.g. parallel streams) only shows up in the wall time.
+ */
+public class TaskMetrics {
+
+    private static final ThreadMXBean threadBean = ManagementFactory
+            .getThreadMXBean();
+
+    // Bytes read from and written to the temporary data point files by the
+    // current thread, see RawDataFileImpl
+    private static final ThreadLocal<long[]> tempFileIO = ThreadLocal
+            .withInitial(() -> new long[2]);
+
+    private final AtomicLong processedItems = new AtomicLong();
+
+    private volatile long wallTime, cpuTime, allocatedBytes;
+    private volatile long tempFileBytesRead, tempFileBytesWritten;
+
+    private volatile boolean measuring;
+
+    // Values at the start of the measurement
+    private long threadId, startWallTime, startCpuTime, startAllocatedBytes;
+    private long startTempFileBytesRead, startTempFileBytesWritten;
+
+    /**
+     * Records the number of bytes the current thread read from a temporary
+     * file
+     */
+    public static void recordTempFileRead(long bytes) {
+        tempFileIO.get()[0] += bytes;
+    }
+
+    /**
+     * Records the number of bytes the current thread wrote to a temporary file
+     */
+    public static void recordTempFileWrite(long bytes) {
+        tempFileIO.get()[1] += bytes;
+    }
+
+    /**
+     * Starts measuring the current thread
+     */
+    public void startMeasurement() {
+        threadId = Thread.currentThread().getId();
+        startWallTime = System.nanoTime();
+        startCpuTime = getThreadCpuTime();
+        startAllocatedBytes = getThreadAllocatedBytes();
+        long io[] = tempFileIO.get();
+        startTempFileBytesRead = io[0];
+        startTempFileBytesWritten = io[1];
+        measuring = true;
+    }
+
+    /**
+     * Stops measuring. Does nothing unless called on the thread which called
+     * {@link #startMeasurement()} while the measurement is running, so it may
+     * be called more than once.
+     */
+    public void finishMeasurement() {
+        if (!measuring || (Thread.currentThread().getId() != threadId))
+            return;
+        measuring = false;
+        wallTime = System.nanoTime() - startWallTime;
+        long cpu = getThreadCpuTime();
+        if ((cpu >= 0) && (startCpuTime >= 0))
+            cpuTime = cpu - startCpuTime;
+        long allocated = getThreadAllocatedBytes();
+        if ((allocated >= 0) && (startAllocatedBytes >= 0))
+            allocatedBytes = allocated - startAllocatedBytes;
+        long io[] = tempFileIO.get();
+        tempFileBytesRead = io[0] - startTempFileBytesRead;
+        tempFileBytesWritten = io[1] - startTempFileBytesWritten;
+    }
+
+    /**
+     * Adds to the number of processed items (scans, rows, ...). May be called
+     * from any thread.
+     */
+    public void addProcessedItems(long items) {
+        processedItems.addAndGet(items);
+    }
+
+    public long getProcessedItems() {
+        return processedItems.get();
+    }
+
+    /**
+     * @return wall time in nanoseconds
+     */
+    public long getWallTime() {
+        return wallTime;
+    }
+
+    /**
+     * @return CPU time in nanoseconds, or 0 if not supported by the JVM
+     */
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    /**
+     * @return allocated bytes, or 0 if not supported by the JVM
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long getTempFileBytesRead() {
+        return tempFileBytesRead;
+    }
+
+    public long getTempFileBytesWritten() {
+        return tempFileBytesWritten;
+    }
+
+    private long getThreadCpuTime() {
+        if (!threadBean.isThreadCpuTimeSupported()
+                || !threadBean.isThreadCpuTimeEnabled())
+            return -1;
+        return threadBean.getThreadCpuTime(threadId);
+    }
+
+    private long getThreadAllocatedBytes() {
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        com.sun.management.ThreadMXBean sunThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+        if (!sunThreadBean.isThreadAllocatedMemorySupported()
+                || !sunThreadBean.isThreadAllocatedMemoryEnabled())
+            return -1;
+        return sunThreadBean.getThreadAllocatedBytes(threadId);
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.taskcontrol.impl;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder event covering the execution of one task. The event is
+ * only recorded when a flight recording is running (e.g. the JVM was started
+ * with -XX:StartFlightRecording), otherwise it costs next to nothing.
+ */
+@Name("io.github.mzmine.TaskExecution")
+@Label("Task Execution")
+@Category("MZmine")
+@Description("Execution of an MZmine task")
+class TaskExecutionEvent extends Event {
+
+    @Label("Task")
+    String task;
+
+    @Label("Task Class")
+    String taskClass;
+
+    @Label("Status")
+    String status;
+
+    @Label("CPU Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long cpuTime;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+
+    @Label("Processed Items")
+    long processedItems;
+
+    @Label("Temporary File Read")
+    @DataAmount
+    long tempFileBytesRead;
+
+    @Label("Temporary File Written")
+    @DataAmount
+    long tempFileBytesWritten;
+
+}
@@ -22,7 +22,10 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.project.impl.ProjectManagerImpl;
+import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.Task;
+import io.github.mzmine.taskcontrol.TaskMetrics;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ExceptionUtils;
 
@@ -50,14 +53,50 @@ class WorkerThread extends Thread {
 
         Task actualTask = wrappedTask.getActualTask();
 
+        // Process the task on the project of the batch job that queued it
+        if (wrappedTask.getProject() != null)
+            ProjectManagerImpl.getInstance()
+                    .setThreadProject(wrappedTask.getProject());
+
         try {
 
             // Log the start (INFO level events go to the Status bar, too)
             logger.info("Starting processing of task "
                     + actualTask.getTaskDescription());
 
-            // Process the actual task
-            actualTask.run();
+            // Process the actual task, measuring its resource usage
+            TaskMetrics metrics = null;
+            if (actualTask instanceof AbstractTask) {
+                metrics = ((AbstractTask) actualTask).getMetrics();
+                metrics.startMeasurement();
+            }
+            TaskExecutionEvent event = new TaskExecutionEvent();
+            event.begin();
+
+            try {
+                actualTask.run();
+            } finally {
+                // The measurement is usually finished already, when the task
+                // set its final status (see AbstractTask.setStatus())
+                event.end();
+                if (metrics != null)
+                    metrics.finishMeasurement();
+                if (event.shouldCommit()) {
+                    event.task = actualTask.getTaskDescription();
+                    event.taskClass = actualTask.getClass().getName();
+                    event.status = String.valueOf(actualTask.getStatus());
+                    if (metrics != null) {
+                        event.cpuTime = metrics.getCpuTime();
+                        event.allocatedBytes = metrics.getAllocatedBytes();
+                        event.processedItems = metrics.getProcessedItems();
+                        event.tempFileBytesRead = metrics
+                                .getTempFileBytesRead();
+                        event.tempFileBytesWritten = metrics
+                                .getTempFileBytesWritten();
+                    }
+                    event.commit();
+                }
+            }
 
             // Check if task finished with an error
             if (actualTask.getStatus() == TaskStatus.ERROR) {
@@ -76,9 +115,15 @@ class WorkerThread extends Thread {
                         errorMsg);
             } else {
                 // Log the finish
+                String timing = "";
+                if (metrics != null)
+                    timing = String.format(", %.1f s wall time, %.1f s CPU time",
+                            metrics.getWallTime() / 1e9,
+                            metrics.getCpuTime() / 1e9);
                 logger.info(
                         "Processing of task " + actualTask.getTaskDescription()
-                                + " done, status " + actualTask.getStatus());
+                                + " done, status " + actualTask.getStatus()
+                                + timing);
             }
 
             /*
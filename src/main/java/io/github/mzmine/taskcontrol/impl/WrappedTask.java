@@ -18,6 +18,8 @@
 
 package io.github.mzmine.taskcontrol.impl;
 
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.project.impl.ProjectManagerImpl;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskPriority;
 
@@ -30,9 +32,24 @@ public class WrappedTask {
     private TaskPriority priority;
     private WorkerThread assignedTo;
 
+    // Project bound to the thread which queued the task (batch service jobs),
+    // the task is processed on the same project
+    private final MZmineProject project;
+
     WrappedTask(Task task, TaskPriority priority) {
         this.task = task;
         this.priority = priority;
+        ProjectManagerImpl projectManager = ProjectManagerImpl.getInstance();
+        this.project = projectManager != null
+                ? projectManager.getThreadProject()
+                : null;
+    }
+
+    /**
+     * @return the project bound to the thread which queued the task, or null
+     */
+    MZmineProject getProject() {
+        return project;
     }
 
     /**
@@ -0,0 +1,406 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+import io.github.mzmine.datamodel.Feature;
+import io.github.mzmine.datamodel.PeakList;
+import io.github.mzmine.datamodel.PeakListRow;
+import io.github.mzmine.datamodel.RawDataFile;
+
+/**
+ * Heights and areas of all features of a feature list, packed into
+ * column-major primitive arrays with one column per raw data file. The value
+ * of row r in column c is stored at index c * numberOfRows + r, missing
+ * features are NaN.
+ *
+ * Matrices are cached per feature list, see {@link #getMatrix(PeakList)}, so
+ * the data analysis modules share one matrix and re-running them with
+ * different parameters does not walk all the features again. A cached matrix
+ * is rebuilt when rows are added to or removed from the feature list, or the
+ * features of a row change (see {@link PeakList#getModificationCount()} and
+ * {@link PeakListRow#getModificationCount()}).
+ */
+public class FeatureMatrix {
+
+    private static final Logger logger = Logger
+            .getLogger(FeatureMatrix.class.getName());
+
+    /**
+     * Storage of the values
+     */
+    public enum Storage {
+        /**
+         * double precision, on the heap
+         */
+        DOUBLE,
+        /**
+         * single precision, on the heap, half the memory of DOUBLE
+         */
+        FLOAT,
+        /**
+         * single precision, outside of the Java heap
+         */
+        FLOAT_OFF_HEAP
+    }
+
+    // The matrices must not keep a reference to their feature list, otherwise
+    // the feature lists would never be removed from this map
+    private static final Map<PeakList, FeatureMatrix> cache = Collections
+            .synchronizedMap(new WeakHashMap<>());
+
+    private final Storage storage;
+    private final PeakListRow[] rows;
+    private final RawDataFile[] dataFiles;
+    private final Map<PeakListRow, Integer> rowIndexes;
+    private final Map<RawDataFile, Integer> columnIndexes;
+    private final Values heights, areas;
+
+    // Modification counts of the feature list and the rows at build time
+    private final long peakListModificationCount;
+    private final long[] rowModificationCounts;
+
+    /**
+     * Returns the cached matrix of the feature list, building it if there is
+     * none or the feature list was modified since. A new matrix uses the
+     * {@link Storage#DOUBLE} storage.
+     */
+    public static FeatureMatrix getMatrix(PeakList peakList) {
+        return getMatrix(peakList, null);
+    }
+
+    /**
+     * Returns the cached matrix of the feature list, building it if there is
+     * none, the feature list was modified since or the cached matrix uses a
+     * different storage.
+     *
+     * @param storage
+     *            requested storage, null to accept any storage of a cached
+     *            matrix
+     */
+    public static FeatureMatrix getMatrix(PeakList peakList, Storage storage) {
+        FeatureMatrix matrix = cache.get(peakList);
+        if ((matrix != null) && matrix.isValid(peakList)
+                && ((storage == null) || (matrix.storage == storage)))
+            return matrix;
+
+        // Two threads may build the same matrix at the same time, which is
+        // harmless, one of them ends up in the cache
+        matrix = new FeatureMatrix(peakList,
+                storage == null ? Storage.DOUBLE : storage);
+        cache.put(peakList, matrix);
+        return matrix;
+    }
+
+    /**
+     * Removes the cached matrix of the feature list
+     */
+    public static void invalidate(PeakList peakList) {
+        cache.remove(peakList);
+    }
+
+    private FeatureMatrix(PeakList peakList, Storage storage) {
+
+        final long startTime = System.currentTimeMillis();
+
+        this.storage = storage;
+        this.peakListModificationCount = peakList.getModificationCount();
+        this.rows = peakList.getRows();
+        this.dataFiles = peakList.getRawDataFiles();
+
+        final int numRows = rows.length;
+        rowIndexes = new HashMap<>(numRows * 2);
+        for (int r = 0; r < numRows; r++)
+            rowIndexes.put(rows[r], r);
+        columnIndexes = new HashMap<>(dataFiles.length * 2);
+        for (int c = 0; c < dataFiles.length; c++)
+            columnIndexes.put(dataFiles[c], c);
+
+        final int size = Math.multiplyExact(numRows, dataFiles.length);
+        heights = createValues(storage, size);
+        areas = createValues(storage, size);
+
+        rowModificationCounts = new long[numRows];
+        IntStream.range(0, numRows).parallel().forEach(r -> {
+            final PeakListRow row = rows[r];
+            // Read the count first, so that a concurrent change invalidates
+            // the matrix rather than being missed
+            rowModificationCounts[r] = row.getModificationCount();
+            for (int c = 0; c < dataFiles.length; c++) {
+                final int index = c * numRows + r;
+                final Feature peak = row.getPeak(dataFiles[c]);
+                if (peak != null) {
+                    heights.set(index, peak.getHeight());
+                    areas.set(index, peak.getArea());
+                } else {
+                    heights.set(index, Double.NaN);
+                    areas.set(index, Double.NaN);
+                }
+            }
+        });
+
+        logger.finest(() -> "Built " + storage + " feature matrix of "
+                + peakList + " (" + numRows + " x " + dataFiles.length
+                + ") in " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    /**
+     * @return true if the feature list was not modified since this matrix was
+     *         built
+     */
+    private boolean isValid(PeakList peakList) {
+        if (peakList.getModificationCount() != peakListModificationCount)
+            return false;
+        for (int r = 0; r < rows.length; r++) {
+            if (rows[r].getModificationCount() != rowModificationCounts[r])
+                return false;
+        }
+        return true;
+    }
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    public int getNumberOfRows() {
+        return rows.length;
+    }
+
+    public int getNumberOfColumns() {
+        return dataFiles.length;
+    }
+
+    /**
+     * @return rows of the matrix, in the order of the feature list
+     */
+    public PeakListRow[] getRows() {
+        return rows.clone();
+    }
+
+    /**
+     * @return raw data files of the columns, in the order of the feature list
+     */
+    public RawDataFile[] getRawDataFiles() {
+        return dataFiles.clone();
+    }
+
+    /**
+     * @return index of the row, or -1 if the row is not in the matrix
+     */
+    public int getRowIndex(PeakListRow row) {
+        Integer index = rowIndexes.get(row);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return index of the column of the raw data file, or -1 if the file is
+     *         not in the matrix
+     */
+    public int getColumnIndex(RawDataFile dataFile) {
+        Integer index = columnIndexes.get(dataFile);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return height or area of the feature, NaN if there is no feature
+     */
+    public double getValue(PeakMeasurementType type, int row, int column) {
+        return getValues(type).get(column * rows.length + row);
+    }
+
+    /**
+     * @return height or area of the feature, NaN if there is no feature or
+     *         the row or file is not in the matrix
+     */
+    public double getValue(PeakMeasurementType type, PeakListRow row,
+            RawDataFile dataFile) {
+        final int r = getRowIndex(row), c = getColumnIndex(dataFile);
+        if ((r < 0) || (c < 0))
+            return Double.NaN;
+        return getValue(type, r, c);
+    }
+
+    /**
+     * Copies the values of the given rows and files into a new column-major
+     * array, the value of rows[r] in dataFiles[c] is at index c * rows.length
+     * + r.
+     *
+     * @param missingValue
+     *            value of missing features and of rows or files not in this
+     *            matrix
+     */
+    public double[] getColumnMajorValues(PeakMeasurementType type,
+            PeakListRow[] rows, RawDataFile[] dataFiles, double missingValue) {
+        final Values values = getValues(type);
+        final int[] rowMap = mapRows(rows);
+        final int numRows = rows.length;
+        final double[] result = new double[numRows * dataFiles.length];
+        for (int c = 0; c < dataFiles.length; c++) {
+            final int column = getColumnIndex(dataFiles[c]);
+            final int offset = column * this.rows.length;
+            for (int r = 0; r < numRows; r++) {
+                result[c * numRows + r] = (column < 0) || (rowMap[r] < 0)
+                        ? missingValue
+                        : replaceNaN(values.get(offset + rowMap[r]),
+                                missingValue);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Copies the values of the given rows and files into a new array indexed
+     * [file][row], the layout used by the projection plots and clustering.
+     *
+     * @param missingValue
+     *            value of missing features and of rows or files not in this
+     *            matrix
+     */
+    public double[][] getFileByRowMatrix(PeakMeasurementType type,
+            PeakListRow[] rows, RawDataFile[] dataFiles, double missingValue) {
+        final Values values = getValues(type);
+        final int[] rowMap = mapRows(rows);
+        final double[][] result = new double[dataFiles.length][rows.length];
+        for (int c = 0; c < dataFiles.length; c++) {
+            final int column = getColumnIndex(dataFiles[c]);
+            if (column < 0) {
+                Arrays.fill(result[c], missingValue);
+                continue;
+            }
+            final int offset = column * this.rows.length;
+            for (int r = 0; r < rows.length; r++) {
+                result[c][r] = rowMap[r] < 0 ? missingValue
+                        : replaceNaN(values.get(offset + rowMap[r]),
+                                missingValue);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Copies the values of the given rows and files into a new array indexed
+     * [row][file].
+     *
+     * @param missingValue
+     *            value of missing features and of rows or files not in this
+     *            matrix
+     */
+    public double[][] getRowByFileMatrix(PeakMeasurementType type,
+            PeakListRow[] rows, RawDataFile[] dataFiles, double missingValue) {
+        final Values values = getValues(type);
+        final int[] rowMap = mapRows(rows);
+        final int[] columnMap = new int[dataFiles.length];
+        for (int c = 0; c < dataFiles.length; c++)
+            columnMap[c] = getColumnIndex(dataFiles[c]);
+        final double[][] result = new double[rows.length][dataFiles.length];
+        for (int r = 0; r < rows.length; r++) {
+            for (int c = 0; c < dataFiles.length; c++) {
+                result[r][c] = (rowMap[r] < 0) || (columnMap[c] < 0)
+                        ? missingValue
+                        : replaceNaN(values.get(
+                                columnMap[c] * this.rows.length + rowMap[r]),
+                                missingValue);
+            }
+        }
+        return result;
+    }
+
+    private int[] mapRows(PeakListRow[] selectedRows) {
+        final int[] rowMap = new int[selectedRows.length];
+        for (int r = 0; r < selectedRows.length; r++)
+            rowMap[r] = getRowIndex(selectedRows[r]);
+        return rowMap;
+    }
+
+    private Values getValues(PeakMeasurementType type) {
+        return type == PeakMeasurementType.AREA ? areas : heights;
+    }
+
+    private static double replaceNaN(double value, double missingValue) {
+        return Double.isNaN(value) ? missingValue : value;
+    }
+
+    private static Values createValues(Storage storage, int size) {
+        switch (storage) {
+        case FLOAT:
+            return new FloatValues(FloatBuffer.allocate(size));
+        case FLOAT_OFF_HEAP:
+            return new FloatValues(ByteBuffer
+                    .allocateDirect(Math.multiplyExact(size, Float.BYTES))
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer());
+        default:
+            return new DoubleValues(new double[size]);
+        }
+    }
+
+    private interface Values {
+        double get(int index);
+
+        void set(int index, double value);
+    }
+
+    private static class DoubleValues implements Values {
+
+        private final double[] values;
+
+        DoubleValues(double[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public double get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public void set(int index, double value) {
+            values[index] = value;
+        }
+    }
+
+    private static class FloatValues implements Values {
+
+        private final FloatBuffer values;
+
+        FloatValues(FloatBuffer values) {
+            this.values = values;
+        }
+
+        @Override
+        public double get(int index) {
+            return values.get(index);
+        }
+
+        @Override
+        public void set(int index, double value) {
+            values.put(index, (float) value);
+        }
+    }
+
+}
@@ -29,13 +29,11 @@ import io.github.mzmine.datamodel.IsotopePattern;
 import io.github.mzmine.datamodel.PeakIdentity;
 import io.github.mzmine.datamodel.PeakListRow;
 import io.github.mzmine.datamodel.RawDataFile;
-import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.datamodel.impl.SimpleFeature;
 import io.github.mzmine.datamodel.impl.SimplePeakListRow;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.dataprocessing.featdet_manual.ManualPeak;
-import io.github.mzmine.util.scans.ScanUtils;
 
 /**
  * Utilities for peaks and feature lists
@@ -237,23 +235,23 @@ public class PeakUtils {
 
         int[] scanNumbers = dataFile.getScanNumbers(1, rtRange);
 
-        for (int scanNumber : scanNumbers) {
+        // Find most intense m/z peak in each scan
+        DataPoint[] basePeaks = dataFile.findBasePeaks(scanNumbers,
+                mzRange);
 
-            // Get next scan
-            Scan scan = dataFile.getScan(scanNumber);
+        for (int i = 0; i < scanNumbers.length; i++) {
 
-            // Find most intense m/z peak
-            DataPoint basePeak = ScanUtils.findBasePeak(scan, mzRange);
+            DataPoint basePeak = basePeaks[i];
 
             if (basePeak != null) {
                 if (basePeak.getIntensity() > 0)
                     dataPointFound = true;
-                newPeak.addDatapoint(scan.getScanNumber(), basePeak);
+                newPeak.addDatapoint(scanNumbers[i], basePeak);
             } else {
                 final double mzCenter = (mzRange.lowerEndpoint()
                         + mzRange.upperEndpoint()) / 2.0;
                 DataPoint fakeDataPoint = new SimpleDataPoint(mzCenter, 0);
-                newPeak.addDatapoint(scan.getScanNumber(), fakeDataPoint);
+                newPeak.addDatapoint(scanNumbers[i], fakeDataPoint);
             }
 
         }
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util.R;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.gui.preferences.NumOfThreadsParameter;
+import io.github.mzmine.main.MZmineCore;
+
+/**
+ * Pool of open R sessions shared by the tasks. Starting an R instance and
+ * loading packages such as xcms or CAMERA takes seconds, so sessions are not
+ * closed after use but reset and kept for the next task. Idle sessions keep
+ * their loaded packages, and a session that already has the requested
+ * packages is preferred.
+ *
+ * Only Rserve sessions are pooled. RCaller runs each session as a separate
+ * script, so RCaller sessions are opened on lease and closed on release.
+ *
+ * The number of idle sessions kept is the number of threads set in the MZmine
+ * preferences.
+ */
+public class RSessionPool {
+
+    private static final Logger logger = Logger
+            .getLogger(RSessionPool.class.getName());
+
+    private static final RSessionPool instance = new RSessionPool();
+
+    // Removes all user objects and open graphics devices, keeping the loaded
+    // packages
+    private static final String RESET_CODE = "rm(list = ls(all.names = TRUE)); "
+            + "while (dev.cur() > 1) dev.off(); invisible(gc())";
+
+    private final Deque<RSessionWrapper> idleSessions = new ArrayDeque<>();
+    private final Set<RSessionWrapper> leasedSessions = new HashSet<>();
+    // Leased sessions closed by closeLeased, which are discarded on release
+    private final Set<RSessionWrapper> closedLeasedSessions = new HashSet<>();
+    private final Map<RSessionWrapper, Set<String>> loadedPackages = new HashMap<>();
+
+    // Statistics
+    private final AtomicLong createdSessions = new AtomicLong();
+    private final AtomicLong reusedSessions = new AtomicLong();
+    private final AtomicLong discardedSessions = new AtomicLong();
+    private final AtomicLong totalLeaseTime = new AtomicLong();
+    private final AtomicLong maxLeaseTime = new AtomicLong();
+
+    private RSessionPool() {
+        // Close the idle sessions on exit
+        Runtime.getRuntime().addShutdownHook(
+                new Thread(this::closeIdleSessions, "R session pool cleanup"));
+    }
+
+    public static RSessionPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns an open session with the required packages loaded, reusing an
+     * idle session if possible. The session must be handed back using
+     * {@link #release(RSessionWrapper)} instead of being closed.
+     */
+    public RSessionWrapper lease(REngineType rEngineType,
+            String callerFeatureName, String[] reqPackages,
+            String[] reqPackagesVersions) throws RSessionWrapperException {
+
+        final long startTime = System.nanoTime();
+
+        RSessionWrapper rSession = null;
+        if (rEngineType == REngineType.RSERVE) {
+            while ((rSession = takeIdleSession(reqPackages)) != null) {
+                try {
+                    rSession.setRequiredPackages(callerFeatureName,
+                            reqPackages, reqPackagesVersions);
+                    rSession.loadAndCheckRequiredPackages();
+                    reusedSessions.incrementAndGet();
+                    break;
+                } catch (Exception e) {
+                    // The session died while idle or the packages cannot be
+                    // loaded, try the next one
+                    logger.log(Level.FINE, "Discarding R session", e);
+                    discard(rSession);
+                }
+            }
+        }
+
+        if (rSession == null) {
+            rSession = new RSessionWrapper(rEngineType, callerFeatureName,
+                    reqPackages, reqPackagesVersions);
+            rSession.open();
+            createdSessions.incrementAndGet();
+        }
+
+        synchronized (this) {
+            leasedSessions.add(rSession);
+            if (reqPackages != null)
+                loadedPackages.computeIfAbsent(rSession, s -> new HashSet<>())
+                        .addAll(Arrays.asList(reqPackages));
+        }
+
+        final long leaseTime = System.nanoTime() - startTime;
+        totalLeaseTime.addAndGet(leaseTime);
+        maxLeaseTime.accumulateAndGet(leaseTime, Math::max);
+        logger.finest(() -> "Leased R session for " + callerFeatureName
+                + " in " + TimeUnit.NANOSECONDS.toMillis(leaseTime) + " ms");
+
+        return rSession;
+    }
+
+    /**
+     * Hands a leased session back to the pool. The session state is reset; if
+     * that fails, the session was closed (e.g. the task was canceled) or the
+     * pool is full, the session is closed. Releasing a session that is not
+     * leased has no effect.
+     */
+    public void release(RSessionWrapper rSession)
+            throws RSessionWrapperException {
+
+        if (rSession == null)
+            return;
+
+        final boolean closed;
+        synchronized (this) {
+            if (!leasedSessions.remove(rSession))
+                return;
+            closed = closedLeasedSessions.remove(rSession);
+        }
+
+        if (closed) {
+            discard(rSession);
+            return;
+        }
+
+        if (rSession.getREngineType() != REngineType.RSERVE) {
+            closeSession(rSession);
+            return;
+        }
+
+        boolean healthy;
+        try {
+            healthy = rSession.isSessionRunning()
+                    && rSession.eval(RESET_CODE, false);
+        } catch (RSessionWrapperException e) {
+            healthy = false;
+        }
+
+        synchronized (this) {
+            if (healthy && (idleSessions.size() < getMaxIdleSessions())) {
+                idleSessions.push(rSession);
+                return;
+            }
+        }
+
+        discard(rSession);
+    }
+
+    /**
+     * Closes a session which is still leased, to stop its computation when
+     * the task is canceled. The task must still release the session, which is
+     * then discarded. A session which was released already is not closed, as
+     * it may be leased by another task.
+     */
+    public void closeLeased(RSessionWrapper rSession)
+            throws RSessionWrapperException {
+        if (rSession == null)
+            return;
+        synchronized (this) {
+            if (!leasedSessions.contains(rSession))
+                return;
+            closedLeasedSessions.add(rSession);
+        }
+        // Closing waits for R, so do not block the other tasks meanwhile
+        rSession.close(true);
+    }
+
+    /**
+     * @return an idle session, preferably one with all the given packages
+     *         loaded, or null
+     */
+    private synchronized RSessionWrapper takeIdleSession(
+            String[] reqPackages) {
+        if (idleSessions.isEmpty())
+            return null;
+        if (reqPackages != null) {
+            for (Iterator<RSessionWrapper> it = idleSessions.iterator(); it
+                    .hasNext();) {
+                RSessionWrapper rSession = it.next();
+                Set<String> loaded = loadedPackages.get(rSession);
+                if (loaded != null
+                        && loaded.containsAll(Arrays.asList(reqPackages))) {
+                    it.remove();
+                    return rSession;
+                }
+            }
+        }
+        return idleSessions.pop();
+    }
+
+    private void discard(RSessionWrapper rSession) {
+        synchronized (this) {
+            loadedPackages.remove(rSession);
+        }
+        discardedSessions.incrementAndGet();
+        try {
+            closeSession(rSession);
+        } catch (RSessionWrapperException e) {
+            // Silent, the session is gone anyway
+        }
+    }
+
+    private void closeSession(RSessionWrapper rSession)
+            throws RSessionWrapperException {
+        synchronized (this) {
+            loadedPackages.remove(rSession);
+        }
+        if (rSession.isSessionRunning())
+            rSession.close(false);
+    }
+
+    /**
+     * Closes all idle sessions
+     */
+    public void closeIdleSessions() {
+        RSessionWrapper sessions[];
+        synchronized (this) {
+            sessions = idleSessions.toArray(new RSessionWrapper[0]);
+            idleSessions.clear();
+        }
+        for (RSessionWrapper rSession : sessions) {
+            try {
+                closeSession(rSession);
+            } catch (RSessionWrapperException e) {
+                // Silent, we are cleaning up
+            }
+        }
+        if (createdSessions.get() > 0)
+            logger.info("R session pool: " + getStatistics());
+    }
+
+    private int getMaxIdleSessions() {
+        if (MZmineCore.getConfiguration() == null)
+            return 1;
+        NumOfThreadsParameter parameter = MZmineCore.getConfiguration()
+                .getPreferences().getParameter(MZminePreferences.numOfThreads);
+        if (parameter.isAutomatic() || (parameter.getValue() == null))
+            return Runtime.getRuntime().availableProcessors();
+        return parameter.getValue();
+    }
+
+    public synchronized int getIdleSessionCount() {
+        return idleSessions.size();
+    }
+
+    public synchronized int getLeasedSessionCount() {
+        return leasedSessions.size();
+    }
+
+    public long getCreatedSessionCount() {
+        return createdSessions.get();
+    }
+
+    public long getReusedSessionCount() {
+        return reusedSessions.get();
+    }
+
+    /**
+     * @return number of sessions closed because they failed the health check
+     *         or did not fit into the pool
+     */
+    public long getDiscardedSessionCount() {
+        return discardedSessions.get();
+    }
+
+    /**
+     * @return average time to lease a session, in milliseconds
+     */
+    public double getAverageLeaseTime() {
+        long leases = createdSessions.get() + reusedSessions.get();
+        if (leases == 0)
+            return 0;
+        return totalLeaseTime.get() / 1e6 / leases;
+    }
+
+    /**
+     * @return longest time to lease a session, in milliseconds
+     */
+    public double getMaxLeaseTime() {
+        return maxLeaseTime.get() / 1e6;
+    }
+
+    public String getStatistics() {
+        return String.format(
+                "%d idle, %d leased, %d created, %d reused, %d discarded, "
+                        + "lease time avg. %.1f ms, max. %.1f ms",
+                getIdleSessionCount(), getLeasedSessionCount(),
+                getCreatedSessionCount(), getReusedSessionCount(),
+                getDiscardedSessionCount(), getAverageLeaseTime(),
+                getMaxLeaseTime());
+    }
+
+}
@@ -36,11 +36,14 @@ import javax.lang.model.SourceVersion;
 
 import org.rosuda.REngine.REXP;
 import org.rosuda.REngine.REXPDouble;
+import org.rosuda.REngine.REXPGenericVector;
 import org.rosuda.REngine.REXPInteger;
+import org.rosuda.REngine.REXPList;
 import org.rosuda.REngine.REXPMismatchException;
 import org.rosuda.REngine.REXPNull;
 import org.rosuda.REngine.REXPString;
 import org.rosuda.REngine.REngineException;
+import org.rosuda.REngine.RList;
 import org.rosuda.REngine.Rserve.RConnection;
 import org.rosuda.REngine.Rserve.RserveException;
 
@@ -227,6 +230,23 @@ public class RSessionWrapper {
         this.reqPackages = reqPackages;
         this.reqPackagesVersions = reqPackagesVersions;
     }
+
+    /**
+     * Changes the caller and the required packages of an open session, so
+     * that it can be reused (see {@link RSessionPool}). The packages must be
+     * loaded by calling {@link #loadAndCheckRequiredPackages()}.
+     */
+    void setRequiredPackages(String callerFeatureName, String[] reqPackages,
+            String[] reqPackagesVersions) {
+        this.callerFeatureName = callerFeatureName;
+        this.reqPackages = reqPackages;
+        this.reqPackagesVersions = reqPackagesVersions;
+    }
+
+    public REngineType getREngineType() {
+        return this.rEngineType;
+    }
+
     // public RSessionWrapper(String callerFeatureName, String[] reqPackages,
     // String[] reqPackagesVersions) {
     //
@@ -772,6 +792,139 @@ public class RSessionWrapper {
         }
     }
 
+    /**
+     * Assigns a numeric matrix to an R object in one transfer, instead of
+     * setting the cells one by one. NaN and infinite values become NA.
+     *
+     * @param objName
+     *            name of the R object
+     * @param matrix
+     *            values by row, all rows must have the same length
+     * @param rowNames
+     *            row names, or null
+     * @param colNames
+     *            column names, or null
+     */
+    public void assignMatrix(String objName, double[][] matrix,
+            String[] rowNames, String[] colNames)
+            throws RSessionWrapperException {
+
+        final int nrow = matrix.length;
+        final int ncol = nrow == 0 ? (colNames == null ? 0 : colNames.length)
+                : matrix[0].length;
+
+        // R matrices are stored by column
+        final double[] values = new double[nrow * ncol];
+        for (int r = 0; r < nrow; r++) {
+            if (matrix[r].length != ncol)
+                throw new IllegalArgumentException(
+                        "Rows of matrix '" + objName + "' differ in length");
+            for (int c = 0; c < ncol; c++) {
+                final double value = matrix[r][c];
+                values[c * nrow + r] = Double.isFinite(value) ? value
+                        : NA_DOUBLE;
+            }
+        }
+
+        if (this.rEngineType == REngineType.RSERVE) {
+            assignRserve(objName, new REXPDouble(values,
+                    getMatrixAttributes(nrow, ncol, rowNames, colNames)));
+        } else {
+            assign(objName, values);
+            setMatrixDimensions(objName, nrow, ncol, rowNames, colNames);
+        }
+    }
+
+    /**
+     * Assigns a character matrix to an R object in one transfer, instead of
+     * setting the cells one by one. Null values become NA.
+     *
+     * @param objName
+     *            name of the R object
+     * @param matrix
+     *            values by row, all rows must have the same length
+     * @param rowNames
+     *            row names, or null
+     * @param colNames
+     *            column names, or null
+     */
+    public void assignMatrix(String objName, String[][] matrix,
+            String[] rowNames, String[] colNames)
+            throws RSessionWrapperException {
+
+        final int nrow = matrix.length;
+        final int ncol = nrow == 0 ? (colNames == null ? 0 : colNames.length)
+                : matrix[0].length;
+
+        // R matrices are stored by column
+        final String[] values = new String[nrow * ncol];
+        for (int r = 0; r < nrow; r++) {
+            if (matrix[r].length != ncol)
+                throw new IllegalArgumentException(
+                        "Rows of matrix '" + objName + "' differ in length");
+            for (int c = 0; c < ncol; c++)
+                values[c * nrow + r] = matrix[r][c];
+        }
+
+        if (this.rEngineType == REngineType.RSERVE) {
+            assignRserve(objName, new REXPString(values,
+                    getMatrixAttributes(nrow, ncol, rowNames, colNames)));
+        } else {
+            assign(objName, values);
+            eval(objName + "[" + objName + " == 'null'] <- NA");
+            setMatrixDimensions(objName, nrow, ncol, rowNames, colNames);
+        }
+    }
+
+    private void assignRserve(String objName, REXP rexp)
+            throws RSessionWrapperException {
+        if (this.session != null && !this.userCanceled) {
+            String msg = "Rserve error: couldn't assign R object '" + objName
+                    + "' (instance '" + this.getPID() + "').";
+            try {
+                ((RConnection) this.rEngine).assign(objName, rexp);
+            } catch (REngineException e) {
+                throw new RSessionWrapperException(msg);
+            } catch (Exception e) {
+                throw new RSessionWrapperException(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return "dim" and "dimnames" attributes of a matrix, for Rserve
+     */
+    private static REXPList getMatrixAttributes(int nrow, int ncol,
+            String[] rowNames, String[] colNames) {
+        REXP dim = new REXPInteger(new int[] { nrow, ncol });
+        if (rowNames == null && colNames == null)
+            return new REXPList(new RList(new REXP[] { dim },
+                    new String[] { "dim" }));
+        REXP dimnames = new REXPGenericVector(new RList(new REXP[] {
+                rowNames == null ? new REXPNull() : new REXPString(rowNames),
+                colNames == null ? new REXPNull()
+                        : new REXPString(colNames) }));
+        return new REXPList(new RList(new REXP[] { dim, dimnames },
+                new String[] { "dim", "dimnames" }));
+    }
+
+    /**
+     * Turns a vector that was assigned through RCaller into a matrix
+     */
+    private void setMatrixDimensions(String objName, int nrow, int ncol,
+            String[] rowNames, String[] colNames)
+            throws RSessionWrapperException {
+        eval("dim(" + objName + ") <- c(" + nrow + ", " + ncol + ")");
+        if (rowNames != null) {
+            assign(objName + "_rownames", rowNames);
+            eval("rownames(" + objName + ") <- " + objName + "_rownames");
+        }
+        if (colNames != null) {
+            assign(objName + "_colnames", colNames);
+            eval("colnames(" + objName + ") <- " + objName + "_colnames");
+        }
+    }
+
     // Check connectivity in case outside event broke it.
     // Required since we're using "Rsession"'s eval() which is damn silent.
     // TODO: [May be ??] better modify the way Rsession works:
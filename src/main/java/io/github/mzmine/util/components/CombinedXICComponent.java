@@ -51,9 +51,6 @@ public class CombinedXICComponent extends JComponent {
 
     private Feature[] peaks;
 
-    private Range<Double> rtRange;
-    private double maxIntensity;
-
     /**
      * @param ChromatographicPeak
      *            [] Picked peaks to plot
@@ -64,24 +61,8 @@ public class CombinedXICComponent extends JComponent {
         if (id >= 0)
             setToolTipText(ComponentToolTipManager.CUSTOM + id);
 
-        double maxIntensity = 0;
         this.peaks = peaks;
 
-        // find data boundaries
-        for (Feature peak : peaks) {
-            if (peak == null)
-                continue;
-
-            maxIntensity = Math.max(maxIntensity,
-                    peak.getRawDataPointsIntensityRange().upperEndpoint());
-            if (rtRange == null)
-                rtRange = peak.getDataFile().getDataRTRange();
-            else
-                rtRange = rtRange.span(peak.getDataFile().getDataRTRange());
-        }
-
-        this.maxIntensity = maxIntensity;
-
         this.setBorder(componentBorder);
 
     }
@@ -90,15 +71,41 @@ public class CombinedXICComponent extends JComponent {
 
         super.paint(g);
 
-        // use Graphics2D for antialiasing
-        Graphics2D g2 = (Graphics2D) g;
+        // get canvas size
+        Dimension size = getSize();
+
+        paintPeakShapes((Graphics2D) g, peaks, size);
+
+    }
+
+    /**
+     * Paints the peak shapes without a component, e.g. into an image outside
+     * of the event dispatch thread
+     *
+     * @param size
+     *            size of the painted area
+     */
+    public static void paintPeakShapes(Graphics2D g2, Feature[] peaks,
+            Dimension size) {
 
         // turn on antialiasing
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
                 RenderingHints.VALUE_ANTIALIAS_ON);
 
-        // get canvas size
-        Dimension size = getSize();
+        // find data boundaries
+        double maxIntensity = 0;
+        Range<Double> rtRange = null;
+        for (Feature peak : peaks) {
+            if (peak == null)
+                continue;
+
+            maxIntensity = Math.max(maxIntensity,
+                    peak.getRawDataPointsIntensityRange().upperEndpoint());
+            if (rtRange == null)
+                rtRange = peak.getDataFile().getDataRTRange();
+            else
+                rtRange = rtRange.span(peak.getDataFile().getDataRTRange());
+        }
 
         int colorIndex = 0;
 
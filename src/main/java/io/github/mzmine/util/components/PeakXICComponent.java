@@ -48,7 +48,6 @@ public class PeakXICComponent extends JComponent {
 
     private Feature peak;
 
-    private Range<Double> rtRange;
     private double maxIntensity;
 
     /**
@@ -66,10 +65,6 @@ public class PeakXICComponent extends JComponent {
     public PeakXICComponent(Feature peak, double maxIntensity) {
 
         this.peak = peak;
-
-        // find data boundaries
-        RawDataFile dataFile = peak.getDataFile();
-        this.rtRange = dataFile.getDataRTRange();
         this.maxIntensity = maxIntensity;
 
         this.setBorder(componentBorder);
@@ -83,18 +78,32 @@ public class PeakXICComponent extends JComponent {
 
         super.paint(g);
 
-        // use Graphics2D for antialiasing
-        Graphics2D g2 = (Graphics2D) g;
+        // get canvas size
+        Dimension size = getSize();
+
+        paintPeakShape((Graphics2D) g, peak, maxIntensity, size);
+
+    }
+
+    /**
+     * Paints the peak shape without a component, e.g. into an image outside
+     * of the event dispatch thread
+     *
+     * @param size
+     *            size of the painted area
+     */
+    public static void paintPeakShape(Graphics2D g2, Feature peak,
+            double maxIntensity, Dimension size) {
 
         // turn on antialiasing
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
                 RenderingHints.VALUE_ANTIALIAS_ON);
 
-        // get canvas size
-        Dimension size = getSize();
+        // find data boundaries
+        RawDataFile dataFile = peak.getDataFile();
+        Range<Double> rtRange = dataFile.getDataRTRange();
 
         // get scan numbers, one data point per each scan
-        RawDataFile dataFile = peak.getDataFile();
         int scanNumbers[] = peak.getScanNumbers();
 
         // If we have no data, just return
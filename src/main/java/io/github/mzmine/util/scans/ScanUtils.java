@@ -508,20 +508,32 @@ public class ScanUtils {
         double[] intensityValues = new double[dataPoints.length];
         double[] mzValues = new double[dataPoints.length];
 
+        for (int i = 0; i < dataPoints.length; i++) {
+            intensityValues[i] = dataPoints[i].getIntensity();
+            mzValues[i] = dataPoints[i].getMZ();
+        }
+
+        return detectSpectrumType(mzValues, intensityValues);
+    }
+
+    /**
+     * Same as {@link #detectSpectrumType(DataPoint[])}, working directly on
+     * arrays of m/z and intensity values
+     */
+    public static MassSpectrumType detectSpectrumType(
+            @Nonnull double[] mzValues, @Nonnull double[] intensityValues) {
+
         // If the spectrum has less than 5 data points, it should be centroided.
-        if (dataPoints.length < 5)
+        if (mzValues.length < 5)
             return MassSpectrumType.CENTROIDED;
 
         int basePeakIndex = 0;
         boolean hasZeroDataPoint = false;
 
         // Go through the data points and find the highest one
-        int size = dataPoints.length;
+        int size = mzValues.length;
         for (int i = 0; i < size; i++) {
 
-            intensityValues[i] = dataPoints[i].getIntensity();
-            mzValues[i] = dataPoints[i].getMZ();
-
             // Update the maxDataPointIndex accordingly
             if (intensityValues[i] > intensityValues[basePeakIndex])
                 basePeakIndex = i;
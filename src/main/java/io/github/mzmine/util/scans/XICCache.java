@@ -0,0 +1,332 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util.scans;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Range;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+
+/**
+ * Shared calculation of ion chromatograms, i.e. the base peak and total ion
+ * count of each scan within an m/z range. Scans whose data points are all
+ * within the m/z range are taken from the scan metadata of the data file
+ * without reading the scan. For the other scans the values are calculated
+ * once (using the XIC index of the data file, if there is one) and cached per
+ * data file and m/z range, so that a chromatogram which is requested again
+ * (e.g. by another window, or for more scans) is only calculated for the scans
+ * that were not calculated before.
+ */
+public class XICCache {
+
+    // Maximum number of cached scans (28 bytes each) of all chromatograms
+    private static final long MAX_CACHED_SCANS = 1L << 21;
+
+    private static final Cache<Key, Chromatogram> cache = CacheBuilder
+            .newBuilder().maximumWeight(MAX_CACHED_SCANS)
+            .weigher((Key key, Chromatogram chromatogram) -> chromatogram
+                    .getNumOfScans())
+            .build();
+
+    /**
+     * Base peak and total ion count of each requested scan
+     */
+    public static class XIC {
+
+        private final double basePeakMZs[];
+        private final double basePeakIntensities[];
+        private final double tics[];
+
+        private XIC(int numOfScans) {
+            basePeakMZs = new double[numOfScans];
+            basePeakIntensities = new double[numOfScans];
+            tics = new double[numOfScans];
+            Arrays.fill(basePeakMZs, Double.NaN);
+        }
+
+        /**
+         * @return m/z of the most intense data point within the m/z range, NaN
+         *         if there is no data point within the m/z range
+         */
+        public double getBasePeakMZ(int i) {
+            return basePeakMZs[i];
+        }
+
+        /**
+         * @return intensity of the most intense data point within the m/z
+         *         range, 0 if there is no data point within the m/z range
+         */
+        public double getBasePeakIntensity(int i) {
+            return basePeakIntensities[i];
+        }
+
+        /**
+         * @return sum of the intensities within the m/z range
+         */
+        public double getTIC(int i) {
+            return tics[i];
+        }
+
+        private void set(int i, @Nullable DataPoint basePeak, double tic) {
+            if (basePeak != null) {
+                basePeakMZs[i] = basePeak.getMZ();
+                basePeakIntensities[i] = basePeak.getIntensity();
+            } else {
+                basePeakMZs[i] = Double.NaN;
+                basePeakIntensities[i] = 0.0;
+            }
+            tics[i] = tic;
+        }
+
+    }
+
+    /**
+     * Calculated values of some scans of one data file and m/z range, sorted
+     * by scan number. It only holds the scans that were requested, and it is
+     * replaced by a merged copy when more scans are calculated, so that the
+     * cache weighs it again.
+     */
+    private static class Chromatogram {
+
+        private static final Chromatogram EMPTY = new Chromatogram(0);
+
+        private final int scanNumbers[];
+        private final double basePeakMZs[];
+        private final double basePeakIntensities[];
+        private final double tics[];
+
+        private Chromatogram(int numOfScans) {
+            scanNumbers = new int[numOfScans];
+            basePeakMZs = new double[numOfScans];
+            basePeakIntensities = new double[numOfScans];
+            tics = new double[numOfScans];
+        }
+
+        /**
+         * @return the values of the XIC, sorted by scan number
+         */
+        private static Chromatogram of(int scanNumbers[], XIC xic) {
+            final int order[] = IntStream.range(0, scanNumbers.length).boxed()
+                    .sorted(Comparator.comparingInt(i -> scanNumbers[i]))
+                    .mapToInt(Integer::intValue).toArray();
+            final Chromatogram c = new Chromatogram(order.length);
+            for (int n = 0; n < order.length; n++) {
+                final int i = order[n];
+                c.scanNumbers[n] = scanNumbers[i];
+                c.basePeakMZs[n] = xic.basePeakMZs[i];
+                c.basePeakIntensities[n] = xic.basePeakIntensities[i];
+                c.tics[n] = xic.tics[i];
+            }
+            return c;
+        }
+
+        private int getNumOfScans() {
+            return scanNumbers.length;
+        }
+
+        /**
+         * Copies the values of the scan to position i of the XIC
+         *
+         * @return false if the scan was not calculated yet
+         */
+        private boolean get(int scanNumber, XIC xic, int i) {
+            final int n = Arrays.binarySearch(scanNumbers, scanNumber);
+            if (n < 0)
+                return false;
+            xic.basePeakMZs[i] = basePeakMZs[n];
+            xic.basePeakIntensities[i] = basePeakIntensities[n];
+            xic.tics[i] = tics[n];
+            return true;
+        }
+
+        /**
+         * @return the scans of both chromatograms, the values of other for the
+         *         scans they have in common
+         */
+        private Chromatogram merge(Chromatogram other) {
+            final Chromatogram merged = new Chromatogram(
+                    getNumOfScans() + other.getNumOfScans());
+            int a = 0, b = 0, n = 0;
+            while ((a < getNumOfScans()) || (b < other.getNumOfScans())) {
+                if ((b < other.getNumOfScans()) && ((a == getNumOfScans())
+                        || (other.scanNumbers[b] <= scanNumbers[a]))) {
+                    if ((a < getNumOfScans())
+                            && (other.scanNumbers[b] == scanNumbers[a]))
+                        a++;
+                    merged.copy(n++, other, b++);
+                } else {
+                    merged.copy(n++, this, a++);
+                }
+            }
+            return n == merged.getNumOfScans() ? merged : merged.truncate(n);
+        }
+
+        private void copy(int n, Chromatogram from, int f) {
+            scanNumbers[n] = from.scanNumbers[f];
+            basePeakMZs[n] = from.basePeakMZs[f];
+            basePeakIntensities[n] = from.basePeakIntensities[f];
+            tics[n] = from.tics[f];
+        }
+
+        private Chromatogram truncate(int numOfScans) {
+            final Chromatogram truncated = new Chromatogram(numOfScans);
+            for (int n = 0; n < numOfScans; n++)
+                truncated.copy(n, this, n);
+            return truncated;
+        }
+
+    }
+
+    private static class Key {
+
+        private final RawDataFile dataFile;
+        private final Range<Double> mzRange;
+
+        private Key(RawDataFile dataFile, Range<Double> mzRange) {
+            this.dataFile = dataFile;
+            this.mzRange = mzRange;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(dataFile) + mzRange.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return (dataFile == other.dataFile)
+                    && mzRange.equals(other.mzRange);
+        }
+
+    }
+
+    private XICCache() {
+    }
+
+    /**
+     * Returns the base peak and total ion count within the m/z range of each
+     * of the scans
+     *
+     * @param scanNumbers
+     *            scan numbers, preferably sorted so that the XIC index of the
+     *            data file can be used
+     * @return the values in order of scanNumbers
+     */
+    public static @Nonnull XIC getXIC(@Nonnull RawDataFile dataFile,
+            @Nonnull int scanNumbers[], @Nonnull Range<Double> mzRange) {
+
+        final XIC xic = new XIC(scanNumbers.length);
+        final Key key = new Key(dataFile, mzRange);
+
+        // Take the values of the scans within the m/z range from the scan
+        // metadata, and the calculated values from the cache
+        Chromatogram chromatogram = null;
+        final int missing[] = new int[scanNumbers.length];
+        int numOfMissing = 0;
+        for (int i = 0; i < scanNumbers.length; i++) {
+            final Range<Double> dataPointMZRange = dataFile
+                    .getDataPointMZRange(scanNumbers[i]);
+            if (dataPointMZRange == null)
+                continue;
+            if (mzRange.encloses(dataPointMZRange)) {
+                xic.set(i, dataFile.getBasePeak(scanNumbers[i]),
+                        dataFile.getTIC(scanNumbers[i]));
+                continue;
+            }
+            if (chromatogram == null) {
+                chromatogram = cache.getIfPresent(key);
+                if (chromatogram == null)
+                    chromatogram = Chromatogram.EMPTY;
+            }
+            if (!chromatogram.get(scanNumbers[i], xic, i))
+                missing[numOfMissing++] = i;
+        }
+
+        if (numOfMissing == 0)
+            return xic;
+
+        // Calculate and cache the other scans
+        final int missingScanNumbers[] = new int[numOfMissing];
+        for (int m = 0; m < numOfMissing; m++)
+            missingScanNumbers[m] = scanNumbers[missing[m]];
+        final XIC missingXIC = new XIC(numOfMissing);
+        calculate(dataFile, missingScanNumbers, mzRange, missingXIC);
+        for (int m = 0; m < numOfMissing; m++) {
+            final int i = missing[m];
+            xic.basePeakMZs[i] = missingXIC.basePeakMZs[m];
+            xic.basePeakIntensities[i] = missingXIC.basePeakIntensities[m];
+            xic.tics[i] = missingXIC.tics[m];
+        }
+        cache.asMap().merge(key,
+                Chromatogram.of(missingScanNumbers, missingXIC),
+                Chromatogram::merge);
+
+        return xic;
+    }
+
+    /**
+     * Removes the cached chromatograms of the data file
+     */
+    public static void invalidate(@Nonnull RawDataFile dataFile) {
+        cache.asMap().keySet().removeIf(key -> key.dataFile == dataFile);
+    }
+
+    private static void calculate(RawDataFile dataFile, int scanNumbers[],
+            Range<Double> mzRange, XIC xic) {
+
+        if (dataFile.isXICIndexed(scanNumbers)) {
+            final DataPoint basePeaks[] = dataFile.findBasePeaks(scanNumbers,
+                    mzRange);
+            final double tics[] = dataFile.calculateTICs(scanNumbers,
+                    mzRange);
+            for (int i = 0; i < scanNumbers.length; i++)
+                xic.set(i, basePeaks[i], tics[i]);
+            return;
+        }
+
+        // Read each scan once for both values
+        for (int i = 0; i < scanNumbers.length; i++) {
+            final Scan scan = dataFile.getScan(scanNumbers[i]);
+            if (scan == null)
+                continue;
+            DataPoint basePeak = null;
+            double tic = 0.0;
+            for (DataPoint dp : scan.getDataPointsByMass(mzRange)) {
+                if ((basePeak == null)
+                        || (dp.getIntensity() > basePeak.getIntensity()))
+                    basePeak = dp;
+                tic += dp.getIntensity();
+            }
+            xic.set(i, basePeak, tic);
+        }
+    }
+
+}